@@ -0,0 +1,175 @@
+package com.dbmonitor.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dynamic-proxy wrappers for {@link Connection} and its statements. Only statement creation
+ * and the execute methods are intercepted; everything else goes straight to the driver.
+ */
+final class JdbcProxies {
+
+    private JdbcProxies() {
+    }
+
+    static Connection connection(Connection connection, MonitorClient client) {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(JdbcProxies.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection, client));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection delegate;
+        private final MonitorClient client;
+
+        private ConnectionHandler(Connection delegate, MonitorClient client) {
+            this.delegate = delegate;
+            this.client = client;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = JdbcProxies.invoke(delegate, method, args);
+            Class<?> type;
+            switch (method.getName()) {
+                case "createStatement" -> type = Statement.class;
+                case "prepareStatement" -> type = PreparedStatement.class;
+                case "prepareCall" -> type = CallableStatement.class;
+                default -> {
+                    return result;
+                }
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+            return Proxy.newProxyInstance(JdbcProxies.class.getClassLoader(), new Class<?>[] {type},
+                    new StatementHandler((Statement) result, (Connection) proxy, sql, client));
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement delegate;
+        private final Connection connection;
+        private final String preparedSql;
+        private final MonitorClient client;
+        // SQL added with Statement.addBatch(String)
+        private List<String> batch;
+
+        private StatementHandler(Statement delegate, Connection connection, String preparedSql, MonitorClient client) {
+            this.delegate = delegate;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+            this.client = client;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "addBatch":
+                    if (args != null && args.length == 1 && args[0] instanceof String sql) {
+                        if (batch == null) {
+                            batch = new ArrayList<>();
+                        }
+                        batch.add(sql);
+                    }
+                    return JdbcProxies.invoke(delegate, method, args);
+                case "clearBatch":
+                    batch = null;
+                    return JdbcProxies.invoke(delegate, method, args);
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    return timed(method, args);
+                case "executeBatch":
+                case "executeLargeBatch":
+                    return timedBatch(method, args);
+                default:
+                    return JdbcProxies.invoke(delegate, method, args);
+            }
+        }
+
+        private Object timed(Method method, Object[] args) throws Throwable {
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : preparedSql;
+            long start = System.nanoTime();
+            try {
+                Object result = JdbcProxies.invoke(delegate, method, args);
+                client.record(sql, System.nanoTime() - start, updateCount(result), false);
+                return result;
+            } catch (Throwable t) {
+                client.record(sql, System.nanoTime() - start, 0, true);
+                throw t;
+            }
+        }
+
+        private Object timedBatch(Method method, Object[] args) throws Throwable {
+            List<String> statements = batch;
+            batch = null;
+            long start = System.nanoTime();
+            boolean error = false;
+            Object result = null;
+            try {
+                result = JdbcProxies.invoke(delegate, method, args);
+                return result;
+            } catch (Throwable t) {
+                error = true;
+                throw t;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                if (statements != null && !statements.isEmpty()) {
+                    // Plain statement batch: split the time across the batched statements
+                    long share = elapsed / statements.size();
+                    for (String sql : statements) {
+                        client.record(sql, share, 0, error);
+                    }
+                } else {
+                    client.record(preparedSql, elapsed, error ? 0 : batchRows(result), error);
+                }
+            }
+        }
+
+        private static long updateCount(Object result) {
+            if (result instanceof Integer count) {
+                return Math.max(0, count);
+            }
+            if (result instanceof Long count) {
+                return Math.max(0, count);
+            }
+            return 0;
+        }
+
+        private static long batchRows(Object result) {
+            long rows = 0;
+            if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    rows += Math.max(0, count);
+                }
+            }
+            return rows;
+        }
+    }
+}
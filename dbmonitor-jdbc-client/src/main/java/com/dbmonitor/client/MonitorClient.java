@@ -0,0 +1,93 @@
+package com.dbmonitor.client;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entry point of the instrumentation client. Wrap the application's {@link DataSource}
+ * (or individual connections) and every statement executed through it is timed,
+ * fingerprinted locally and aggregated; a background reporter ships one compact batch per
+ * interval to the monitor.
+ *
+ * <pre>
+ * MonitorClient client = MonitorClient.start(MonitorClientConfig.builder("http://monitor:8080")
+ *         .connectionId(3L)
+ *         .databaseType("PostgreSQL")
+ *         .build());
+ * DataSource dataSource = client.wrap(hikariDataSource);
+ * </pre>
+ */
+public final class MonitorClient implements AutoCloseable {
+
+    private final StatementAggregator aggregator;
+    private final MonitorReporter reporter;
+    private final int fingerprintCacheSize;
+    private final SqlFingerprinter.Dialect dialect;
+    private final ConcurrentHashMap<String, SqlFingerprinter.Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    private MonitorClient(MonitorClientConfig config) {
+        this.aggregator = new StatementAggregator(config.getMaxStatementsPerInterval());
+        this.reporter = new MonitorReporter(config, aggregator);
+        this.fingerprintCacheSize = config.getFingerprintCacheSize();
+        this.dialect = config.getDialect();
+    }
+
+    public static MonitorClient start(MonitorClientConfig config) {
+        MonitorClient client = new MonitorClient(config);
+        client.reporter.start();
+        return client;
+    }
+
+    public DataSource wrap(DataSource dataSource) {
+        return dataSource instanceof MonitoredDataSource ? dataSource : new MonitoredDataSource(dataSource, this);
+    }
+
+    public Connection wrap(Connection connection) {
+        return JdbcProxies.connection(connection, this);
+    }
+
+    /**
+     * Records one execution. Called by the JDBC wrappers; applications timing statements
+     * themselves may call it directly.
+     */
+    public void record(String sql, long elapsedNanos, long rows, boolean error) {
+        if (sql == null) {
+            return;
+        }
+        aggregator.record(fingerprint(sql), elapsedNanos, rows, error);
+    }
+
+    public long getSentBatches() {
+        return reporter.getSentBatches();
+    }
+
+    public long getDroppedBatches() {
+        return reporter.getDroppedBatches();
+    }
+
+    public long getDroppedExecutions() {
+        return reporter.getDroppedExecutions();
+    }
+
+    /**
+     * Stops the reporter after a final flush.
+     */
+    @Override
+    public void close() {
+        reporter.stop();
+    }
+
+    private SqlFingerprinter.Fingerprint fingerprint(String sql) {
+        SqlFingerprinter.Fingerprint fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = SqlFingerprinter.fingerprint(sql, dialect);
+            if (fingerprints.size() >= fingerprintCacheSize) {
+                // Unbounded distinct SQL (literals inlined); start over rather than grow
+                fingerprints.clear();
+            }
+            fingerprints.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+}
@@ -0,0 +1,144 @@
+package com.dbmonitor.client;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Settings for {@link MonitorClient}. Only the monitor's base URL is required.
+ */
+public final class MonitorClientConfig {
+
+    private final URI endpoint;
+    private final Long connectionId;
+    private final String apiToken;
+    private final SqlFingerprinter.Dialect dialect;
+    private final Duration flushInterval;
+    private final Duration requestTimeout;
+    private final int maxStatementsPerInterval;
+    private final int maxPendingBatches;
+    private final int fingerprintCacheSize;
+
+    private MonitorClientConfig(Builder builder) {
+        if (builder.endpoint == null) {
+            throw new IllegalArgumentException("endpoint is required");
+        }
+        this.endpoint = builder.endpoint;
+        this.connectionId = builder.connectionId;
+        this.apiToken = builder.apiToken;
+        this.dialect = builder.dialect;
+        this.flushInterval = builder.flushInterval;
+        this.requestTimeout = builder.requestTimeout;
+        this.maxStatementsPerInterval = builder.maxStatementsPerInterval;
+        this.maxPendingBatches = builder.maxPendingBatches;
+        this.fingerprintCacheSize = builder.fingerprintCacheSize;
+    }
+
+    public static Builder builder(String endpoint) {
+        return new Builder(URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint));
+    }
+
+    public URI getEndpoint() {
+        return endpoint;
+    }
+
+    public Long getConnectionId() {
+        return connectionId;
+    }
+
+    public String getApiToken() {
+        return apiToken;
+    }
+
+    public SqlFingerprinter.Dialect getDialect() {
+        return dialect;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public int getMaxStatementsPerInterval() {
+        return maxStatementsPerInterval;
+    }
+
+    public int getMaxPendingBatches() {
+        return maxPendingBatches;
+    }
+
+    public int getFingerprintCacheSize() {
+        return fingerprintCacheSize;
+    }
+
+    public static final class Builder {
+        private final URI endpoint;
+        private Long connectionId;
+        private String apiToken;
+        private SqlFingerprinter.Dialect dialect = SqlFingerprinter.Dialect.GENERIC;
+        private Duration flushInterval = Duration.ofSeconds(10);
+        private Duration requestTimeout = Duration.ofSeconds(5);
+        private int maxStatementsPerInterval = 2000;
+        private int maxPendingBatches = 12;
+        private int fingerprintCacheSize = 10000;
+
+        private Builder(URI endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /** Id of the monitored connection in the monitor the statements belong to. */
+        public Builder connectionId(Long connectionId) {
+            this.connectionId = connectionId;
+            return this;
+        }
+
+        /** The monitor's {@code security.ingest.api-token}, needed when it runs with security enabled. */
+        public Builder apiToken(String apiToken) {
+            this.apiToken = apiToken;
+            return this;
+        }
+
+        /**
+         * Engine of the monitored database ("MySQL", "PostgreSQL", "SQL Server"), for its
+         * comment and string escape rules. Defaults to standard SQL.
+         */
+        public Builder databaseType(String databaseType) {
+            this.dialect = SqlFingerprinter.Dialect.of(databaseType);
+            return this;
+        }
+
+        public Builder flushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /** Distinct statements tracked per interval; executions of others are counted as dropped. */
+        public Builder maxStatementsPerInterval(int maxStatementsPerInterval) {
+            this.maxStatementsPerInterval = maxStatementsPerInterval;
+            return this;
+        }
+
+        /** Intervals kept for retry while the monitor is unreachable; the oldest is dropped first. */
+        public Builder maxPendingBatches(int maxPendingBatches) {
+            this.maxPendingBatches = maxPendingBatches;
+            return this;
+        }
+
+        /** Raw SQL strings whose fingerprint is cached so prepared statements are normalized once. */
+        public Builder fingerprintCacheSize(int fingerprintCacheSize) {
+            this.fingerprintCacheSize = fingerprintCacheSize;
+            return this;
+        }
+
+        public MonitorClientConfig build() {
+            return new MonitorClientConfig(this);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.dbmonitor.client;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that closes an aggregation interval every flush period, encodes it as a
+ * compact JSON batch and posts it to {@code /api/queries/record/aggregates}. Batches that
+ * cannot be delivered are retried on the next tick from a bounded queue; when the queue is
+ * full the oldest batch is dropped, so an unreachable monitor never grows the heap.
+ */
+final class MonitorReporter {
+
+    private static final Logger LOG = Logger.getLogger(MonitorReporter.class.getName());
+    private static final String PATH = "/api/queries/record/aggregates";
+
+    private final MonitorClientConfig config;
+    private final StatementAggregator aggregator;
+    private final HttpClient httpClient;
+    private final String authorization;
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dbmonitor-client-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong droppedBatches = new AtomicLong();
+    private final AtomicLong droppedExecutions = new AtomicLong();
+
+    MonitorReporter(MonitorClientConfig config, StatementAggregator aggregator) {
+        this.config = config;
+        this.aggregator = aggregator;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(config.getRequestTimeout())
+                .build();
+        this.authorization = config.getApiToken() != null ? "Bearer " + config.getApiToken() : null;
+    }
+
+    void start() {
+        long periodMs = config.getFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::tick, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        scheduler.shutdown();
+        try {
+            if (scheduler.awaitTermination(config.getRequestTimeout().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                tick();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long getSentBatches() {
+        return sentBatches.get();
+    }
+
+    long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    long getDroppedExecutions() {
+        return droppedExecutions.get();
+    }
+
+    private void tick() {
+        try {
+            StatementAggregator.Interval interval = aggregator.swap();
+            droppedExecutions.addAndGet(interval.dropped.sum());
+            if (!interval.statements.isEmpty()) {
+                enqueue(encode(interval));
+            }
+            sendPending();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Error reporting statement statistics", e);
+        }
+    }
+
+    private void enqueue(String batch) {
+        if (pending.size() >= config.getMaxPendingBatches()) {
+            pending.pollFirst();
+            droppedBatches.incrementAndGet();
+        }
+        pending.addLast(batch);
+    }
+
+    private void sendPending() {
+        while (!pending.isEmpty()) {
+            String batch = pending.peekFirst();
+            int status;
+            try {
+                HttpRequest.Builder request = HttpRequest.newBuilder(config.getEndpoint().resolve(PATH))
+                        .timeout(config.getRequestTimeout())
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(batch, StandardCharsets.UTF_8));
+                if (authorization != null) {
+                    request.header("Authorization", authorization);
+                }
+                status = httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.log(Level.FINE, "Monitor unreachable, keeping {0} batches for retry", pending.size());
+                return;
+            }
+
+            if (status >= 200 && status < 300) {
+                pending.pollFirst();
+                sentBatches.incrementAndGet();
+            } else if (status == 429 || status >= 500) {
+                // Monitor is overloaded or failing; retry on the next tick
+                return;
+            } else {
+                pending.pollFirst();
+                droppedBatches.incrementAndGet();
+                LOG.log(Level.WARNING, "Monitor rejected statement batch with HTTP {0}", status);
+            }
+        }
+    }
+
+    private String encode(StatementAggregator.Interval interval) {
+        String start = timestamp(interval.startMillis);
+        String end = timestamp(interval.endMillis);
+        StringBuilder json = new StringBuilder(256 * interval.statements.size());
+        json.append('[');
+        boolean first = true;
+        for (StatementAggregator.StatementStats stats : interval.statements()) {
+            synchronized (stats) {
+                if (stats.calls == 0) {
+                    continue;
+                }
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append("{\"connectionId\":").append(config.getConnectionId());
+                json.append(",\"fingerprint\":").append(stats.fingerprint.hash());
+                json.append(",\"queryText\":");
+                appendString(json, stats.fingerprint.normalizedText());
+                json.append(",\"queryType\":");
+                appendString(json, stats.fingerprint.queryType());
+                json.append(",\"intervalStart\":\"").append(start).append('"');
+                json.append(",\"intervalEnd\":\"").append(end).append('"');
+                json.append(",\"calls\":").append(stats.calls);
+                json.append(",\"errors\":").append(stats.errors);
+                json.append(",\"totalTimeMs\":").append(stats.totalNanos / 1_000_000.0);
+                json.append(",\"maxTimeMs\":").append(stats.maxNanos / 1_000_000.0);
+                json.append(",\"rows\":").append(stats.rows);
+                json.append(",\"latencyBuckets\":{");
+                boolean firstBucket = true;
+                for (int i = 0; i < stats.buckets.length; i++) {
+                    if (stats.buckets[i] == 0) {
+                        continue;
+                    }
+                    if (!firstBucket) {
+                        json.append(',');
+                    }
+                    firstBucket = false;
+                    json.append('"').append(i).append("\":").append(stats.buckets[i]);
+                }
+                json.append("}}");
+            }
+        }
+        json.append(']');
+        return json.toString();
+    }
+
+    private static String timestamp(long epochMillis) {
+        // The monitor stores local date-times, like its own collectors
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
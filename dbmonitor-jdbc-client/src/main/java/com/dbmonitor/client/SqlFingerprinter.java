@@ -0,0 +1,577 @@
+package com.dbmonitor.client;
+
+/**
+ * Single-pass SQL normalizer. Strips comments and literals, unifies bind placeholders,
+ * lowercases keywords and identifiers, collapses whitespace, IN-lists and repeated VALUES
+ * tuples, and hashes the result into a stable 64-bit fingerprint (FNV-1a). Two statements
+ * that differ only in literal values or formatting share a fingerprint.
+ *
+ * <p>Two lexical rules depend on the engine and are selected by {@link Dialect}: whether
+ * {@code #} starts a comment (MySQL) or a name (SQL Server temp tables), and whether a
+ * backslash escapes a quote inside a string literal (MySQL, PostgreSQL {@code E'...'}).
+ *
+ * <p>Stateless and thread-safe. This is a copy of the monitor's
+ * {@code com.dbmonitor.service.SqlFingerprinter} and must stay identical to it; both copies
+ * are checked against the monitor's {@code src/test/resources/fingerprint-corpus.tsv}. The
+ * monitor recomputes fingerprints from the normalized text sent to it.
+ */
+public final class SqlFingerprinter {
+
+    /** Normalized text is truncated past this length so storage stays bounded. */
+    public static final int MAX_NORMALIZED_LENGTH = 8192;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final int MAX_DEPTH = 64;
+
+    // Token kinds used for spacing and sign-folding decisions
+    private static final int NONE = 0;
+    private static final int WORD = 1;
+    private static final int VALUE = 2;   // placeholder or literal
+    private static final int OPEN = 3;
+    private static final int CLOSE = 4;
+    private static final int COMMA = 5;
+    private static final int DOT = 6;
+    private static final int OP = 7;
+
+    /**
+     * Engine-specific lexical rules. {@code GENERIC} is standard SQL: backslashes are literal and
+     * {@code #} only starts a comment when followed by whitespace.
+     */
+    public enum Dialect {
+        GENERIC, MYSQL, POSTGRESQL, SQLSERVER;
+
+        /**
+         * Dialect of a connection's {@code databaseType} ("MySQL", "PostgreSQL", "SQL Server", ...).
+         */
+        public static Dialect of(String databaseType) {
+            if (databaseType == null) {
+                return GENERIC;
+            }
+            return switch (databaseType.toUpperCase().replace(" ", "")) {
+                case "MYSQL", "MARIADB" -> MYSQL;
+                case "POSTGRESQL", "POSTGRES" -> POSTGRESQL;
+                case "SQLSERVER", "MSSQL" -> SQLSERVER;
+                default -> GENERIC;
+            };
+        }
+    }
+
+    private SqlFingerprinter() {
+    }
+
+    public static Fingerprint fingerprint(String sql) {
+        return fingerprint(sql, Dialect.GENERIC);
+    }
+
+    public static Fingerprint fingerprint(String sql, Dialect dialect) {
+        String normalized = normalize(sql, dialect);
+        return new Fingerprint(hash(normalized), normalized, queryType(normalized));
+    }
+
+    public static long hash(String normalized) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            h ^= (c & 0xff);
+            h *= FNV_PRIME;
+            h ^= (c >>> 8);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Statement category from the first keyword of (normalized or raw) SQL.
+     */
+    public static String queryType(String sql) {
+        if (sql == null) {
+            return "UNKNOWN";
+        }
+        int i = 0;
+        int n = sql.length();
+        // Skip leading whitespace, parentheses and comments
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i < n && Character.isLetter(sql.charAt(i))) i++;
+        if (start == i) {
+            return "UNKNOWN";
+        }
+        String keyword = sql.substring(start, i).toUpperCase();
+        switch (keyword) {
+            case "SELECT":
+            case "WITH":
+            case "VALUES":
+            case "SHOW":
+                return "SELECT";
+            case "INSERT":
+            case "REPLACE":
+            case "MERGE":
+                return "INSERT";
+            case "UPDATE":
+                return "UPDATE";
+            case "DELETE":
+                return "DELETE";
+            case "CREATE":
+            case "ALTER":
+            case "DROP":
+            case "TRUNCATE":
+                return "DDL";
+            default:
+                return "OTHER";
+        }
+    }
+
+    public static String normalize(String sql) {
+        return normalize(sql, Dialect.GENERIC);
+    }
+
+    public static String normalize(String sql, Dialect dialect) {
+        if (sql == null || sql.isEmpty()) {
+            return "";
+        }
+        Normalizer normalizer = new Normalizer(sql, dialect);
+        normalizer.run();
+        return normalizer.out.toString();
+    }
+
+    /**
+     * Number of statements in {@code sql}: {@code ;} outside literals, quoted names and
+     * comments separates statements, and empty ones (e.g. after a trailing {@code ;}) are not
+     * counted. Unlike normalizing, this reads the whole text however long it is.
+     */
+    public static int statementCount(String sql, Dialect dialect) {
+        if (sql == null || sql.isEmpty()) {
+            return 0;
+        }
+        return new Normalizer(sql, dialect).countStatements();
+    }
+
+    private static final class Normalizer {
+        private final String sql;
+        private final Dialect dialect;
+        private final int n;
+        private final StringBuilder out;
+
+        private int lastKind = NONE;
+        private int prevKind = NONE;
+        private int lastTokenStart = 0;
+
+        // Per open paren: output offset right after "(", whether it held only placeholders
+        private final int[] groupStart = new int[MAX_DEPTH];
+        private final boolean[] groupOnlyValues = new boolean[MAX_DEPTH];
+        // Last closed group at each depth, to drop repeated VALUES tuples
+        private final int[] closedStart = new int[MAX_DEPTH + 1];
+        private final int[] closedEnd = new int[MAX_DEPTH + 1];
+        private int depth = 0;
+
+        Normalizer(String sql, Dialect dialect) {
+            this.sql = sql;
+            this.dialect = dialect;
+            this.n = sql.length();
+            this.out = new StringBuilder(Math.min(n, MAX_NORMALIZED_LENGTH) + 16);
+            java.util.Arrays.fill(closedEnd, -1);
+        }
+
+        void run() {
+            int i = 0;
+            while (i < n && out.length() < MAX_NORMALIZED_LENGTH) {
+                char c = sql.charAt(i);
+
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '-' && peek(i + 1) == '-') {
+                    i = skipLineComment(i);
+                } else if (c == '#' && isHashComment(i)) {
+                    i = skipLineComment(i);
+                } else if (c == '/' && peek(i + 1) == '*') {
+                    int end = sql.indexOf("*/", i + 2);
+                    i = end < 0 ? n : end + 2;
+                } else if (c == '\'') {
+                    i = skipQuoted(i, '\'', dialect == Dialect.MYSQL);
+                    value();
+                } else if ((c == 'N' || c == 'n' || c == 'E' || c == 'e' || c == 'X' || c == 'x'
+                        || c == 'B' || c == 'b') && peek(i + 1) == '\'' && !identChar(peekBack(i))) {
+                    // Backslash escapes apply to PostgreSQL E'...' strings and all MySQL strings
+                    boolean escapes = dialect == Dialect.MYSQL
+                            || (dialect != Dialect.SQLSERVER && (c == 'E' || c == 'e'));
+                    i = skipQuoted(i + 1, '\'', escapes);
+                    value();
+                } else if (c == '$' && isDollarQuoteStart(i)) {
+                    i = skipDollarQuoted(i);
+                    value();
+                } else if (c == '$' && Character.isDigit(peek(i + 1))) {
+                    // PostgreSQL positional parameter
+                    i++;
+                    while (i < n && Character.isDigit(sql.charAt(i))) i++;
+                    value();
+                } else if (c == '?') {
+                    i++;
+                    if (peek(i) == '+' && peek(i + 1) == ')') {
+                        // Already-collapsed "(?+)", so normalizing normalized text is stable
+                        i++;
+                    }
+                    value();
+                } else if (c == ':' && identStart(peek(i + 1)) && peekBack(i) != ':') {
+                    // Named parameter (":name"), but not a "::" cast
+                    i++;
+                    while (i < n && identChar(sql.charAt(i))) i++;
+                    value();
+                } else if (c == '@' && (peek(i + 1) == 'P' || peek(i + 1) == 'p') && Character.isDigit(peek(i + 2))) {
+                    // SQL Server driver parameter (@P0, @P1...)
+                    i += 2;
+                    while (i < n && Character.isDigit(sql.charAt(i))) i++;
+                    value();
+                } else if (Character.isDigit(c) || (c == '.' && Character.isDigit(peek(i + 1)))) {
+                    i = skipNumber(i);
+                    foldSign();
+                    value();
+                } else if (c == '"' || c == '`') {
+                    int start = i;
+                    i = skipQuoted(i, c, false);
+                    word(sql.substring(start, i));
+                } else if (c == '[') {
+                    int end = sql.indexOf(']', i + 1);
+                    int stop = end < 0 ? n : end + 1;
+                    word(sql.substring(i, stop));
+                    i = stop;
+                } else if (identStart(c)) {
+                    int start = i;
+                    while (i < n && identChar(sql.charAt(i))) i++;
+                    word(lower(sql, start, i));
+                } else if (c == '(') {
+                    i++;
+                    open();
+                } else if (c == ')') {
+                    i++;
+                    close();
+                } else if (c == ',') {
+                    i++;
+                    emit(",", COMMA);
+                } else if (c == '.') {
+                    i++;
+                    emit(".", DOT);
+                } else if (c == ';') {
+                    // Statement terminators carry no shape information
+                    i++;
+                } else {
+                    int start = i;
+                    while (i < n && isOperatorChar(sql.charAt(i))
+                            && !(sql.charAt(i) == '-' && peek(i + 1) == '-')
+                            && !(sql.charAt(i) == '/' && peek(i + 1) == '*')
+                            && !(i > start && isSign(i))) {
+                        i++;
+                    }
+                    if (i == start) {
+                        i++;
+                    }
+                    emit(sql.substring(start, i), OP);
+                }
+            }
+            if (out.length() > MAX_NORMALIZED_LENGTH) {
+                out.setLength(MAX_NORMALIZED_LENGTH);
+            }
+        }
+
+        int countStatements() {
+            int statements = 0;
+            boolean inStatement = false;
+            int i = 0;
+            while (i < n) {
+                char c = sql.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                if ((c == '-' && peek(i + 1) == '-') || (c == '#' && isHashComment(i))) {
+                    i = skipLineComment(i);
+                    continue;
+                }
+                if (c == '/' && peek(i + 1) == '*') {
+                    int end = sql.indexOf("*/", i + 2);
+                    i = end < 0 ? n : end + 2;
+                    continue;
+                }
+                if (c == ';') {
+                    if (inStatement) {
+                        statements++;
+                        inStatement = false;
+                    }
+                    i++;
+                    continue;
+                }
+                inStatement = true;
+                if (c == '\'') {
+                    i = skipQuoted(i, '\'', dialect == Dialect.MYSQL);
+                } else if ((c == 'N' || c == 'n' || c == 'E' || c == 'e' || c == 'X' || c == 'x'
+                        || c == 'B' || c == 'b') && peek(i + 1) == '\'' && !identChar(peekBack(i))) {
+                    boolean escapes = dialect == Dialect.MYSQL
+                            || (dialect != Dialect.SQLSERVER && (c == 'E' || c == 'e'));
+                    i = skipQuoted(i + 1, '\'', escapes);
+                } else if (c == '$' && isDollarQuoteStart(i)) {
+                    i = skipDollarQuoted(i);
+                } else if (c == '"' || c == '`') {
+                    i = skipQuoted(i, c, false);
+                } else if (c == '[') {
+                    int end = sql.indexOf(']', i + 1);
+                    i = end < 0 ? n : end + 1;
+                } else if (identStart(c)) {
+                    // Whole names, so a "$" inside one is not taken for a dollar quote
+                    while (i < n && identChar(sql.charAt(i))) i++;
+                } else {
+                    i++;
+                }
+            }
+            return inStatement ? statements + 1 : statements;
+        }
+
+        private void value() {
+            if (depth > 0 && depth <= MAX_DEPTH && lastKind != OPEN && lastKind != COMMA) {
+                groupOnlyValues[depth - 1] = false;
+            }
+            emit("?", VALUE);
+        }
+
+        private void word(String token) {
+            markGroupMixed();
+            emit(token, WORD);
+        }
+
+        private void open() {
+            markGroupMixed();
+            emit("(", OPEN);
+            if (depth < MAX_DEPTH) {
+                groupStart[depth] = out.length();
+                groupOnlyValues[depth] = true;
+                closedEnd[depth + 1] = -1;
+            }
+            depth++;
+        }
+
+        private void close() {
+            if (depth == 0) {
+                emit(")", CLOSE);
+                return;
+            }
+            depth--;
+            if (depth < MAX_DEPTH) {
+                int start = groupStart[depth];
+                if (groupOnlyValues[depth] && out.length() > start) {
+                    // "(?, ?, ?)" -> "(?+)"
+                    out.setLength(start);
+                    out.append("?+");
+                }
+                // Group is nested in the enclosing group; it is not "only values" anymore
+                if (depth > 0) {
+                    groupOnlyValues[depth - 1] = false;
+                }
+            }
+            int groupOpen = depth < MAX_DEPTH ? groupStart[depth] - 1 : -1;
+            emit(")", CLOSE);
+
+            if (groupOpen >= 0) {
+                int prevStart = closedStart[depth];
+                int prevEnd = closedEnd[depth];
+                if (prevEnd >= 0 && isSeparator(prevEnd, groupOpen)
+                        && regionEquals(prevStart, prevEnd, groupOpen, out.length())) {
+                    // "values (?+), (?+)" -> "values (?+)"
+                    out.setLength(prevEnd);
+                } else {
+                    closedStart[depth] = groupOpen;
+                    closedEnd[depth] = out.length();
+                }
+            }
+        }
+
+        private void markGroupMixed() {
+            if (depth > 0 && depth <= MAX_DEPTH) {
+                groupOnlyValues[depth - 1] = false;
+            }
+        }
+
+        private boolean isSeparator(int from, int to) {
+            int len = to - from;
+            return (len == 1 && out.charAt(from) == ',') || (len == 2 && out.charAt(from) == ',' && out.charAt(from + 1) == ' ');
+        }
+
+        private boolean regionEquals(int aStart, int aEnd, int bStart, int bEnd) {
+            if (aEnd - aStart != bEnd - bStart) {
+                return false;
+            }
+            for (int k = 0; k < aEnd - aStart; k++) {
+                if (out.charAt(aStart + k) != out.charAt(bStart + k)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // A sign in front of a number ends the operator before it, so "=-5" folds like "= -5"
+        private boolean isSign(int i) {
+            char c = sql.charAt(i);
+            return (c == '-' || c == '+')
+                    && (Character.isDigit(peek(i + 1)) || (peek(i + 1) == '.' && Character.isDigit(peek(i + 2))));
+        }
+
+        /**
+         * Drops a unary sign in front of a numeric literal ("= -5" normalizes like "= 5").
+         */
+        private void foldSign() {
+            if (lastKind == OP && out.length() - lastTokenStart == 1
+                    && (out.charAt(lastTokenStart) == '-' || out.charAt(lastTokenStart) == '+')
+                    && prevKind != WORD && prevKind != VALUE && prevKind != CLOSE) {
+                int cut = lastTokenStart;
+                if (cut > 0 && out.charAt(cut - 1) == ' ') {
+                    cut--;
+                }
+                out.setLength(cut);
+                lastKind = prevKind;
+                prevKind = NONE;
+            }
+        }
+
+        private void emit(String token, int kind) {
+            if (kind == OP || kind == DOT) {
+                markGroupMixed();
+            }
+            if (out.length() > 0 && needsSpace(kind)) {
+                out.append(' ');
+            }
+            lastTokenStart = out.length();
+            out.append(token);
+            prevKind = lastKind;
+            lastKind = kind;
+        }
+
+        private boolean needsSpace(int kind) {
+            if (lastKind == OPEN || lastKind == DOT) {
+                return false;
+            }
+            return kind != CLOSE && kind != COMMA && kind != DOT
+                    && !(kind == OPEN && lastKind == WORD);
+        }
+
+        private int skipLineComment(int i) {
+            int end = sql.indexOf('\n', i);
+            return end < 0 ? n : end + 1;
+        }
+
+        /**
+         * MySQL: always. SQL Server and PostgreSQL: never ({@code #tmp} is a temp table, {@code #}
+         * an operator). Otherwise only when followed by whitespace, which no name is.
+         */
+        private boolean isHashComment(int i) {
+            return switch (dialect) {
+                case MYSQL -> true;
+                case SQLSERVER, POSTGRESQL -> false;
+                case GENERIC -> i + 1 >= n || Character.isWhitespace(sql.charAt(i + 1));
+            };
+        }
+
+        private int skipQuoted(int i, char quote, boolean backslashEscapes) {
+            i++;
+            while (i < n) {
+                char c = sql.charAt(i);
+                if (c == '\\' && backslashEscapes) {
+                    i += 2;
+                } else if (c == quote) {
+                    if (peek(i + 1) == quote) {
+                        i += 2;
+                    } else {
+                        return i + 1;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            return n;
+        }
+
+        private boolean isDollarQuoteStart(int i) {
+            // "$$" or "$tag$" where the tag does not start with a digit ("$1" is a parameter)
+            if (Character.isDigit(peek(i + 1))) {
+                return false;
+            }
+            int j = i + 1;
+            while (j < n && sql.charAt(j) != '$' && identChar(sql.charAt(j))) j++;
+            return j < n && sql.charAt(j) == '$';
+        }
+
+        private int skipDollarQuoted(int i) {
+            int tagEnd = sql.indexOf('$', i + 1);
+            String tag = sql.substring(i, tagEnd + 1);
+            int close = sql.indexOf(tag, tagEnd + 1);
+            return close < 0 ? n : close + tag.length();
+        }
+
+        private int skipNumber(int i) {
+            if (sql.charAt(i) == '0' && (peek(i + 1) == 'x' || peek(i + 1) == 'X')) {
+                i += 2;
+                while (i < n && Character.digit(sql.charAt(i), 16) >= 0) i++;
+                return i;
+            }
+            while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+            if (i < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+                int j = i + 1;
+                if (j < n && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) j++;
+                if (j < n && Character.isDigit(sql.charAt(j))) {
+                    i = j;
+                    while (i < n && Character.isDigit(sql.charAt(i))) i++;
+                }
+            }
+            return i;
+        }
+
+        private char peek(int i) {
+            return i < n ? sql.charAt(i) : '\0';
+        }
+
+        private char peekBack(int i) {
+            return i > 0 ? sql.charAt(i - 1) : '\0';
+        }
+    }
+
+    private static boolean identStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '@' || c == '#';
+    }
+
+    private static boolean identChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@' || c == '#';
+    }
+
+    private static boolean isOperatorChar(char c) {
+        return "+-*/<>=!|&%^~:".indexOf(c) >= 0;
+    }
+
+    private static String lower(String s, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int k = start; k < end; k++) {
+            char c = s.charAt(k);
+            chars[k - start] = (c >= 'A' && c <= 'Z') ? (char) (c + 32) : c;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Fingerprint of one statement: 64-bit shape hash, normalized text and statement category.
+     */
+    public record Fingerprint(long hash, String normalizedText, String queryType) {
+
+        public String hashHex() {
+            return String.format("%016x", hash);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.dbmonitor.client;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates executions per statement fingerprint for the current interval. Memory is
+ * bounded by the number of distinct statements per interval; executions beyond that are
+ * only counted. {@link #swap()} closes the interval and hands it to the reporter.
+ */
+final class StatementAggregator {
+
+    // Same log-linear layout as the monitor's LatencyHistogram so buckets merge directly
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+    private final int maxStatements;
+    private volatile Interval current;
+
+    StatementAggregator(int maxStatements) {
+        this.maxStatements = maxStatements;
+        this.current = new Interval(System.currentTimeMillis());
+    }
+
+    void record(SqlFingerprinter.Fingerprint fingerprint, long elapsedNanos, long rows, boolean error) {
+        Interval interval = current;
+        StatementStats stats = interval.statements.get(fingerprint.hash());
+        if (stats == null) {
+            if (interval.statements.size() >= maxStatements) {
+                interval.dropped.increment();
+                return;
+            }
+            stats = interval.statements.computeIfAbsent(fingerprint.hash(), k -> new StatementStats(fingerprint));
+        }
+        stats.record(elapsedNanos, rows, error);
+    }
+
+    /**
+     * Starts a new interval and returns the one just closed. Executions racing with the swap
+     * may land in the closed interval after it was read; they are lost, not double counted.
+     */
+    Interval swap() {
+        Interval closed = current;
+        current = new Interval(System.currentTimeMillis());
+        closed.endMillis = current.startMillis;
+        return closed;
+    }
+
+    static int bucketIndex(long valueMs) {
+        if (valueMs < LINEAR_LIMIT) {
+            return (int) Math.max(0, valueMs);
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(valueMs);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (valueMs >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static final class Interval {
+        final long startMillis;
+        volatile long endMillis;
+        final ConcurrentHashMap<Long, StatementStats> statements = new ConcurrentHashMap<>();
+        final LongAdder dropped = new LongAdder();
+
+        private Interval(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        Collection<StatementStats> statements() {
+            return statements.values();
+        }
+    }
+
+    static final class StatementStats {
+        final SqlFingerprinter.Fingerprint fingerprint;
+        long calls;
+        long errors;
+        long totalNanos;
+        long maxNanos;
+        long rows;
+        long[] buckets = new long[LINEAR_LIMIT];
+
+        private StatementStats(SqlFingerprinter.Fingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        synchronized void record(long elapsedNanos, long rowCount, boolean error) {
+            calls++;
+            if (error) {
+                errors++;
+            }
+            totalNanos += elapsedNanos;
+            maxNanos = Math.max(maxNanos, elapsedNanos);
+            rows += Math.max(0, rowCount);
+            int index = bucketIndex(elapsedNanos / 1_000_000);
+            if (index >= buckets.length) {
+                buckets = Arrays.copyOf(buckets, Math.max(index + 1, buckets.length * 2));
+            }
+            buckets[index]++;
+        }
+    }
+}
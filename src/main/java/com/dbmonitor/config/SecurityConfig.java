@@ -2,20 +2,26 @@ package com.dbmonitor.config;
 
 import com.dbmonitor.security.CustomAuthenticationFailureHandler;
 import com.dbmonitor.security.CustomAuthenticationSuccessHandler;
+import com.dbmonitor.security.IngestTokenFilter;
+import com.dbmonitor.service.SecurityMonitoringService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.authentication.rememberme.JdbcTokenRepositoryImpl;
 import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
 
@@ -35,9 +41,15 @@ public class SecurityConfig {
     @Value("${security.remember-me.token-validity-seconds:2592000}")
     private int rememberMeTokenValidity;
 
+    @Value("${security.ingest.api-token:}")
+    private String ingestApiToken;
+
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private SecurityMonitoringService securityMonitoringService;
+
     @Autowired
     private CustomAuthenticationSuccessHandler authenticationSuccessHandler;
 
@@ -47,7 +59,31 @@ public class SecurityConfig {
     @Autowired
     private DataSource dataSource;
 
+    /**
+     * Ingestion endpoints used by the JDBC instrumentation client. Stateless and authenticated
+     * by the shared API token only, so machine clients neither create sessions nor compete
+     * with a user's single browser session.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain ingestFilterChain(HttpSecurity http) throws Exception {
+        http
+            .securityMatcher("/api/queries/record/**")
+            .csrf(AbstractHttpConfigurer::disable)
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+        if (!securityEnabled) {
+            http.authorizeHttpRequests(authz -> authz.anyRequest().permitAll());
+        } else {
+            http
+                .addFilterBefore(new IngestTokenFilter(ingestApiToken, securityMonitoringService),
+                        UsernamePasswordAuthenticationFilter.class)
+                .authorizeHttpRequests(authz -> authz.anyRequest().hasAuthority(IngestTokenFilter.AUTHORITY));
+        }
+        return http.build();
+    }
+
     @Bean
+    @Order(2)
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         if (!securityEnabled) {
             // Security disabled - allow all requests
@@ -69,7 +105,14 @@ public class SecurityConfig {
                                    "/api/audit-logs/**", "/api/security/**").hasAuthority("ADMIN_USERS")
                     // Management endpoints
                     .requestMatchers("/api/connections/**").hasAuthority("MANAGE_CONNECTIONS")
+                    // Runs DDL against the monitored database
+                    .requestMatchers("/api/index-recommendations/*/apply", "/api/index-builds/**")
+                        .hasAnyAuthority("MANAGE_INDEXES", "MANAGE_CONNECTIONS")
                     .requestMatchers("/api/alerts/**").hasAuthority("MANAGE_ALERTS")
+                    // Schedules email reports to arbitrary targets and the job list spans all users
+                    .requestMatchers("/api/reports/schedules/**").hasAuthority("MANAGE_REPORTS")
+                    .requestMatchers(HttpMethod.GET, "/api/reports/jobs").hasAuthority("MANAGE_REPORTS")
+                    .requestMatchers("/api/reports/**").hasAnyAuthority("VIEW_REPORTS", "MANAGE_REPORTS")
                     // View endpoints
                     .requestMatchers("/api/metrics/**", "/api/queries/**").hasAnyAuthority("VIEW_METRICS", "VIEW_QUERIES")
                     // All other requests require authentication
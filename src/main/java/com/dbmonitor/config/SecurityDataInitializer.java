@@ -53,6 +53,7 @@ public class SecurityDataInitializer implements CommandLineRunner {
         createPrivilegeIfNotExists("MANAGE_QUERIES", "Manage queries", "MANAGE");
         createPrivilegeIfNotExists("MANAGE_REPORTS", "Manage reports", "MANAGE");
         createPrivilegeIfNotExists("MANAGE_NOTIFICATIONS", "Manage notifications", "MANAGE");
+        createPrivilegeIfNotExists("MANAGE_INDEXES", "Build recommended indexes", "MANAGE");
         
         createPrivilegeIfNotExists("ADMIN_USERS", "Manage users", "ADMIN");
         createPrivilegeIfNotExists("ADMIN_ROLES", "Manage roles", "ADMIN");
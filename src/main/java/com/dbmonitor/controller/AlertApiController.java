@@ -1,12 +1,21 @@
 package com.dbmonitor.controller;
 
-import com.dbmonitor.model.Alert;
+import com.dbmonitor.model.AlertView;
+import com.dbmonitor.model.CursorPage;
 import com.dbmonitor.service.AlertService;
+import com.dbmonitor.service.NdjsonWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/alerts")
@@ -15,24 +24,83 @@ public class AlertApiController {
     @Autowired
     private AlertService alertService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping
-    public ResponseEntity<List<Alert>> getAllAlerts() {
-        return ResponseEntity.ok(alertService.getAllAlerts());
+    public ResponseEntity<List<AlertView>> getAllAlerts(@RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(alertService.getAlertPage(null, null, null, null,
+                null, null, null, null, limit).getItems());
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<AlertView>> getAlertPage(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String alertType,
+            @RequestParam(required = false) Boolean acknowledged,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(alertService.getAlertPage(connectionId, severity, alertType, acknowledged,
+                from, to, cursorTime, cursorId, size));
+    }
+
+    /**
+     * Every matching alert as newline-delimited JSON, read through a database cursor. Takes
+     * the same filters and optional cursor as {@code /page}.
+     */
+    @GetMapping(value = "/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAlerts(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String alertType,
+            @RequestParam(required = false) Boolean acknowledged,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId) {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                alertService.streamAlerts(connectionId, severity, alertType, acknowledged,
+                        from, to, cursorTime, cursorId, writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/connection/{connectionId}")
+    public ResponseEntity<CursorPage<AlertView>> getAlertsForConnection(
+            @PathVariable Long connectionId,
+            @RequestParam(required = false) Boolean acknowledged,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(alertService.getAlertsForConnection(connectionId, acknowledged,
+                cursorTime, cursorId, size));
     }
 
     @GetMapping("/unacknowledged")
-    public ResponseEntity<List<Alert>> getUnacknowledgedAlerts() {
-        return ResponseEntity.ok(alertService.getUnacknowledgedAlerts());
+    public ResponseEntity<List<AlertView>> getUnacknowledgedAlerts(@RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(alertService.getAlertPage(null, null, null, false,
+                null, null, null, null, limit).getItems());
     }
 
     @GetMapping("/recent")
-    public ResponseEntity<List<Alert>> getRecentAlerts(@RequestParam(defaultValue = "24") int hours) {
-        return ResponseEntity.ok(alertService.getRecentAlerts(hours));
+    public ResponseEntity<List<AlertView>> getRecentAlerts(@RequestParam(defaultValue = "24") int hours,
+                                                           @RequestParam(defaultValue = "500") int limit) {
+        LocalDateTime since = LocalDateTime.now().minusHours(hours);
+        return ResponseEntity.ok(alertService.getAlertPage(null, null, null, null,
+                since, null, null, null, limit).getItems());
     }
 
     @GetMapping("/severity/{severity}")
-    public ResponseEntity<List<Alert>> getAlertsBySeverity(@PathVariable String severity) {
-        return ResponseEntity.ok(alertService.getAlertsBySeverity(severity));
+    public ResponseEntity<List<AlertView>> getAlertsBySeverity(@PathVariable String severity,
+                                                               @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(alertService.getAlertPage(null, severity, null, null,
+                null, null, null, null, limit).getItems());
     }
 
     @GetMapping("/count")
@@ -40,6 +108,11 @@ public class AlertApiController {
         return ResponseEntity.ok(alertService.getUnacknowledgedCount());
     }
 
+    @GetMapping("/counters")
+    public ResponseEntity<Map<String, Object>> getUnacknowledgedCounters() {
+        return ResponseEntity.ok(alertService.getUnacknowledgedCounters());
+    }
+
     @PostMapping("/{id}/acknowledge")
     public ResponseEntity<Void> acknowledgeAlert(@PathVariable Long id) {
         alertService.acknowledgeAlert(id);
@@ -47,9 +120,16 @@ public class AlertApiController {
     }
 
     @PostMapping("/acknowledge-all")
-    public ResponseEntity<Void> acknowledgeAllAlerts() {
-        alertService.acknowledgeAllAlerts();
-        return ResponseEntity.ok().build();
+    public ResponseEntity<Map<String, Object>> acknowledgeAllAlerts(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String alertType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        int acknowledged = alertService.acknowledgeAlerts(connectionId, severity, alertType, from, to);
+        Map<String, Object> response = new HashMap<>();
+        response.put("acknowledged", acknowledged);
+        return ResponseEntity.ok(response);
     }
 
     @DeleteMapping("/{id}")
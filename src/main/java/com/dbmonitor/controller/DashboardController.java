@@ -21,6 +21,8 @@ import java.util.Optional;
 @Slf4j
 public class DashboardController {
 
+    private static final int ALERTS_PAGE_SIZE = 200;
+
     @Autowired
     private MultiDatabaseMonitoringService multiDatabaseMonitoringService;
 
@@ -141,7 +143,8 @@ public class DashboardController {
     @GetMapping("/alerts")
     public String alerts(Model model) {
         model.addAttribute("activePage", "db-alerts");
-        model.addAttribute("alerts", alertService.getAllAlerts());
+        model.addAttribute("alerts", alertService.getAlertPage(null, null, null, null,
+                null, null, null, null, ALERTS_PAGE_SIZE).getItems());
         model.addAttribute("unacknowledgedCount", alertService.getUnacknowledgedCount());
         model.addAttribute("connections", connectionService.getActiveConnections());
         return "alerts";
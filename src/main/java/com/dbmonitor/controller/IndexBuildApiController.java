@@ -0,0 +1,50 @@
+package com.dbmonitor.controller;
+
+import com.dbmonitor.model.IndexBuildJob;
+import com.dbmonitor.service.IndexBuildService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Background index builds started by applying a recommendation.
+ */
+@RestController
+@RequestMapping("/api/index-builds")
+public class IndexBuildApiController {
+
+    @Autowired
+    private IndexBuildService indexBuildService;
+
+    /**
+     * Builds of one connection, or the latest 100 of all connections, newest first.
+     */
+    @GetMapping
+    public ResponseEntity<List<IndexBuildJob>> getJobs(@RequestParam(required = false) Long connectionId) {
+        return ResponseEntity.ok(indexBuildService.getJobs(connectionId));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<IndexBuildJob> getJob(@PathVariable Long id) {
+        return indexBuildService.getJob(id)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Cancels a queued or running build; 409 once it finished.
+     */
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<?> cancel(@PathVariable Long id) {
+        try {
+            return indexBuildService.cancel(id)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.accepted().body(job))
+                .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
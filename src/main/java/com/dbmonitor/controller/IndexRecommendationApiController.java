@@ -1,13 +1,18 @@
 package com.dbmonitor.controller;
 
+import com.dbmonitor.model.CatalogIndex;
+import com.dbmonitor.model.IndexBuildJob;
 import com.dbmonitor.model.IndexRecommendation;
+import com.dbmonitor.service.CatalogCacheService;
 import com.dbmonitor.service.IndexRecommendationService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/index-recommendations")
@@ -17,6 +22,9 @@ public class IndexRecommendationApiController {
     @Autowired
     private IndexRecommendationService indexRecommendationService;
 
+    @Autowired
+    private CatalogCacheService catalogCacheService;
+
     @PostMapping("/generate/{connectionId}")
     public ResponseEntity<List<IndexRecommendation>> generateRecommendations(
             @PathVariable Long connectionId) {
@@ -37,21 +45,30 @@ public class IndexRecommendationApiController {
         return ResponseEntity.ok(indexRecommendationService.getPendingRecommendations(connectionId));
     }
 
+    /**
+     * Queues an online build of the recommended index; progress is under {@code /api/index-builds}.
+     */
     @PostMapping("/{id}/apply")
-    public ResponseEntity<String> applyRecommendation(@PathVariable Long id) {
+    public ResponseEntity<?> applyRecommendation(@PathVariable Long id) {
         try {
-            indexRecommendationService.applyRecommendation(id);
-            return ResponseEntity.ok("Index recommendation applied successfully");
+            IndexBuildJob job = indexRecommendationService.applyRecommendation(id);
+            return ResponseEntity.accepted().body(job);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error applying index recommendation", e);
-            return ResponseEntity.badRequest().body("Failed to apply recommendation: " + e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to apply recommendation: " + e.getMessage()));
         }
     }
 
     @PostMapping("/{id}/reject")
-    public ResponseEntity<String> rejectRecommendation(@PathVariable Long id) {
-        indexRecommendationService.rejectRecommendation(id);
-        return ResponseEntity.ok("Index recommendation rejected");
+    public ResponseEntity<?> rejectRecommendation(@PathVariable Long id) {
+        try {
+            indexRecommendationService.rejectRecommendation(id);
+            return ResponseEntity.ok("Index recommendation rejected");
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
     }
 
     @GetMapping("/applied")
@@ -64,4 +81,33 @@ public class IndexRecommendationApiController {
             @PathVariable String tableName) {
         return ResponseEntity.ok(indexRecommendationService.getRecommendationsForTable(tableName));
     }
+
+    /**
+     * Existing indexes from the catalog cache, optionally of one ({@code schema.}){@code table}.
+     */
+    @GetMapping("/catalog/{connectionId}")
+    public ResponseEntity<?> getCatalog(
+            @PathVariable Long connectionId,
+            @RequestParam(required = false) String table) {
+        try {
+            if (table != null) {
+                return ResponseEntity.ok(catalogCacheService.getIndexes(connectionId, table));
+            }
+            Map<String, List<CatalogIndex>> indexes = catalogCacheService.getIndexesByTable(connectionId);
+            return ResponseEntity.ok(indexes);
+        } catch (SQLException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/catalog/{connectionId}/refresh")
+    public ResponseEntity<Void> refreshCatalog(@PathVariable Long connectionId) {
+        catalogCacheService.invalidate(connectionId);
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping("/catalog/status")
+    public ResponseEntity<Map<Long, Map<String, Object>>> getCatalogStatus() {
+        return ResponseEntity.ok(catalogCacheService.getStatus());
+    }
 }
@@ -0,0 +1,49 @@
+package com.dbmonitor.controller;
+
+import com.dbmonitor.model.BlockingChain;
+import com.dbmonitor.service.BlockingChainService;
+import com.dbmonitor.service.DatabaseConnectionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/locks")
+public class LockApiController {
+
+    @Autowired
+    private BlockingChainService blockingChainService;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @GetMapping("/{connectionId}/chains")
+    public ResponseEntity<List<BlockingChain>> getChains(@PathVariable Long connectionId) {
+        return ResponseEntity.ok(blockingChainService.getChains(connectionId));
+    }
+
+    /**
+     * Samples lock waits now instead of waiting for the next pass.
+     */
+    @PostMapping("/{connectionId}/sample")
+    public ResponseEntity<?> sample(@PathVariable Long connectionId) {
+        return connectionService.getConnectionById(connectionId)
+            .<ResponseEntity<?>>map(conn -> {
+                try {
+                    return ResponseEntity.ok(blockingChainService.sample(conn));
+                } catch (SQLException e) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Lock sample failed: " + e.getMessage()));
+                }
+            })
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(blockingChainService.getStatus());
+    }
+}
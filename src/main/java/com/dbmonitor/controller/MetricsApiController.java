@@ -39,7 +39,7 @@ public class MetricsApiController {
         summary.put("current", current);
         summary.put("totalQueries", queryMonitoringService.getTotalQueriesInLastHour());
         summary.put("averageQueryTime", queryMonitoringService.getAverageQueryTime(1));
-        summary.put("slowQueriesCount", queryMonitoringService.getSlowQueries().size());
+        summary.put("slowQueriesCount", queryMonitoringService.getSlowQueryCount(24));
         
         return ResponseEntity.ok(summary);
     }
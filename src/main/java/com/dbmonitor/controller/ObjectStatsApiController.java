@@ -0,0 +1,79 @@
+package com.dbmonitor.controller;
+
+import com.dbmonitor.model.ObjectStatInterval;
+import com.dbmonitor.service.DatabaseConnectionService;
+import com.dbmonitor.service.ObjectStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/object-stats")
+public class ObjectStatsApiController {
+
+    @Autowired
+    private ObjectStatsService objectStatsService;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @GetMapping("/{connectionId}/latest")
+    public ResponseEntity<List<ObjectStatsService.ObjectRow>> getLatest(@PathVariable Long connectionId) {
+        return ResponseEntity.ok(objectStatsService.getLatestSnapshot(connectionId));
+    }
+
+    /**
+     * Fastest growing tables ({@code objectType=TABLE}) or indexes ({@code INDEX}) in the window.
+     */
+    @GetMapping("/{connectionId}/growth")
+    public ResponseEntity<List<Map<String, Object>>> getGrowth(
+            @PathVariable Long connectionId,
+            @RequestParam(defaultValue = "TABLE") String objectType,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(objectStatsService.getGrowth(connectionId, objectType.toUpperCase(), start, end, limit));
+    }
+
+    @GetMapping("/{connectionId}/scans")
+    public ResponseEntity<List<Map<String, Object>>> getScans(
+            @PathVariable Long connectionId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(objectStatsService.getScans(connectionId, start, end, limit));
+    }
+
+    @GetMapping("/{connectionId}/history")
+    public ResponseEntity<List<ObjectStatInterval>> getHistory(
+            @PathVariable Long connectionId,
+            @RequestParam String schema,
+            @RequestParam String table,
+            @RequestParam(required = false) String index,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        return ResponseEntity.ok(objectStatsService.getHistory(connectionId, schema, table, index, start, end));
+    }
+
+    /**
+     * Takes a snapshot now; the first snapshot of a connection only sets the baseline.
+     */
+    @PostMapping("/{connectionId}/collect")
+    public ResponseEntity<?> collect(@PathVariable Long connectionId) {
+        return connectionService.getConnectionById(connectionId)
+            .<ResponseEntity<?>>map(conn -> {
+                try {
+                    return ResponseEntity.ok(Map.of("stored", objectStatsService.collect(conn)));
+                } catch (SQLException e) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "Collection failed: " + e.getMessage()));
+                }
+            })
+            .orElse(ResponseEntity.notFound().build());
+    }
+}
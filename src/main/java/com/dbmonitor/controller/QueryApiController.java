@@ -1,11 +1,24 @@
 package com.dbmonitor.controller;
 
-import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.CursorPage;
+import com.dbmonitor.model.QueryAggregate;
+import com.dbmonitor.model.QueryExecution;
+import com.dbmonitor.model.QueryMetricsView;
+import com.dbmonitor.model.QueryStatInterval;
+import com.dbmonitor.service.NdjsonWriter;
+import com.dbmonitor.service.QueryIngestionService;
 import com.dbmonitor.service.QueryMonitoringService;
+import com.dbmonitor.service.QueryStatsHarvesterService;
+import com.dbmonitor.service.TopQueryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -19,45 +32,222 @@ public class QueryApiController {
     @Autowired
     private QueryMonitoringService queryMonitoringService;
 
+    @Autowired
+    private QueryStatsHarvesterService harvesterService;
+
+    @Autowired
+    private QueryIngestionService ingestionService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${monitor.query.ingest.max-request-size:10000}")
+    private int maxBatchRequestSize;
+
     @GetMapping
-    public ResponseEntity<List<QueryMetrics>> getAllQueries() {
-        return ResponseEntity.ok(queryMonitoringService.getAllQueries());
+    public ResponseEntity<List<QueryMetricsView>> getAllQueries(@RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(queryMonitoringService.getQueryPage(null, null, null, null, null, null,
+                null, null, null, null, limit).getItems());
+    }
+
+    /**
+     * Keyset page of recorded executions, newest first. Fingerprints are the 16-digit hex form.
+     */
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<QueryMetricsView>> getQueryPage(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) String fingerprint,
+            @RequestParam(required = false) String queryType,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Boolean slow,
+            @RequestParam(required = false) Long minDurationMs,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "50") int size) {
+        Long hash = fingerprint != null ? Long.parseUnsignedLong(fingerprint, 16) : null;
+        return ResponseEntity.ok(queryMonitoringService.getQueryPage(connectionId, hash, queryType, status, slow,
+                minDurationMs, from, to, cursorTime, cursorId, size));
+    }
+
+    /**
+     * Every matching execution as newline-delimited JSON, read through a database cursor.
+     * Takes the same filters and optional cursor as {@code /page}.
+     */
+    @GetMapping(value = "/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamQueries(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) String fingerprint,
+            @RequestParam(required = false) String queryType,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Boolean slow,
+            @RequestParam(required = false) Long minDurationMs,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId) {
+        Long hash = fingerprint != null ? Long.parseUnsignedLong(fingerprint, 16) : null;
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                queryMonitoringService.streamQueries(connectionId, hash, queryType, status, slow, minDurationMs,
+                        from, to, cursorTime, cursorId, writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     @GetMapping("/slow")
-    public ResponseEntity<List<QueryMetrics>> getSlowQueries() {
-        return ResponseEntity.ok(queryMonitoringService.getSlowQueries());
+    public ResponseEntity<List<QueryMetricsView>> getSlowQueries(@RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(queryMonitoringService.getQueryPage(null, null, null, null, true, null,
+                null, null, null, null, limit).getItems());
     }
 
+    /**
+     * Statements with the most total time over the last {@code minutes}, from the in-memory
+     * top-K summaries (which keep {@code monitor.query.histogram.retention-buckets}).
+     */
     @GetMapping("/slow/recent")
-    public ResponseEntity<List<QueryMetrics>> getRecentSlowQueries(@RequestParam(defaultValue = "24") int hours) {
-        return ResponseEntity.ok(queryMonitoringService.getRecentSlowQueries(hours));
+    public ResponseEntity<List<Map<String, Object>>> getRecentSlowQueries(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(defaultValue = "60") int minutes,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(queryMonitoringService.getTopQueries(connectionId, TopQueryService.Metric.TOTAL_TIME,
+                minutes, limit));
     }
 
     @GetMapping("/range")
-    public ResponseEntity<List<QueryMetrics>> getQueriesByRange(
+    public ResponseEntity<List<QueryMetricsView>> getQueriesByRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
-        return ResponseEntity.ok(queryMonitoringService.getQueriesBetween(start, end));
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(queryMonitoringService.getQueryPage(null, null, null, null, null, null,
+                start, end, null, null, limit).getItems());
     }
 
+    /**
+     * Served from per-minute rollups; {@code minutes} adds a custom window (up to 24 h).
+     */
     @GetMapping("/statistics")
-    public ResponseEntity<Map<String, Object>> getQueryStatistics() {
+    public ResponseEntity<Map<String, Object>> getQueryStatistics(@RequestParam(required = false) Integer minutes) {
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalQueriesLastHour", queryMonitoringService.getTotalQueriesInLastHour());
         stats.put("averageQueryTime1h", queryMonitoringService.getAverageQueryTime(1));
         stats.put("averageQueryTime24h", queryMonitoringService.getAverageQueryTime(24));
-        stats.put("slowQueriesCount", queryMonitoringService.getSlowQueries().size());
+        stats.put("slowQueriesCount", queryMonitoringService.getSlowQueryCount(24));
+        if (minutes != null) {
+            stats.put("window", queryMonitoringService.getStatisticsWindow(minutes));
+        }
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Heaviest statements over the last {@code minutes} by TOTAL_TIME, CALLS or ROWS, answered
+     * from in-memory top-K summaries of recorded executions.
+     */
+    @GetMapping("/top")
+    public ResponseEntity<List<Map<String, Object>>> getTopQueries(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(defaultValue = "TOTAL_TIME") TopQueryService.Metric metric,
+            @RequestParam(defaultValue = "5") int minutes,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(queryMonitoringService.getTopQueries(connectionId, metric, minutes, limit));
+    }
+
+    @GetMapping("/database/{connectionId}/top")
+    public ResponseEntity<List<Map<String, Object>>> getTopStatements(
+            @PathVariable Long connectionId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(harvesterService.getTopStatements(connectionId, start, end, limit));
+    }
+
+    @GetMapping("/database/{connectionId}/intervals")
+    public ResponseEntity<List<QueryStatInterval>> getStatementIntervals(
+            @PathVariable Long connectionId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        return ResponseEntity.ok(harvesterService.getIntervals(connectionId, start, end));
+    }
+
+    /**
+     * Latency percentiles over the last {@code minutes}; omit {@code fingerprint} for the
+     * connection as a whole. Fingerprints are the 16-digit hex form.
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<Map<String, Object>> getLatency(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) String fingerprint,
+            @RequestParam(defaultValue = "60") int minutes) {
+        Long hash = fingerprint != null ? Long.parseUnsignedLong(fingerprint, 16) : null;
+        return ResponseEntity.ok(queryMonitoringService.getLatencySummary(connectionId, hash, minutes));
+    }
+
+    @GetMapping("/latency/fingerprints")
+    public ResponseEntity<List<Map<String, Object>>> getLatencyByFingerprint(
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(defaultValue = "60") int minutes,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(queryMonitoringService.getLatencyByFingerprint(connectionId, minutes, limit));
+    }
+
     @PostMapping("/record")
     public ResponseEntity<Void> recordQuery(
             @RequestParam String queryText,
             @RequestParam long executionTimeMs,
             @RequestParam String queryType,
-            @RequestParam int rowsAffected) {
-        queryMonitoringService.recordQuery(queryText, executionTimeMs, queryType, rowsAffected);
+            @RequestParam int rowsAffected,
+            @RequestParam(required = false) Long connectionId) {
+        queryMonitoringService.recordQuery(connectionId, queryText, executionTimeMs, queryType, rowsAffected);
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * Accepts a JSON array of executions. Rows are buffered and batch-inserted asynchronously;
+     * a 429 means some were dropped because the ingestion buffer was full and the client
+     * should back off.
+     */
+    @PostMapping("/record/batch")
+    public ResponseEntity<Map<String, Object>> recordQueries(@RequestBody List<QueryExecution> executions) {
+        Map<String, Object> result = new HashMap<>();
+        if (executions.size() > maxBatchRequestSize) {
+            result.put("error", "Batch exceeds " + maxBatchRequestSize + " executions");
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result);
+        }
+        int accepted = queryMonitoringService.recordQueries(executions);
+        result.put("received", executions.size());
+        result.put("accepted", accepted);
+        result.put("dropped", executions.size() - accepted);
+        HttpStatus status = accepted < executions.size() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    /**
+     * Per-interval statement aggregates from the JDBC instrumentation client.
+     */
+    @PostMapping("/record/aggregates")
+    public ResponseEntity<Map<String, Object>> recordAggregates(@RequestBody List<QueryAggregate> aggregates) {
+        Map<String, Object> result = new HashMap<>();
+        if (aggregates.size() > maxBatchRequestSize) {
+            result.put("error", "Batch exceeds " + maxBatchRequestSize + " aggregates");
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result);
+        }
+        result.put("received", aggregates.size());
+        result.put("stored", queryMonitoringService.recordAggregates(aggregates));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+    }
+
+    @GetMapping("/ingest/status")
+    public ResponseEntity<Map<String, Object>> getIngestStatus() {
+        return ResponseEntity.ok(ingestionService.getStatus());
+    }
+
+    /**
+     * A fingerprint that is not 16-digit hex is a client error, not a server failure.
+     */
+    @ExceptionHandler(NumberFormatException.class)
+    public ResponseEntity<Map<String, String>> handleBadFingerprint(NumberFormatException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", "Invalid fingerprint: " + e.getMessage()));
+    }
 }
@@ -1,7 +1,12 @@
 package com.dbmonitor.controller;
 
+import com.dbmonitor.model.PlanCaptureMode;
+import com.dbmonitor.model.PlanNode;
 import com.dbmonitor.model.QueryPlan;
+import com.dbmonitor.service.DatabaseConnectionService;
+import com.dbmonitor.service.PlanCaptureBatchService;
 import com.dbmonitor.service.QueryPlanAnalysisService;
+import com.dbmonitor.service.QueryPlanStoreService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -18,16 +23,45 @@ public class QueryPlanApiController {
     @Autowired
     private QueryPlanAnalysisService queryPlanAnalysisService;
 
+    @Autowired
+    private QueryPlanStoreService queryPlanStoreService;
+
+    @Autowired
+    private PlanCaptureBatchService planCaptureBatchService;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    /**
+     * Captures a plan of exactly one statement. {@code mode} is ESTIMATE (default), ANALYZE
+     * (SELECT only, executed in a read-only, time-limited transaction that is rolled back; the
+     * last actual plan on SQL Server) or CACHED (the engine's cached plan where one exists).
+     */
     @PostMapping("/analyze")
-    public ResponseEntity<QueryPlan> analyzeQueryPlan(
+    public ResponseEntity<?> analyzeQueryPlan(
             @RequestParam Long connectionId,
+            @RequestParam(required = false) PlanCaptureMode mode,
             @RequestBody Map<String, String> request) {
         String queryText = request.get("queryText");
         if (queryText == null || queryText.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
-        QueryPlan queryPlan = queryPlanAnalysisService.analyzeQueryPlan(connectionId, queryText);
-        return ResponseEntity.ok(queryPlan);
+        try {
+            QueryPlan queryPlan = queryPlanAnalysisService.analyzeQueryPlan(connectionId, queryText, mode);
+            return ResponseEntity.ok(queryPlan);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Operator tree of a stored plan; 404 for plans captured before structured formats.
+     */
+    @GetMapping("/{id}/tree")
+    public ResponseEntity<PlanNode> getPlanTree(@PathVariable Long id) {
+        return queryPlanAnalysisService.getPlanTree(id)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/query/{queryId}")
@@ -50,4 +84,47 @@ public class QueryPlanApiController {
             @RequestParam(defaultValue = "24") int hours) {
         return ResponseEntity.ok(queryPlanAnalysisService.getRecentQueryPlans(hours));
     }
+
+    /**
+     * Distinct plans of one statement, most recently seen first. Fingerprints are the
+     * 16-digit hex form.
+     */
+    @GetMapping("/history")
+    public ResponseEntity<List<QueryPlan>> getPlanHistory(
+            @RequestParam Long connectionId,
+            @RequestParam String fingerprint) {
+        return ResponseEntity.ok(queryPlanStoreService.getPlanHistory(connectionId,
+                Long.parseUnsignedLong(fingerprint, 16)));
+    }
+
+    @GetMapping("/regressions")
+    public ResponseEntity<List<QueryPlan>> getRegressions(
+            @RequestParam(defaultValue = "24") int hours) {
+        return ResponseEntity.ok(queryPlanStoreService.getRegressions(hours));
+    }
+
+    /**
+     * Starts a background plan capture of the connection's top statements; 409 while one runs.
+     */
+    @PostMapping("/batch/run")
+    public ResponseEntity<?> runBatch(@RequestParam Long connectionId) {
+        return connectionService.getConnectionById(connectionId)
+            .<ResponseEntity<?>>map(conn -> planCaptureBatchService.run(conn)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(409).body(Map.of("error", "Plan capture already running")))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/batch/status")
+    public ResponseEntity<Map<Long, Map<String, Object>>> getBatchStatus() {
+        return ResponseEntity.ok(planCaptureBatchService.getStatus());
+    }
+
+    /**
+     * A fingerprint that is not 16-digit hex is a client error, not a server failure.
+     */
+    @ExceptionHandler(NumberFormatException.class)
+    public ResponseEntity<Map<String, String>> handleBadFingerprint(NumberFormatException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", "Invalid fingerprint: " + e.getMessage()));
+    }
 }
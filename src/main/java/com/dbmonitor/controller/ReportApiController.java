@@ -1,94 +1,150 @@
 package com.dbmonitor.controller;
 
+import com.dbmonitor.model.ReportJob;
+import com.dbmonitor.model.ReportType;
 import com.dbmonitor.service.ReportExportService;
-import lombok.extern.slf4j.Slf4j;
+import com.dbmonitor.service.ReportJobService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Direct report downloads are written straight to the response as they are generated (or
+ * copied from a cached job result), so there is no Content-Length and a failure part-way
+ * through ends the download early instead of turning into a 500. Heavy exports should go
+ * through {@code /jobs}, which runs them on the report worker pool.
+ */
 @RestController
 @RequestMapping("/api/reports")
-@Slf4j
 public class ReportApiController {
 
     @Autowired
     private ReportExportService reportExportService;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
     @GetMapping("/metrics/pdf")
-    public ResponseEntity<byte[]> exportMetricsToPdf(@RequestParam Long connectionId) {
-        try {
-            byte[] pdfBytes = reportExportService.exportMetricsToPdf(connectionId);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "metrics-report.pdf");
-            headers.setContentLength(pdfBytes.length);
-            
-            return ResponseEntity.ok()
-                .headers(headers)
-                .body(pdfBytes);
-        } catch (Exception e) {
-            log.error("Error exporting metrics to PDF", e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<StreamingResponseBody> exportMetricsToPdf(@RequestParam Long connectionId) {
+        return download(ReportType.METRICS_PDF, connectionId, null, null, "metrics-report.pdf");
     }
 
     @GetMapping("/metrics/excel")
-    public ResponseEntity<byte[]> exportMetricsToExcel(@RequestParam Long connectionId) {
-        try {
-            byte[] excelBytes = reportExportService.exportMetricsToExcel(connectionId);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "metrics-report.xlsx");
-            headers.setContentLength(excelBytes.length);
-            
-            return ResponseEntity.ok()
-                .headers(headers)
-                .body(excelBytes);
-        } catch (Exception e) {
-            log.error("Error exporting metrics to Excel", e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<StreamingResponseBody> exportMetricsToExcel(@RequestParam Long connectionId) {
+        return download(ReportType.METRICS_EXCEL, connectionId, null, null, "metrics-report.xlsx");
     }
 
     @GetMapping("/queries/excel")
-    public ResponseEntity<byte[]> exportQueriesToExcel() {
-        try {
-            byte[] excelBytes = reportExportService.exportQueriesToExcel();
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "queries-report.xlsx");
-            headers.setContentLength(excelBytes.length);
-            
-            return ResponseEntity.ok()
-                .headers(headers)
-                .body(excelBytes);
-        } catch (Exception e) {
-            log.error("Error exporting queries to Excel", e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<StreamingResponseBody> exportQueriesToExcel(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return download(ReportType.QUERIES_EXCEL, null, from, to, "queries-report.xlsx");
     }
 
     @GetMapping("/alerts/pdf")
-    public ResponseEntity<byte[]> exportAlertsToPdf() {
+    public ResponseEntity<StreamingResponseBody> exportAlertsToPdf(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return download(ReportType.ALERTS_PDF, null, from, to, "alerts-report.pdf");
+    }
+
+    /**
+     * Queues a report on the worker pool and returns the job to poll. An identical report
+     * that is queued, running or completed within the cache TTL is returned instead.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitJob(
+            @RequestParam ReportType type,
+            @RequestParam(required = false) Long connectionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
         try {
-            byte[] pdfBytes = reportExportService.exportAlertsToPdf();
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", "alerts-report.pdf");
-            headers.setContentLength(pdfBytes.length);
-            
-            return ResponseEntity.ok()
-                .headers(headers)
-                .body(pdfBytes);
-        } catch (Exception e) {
-            log.error("Error exporting alerts to PDF", e);
-            return ResponseEntity.internalServerError().build();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(reportJobService.submit(type, connectionId, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("error", "Report queue is full"));
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<List<ReportJob>> getJobs() {
+        return ResponseEntity.ok(reportJobService.getJobs());
+    }
+
+    @GetMapping("/jobs/status")
+    public ResponseEntity<Map<String, Object>> getJobStatus() {
+        return ResponseEntity.ok(reportJobService.getStatus());
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ReportJob> getJob(@PathVariable String id) {
+        return reportJobService.getJob(id)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Downloads a finished job; 409 while it is still queued or running or when it failed,
+     * 410 once its file has been cleaned up.
+     */
+    @GetMapping("/jobs/{id}/download")
+    public ResponseEntity<Resource> downloadJob(@PathVariable String id) {
+        Optional<ReportJob> job = reportJobService.getJob(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
+        if (job.get().getStatus() != ReportJob.Status.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (!Files.isReadable(job.get().getFile())) {
+            // Cleaned up after retention while the job itself was still listed
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        return ResponseEntity.ok()
+            .headers(headers(job.get().getType(), job.get().getFilename()))
+            .body(new FileSystemResource(job.get().getFile()));
+    }
+
+    private ResponseEntity<StreamingResponseBody> download(ReportType type, Long connectionId,
+                                                           LocalDateTime from, LocalDateTime to, String filename) {
+        Optional<ReportJob> cached = reportJobService.findCached(type, connectionId, from, to);
+        StreamingResponseBody body = out -> {
+            if (cached.isPresent()) {
+                try {
+                    // An open file survives deletion, so cleanup can only win before the copy starts
+                    Files.copy(cached.get().getFile(), out);
+                    return;
+                } catch (NoSuchFileException e) {
+                    // Removed by cleanup since the lookup; generate it instead
+                }
+            }
+            reportExportService.write(type, connectionId, from, to, out);
+        };
+        return ResponseEntity.ok()
+            .headers(headers(type, filename))
+            .body(body);
+    }
+
+    private HttpHeaders headers(ReportType type, String filename) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(type.getContentType()));
+        headers.setContentDispositionFormData("attachment", filename);
+        return headers;
     }
 }
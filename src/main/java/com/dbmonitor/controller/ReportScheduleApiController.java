@@ -0,0 +1,99 @@
+package com.dbmonitor.controller;
+
+import com.dbmonitor.model.ReportSchedule;
+import com.dbmonitor.service.ReportScheduleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/reports/schedules")
+public class ReportScheduleApiController {
+
+    @Autowired
+    private ReportScheduleService reportScheduleService;
+
+    @GetMapping
+    public ResponseEntity<List<ReportSchedule>> getSchedules() {
+        return ResponseEntity.ok(reportScheduleService.getSchedules());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ReportSchedule> getSchedule(@PathVariable Long id) {
+        return reportScheduleService.getSchedule(id)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createSchedule(@RequestBody ReportSchedule schedule) {
+        try {
+            schedule.setId(null);
+            return ResponseEntity.ok(reportScheduleService.save(schedule));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateSchedule(@PathVariable Long id, @RequestBody ReportSchedule schedule) {
+        return reportScheduleService.getSchedule(id)
+            .<ResponseEntity<?>>map(existing -> {
+                if (schedule.getName() != null) {
+                    existing.setName(schedule.getName());
+                }
+                if (schedule.getReportType() != null) {
+                    existing.setReportType(schedule.getReportType());
+                }
+                if (schedule.getConnectionId() != null) {
+                    existing.setConnectionId(schedule.getConnectionId());
+                }
+                if (schedule.getCronExpression() != null) {
+                    existing.setCronExpression(schedule.getCronExpression());
+                }
+                if (schedule.getRangeHours() != null) {
+                    existing.setRangeHours(schedule.getRangeHours());
+                }
+                if (schedule.getDeliveryType() != null) {
+                    existing.setDeliveryType(schedule.getDeliveryType());
+                }
+                if (schedule.getTarget() != null) {
+                    existing.setTarget(schedule.getTarget());
+                }
+                if (schedule.getEnabled() != null) {
+                    existing.setEnabled(schedule.getEnabled());
+                }
+                try {
+                    return ResponseEntity.ok(reportScheduleService.save(existing));
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+                }
+            })
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteSchedule(@PathVariable Long id) {
+        reportScheduleService.delete(id);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Generates and delivers the report now; returns the job so it can be polled.
+     */
+    @PostMapping("/{id}/run")
+    public ResponseEntity<?> runSchedule(@PathVariable Long id) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(reportScheduleService.runNow(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("error", "Report queue is full"));
+        }
+    }
+}
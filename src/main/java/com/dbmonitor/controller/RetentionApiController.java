@@ -0,0 +1,27 @@
+package com.dbmonitor.controller;
+
+import com.dbmonitor.service.RetentionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/retention")
+public class RetentionApiController {
+
+    @Autowired
+    private RetentionService retentionService;
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Map<String, Object>>> getStatus() {
+        return ResponseEntity.ok(retentionService.getStatus());
+    }
+
+    @PostMapping("/run")
+    public ResponseEntity<Map<String, Map<String, Object>>> runNow() {
+        retentionService.purgeAll();
+        return ResponseEntity.ok(retentionService.getStatus());
+    }
+}
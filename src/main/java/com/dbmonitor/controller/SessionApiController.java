@@ -0,0 +1,51 @@
+package com.dbmonitor.controller;
+
+import com.dbmonitor.service.ActiveSessionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/sessions")
+public class SessionApiController {
+
+    @Autowired
+    private ActiveSessionService activeSessionService;
+
+    @GetMapping("/{connectionId}/current")
+    public ResponseEntity<List<Map<String, Object>>> getCurrent(@PathVariable Long connectionId) {
+        return ResponseEntity.ok(activeSessionService.getCurrent(connectionId));
+    }
+
+    @GetMapping("/{connectionId}/waits")
+    public ResponseEntity<Map<String, Object>> getWaitBreakdown(
+            @PathVariable Long connectionId,
+            @RequestParam(defaultValue = "5") int minutes) {
+        return ResponseEntity.ok(activeSessionService.getWaitBreakdown(connectionId, minutes));
+    }
+
+    @GetMapping("/{connectionId}/top-sql")
+    public ResponseEntity<List<Map<String, Object>>> getTopSql(
+            @PathVariable Long connectionId,
+            @RequestParam(defaultValue = "5") int minutes,
+            @RequestParam(required = false) String waitClass,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(activeSessionService.getTopSql(connectionId, minutes,
+                waitClass != null && !waitClass.isBlank() ? waitClass : null, limit));
+    }
+
+    @GetMapping("/{connectionId}/timeline")
+    public ResponseEntity<List<Map<String, Object>>> getTimeline(
+            @PathVariable Long connectionId,
+            @RequestParam(defaultValue = "60") int minutes) {
+        return ResponseEntity.ok(activeSessionService.getTimeline(connectionId, minutes));
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(activeSessionService.getStatus());
+    }
+}
@@ -9,7 +9,13 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "alerts")
+@Table(name = "alerts", indexes = {
+    @Index(name = "idx_alert_created", columnList = "createdAt"),
+    @Index(name = "idx_alert_ack_created", columnList = "acknowledged, createdAt"),
+    @Index(name = "idx_alert_severity_created", columnList = "severity, createdAt"),
+    @Index(name = "idx_alert_type_created", columnList = "alertType, createdAt"),
+    @Index(name = "idx_alert_connection_created", columnList = "connectionId, createdAt")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,6 +26,8 @@ public class Alert {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    private Long connectionId;
+    
     private String alertType;
     
     private String severity;
@@ -0,0 +1,28 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of an alert for list, stream and export endpoints. Selected with a
+ * constructor expression, so rows are never attached to the persistence context and the API
+ * does not expose the entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlertView {
+    private Long id;
+    private Long connectionId;
+    private String alertType;
+    private String severity;
+    private String message;
+    private LocalDateTime createdAt;
+    private Boolean acknowledged;
+    private LocalDateTime acknowledgedAt;
+    private Double metricValue;
+    private Double threshold;
+}
@@ -0,0 +1,24 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * List projection of an audit log entry; leaves out the user agent and free-form details.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuditLogView {
+    private Long id;
+    private LocalDateTime timestamp;
+    private Long userId;
+    private String username;
+    private String action;
+    private String description;
+    private String ipAddress;
+    private String status;
+}
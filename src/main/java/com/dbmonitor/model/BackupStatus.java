@@ -9,7 +9,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "backup_status")
+@Table(name = "backup_status", indexes = {
+    @Index(name = "idx_backup_checked", columnList = "checkedAt")
+})
 @Data
 @Builder
 @NoArgsConstructor
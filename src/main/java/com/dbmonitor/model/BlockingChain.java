@@ -0,0 +1,49 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A head blocker and every session waiting on it, directly or through other waiters, as seen
+ * by the latest lock sampling pass of a connection.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlockingChain {
+
+    private Long connectionId;
+    private Long headSessionId;
+    private String headQuery;
+
+    // Distinct sessions blocked behind the head and the longest blocker -> waiter path
+    private Integer blockedSessions;
+    private Integer depth;
+    private Double maxWaitSeconds;
+
+    // When this head was first seen blocking; survives waiters coming and going
+    private LocalDateTime firstSeenAt;
+    private Double durationSeconds;
+
+    private List<Waiter> waiters;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Waiter {
+        private Long sessionId;
+        private Long blockedBy;
+        private Integer depth;
+        private Double waitSeconds;
+        private String waitType;
+        private String waitResource;
+        private String queryText;
+    }
+}
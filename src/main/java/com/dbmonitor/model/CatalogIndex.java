@@ -0,0 +1,37 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of a monitored database as read from the engine's catalog.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogIndex {
+
+    private String schemaName;
+    private String tableName;
+    private String indexName;
+
+    // Key columns in index order; expressions are kept as the engine prints them
+    @Builder.Default
+    private List<String> columns = new ArrayList<>();
+
+    // Non-key columns stored in the leaf level (INCLUDE)
+    @Builder.Default
+    private List<String> includedColumns = new ArrayList<>();
+
+    private boolean unique;
+    private boolean primaryKey;
+
+    // Filtered (SQL Server) or partial (PostgreSQL) index; only covers some rows
+    private boolean partial;
+}
@@ -0,0 +1,44 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One keyset page ordered by (timestamp, id) descending. Pass {@code nextCursorTime}/
+ * {@code nextCursorId} back as the cursor to fetch the following page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> items;
+    private int size;
+    private boolean hasMore;
+    private LocalDateTime nextCursorTime;
+    private Long nextCursorId;
+
+    /**
+     * Builds a page from a query that fetched up to {@code pageSize + 1} rows; the extra row
+     * only signals that another page exists.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int pageSize,
+                                       Function<T, LocalDateTime> time, Function<T, Long> id) {
+        boolean hasMore = rows.size() > pageSize;
+        List<T> items = hasMore ? rows.subList(0, pageSize) : rows;
+        T last = items.isEmpty() ? null : items.get(items.size() - 1);
+        return CursorPage.<T>builder()
+                .items(items)
+                .size(items.size())
+                .hasMore(hasMore)
+                .nextCursorTime(hasMore ? time.apply(last) : null)
+                .nextCursorId(hasMore ? id.apply(last) : null)
+                .build();
+    }
+}
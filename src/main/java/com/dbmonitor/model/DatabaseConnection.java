@@ -75,6 +75,12 @@ public class DatabaseConnection {
     private Integer maxPoolSize;
     private Integer connectionTimeout;
 
+    // Optional alert threshold overrides (null = use global monitor.alert.* defaults)
+    private Double cpuThreshold;
+    private Double memoryThreshold;
+    private Double connectionPoolThreshold;
+    private Double waitingThreadsThreshold;
+
     // Optional: Custom JDBC URL (if provided, overrides auto-generated URL)
     @Column(name = "custom_jdbc_url", length = 500)
     private String customJdbcUrl;
@@ -0,0 +1,82 @@
+package com.dbmonitor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Background build of a recommended index. {@code ddl} is the statement actually run, rewritten
+ * for an online build where the engine supports it. {@code phase} and {@code progressPercent}
+ * are live while the build runs and keep their last value afterwards. The latency columns hold
+ * the mean latency of the statements the index was recommended for, over the window before
+ * submission and the same window after completion.
+ */
+@Entity
+@Table(name = "index_build_jobs", indexes = {
+    @Index(name = "idx_index_build_conn", columnList = "connectionId, submittedAt"),
+    @Index(name = "idx_index_build_status", columnList = "status")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexBuildJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long recommendationId;
+
+    private Long connectionId;
+
+    private String tableName;
+
+    private String indexName;
+
+    @Column(columnDefinition = "TEXT")
+    private String ddl;
+
+    // False when the engine has no online build and writers are blocked while it runs
+    private boolean online;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    // Server session running the build (backend pid, SPID or connection id)
+    private Long sessionId;
+
+    private String phase;
+
+    private Double progressPercent;
+
+    private LocalDateTime submittedAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String errorMessage;
+
+    // Comma-separated hex fingerprints copied from the recommendation
+    @Column(columnDefinition = "TEXT")
+    private String fingerprints;
+
+    private Double latencyBeforeMs;
+
+    private Double latencyAfterMs;
+
+    // Negative when the statements got faster
+    private Double latencyChangePercent;
+
+    private LocalDateTime latencyMeasuredAt;
+}
@@ -24,7 +24,9 @@ public class IndexRecommendation {
     
     private String tableName;
     
-    private String columnNames; // Comma-separated column names
+    private String columnNames; // Comma-separated key columns in index order
+    
+    private String includedColumns; // Comma-separated non-key (INCLUDE) columns, null if none
     
     private String indexType; // BTREE, HASH, FULLTEXT, SPATIAL
     
@@ -34,12 +36,19 @@ public class IndexRecommendation {
     
     private Long affectedQueries;
     
-    private Double estimatedPerformanceGain;
+    private Double estimatedPerformanceGain; // Share (%) of analyzed statement time the index serves
+    
+    // Time spent in the statements the index serves over the analyzed window
+    private Double workloadTimeMs;
+    
+    // Comma-separated hex fingerprints of those statements
+    @Column(columnDefinition = "TEXT")
+    private String fingerprints;
     
     @Column(columnDefinition = "TEXT")
     private String createIndexStatement;
     
-    private String status; // PENDING, APPLIED, REJECTED, OBSOLETE
+    private String status; // PENDING, BUILDING, APPLIED, REJECTED, OBSOLETE
     
     private LocalDateTime recommendedAt;
     
@@ -0,0 +1,78 @@
+package com.dbmonitor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Change of one table or index between two successive object statistics snapshots. Rows are
+ * only written for objects that changed; {@code sizeBytes} and {@code rowCount} are the
+ * absolute values at {@code intervalEnd} so growth can be charted without a baseline.
+ * Counter columns hold the activity within the interval and are null where the engine does
+ * not expose them.
+ */
+@Entity
+@Table(name = "object_stat_intervals", indexes = {
+    @Index(name = "idx_object_stat_conn_end", columnList = "connectionId, intervalEnd"),
+    @Index(name = "idx_object_stat_end", columnList = "intervalEnd"),
+    @Index(name = "idx_object_stat_object", columnList = "connectionId, schemaName, tableName, intervalEnd")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ObjectStatInterval {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long connectionId;
+
+    private LocalDateTime intervalStart;
+
+    private LocalDateTime intervalEnd;
+
+    // TABLE or INDEX
+    @Column(length = 10)
+    private String objectType;
+
+    @Column(length = 128)
+    private String schemaName;
+
+    @Column(length = 128)
+    private String tableName;
+
+    @Column(length = 128)
+    private String indexName;
+
+    private Long sizeBytes;
+
+    private Long sizeBytesDelta;
+
+    private Long rowCount;
+
+    private Long rowCountDelta;
+
+    // Full scans started (PostgreSQL seq_scan, SQL Server user_scans on the heap/clustered index)
+    private Long seqScans;
+
+    // Rows read by full scans (PostgreSQL seq_tup_read, MySQL reads without an index)
+    private Long seqRowsRead;
+
+    // PostgreSQL idx_scan, SQL Server seeks + scans + lookups, MySQL rows fetched through the index
+    private Long indexScans;
+
+    private Long rowsInserted;
+
+    private Long rowsUpdated;
+
+    private Long rowsDeleted;
+
+    // PostgreSQL n_dead_tup at intervalEnd, a bloat indicator
+    private Long deadRows;
+}
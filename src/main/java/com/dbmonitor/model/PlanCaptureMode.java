@@ -0,0 +1,14 @@
+package com.dbmonitor.model;
+
+/**
+ * How a plan is obtained from the monitored database.
+ */
+public enum PlanCaptureMode {
+    // Optimizer estimate only; the statement is not executed
+    ESTIMATE,
+    // Executes the statement (SELECT only) in a read-only, time-limited transaction that is rolled
+    // back; on SQL Server reads the last actual plan instead of executing
+    ANALYZE,
+    // Plan the engine already cached for the statement; falls back to ESTIMATE when there is none
+    CACHED
+}
@@ -0,0 +1,69 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One operator of an execution plan, normalized across engines. Costs are in the engine's
+ * own units; actual values are only set when the plan was captured by executing the
+ * statement.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanNode {
+
+    // Engine operator name, e.g. "Seq Scan", "Clustered Index Seek", "Table (ALL)"
+    private String operator;
+
+    private String relation;
+
+    private String indexName;
+
+    private Double estimatedRows;
+
+    // Cost of this node including its children
+    private Double estimatedCost;
+
+    // Total over all loops
+    private Double actualRows;
+
+    private Long loops;
+
+    private Double actualTimeMs;
+
+    // Reads the whole table (or clustered index) rather than a range of it
+    private boolean fullScan;
+
+    @Builder.Default
+    private List<PlanNode> children = new ArrayList<>();
+
+    /**
+     * Estimated cost of this node alone, without its children.
+     */
+    public double getSelfCost() {
+        double cost = estimatedCost != null ? estimatedCost : 0;
+        for (PlanNode child : children) {
+            cost -= child.getEstimatedCost() != null ? child.getEstimatedCost() : 0;
+        }
+        return Math.max(0, cost);
+    }
+
+    /**
+     * Ratio between the larger and the smaller of estimated and actual rows, or null when the
+     * node was not executed.
+     */
+    public Double getEstimateError() {
+        if (actualRows == null || estimatedRows == null) {
+            return null;
+        }
+        double estimated = estimatedRows * (loops != null && loops > 1 ? loops : 1);
+        return Math.max(actualRows, estimated) / Math.max(1.0, Math.min(actualRows, estimated));
+    }
+}
@@ -0,0 +1,34 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Per-interval activity of one statement as pre-aggregated by the JDBC instrumentation
+ * client. {@code latencyBuckets} maps LatencyHistogram bucket indexes to execution counts.
+ * {@code fingerprint} and {@code queryType} are informational: the monitor recomputes both
+ * from {@code queryText}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryAggregate {
+    private Long connectionId;
+    private Long fingerprint;
+    private String queryText;
+    private String queryType;
+    private LocalDateTime intervalStart;
+    private LocalDateTime intervalEnd;
+    private long calls;
+    private long errors;
+    private double totalTimeMs;
+    private double maxTimeMs;
+    private long rows;
+    private Map<Integer, Long> latencyBuckets;
+}
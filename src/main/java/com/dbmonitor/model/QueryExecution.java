@@ -0,0 +1,28 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One statement execution reported by an application. Only {@code queryText} and
+ * {@code executionTimeMs} are required; a missing {@code executedAt} means "now" and a
+ * missing {@code queryType} is derived from the statement.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryExecution {
+    private Long connectionId;
+    private String queryText;
+    private long executionTimeMs;
+    private String queryType;
+    private Integer rowsAffected;
+    private String status;
+    private String errorMessage;
+    private LocalDateTime executedAt;
+}
@@ -1,5 +1,6 @@
 package com.dbmonitor.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -9,7 +10,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "query_metrics")
+@Table(name = "query_metrics", indexes = {
+    @Index(name = "idx_query_execution_time", columnList = "executionTime"),
+    @Index(name = "idx_query_fingerprint_time", columnList = "fingerprint, executionTime")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,7 +24,24 @@ public class QueryMetrics {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @Column(columnDefinition = "TEXT")
+    private Long connectionId;
+    
+    // 64-bit statement shape hash shared by executions that differ only in literals
+    private Long fingerprint;
+    
+    // Normalized text, stored once per fingerprint in query_texts; attached in bulk by
+    // QueryTextService.attachTexts when rows are returned, never loaded per row
+    @JsonIgnore
+    @Transient
+    private QueryText text;
+    
+    // Only set on rows written before the query_texts dictionary existed
+    @JsonIgnore
+    @Column(name = "query_text", columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String legacyQueryText;
+    
+    // Text for rows built in memory (engine stats views) that are never persisted
+    @Transient
     private String queryText;
     
     private LocalDateTime executionTime;
@@ -37,4 +58,11 @@ public class QueryMetrics {
     
     @Column(columnDefinition = "TEXT")
     private String errorMessage;
+    
+    public String getQueryText() {
+        if (queryText != null) {
+            return queryText;
+        }
+        return text != null ? text.getQueryText() : legacyQueryText;
+    }
 }
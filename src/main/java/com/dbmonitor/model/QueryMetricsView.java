@@ -0,0 +1,40 @@
+package com.dbmonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a recorded execution for list and export endpoints. Selected with
+ * a JPQL constructor expression, so rows are never attached to the persistence context and
+ * the statement text comes from the same query rather than a per-row dictionary lookup.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryMetricsView {
+    private Long id;
+    private Long connectionId;
+    private Long fingerprint;
+    private String queryText;
+    private LocalDateTime executionTime;
+    private Long executionDurationMs;
+    private String queryType;
+    private Boolean isSlow;
+    private Integer rowsAffected;
+    private String status;
+    private String errorMessage;
+
+    /**
+     * JPQL constructor; {@code legacyQueryText} is only used for rows written before the
+     * query_texts dictionary existed.
+     */
+    public QueryMetricsView(Long id, Long connectionId, Long fingerprint, String queryText, String legacyQueryText,
+                            LocalDateTime executionTime, Long executionDurationMs, String queryType, Boolean isSlow,
+                            Integer rowsAffected, String status, String errorMessage) {
+        this(id, connectionId, fingerprint, queryText != null ? queryText : legacyQueryText, executionTime,
+                executionDurationMs, queryType, isSlow, rowsAffected, status, errorMessage);
+    }
+}
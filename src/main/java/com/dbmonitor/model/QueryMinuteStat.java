@@ -0,0 +1,38 @@
+package com.dbmonitor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Recorded query activity for one wall-clock minute, maintained incrementally by the
+ * ingestion path so window statistics never aggregate raw {@code query_metrics} rows.
+ */
+@Entity
+@Table(name = "query_minute_stats", indexes = {
+    @Index(name = "idx_minute_stat_start", columnList = "minuteStart", unique = true)
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryMinuteStat {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private LocalDateTime minuteStart;
+
+    private Long queryCount;
+
+    private Double totalTimeMs;
+
+    private Long slowCount;
+
+    private Long errorCount;
+}
@@ -1,5 +1,6 @@
 package com.dbmonitor.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -9,7 +10,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "query_plans")
+@Table(name = "query_plans", indexes = {
+    @Index(name = "idx_plan_analyzed", columnList = "analyzedAt"),
+    @Index(name = "idx_plan_fingerprint", columnList = "fingerprint"),
+    @Index(name = "idx_plan_conn_fp_hash", columnList = "connectionId, fingerprint, planHash"),
+    @Index(name = "idx_plan_regression_seen", columnList = "regression, lastSeenAt")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -24,14 +30,43 @@ public class QueryPlan {
     @JoinColumn(name = "query_id")
     private QueryMetrics queryMetrics;
     
-    @Column(columnDefinition = "TEXT")
+    private Long connectionId;
+    
+    private Long fingerprint;
+    
+    // Hash of the plan shape (operators and objects, not costs or timings); one row per
+    // (connectionId, fingerprint, planHash)
+    private Long planHash;
+    
+    // Normalized text, stored once per fingerprint in query_texts; attached in bulk by
+    // QueryTextService.attachTexts when plans are returned, never loaded per row
+    @JsonIgnore
+    @Transient
+    private QueryText text;
+    
+    // Only set on plans analyzed before the query_texts dictionary existed
+    @JsonIgnore
+    @Column(name = "query_text", columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String legacyQueryText;
+    
+    // Statement as submitted for analysis; not persisted
+    @Transient
     private String queryText;
     
+    // Plan as returned by the engine: JSON or showplan XML, text for older captures
     @Column(columnDefinition = "TEXT")
     private String executionPlan;
     
     private String planType; // EXPLAIN, EXPLAIN ANALYZE, EXECUTION PLAN
     
+    // POSTGRESQL_JSON, MYSQL_JSON or SQLSERVER_XML; null for text plans
+    @Column(length = 20)
+    private String planFormat;
+    
+    // Parsed operator tree of a fresh capture; not persisted
+    @Transient
+    private PlanNode planTree;
+    
     private Double estimatedCost;
     
     private Long estimatedRows;
@@ -46,5 +81,33 @@ public class QueryPlan {
     
     private Boolean hasFullTableScan;
     
+    // Executed nodes whose row estimate was off by 10x or more
+    private Integer misestimatedNodes;
+    
+    // Node with the highest cost of its own, e.g. "Seq Scan on orders"
+    private String expensiveOperator;
+    
+    // Last time this plan was captured; kept equal to lastSeenAt so retention keeps live plans
     private LocalDateTime analyzedAt;
+    
+    private LocalDateTime firstSeenAt;
+    
+    private LocalDateTime lastSeenAt;
+    
+    private Long seenCount;
+    
+    // Mean statement latency when the plan was last captured
+    private Double latencyMs;
+    
+    // Set when the statement switched to this plan from previousPlanId and got slower
+    private Boolean regression;
+    
+    private Long previousPlanId;
+    
+    public String getQueryText() {
+        if (queryText != null) {
+            return queryText;
+        }
+        return text != null ? text.getQueryText() : legacyQueryText;
+    }
 }
@@ -0,0 +1,56 @@
+package com.dbmonitor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Per-interval activity of one statement on a monitored database, computed as the
+ * difference between two successive snapshots of the engine's cumulative statistics view.
+ */
+@Entity
+@Table(name = "query_stat_intervals", indexes = {
+    @Index(name = "idx_stat_interval_conn_end", columnList = "connectionId, intervalEnd"),
+    @Index(name = "idx_stat_interval_end", columnList = "intervalEnd"),
+    @Index(name = "idx_stat_interval_fingerprint", columnList = "fingerprint, intervalEnd"),
+    @Index(name = "idx_stat_interval_statement", columnList = "connectionId, statementKey, intervalEnd")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryStatInterval {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long connectionId;
+
+    private LocalDateTime intervalStart;
+
+    private LocalDateTime intervalEnd;
+
+    // Engine statement id: pg_stat_statements queryid, MySQL DIGEST, SQL Server query_hash
+    @Column(length = 100)
+    private String statementKey;
+
+    private Long fingerprint;
+
+    @Column(columnDefinition = "TEXT")
+    private String queryText;
+
+    private String queryType;
+
+    private Long calls;
+
+    private Double totalTimeMs;
+
+    private Long rowsAffected;
+
+    private Double avgTimeMs;
+}
@@ -0,0 +1,34 @@
+package com.dbmonitor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
+
+import java.time.LocalDateTime;
+
+/**
+ * Dictionary of normalized statement texts, one row per fingerprint. Metrics and plans store
+ * only the 64-bit fingerprint and resolve the text through this table.
+ */
+@Entity
+@Table(name = "query_texts")
+@BatchSize(size = 100)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryText {
+
+    @Id
+    private Long fingerprint;
+
+    @Column(columnDefinition = "TEXT")
+    private String queryText;
+
+    private String queryType;
+
+    private LocalDateTime firstSeen;
+}
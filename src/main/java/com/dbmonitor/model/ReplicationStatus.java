@@ -9,7 +9,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "replication_status")
+@Table(name = "replication_status", indexes = {
+    @Index(name = "idx_replication_checked", columnList = "lastChecked")
+})
 @Data
 @Builder
 @NoArgsConstructor
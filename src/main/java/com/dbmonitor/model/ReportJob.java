@@ -0,0 +1,45 @@
+package com.dbmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * A report generated in the background. Jobs live in memory; the finished report is a file
+ * in the report work directory until the job expires.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private String id;
+    private ReportType type;
+    private Long connectionId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Long scheduleId;
+    private LocalDateTime submittedAt;
+
+    // Updated by the worker thread
+    private volatile Status status;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime completedAt;
+    private volatile Long sizeBytes;
+    private volatile String error;
+
+    @JsonIgnore
+    private volatile Path file;
+
+    public String getFilename() {
+        return type.name().toLowerCase().replace('_', '-') + "-" + id + "." + type.getExtension();
+    }
+}
@@ -0,0 +1,61 @@
+package com.dbmonitor.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "report_schedules", indexes = {
+    @Index(name = "idx_report_schedule_next_run", columnList = "enabled, nextRunAt")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportSchedule {
+
+    public enum DeliveryType { DIRECTORY, EMAIL }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ReportType reportType;
+
+    // Required for metrics reports
+    private Long connectionId;
+
+    // Spring cron expression with seconds, e.g. "0 0 6 * * MON-FRI"
+    @Column(nullable = false)
+    private String cronExpression;
+
+    // Query and alert reports cover the last rangeHours before the run
+    private Integer rangeHours;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private DeliveryType deliveryType;
+
+    // Subdirectory of monitor.reports.delivery-directory, or comma-separated email addresses
+    private String target;
+
+    private Boolean enabled;
+
+    private LocalDateTime nextRunAt;
+
+    private LocalDateTime lastRunAt;
+
+    private String lastStatus;
+
+    @Column(length = 1000)
+    private String lastError;
+}
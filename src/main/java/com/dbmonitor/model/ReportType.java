@@ -0,0 +1,34 @@
+package com.dbmonitor.model;
+
+/**
+ * Reports that can be generated on demand, as background jobs or on a schedule.
+ */
+public enum ReportType {
+    METRICS_PDF("application/pdf", "pdf", true),
+    METRICS_EXCEL("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx", true),
+    QUERIES_EXCEL("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx", false),
+    ALERTS_PDF("application/pdf", "pdf", false);
+
+    private final String contentType;
+    private final String extension;
+    private final boolean perConnection;
+
+    ReportType(String contentType, String extension, boolean perConnection) {
+        this.contentType = contentType;
+        this.extension = extension;
+        this.perConnection = perConnection;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /** Metrics reports cover one connection and ignore the time range. */
+    public boolean isPerConnection() {
+        return perConnection;
+    }
+}
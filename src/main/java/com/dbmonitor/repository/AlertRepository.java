@@ -2,19 +2,19 @@ package com.dbmonitor.repository;
 
 import com.dbmonitor.model.Alert;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface AlertRepository extends JpaRepository<Alert, Long> {
-    
-    List<Alert> findByAcknowledgedFalseOrderByCreatedAtDesc();
-    
-    List<Alert> findByCreatedAtAfterOrderByCreatedAtDesc(LocalDateTime since);
-    
-    List<Alert> findBySeverityOrderByCreatedAtDesc(String severity);
-    
-    Long countByAcknowledgedFalse();
+public interface AlertRepository extends JpaRepository<Alert, Long>, AlertRepositoryCustom {
+
+    boolean existsByConnectionIdAndAlertTypeAndAcknowledgedFalseAndCreatedAtAfter(
+            Long connectionId, String alertType, LocalDateTime since);
+
+    @Query("SELECT a.severity, a.connectionId, COUNT(a) FROM Alert a " +
+           "WHERE a.acknowledged = false GROUP BY a.severity, a.connectionId")
+    List<Object[]> countUnacknowledgedBySeverityAndConnection();
 }
@@ -0,0 +1,36 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.AlertView;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Filtered alert queries built from the filters that are set. Null filters are ignored; a null
+ * cursor starts from the newest alert.
+ */
+public interface AlertRepositoryCustom {
+
+    /**
+     * Keyset page ordered by (createdAt, id) descending, as detached views.
+     */
+    List<AlertView> findPage(Long connectionId, String severity, String alertType, Boolean acknowledged,
+                             LocalDateTime from, LocalDateTime to,
+                             LocalDateTime cursorTime, Long cursorId, Pageable pageable);
+
+    /**
+     * Same rows as {@link #findPage} without a page limit, read through a cursor. Must be
+     * consumed and closed inside a transaction.
+     */
+    Stream<AlertView> streamAll(Long connectionId, String severity, String alertType, Boolean acknowledged,
+                                LocalDateTime from, LocalDateTime to,
+                                LocalDateTime cursorTime, Long cursorId);
+
+    /**
+     * Acknowledges every matching unacknowledged alert in a single UPDATE.
+     */
+    int acknowledgeMatching(Long connectionId, String severity, String alertType,
+                            LocalDateTime from, LocalDateTime to, LocalDateTime now);
+}
@@ -0,0 +1,88 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.Alert;
+import com.dbmonitor.model.AlertView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CompoundSelection;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class AlertRepositoryCustomImpl implements AlertRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AlertView> findPage(Long connectionId, String severity, String alertType, Boolean acknowledged,
+                                    LocalDateTime from, LocalDateTime to,
+                                    LocalDateTime cursorTime, Long cursorId, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AlertView> query = cb.createQuery(AlertView.class);
+        Root<Alert> a = query.from(Alert.class);
+        query.select(view(cb, a));
+        filter(cb, query, a, connectionId, severity, alertType, acknowledged, from, to, cursorTime, cursorId);
+        return FilterCriteria.page(entityManager.createQuery(query), pageable);
+    }
+
+    @Override
+    public Stream<AlertView> streamAll(Long connectionId, String severity, String alertType, Boolean acknowledged,
+                                       LocalDateTime from, LocalDateTime to,
+                                       LocalDateTime cursorTime, Long cursorId) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AlertView> query = cb.createQuery(AlertView.class);
+        Root<Alert> a = query.from(Alert.class);
+        query.select(view(cb, a));
+        filter(cb, query, a, connectionId, severity, alertType, acknowledged, from, to, cursorTime, cursorId);
+        return FilterCriteria.stream(entityManager.createQuery(query));
+    }
+
+    @Override
+    @Transactional
+    public int acknowledgeMatching(Long connectionId, String severity, String alertType,
+                                   LocalDateTime from, LocalDateTime to, LocalDateTime now) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Alert> update = cb.createCriteriaUpdate(Alert.class);
+        Root<Alert> a = update.from(Alert.class);
+        update.set(a.<Boolean>get("acknowledged"), true);
+        update.set(a.<LocalDateTime>get("acknowledgedAt"), now);
+        update.where(new FilterCriteria(cb)
+                .equal(a.get("acknowledged"), false)
+                .equal(a.get("connectionId"), connectionId)
+                .equal(a.get("severity"), severity)
+                .equal(a.get("alertType"), alertType)
+                .atLeast(a.<LocalDateTime>get("createdAt"), from)
+                .before(a.<LocalDateTime>get("createdAt"), to)
+                .toArray());
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    private static CompoundSelection<AlertView> view(CriteriaBuilder cb, Root<Alert> a) {
+        return cb.construct(AlertView.class, a.get("id"), a.get("connectionId"), a.get("alertType"),
+                a.get("severity"), a.get("message"), a.get("createdAt"), a.get("acknowledged"),
+                a.get("acknowledgedAt"), a.get("metricValue"), a.get("threshold"));
+    }
+
+    private void filter(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Alert> a,
+                        Long connectionId, String severity, String alertType, Boolean acknowledged,
+                        LocalDateTime from, LocalDateTime to, LocalDateTime cursorTime, Long cursorId) {
+        query.where(new FilterCriteria(cb)
+                .equal(a.get("connectionId"), connectionId)
+                .equal(a.get("severity"), severity)
+                .equal(a.get("alertType"), alertType)
+                .equal(a.get("acknowledged"), acknowledged)
+                .atLeast(a.<LocalDateTime>get("createdAt"), from)
+                .before(a.<LocalDateTime>get("createdAt"), to)
+                .after(a.<LocalDateTime>get("createdAt"), a.<Long>get("id"), cursorTime, cursorId)
+                .toArray());
+        query.orderBy(cb.desc(a.get("createdAt")), cb.desc(a.get("id")));
+    }
+}
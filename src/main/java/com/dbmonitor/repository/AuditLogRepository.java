@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
+public interface AuditLogRepository extends JpaRepository<AuditLog, Long>, AuditLogRepositoryCustom {
+
     List<AuditLog> findByUserIdOrderByTimestampDesc(Long userId);
     List<AuditLog> findByUsernameOrderByTimestampDesc(String username);
     List<AuditLog> findByActionOrderByTimestampDesc(String action);
@@ -0,0 +1,30 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.AuditLogView;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Filtered audit log queries built from the filters that are set. Null filters are ignored; a
+ * null cursor starts from the newest entry.
+ */
+public interface AuditLogRepositoryCustom {
+
+    /**
+     * Keyset page of entries ordered by (timestamp, id) descending.
+     */
+    List<AuditLogView> findViewPage(Long userId, String username, String action, String status,
+                                    LocalDateTime from, LocalDateTime to,
+                                    LocalDateTime cursorTime, Long cursorId, Pageable pageable);
+
+    /**
+     * Same rows as {@link #findViewPage} without a page limit, read through a cursor. Must be
+     * consumed and closed inside a transaction.
+     */
+    Stream<AuditLogView> streamViews(Long userId, String username, String action, String status,
+                                     LocalDateTime from, LocalDateTime to,
+                                     LocalDateTime cursorTime, Long cursorId);
+}
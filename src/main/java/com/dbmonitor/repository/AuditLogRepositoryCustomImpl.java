@@ -0,0 +1,57 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.AuditLog;
+import com.dbmonitor.model.AuditLogView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class AuditLogRepositoryCustomImpl implements AuditLogRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AuditLogView> findViewPage(Long userId, String username, String action, String status,
+                                           LocalDateTime from, LocalDateTime to,
+                                           LocalDateTime cursorTime, Long cursorId, Pageable pageable) {
+        return FilterCriteria.page(entityManager.createQuery(
+                query(userId, username, action, status, from, to, cursorTime, cursorId)), pageable);
+    }
+
+    @Override
+    public Stream<AuditLogView> streamViews(Long userId, String username, String action, String status,
+                                            LocalDateTime from, LocalDateTime to,
+                                            LocalDateTime cursorTime, Long cursorId) {
+        return FilterCriteria.stream(entityManager.createQuery(
+                query(userId, username, action, status, from, to, cursorTime, cursorId)));
+    }
+
+    private CriteriaQuery<AuditLogView> query(Long userId, String username, String action, String status,
+                                              LocalDateTime from, LocalDateTime to,
+                                              LocalDateTime cursorTime, Long cursorId) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AuditLogView> query = cb.createQuery(AuditLogView.class);
+        Root<AuditLog> a = query.from(AuditLog.class);
+        query.select(cb.construct(AuditLogView.class, a.get("id"), a.get("timestamp"), a.get("userId"),
+                a.get("username"), a.get("action"), a.get("description"), a.get("ipAddress"), a.get("status")));
+        query.where(new FilterCriteria(cb)
+                .equal(a.get("userId"), userId)
+                .equal(a.get("username"), username)
+                .equal(a.get("action"), action)
+                .equal(a.get("status"), status)
+                .atLeast(a.<LocalDateTime>get("timestamp"), from)
+                .before(a.<LocalDateTime>get("timestamp"), to)
+                .after(a.<LocalDateTime>get("timestamp"), a.<Long>get("id"), cursorTime, cursorId)
+                .toArray());
+        query.orderBy(cb.desc(a.get("timestamp")), cb.desc(a.get("id")));
+        return query;
+    }
+}
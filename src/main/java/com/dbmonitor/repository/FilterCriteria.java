@@ -0,0 +1,80 @@
+package com.dbmonitor.repository;
+
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Predicates of the filtered keyset list queries. Only filters that are set become predicates,
+ * so each filter combination is its own statement with its own plan and can seek on the
+ * matching composite index, instead of sharing one plan compiled around
+ * {@code (:x IS NULL OR col = :x)} catch-alls.
+ */
+final class FilterCriteria {
+
+    private final CriteriaBuilder cb;
+    private final List<Predicate> predicates = new ArrayList<>();
+
+    FilterCriteria(CriteriaBuilder cb) {
+        this.cb = cb;
+    }
+
+    FilterCriteria equal(Path<?> path, Object value) {
+        if (value != null) {
+            predicates.add(cb.equal(path, value));
+        }
+        return this;
+    }
+
+    <Y extends Comparable<? super Y>> FilterCriteria atLeast(Path<Y> path, Y value) {
+        if (value != null) {
+            predicates.add(cb.greaterThanOrEqualTo(path, value));
+        }
+        return this;
+    }
+
+    <Y extends Comparable<? super Y>> FilterCriteria before(Path<Y> path, Y value) {
+        if (value != null) {
+            predicates.add(cb.lessThan(path, value));
+        }
+        return this;
+    }
+
+    /**
+     * Rows that follow the cursor in (time, id) descending order; no predicate without a cursor.
+     */
+    FilterCriteria after(Path<LocalDateTime> time, Path<Long> id, LocalDateTime cursorTime, Long cursorId) {
+        if (cursorTime != null) {
+            predicates.add(cb.or(cb.lessThan(time, cursorTime),
+                    cb.and(cb.equal(time, cursorTime), cb.lessThan(id, cursorId))));
+        }
+        return this;
+    }
+
+    Predicate[] toArray() {
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    static <T> List<T> page(TypedQuery<T> query, Pageable pageable) {
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize());
+        return query.getResultList();
+    }
+
+    /**
+     * Reads the result through a cursor; must be consumed and closed inside a transaction.
+     */
+    static <T> Stream<T> stream(TypedQuery<T> query) {
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, 500);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultStream();
+    }
+}
@@ -0,0 +1,18 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.IndexBuildJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IndexBuildJobRepository extends JpaRepository<IndexBuildJob, Long> {
+    List<IndexBuildJob> findByConnectionIdOrderBySubmittedAtDesc(Long connectionId);
+    List<IndexBuildJob> findTop100ByOrderBySubmittedAtDesc();
+    List<IndexBuildJob> findByStatusIn(Collection<IndexBuildJob.Status> statuses);
+    List<IndexBuildJob> findByStatusAndLatencyMeasuredAtIsNullAndFinishedAtBefore(
+            IndexBuildJob.Status status, LocalDateTime finishedBefore);
+}
@@ -4,7 +4,9 @@ import com.dbmonitor.model.IndexRecommendation;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface IndexRecommendationRepository extends JpaRepository<IndexRecommendation, Long> {
@@ -12,4 +14,8 @@ public interface IndexRecommendationRepository extends JpaRepository<IndexRecomm
     List<IndexRecommendation> findByStatus(String status);
     List<IndexRecommendation> findByConnectionIdAndStatusOrderByImpactScoreDesc(Long connectionId, String status);
     List<IndexRecommendation> findByTableName(String tableName);
+    Optional<IndexRecommendation> findFirstByConnectionIdAndTableNameAndColumnNamesAndStatus(
+            Long connectionId, String tableName, String columnNames, String status);
+    boolean existsByConnectionIdAndTableNameAndColumnNamesAndStatusIn(
+            Long connectionId, String tableName, String columnNames, Collection<String> statuses);
 }
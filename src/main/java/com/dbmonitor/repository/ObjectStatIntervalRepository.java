@@ -0,0 +1,57 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.ObjectStatInterval;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ObjectStatIntervalRepository extends JpaRepository<ObjectStatInterval, Long> {
+
+    @Query("SELECT s FROM ObjectStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.schemaName = :schemaName AND s.tableName = :tableName " +
+           "AND ((:indexName IS NULL AND s.indexName IS NULL) OR s.indexName = :indexName) " +
+           "AND s.intervalEnd > :start AND s.intervalEnd <= :end ORDER BY s.intervalEnd ASC")
+    List<ObjectStatInterval> findHistory(Long connectionId, String schemaName, String tableName, String indexName,
+                                         LocalDateTime start, LocalDateTime end);
+
+    /**
+     * Per-object totals over a window, largest size growth first. Columns: objectType,
+     * schemaName, tableName, indexName, sizeBytesDelta, rowCountDelta, and sizeBytes of the
+     * object's last interval in the window (not its peak, which differs for objects that shrank).
+     */
+    @Query("SELECT s.objectType, s.schemaName, s.tableName, s.indexName, SUM(s.sizeBytesDelta), " +
+           "SUM(s.rowCountDelta), " +
+           "(SELECT MAX(l.sizeBytes) FROM ObjectStatInterval l " +
+           " WHERE l.connectionId = :connectionId AND l.objectType = s.objectType " +
+           " AND l.schemaName = s.schemaName AND l.tableName = s.tableName " +
+           " AND ((s.indexName IS NULL AND l.indexName IS NULL) OR l.indexName = s.indexName) " +
+           " AND l.intervalEnd = (SELECT MAX(m.intervalEnd) FROM ObjectStatInterval m " +
+           "  WHERE m.connectionId = :connectionId AND m.objectType = s.objectType " +
+           "  AND m.schemaName = s.schemaName AND m.tableName = s.tableName " +
+           "  AND ((s.indexName IS NULL AND m.indexName IS NULL) OR m.indexName = s.indexName) " +
+           "  AND m.intervalEnd > :start AND m.intervalEnd <= :end)) " +
+           "FROM ObjectStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.objectType = :objectType " +
+           "AND s.intervalEnd > :start AND s.intervalEnd <= :end " +
+           "GROUP BY s.objectType, s.schemaName, s.tableName, s.indexName " +
+           "ORDER BY SUM(s.sizeBytesDelta) DESC")
+    List<Object[]> sumGrowthBetween(Long connectionId, String objectType, LocalDateTime start, LocalDateTime end,
+                                    Pageable pageable);
+
+    /**
+     * Per-table scan totals over a window, most rows read by full scans first. Columns:
+     * schemaName, tableName, seqScans, seqRowsRead, indexScans.
+     */
+    @Query("SELECT s.schemaName, s.tableName, SUM(s.seqScans), SUM(s.seqRowsRead), SUM(s.indexScans) " +
+           "FROM ObjectStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.objectType = 'TABLE' " +
+           "AND s.intervalEnd > :start AND s.intervalEnd <= :end " +
+           "GROUP BY s.schemaName, s.tableName " +
+           "ORDER BY SUM(COALESCE(s.seqRowsRead, 0)) DESC, SUM(COALESCE(s.seqScans, 0)) DESC")
+    List<Object[]> sumScansBetween(Long connectionId, LocalDateTime start, LocalDateTime end, Pageable pageable);
+}
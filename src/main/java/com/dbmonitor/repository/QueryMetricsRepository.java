@@ -1,6 +1,7 @@
 package com.dbmonitor.repository;
 
 import com.dbmonitor.model.QueryMetrics;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -9,14 +10,16 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface QueryMetricsRepository extends JpaRepository<QueryMetrics, Long> {
-    
-    List<QueryMetrics> findByIsSlowTrue();
-    
-    List<QueryMetrics> findByExecutionTimeBetween(LocalDateTime start, LocalDateTime end);
-    
-    @Query("SELECT q FROM QueryMetrics q WHERE q.executionTime >= :since ORDER BY q.executionDurationMs DESC")
-    List<QueryMetrics> findTopSlowQueriesSince(LocalDateTime since);
+public interface QueryMetricsRepository extends JpaRepository<QueryMetrics, Long>, QueryMetricsRepositoryCustom {
+
+    /**
+     * (fingerprint, executions, total duration ms) per statement of a connection since a
+     * point in time, heaviest first.
+     */
+    @Query("SELECT q.fingerprint, COUNT(q), SUM(q.executionDurationMs) FROM QueryMetrics q " +
+           "WHERE q.connectionId = :connectionId AND q.executionTime >= :since AND q.fingerprint IS NOT NULL " +
+           "GROUP BY q.fingerprint ORDER BY SUM(q.executionDurationMs) DESC")
+    List<Object[]> sumByFingerprintSince(Long connectionId, LocalDateTime since, Pageable pageable);
     
     @Query("SELECT COUNT(q) FROM QueryMetrics q WHERE q.executionTime >= :since")
     Long countQueriesSince(LocalDateTime since);
@@ -0,0 +1,30 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.QueryMetricsView;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Filtered execution queries built from the filters that are set. Null filters are ignored; a
+ * null cursor starts from the newest execution.
+ */
+public interface QueryMetricsRepositoryCustom {
+
+    /**
+     * Keyset page of executions ordered by (executionTime, id) descending.
+     */
+    List<QueryMetricsView> findViewPage(Long connectionId, Long fingerprint, String queryType, String status,
+                                        Boolean slow, Long minDurationMs, LocalDateTime from, LocalDateTime to,
+                                        LocalDateTime cursorTime, Long cursorId, Pageable pageable);
+
+    /**
+     * Same rows as {@link #findViewPage} without a page limit, read through a cursor. Must be
+     * consumed and closed inside a transaction.
+     */
+    Stream<QueryMetricsView> streamViews(Long connectionId, Long fingerprint, String queryType, String status,
+                                         Boolean slow, Long minDurationMs, LocalDateTime from, LocalDateTime to,
+                                         LocalDateTime cursorTime, Long cursorId);
+}
@@ -0,0 +1,67 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.QueryMetricsView;
+import com.dbmonitor.model.QueryText;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import org.hibernate.query.criteria.JpaEntityJoin;
+import org.hibernate.query.criteria.JpaRoot;
+import org.hibernate.query.sqm.tree.SqmJoinType;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class QueryMetricsRepositoryCustomImpl implements QueryMetricsRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<QueryMetricsView> findViewPage(Long connectionId, Long fingerprint, String queryType, String status,
+                                               Boolean slow, Long minDurationMs, LocalDateTime from, LocalDateTime to,
+                                               LocalDateTime cursorTime, Long cursorId, Pageable pageable) {
+        return FilterCriteria.page(entityManager.createQuery(query(connectionId, fingerprint, queryType, status,
+                slow, minDurationMs, from, to, cursorTime, cursorId)), pageable);
+    }
+
+    @Override
+    public Stream<QueryMetricsView> streamViews(Long connectionId, Long fingerprint, String queryType, String status,
+                                                Boolean slow, Long minDurationMs, LocalDateTime from, LocalDateTime to,
+                                                LocalDateTime cursorTime, Long cursorId) {
+        return FilterCriteria.stream(entityManager.createQuery(query(connectionId, fingerprint, queryType, status,
+                slow, minDurationMs, from, to, cursorTime, cursorId)));
+    }
+
+    private CriteriaQuery<QueryMetricsView> query(Long connectionId, Long fingerprint, String queryType,
+                                                  String status, Boolean slow, Long minDurationMs,
+                                                  LocalDateTime from, LocalDateTime to,
+                                                  LocalDateTime cursorTime, Long cursorId) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<QueryMetricsView> query = cb.createQuery(QueryMetricsView.class);
+        JpaRoot<QueryMetrics> q = (JpaRoot<QueryMetrics>) query.from(QueryMetrics.class);
+        // Entity join on the fingerprint; query_texts has no mapped association
+        JpaEntityJoin<QueryText> t = q.join(QueryText.class, SqmJoinType.LEFT);
+        t.on(cb.equal(t.get("fingerprint"), q.get("fingerprint")));
+        query.select(cb.construct(QueryMetricsView.class, q.get("id"), q.get("connectionId"), q.get("fingerprint"),
+                t.get("queryText"), q.get("legacyQueryText"), q.get("executionTime"), q.get("executionDurationMs"),
+                q.get("queryType"), q.get("isSlow"), q.get("rowsAffected"), q.get("status"), q.get("errorMessage")));
+        query.where(new FilterCriteria(cb)
+                .equal(q.get("connectionId"), connectionId)
+                .equal(q.get("fingerprint"), fingerprint)
+                .equal(q.get("queryType"), queryType)
+                .equal(q.get("status"), status)
+                .equal(q.get("isSlow"), slow)
+                .atLeast(q.<Long>get("executionDurationMs"), minDurationMs)
+                .atLeast(q.<LocalDateTime>get("executionTime"), from)
+                .before(q.<LocalDateTime>get("executionTime"), to)
+                .after(q.<LocalDateTime>get("executionTime"), q.<Long>get("id"), cursorTime, cursorId)
+                .toArray());
+        query.orderBy(cb.desc(q.get("executionTime")), cb.desc(q.get("id")));
+        return query;
+    }
+}
@@ -0,0 +1,14 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.QueryMinuteStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface QueryMinuteStatRepository extends JpaRepository<QueryMinuteStat, Long> {
+
+    List<QueryMinuteStat> findByMinuteStartGreaterThanEqualOrderByMinuteStartAsc(LocalDateTime since);
+}
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface QueryPlanRepository extends JpaRepository<QueryPlan, Long> {
@@ -13,4 +14,14 @@ public interface QueryPlanRepository extends JpaRepository<QueryPlan, Long> {
     List<QueryPlan> findByHasFullTableScanTrue();
     List<QueryPlan> findByUsesIndexFalse();
     List<QueryPlan> findByAnalyzedAtAfter(LocalDateTime after);
+
+    Optional<QueryPlan> findFirstByConnectionIdAndFingerprintAndPlanHash(Long connectionId, Long fingerprint, Long planHash);
+
+    // Most recently seen plan of the statement other than the given one
+    Optional<QueryPlan> findFirstByConnectionIdAndFingerprintAndPlanHashNotOrderByLastSeenAtDesc(
+            Long connectionId, Long fingerprint, Long planHash);
+
+    List<QueryPlan> findByConnectionIdAndFingerprintOrderByLastSeenAtDesc(Long connectionId, Long fingerprint);
+
+    List<QueryPlan> findByRegressionTrueAndLastSeenAtAfterOrderByLastSeenAtDesc(LocalDateTime after);
 }
@@ -0,0 +1,56 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.QueryStatInterval;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface QueryStatIntervalRepository extends JpaRepository<QueryStatInterval, Long> {
+
+    List<QueryStatInterval> findByConnectionIdAndIntervalEndBetweenOrderByIntervalEndAsc(
+            Long connectionId, LocalDateTime start, LocalDateTime end);
+
+    /**
+     * Statement totals over a window, heaviest first. Columns: statementKey, calls,
+     * totalTimeMs, rowsAffected, intervals.
+     */
+    @Query("SELECT s.statementKey, SUM(s.calls), SUM(s.totalTimeMs), SUM(s.rowsAffected), COUNT(s) " +
+           "FROM QueryStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.intervalEnd > :start AND s.intervalEnd <= :end " +
+           "GROUP BY s.statementKey ORDER BY SUM(s.totalTimeMs) DESC")
+    List<Object[]> sumByStatementBetween(Long connectionId, LocalDateTime start, LocalDateTime end, Pageable pageable);
+
+    /**
+     * Totals of one fingerprint over a window. Columns: calls, totalTimeMs.
+     */
+    @Query("SELECT SUM(s.calls), SUM(s.totalTimeMs) FROM QueryStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.fingerprint = :fingerprint AND s.intervalEnd > :start")
+    List<Object[]> sumByFingerprintSince(Long connectionId, Long fingerprint, LocalDateTime start);
+
+    /**
+     * Totals of one fingerprint over the intervals that began at or after {@code start}, so
+     * an interval spanning {@code start} is left out. Columns: calls, totalTimeMs.
+     */
+    @Query("SELECT SUM(s.calls), SUM(s.totalTimeMs) FROM QueryStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.fingerprint = :fingerprint AND s.intervalStart >= :start")
+    List<Object[]> sumByFingerprintStartedSince(Long connectionId, Long fingerprint, LocalDateTime start);
+
+    QueryStatInterval findFirstByConnectionIdAndStatementKeyOrderByIntervalEndDesc(Long connectionId, String statementKey);
+
+    /**
+     * Most recent interval of each of the given statements.
+     */
+    @Query("SELECT s FROM QueryStatInterval s " +
+           "WHERE s.connectionId = :connectionId AND s.statementKey IN :statementKeys " +
+           "AND s.intervalEnd = (SELECT MAX(l.intervalEnd) FROM QueryStatInterval l " +
+           "WHERE l.connectionId = s.connectionId AND l.statementKey = s.statementKey)")
+    List<QueryStatInterval> findLatestByStatementKeys(Long connectionId, Collection<String> statementKeys);
+
+    QueryStatInterval findFirstByConnectionIdAndFingerprintOrderByIntervalEndDesc(Long connectionId, Long fingerprint);
+}
@@ -0,0 +1,16 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.QueryText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface QueryTextRepository extends JpaRepository<QueryText, Long> {
+
+    @Query("SELECT t.fingerprint FROM QueryText t WHERE t.fingerprint IN :fingerprints")
+    List<Long> findExistingFingerprints(Collection<Long> fingerprints);
+}
@@ -0,0 +1,13 @@
+package com.dbmonitor.repository;
+
+import com.dbmonitor.model.ReportSchedule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ReportScheduleRepository extends JpaRepository<ReportSchedule, Long> {
+    List<ReportSchedule> findByEnabledTrueAndNextRunAtLessThanEqual(LocalDateTime now);
+}
@@ -0,0 +1,75 @@
+package com.dbmonitor.security;
+
+import com.dbmonitor.service.SecurityMonitoringService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Authenticates ingestion clients by a shared API token sent as {@code Authorization: Bearer}.
+ * Used only by the stateless ingestion filter chain, so it creates no session. A missing or
+ * wrong token is rejected with 401 and recorded as a failed login attempt. Not a bean, so
+ * the servlet container does not register it for every request.
+ */
+@Slf4j
+public class IngestTokenFilter extends OncePerRequestFilter {
+
+    public static final String AUTHORITY = "INGEST_QUERIES";
+    private static final String PRINCIPAL = "ingest-client";
+    private static final String BEARER = "Bearer ";
+
+    private final byte[] token;
+    private final SecurityMonitoringService securityMonitoringService;
+
+    public IngestTokenFilter(String token, SecurityMonitoringService securityMonitoringService) {
+        this.token = token != null && !token.isBlank() ? token.getBytes(StandardCharsets.UTF_8) : null;
+        this.securityMonitoringService = securityMonitoringService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader("Authorization");
+        String presented = header != null && header.startsWith(BEARER) ? header.substring(BEARER.length()).trim() : null;
+        if (token == null || presented == null
+                || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            String ipAddress = getClientIP(request);
+            String reason = token == null ? "Ingest token not configured" : "Invalid ingest token";
+            securityMonitoringService.recordLoginAttempt(PRINCIPAL, ipAddress, false, reason,
+                    request.getHeader("User-Agent"));
+            log.warn("Rejected ingestion request from IP: {} ({})", ipAddress, reason);
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(PRINCIPAL, null,
+                List.of(new SimpleGrantedAuthority(AUTHORITY))));
+        SecurityContextHolder.setContext(context);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private String getClientIP(HttpServletRequest request) {
+        String xfHeader = request.getHeader("X-Forwarded-For");
+        if (xfHeader == null) {
+            return request.getRemoteAddr();
+        }
+        return xfHeader.split(",")[0];
+    }
+}
@@ -0,0 +1,556 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.DatabaseConnection;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Active session history: every {@code monitor.ash.interval-ms} each monitored connection's
+ * active sessions are sampled (statement, wait class and wait event) into an in-memory ring
+ * per connection. Wait breakdowns and "top SQL by wait class" are answered from the rings, so
+ * diagnosing a slowdown never queries the target at view time. One sample equals one
+ * session being active for one interval, so sample counts read as DB time.
+ */
+@Service
+@Slf4j
+public class ActiveSessionService {
+
+    public static final String CPU = "CPU";
+
+    // MySQL sessions with no current wait when the events_waits_current consumer is off
+    public static final String UNKNOWN = "Unknown";
+
+    // Active connections are re-read from the repository at most this often
+    private static final long TARGET_REFRESH_MS = 30_000;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Value("${monitor.ash.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitor.ash.interval-ms:1000}")
+    private long intervalMs;
+
+    @Value("${monitor.ash.samples-per-connection:200000}")
+    private int samplesPerConnection;
+
+    @Value("${monitor.ash.tick-capacity:21600}")
+    private int tickCapacity;
+
+    @Value("${monitor.ash.query-timeout-seconds:2}")
+    private int queryTimeoutSeconds;
+
+    @Value("${monitor.ash.max-statements:20000}")
+    private int maxStatements;
+
+    @Value("${monitor.ash.threads:2}")
+    private int threads;
+
+    private final Map<Long, SessionSampleRing> rings = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicBoolean> inFlight = new ConcurrentHashMap<>();
+    // Whether MySQL's events_waits_current consumer is on, re-checked with the targets
+    private final Map<Long, Boolean> waitsInstrumented = new ConcurrentHashMap<>();
+    private final StringDictionary waitClasses = new StringDictionary(64);
+    private final StringDictionary waitEvents = new StringDictionary(4096);
+    private final AtomicLong skippedPasses = new AtomicLong();
+    private final AtomicLong failedPasses = new AtomicLong();
+
+    // Normalized text per statement fingerprint, for display
+    private final Map<Long, String> statementTexts = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > maxStatements;
+        }
+    };
+
+    // Raw text -> fingerprint, so a statement seen on consecutive passes is normalized once
+    private final Map<String, Long> recentTexts = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > 2000;
+        }
+    };
+
+    private ExecutorService samplers;
+
+    private volatile List<DatabaseConnection> targets = List.of();
+    private volatile long targetsLoadedAt;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        samplers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "ash-sampler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        samplers.shutdownNow();
+    }
+
+    @Scheduled(fixedRateString = "${monitor.ash.interval-ms:1000}", initialDelay = 10_000)
+    public void sampleAll() {
+        if (!enabled) {
+            return;
+        }
+        for (DatabaseConnection conn : targets()) {
+            String type = normalizedType(conn);
+            if (type == null) {
+                continue;
+            }
+            AtomicBoolean busy = inFlight.computeIfAbsent(conn.getId(), id -> new AtomicBoolean());
+            // A pass still running for this connection means it is slower than the interval
+            if (!busy.compareAndSet(false, true)) {
+                skippedPasses.incrementAndGet();
+                continue;
+            }
+            samplers.execute(() -> {
+                try {
+                    sample(conn, type);
+                } catch (Exception e) {
+                    failedPasses.incrementAndGet();
+                    log.debug("Active session sample failed for '{}': {}", conn.getConnectionName(), e.getMessage());
+                } finally {
+                    busy.set(false);
+                }
+            });
+        }
+    }
+
+    public void forgetConnection(Long connectionId) {
+        rings.remove(connectionId);
+        inFlight.remove(connectionId);
+        waitsInstrumented.remove(connectionId);
+        targetsLoadedAt = 0;
+    }
+
+    /**
+     * Sessions seen by the latest sampling pass.
+     */
+    public List<Map<String, Object>> getCurrent(Long connectionId) {
+        SessionSampleRing ring = rings.get(connectionId);
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        if (ring == null || ring.getLastTickMs() < 0) {
+            return sessions;
+        }
+        long lastTick = ring.getLastTickMs();
+        ring.forEachSince(lastTick, (sampledAt, sessionId, waitClassId, waitEventId, sqlId) -> {
+            Map<String, Object> session = new LinkedHashMap<>();
+            session.put("sessionId", sessionId);
+            session.put("waitClass", waitClasses.lookup(waitClassId));
+            session.put("waitEvent", waitEvents.lookup(waitEventId));
+            session.put("fingerprint", sqlId != 0 ? String.format("%016x", sqlId) : null);
+            session.put("queryText", statementText(sqlId));
+            sessions.add(session);
+        });
+        return sessions;
+    }
+
+    /**
+     * Average active sessions over the window broken down by wait class, with the top wait
+     * events of each class.
+     */
+    public Map<String, Object> getWaitBreakdown(Long connectionId, int minutes) {
+        Window window = window(connectionId, minutes);
+        Map<Integer, long[]> byClass = new HashMap<>();
+        Map<Integer, Map<Integer, long[]>> eventsByClass = new HashMap<>();
+        long[] total = new long[1];
+        if (window.ring() != null) {
+            window.ring().forEachSince(window.sinceMs(), (sampledAt, sessionId, waitClassId, waitEventId, sqlId) -> {
+                byClass.computeIfAbsent(waitClassId, k -> new long[1])[0]++;
+                eventsByClass.computeIfAbsent(waitClassId, k -> new HashMap<>())
+                        .computeIfAbsent(waitEventId, k -> new long[1])[0]++;
+                total[0]++;
+            });
+        }
+
+        List<Map<String, Object>> classes = new ArrayList<>();
+        byClass.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .forEach(entry -> {
+                    long samples = entry.getValue()[0];
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("waitClass", waitClasses.lookup(entry.getKey()));
+                    row.put("samples", samples);
+                    row.put("averageActiveSessions", window.averageActiveSessions(samples));
+                    row.put("percent", total[0] > 0 ? samples * 100.0 / total[0] : 0.0);
+                    List<Map<String, Object>> events = new ArrayList<>();
+                    eventsByClass.get(entry.getKey()).entrySet().stream()
+                            .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                            .limit(5)
+                            .forEach(event -> {
+                                Map<String, Object> e = new LinkedHashMap<>();
+                                e.put("waitEvent", waitEvents.lookup(event.getKey()));
+                                e.put("samples", event.getValue()[0]);
+                                events.add(e);
+                            });
+                    row.put("topEvents", events);
+                    classes.add(row);
+                });
+
+        Map<String, Object> result = window.describe();
+        result.put("samples", total[0]);
+        result.put("averageActiveSessions", window.averageActiveSessions(total[0]));
+        result.put("waitClasses", classes);
+        return result;
+    }
+
+    /**
+     * Statements with the most active-session samples in the window, optionally only
+     * counting samples in one wait class (e.g. "Lock" or "CPU").
+     */
+    public List<Map<String, Object>> getTopSql(Long connectionId, int minutes, String waitClass, int limit) {
+        Window window = window(connectionId, minutes);
+        // -2 matches every class; an unknown class matches nothing
+        int classFilter = waitClass != null ? waitClasses.find(waitClass) : -2;
+        Map<Long, Map<Integer, long[]>> bySql = new HashMap<>();
+        if (window.ring() != null) {
+            window.ring().forEachSince(window.sinceMs(), (sampledAt, sessionId, waitClassId, waitEventId, sqlId) -> {
+                if (classFilter == -2 || waitClassId == classFilter) {
+                    bySql.computeIfAbsent(sqlId, k -> new HashMap<>())
+                            .computeIfAbsent(waitClassId, k -> new long[1])[0]++;
+                }
+            });
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<Long, Map<Integer, long[]>> entry : bySql.entrySet()) {
+            long samples = 0;
+            Map<String, Long> classes = new TreeMap<>();
+            for (Map.Entry<Integer, long[]> c : entry.getValue().entrySet()) {
+                samples += c.getValue()[0];
+                classes.merge(String.valueOf(waitClasses.lookup(c.getKey())), c.getValue()[0], Long::sum);
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("fingerprint", entry.getKey() != 0 ? String.format("%016x", entry.getKey()) : null);
+            row.put("queryText", statementText(entry.getKey()));
+            row.put("samples", samples);
+            row.put("dbTimeSeconds", samples * intervalMs / 1000.0);
+            row.put("averageActiveSessions", window.averageActiveSessions(samples));
+            row.put("waitClasses", classes);
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparingLong((Map<String, Object> row) -> (Long) row.get("samples")).reversed());
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, Math.max(0, limit))) : rows;
+    }
+
+    /**
+     * Average active sessions per minute and wait class over the window, oldest first.
+     */
+    public List<Map<String, Object>> getTimeline(Long connectionId, int minutes) {
+        Window window = window(connectionId, minutes);
+        TreeMap<Long, Map<Integer, long[]>> byMinute = new TreeMap<>();
+        if (window.ring() != null) {
+            window.ring().forEachSince(window.sinceMs(), (sampledAt, sessionId, waitClassId, waitEventId, sqlId) ->
+                    byMinute.computeIfAbsent(sampledAt / 60_000L, k -> new HashMap<>())
+                            .computeIfAbsent(waitClassId, k -> new long[1])[0]++);
+        }
+
+        List<Map<String, Object>> timeline = new ArrayList<>();
+        for (Map.Entry<Long, Map<Integer, long[]>> minute : byMinute.entrySet()) {
+            long start = minute.getKey() * 60_000L;
+            int ticks = Math.max(1, window.ring().ticksSince(start) - window.ring().ticksSince(start + 60_000L));
+            Map<String, Double> classes = new TreeMap<>();
+            for (Map.Entry<Integer, long[]> c : minute.getValue().entrySet()) {
+                classes.merge(String.valueOf(waitClasses.lookup(c.getKey())), (double) c.getValue()[0] / ticks, Double::sum);
+            }
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("minute", LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneId.systemDefault()));
+            point.put("averageActiveSessions", classes);
+            timeline.add(point);
+        }
+        return timeline;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("intervalMs", intervalMs);
+        status.put("skippedPasses", skippedPasses.get());
+        status.put("failedPasses", failedPasses.get());
+        status.put("waitClasses", waitClasses.size());
+        status.put("waitEvents", waitEvents.size());
+        synchronized (statementTexts) {
+            status.put("statements", statementTexts.size());
+        }
+        Map<Long, Object> connections = new TreeMap<>();
+        rings.forEach((id, ring) -> {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("samples", ring.size());
+            info.put("capacity", ring.capacity());
+            long oldest = ring.getOldestMs();
+            info.put("oldestSample", oldest > 0
+                    ? LocalDateTime.ofInstant(Instant.ofEpochMilli(oldest), ZoneId.systemDefault()) : null);
+            connections.put(id, info);
+        });
+        status.put("connections", connections);
+        return status;
+    }
+
+    private void sample(DatabaseConnection conn, String type) throws SQLException {
+        long now = System.currentTimeMillis();
+        SessionSampleRing ring = rings.computeIfAbsent(conn.getId(),
+                id -> new SessionSampleRing(samplesPerConnection, tickCapacity));
+        DataSource dataSource = connectionService.getDataSource(conn.getId());
+        String sql = switch (type) {
+            case "SQLSERVER" -> SQLSERVER_SESSIONS;
+            case "MYSQL" -> MYSQL_SESSIONS;
+            default -> POSTGRESQL_SESSIONS;
+        };
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            boolean instrumented = !type.equals("MYSQL") || waitsInstrumented.computeIfAbsent(conn.getId(),
+                    id -> mySqlWaitsInstrumented(connection, conn));
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Set<Integer> seen = new HashSet<>();
+                while (rs.next()) {
+                    int sessionId = rs.getInt("session_id");
+                    // MySQL can report several in-progress waits per thread; keep one
+                    if (!seen.add(sessionId)) {
+                        continue;
+                    }
+                    String waitEvent = rs.getString("wait_event");
+                    String waitClass = switch (type) {
+                        case "SQLSERVER" -> sqlServerWaitClass(waitEvent);
+                        case "MYSQL" -> mySqlWaitClass(waitEvent, instrumented);
+                        default -> rs.getString("wait_class");
+                    };
+                    if (waitClass == null) {
+                        waitClass = CPU;
+                    }
+                    ring.add(now, sessionId,
+                            waitClasses.intern(waitClass),
+                            waitEvents.intern(waitEvent != null ? waitEvent : waitClass),
+                            sqlId(rs.getString("query_text"), SqlFingerprinter.Dialect.of(type)));
+                }
+            }
+        }
+        ring.tick(now);
+    }
+
+    /**
+     * A disabled events_waits_current consumer leaves every thread without a current wait,
+     * which would otherwise read as all sessions being on CPU.
+     */
+    private boolean mySqlWaitsInstrumented(Connection connection, DatabaseConnection conn) {
+        try (PreparedStatement stmt = connection.prepareStatement(MYSQL_WAITS_CONSUMER)) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            try (ResultSet rs = stmt.executeQuery()) {
+                boolean enabled = rs.next() && "YES".equalsIgnoreCase(rs.getString(1));
+                if (!enabled) {
+                    log.info("events_waits_current is disabled on '{}'; sessions without a wait are reported as {}",
+                            conn.getConnectionName(), UNKNOWN);
+                }
+                return enabled;
+            }
+        } catch (SQLException e) {
+            log.debug("Could not read performance_schema consumers on '{}': {}", conn.getConnectionName(), e.getMessage());
+            return false;
+        }
+    }
+
+    private long sqlId(String text, SqlFingerprinter.Dialect dialect) {
+        if (text == null || text.isBlank()) {
+            return 0;
+        }
+        synchronized (recentTexts) {
+            Long known = recentTexts.get(text);
+            if (known != null) {
+                return known;
+            }
+        }
+        SqlFingerprinter.Fingerprint fingerprint = SqlFingerprinter.fingerprint(text, dialect);
+        synchronized (recentTexts) {
+            recentTexts.put(text, fingerprint.hash());
+        }
+        synchronized (statementTexts) {
+            statementTexts.putIfAbsent(fingerprint.hash(), fingerprint.normalizedText());
+        }
+        return fingerprint.hash();
+    }
+
+    private String statementText(long sqlId) {
+        if (sqlId == 0) {
+            return null;
+        }
+        synchronized (statementTexts) {
+            return statementTexts.get(sqlId);
+        }
+    }
+
+    private Window window(Long connectionId, int minutes) {
+        int windowMinutes = Math.max(1, minutes);
+        long sinceMs = System.currentTimeMillis() - windowMinutes * 60_000L;
+        SessionSampleRing ring = rings.get(connectionId);
+        int ticks = ring != null ? ring.ticksSince(sinceMs) : 0;
+        long oldest = ring != null ? ring.getOldestMs() : -1;
+        return new Window(ring, windowMinutes, sinceMs, ticks, oldest);
+    }
+
+    private List<DatabaseConnection> targets() {
+        long now = System.currentTimeMillis();
+        if (now - targetsLoadedAt > TARGET_REFRESH_MS) {
+            targets = connectionService.getActiveConnections();
+            targetsLoadedAt = now;
+            waitsInstrumented.clear();
+        }
+        return targets;
+    }
+
+    private static String normalizedType(DatabaseConnection conn) {
+        String type = conn.getDatabaseType() != null ? conn.getDatabaseType().toUpperCase().replace(" ", "") : "";
+        return switch (type) {
+            case "SQLSERVER", "MYSQL", "POSTGRESQL" -> type;
+            default -> null;
+        };
+    }
+
+    static String sqlServerWaitClass(String waitType) {
+        if (waitType == null || waitType.equals("SOS_SCHEDULER_YIELD")) {
+            return CPU;
+        }
+        if (waitType.startsWith("LCK_")) {
+            return "Lock";
+        }
+        if (waitType.startsWith("PAGEIOLATCH_") || waitType.equals("IO_COMPLETION") || waitType.equals("ASYNC_IO_COMPLETION")) {
+            return "IO";
+        }
+        if (waitType.startsWith("PAGELATCH_") || waitType.startsWith("LATCH_")) {
+            return "Latch";
+        }
+        if (waitType.equals("WRITELOG") || waitType.equals("LOGBUFFER")) {
+            return "Log";
+        }
+        if (waitType.equals("ASYNC_NETWORK_IO")) {
+            return "Network";
+        }
+        if (waitType.startsWith("CX")) {
+            return "Parallelism";
+        }
+        if (waitType.startsWith("RESOURCE_SEMAPHORE")) {
+            return "Memory";
+        }
+        return "Other";
+    }
+
+    static String mySqlWaitClass(String eventName, boolean waitsInstrumented) {
+        if (eventName == null) {
+            return waitsInstrumented ? CPU : UNKNOWN;
+        }
+        if (eventName.startsWith("wait/io/socket")) {
+            return "Network";
+        }
+        if (eventName.startsWith("wait/io")) {
+            return "IO";
+        }
+        if (eventName.startsWith("wait/lock")) {
+            return "Lock";
+        }
+        if (eventName.startsWith("wait/synch")) {
+            return "Synch";
+        }
+        return "Other";
+    }
+
+    private record Window(SessionSampleRing ring, int minutes, long sinceMs, int ticks, long oldestMs) {
+
+        double averageActiveSessions(long samples) {
+            return ticks > 0 ? (double) samples / ticks : 0.0;
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("windowMinutes", minutes);
+            result.put("ticks", ticks);
+            // Less than the window when the ring has already overwritten older samples
+            result.put("coveredFrom", oldestMs > 0
+                    ? LocalDateTime.ofInstant(Instant.ofEpochMilli(Math.max(oldestMs, sinceMs)), ZoneId.systemDefault())
+                    : null);
+            return result;
+        }
+    }
+
+    private static final String POSTGRESQL_SESSIONS = """
+        SELECT
+            pid AS session_id,
+            COALESCE(wait_event_type, 'CPU') AS wait_class,
+            wait_event,
+            query AS query_text
+        FROM pg_stat_activity
+        WHERE state = 'active'
+          AND backend_type = 'client backend'
+          AND pid <> pg_backend_pid()
+        """;
+
+    private static final String SQLSERVER_SESSIONS = """
+        SELECT
+            r.session_id,
+            r.wait_type AS wait_event,
+            SUBSTRING(t.text, (r.statement_start_offset/2) + 1,
+                ((CASE r.statement_end_offset
+                    WHEN -1 THEN DATALENGTH(t.text)
+                    ELSE r.statement_end_offset
+                END - r.statement_start_offset)/2) + 1) AS query_text
+        FROM sys.dm_exec_requests AS r
+        JOIN sys.dm_exec_sessions AS s ON s.session_id = r.session_id
+        OUTER APPLY sys.dm_exec_sql_text(r.sql_handle) AS t
+        WHERE s.is_user_process = 1
+          AND r.session_id <> @@SPID
+        """;
+
+    private static final String MYSQL_WAITS_CONSUMER = """
+        SELECT ENABLED
+        FROM performance_schema.setup_consumers
+        WHERE NAME = 'events_waits_current'
+        """;
+
+    private static final String MYSQL_SESSIONS = """
+        SELECT
+            t.PROCESSLIST_ID AS session_id,
+            w.EVENT_NAME AS wait_event,
+            COALESCE(s.DIGEST_TEXT, s.SQL_TEXT, t.PROCESSLIST_INFO) AS query_text
+        FROM performance_schema.threads AS t
+        LEFT JOIN performance_schema.events_waits_current AS w
+            ON w.THREAD_ID = t.THREAD_ID AND w.END_EVENT_ID IS NULL
+        LEFT JOIN performance_schema.events_statements_current AS s
+            ON s.THREAD_ID = t.THREAD_ID AND s.END_EVENT_ID IS NULL
+        WHERE t.TYPE = 'FOREGROUND'
+          AND t.PROCESSLIST_COMMAND NOT IN ('Sleep', 'Daemon', 'Binlog Dump')
+          AND t.PROCESSLIST_ID <> CONNECTION_ID()
+        """;
+}
@@ -0,0 +1,122 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.Alert;
+import com.dbmonitor.repository.AlertRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory unacknowledged alert counters keyed by (severity, connection). Updated inline
+ * on create/acknowledge/delete so badge lookups never hit the repository database, and
+ * periodically reconciled against the alerts table to absorb bulk updates and purges.
+ */
+@Service
+@Slf4j
+public class AlertCounterService {
+
+    private static final String UNKNOWN_SEVERITY = "UNKNOWN";
+
+    @Autowired
+    private AlertRepository alertRepository;
+
+    private volatile Map<CounterKey, AtomicLong> counters = new ConcurrentHashMap<>();
+    private volatile LocalDateTime lastReconciledAt;
+
+    @PostConstruct
+    public void init() {
+        reconcile();
+    }
+
+    public void onCreated(Alert alert) {
+        if (!Boolean.TRUE.equals(alert.getAcknowledged())) {
+            counters.computeIfAbsent(keyOf(alert), k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Called when a single alert leaves the unacknowledged set (acknowledged or deleted).
+     */
+    public void onCleared(Alert alert) {
+        AtomicLong counter = counters.get(keyOf(alert));
+        if (counter != null) {
+            counter.updateAndGet(v -> v > 0 ? v - 1 : 0);
+        }
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (AtomicLong counter : counters.values()) {
+            total += counter.get();
+        }
+        return total;
+    }
+
+    public Map<String, Object> getSnapshot() {
+        Map<String, Long> bySeverity = new TreeMap<>();
+        Map<Long, Long> byConnection = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<CounterKey, AtomicLong> entry : counters.entrySet()) {
+            long value = entry.getValue().get();
+            if (value == 0) {
+                continue;
+            }
+            total += value;
+            bySeverity.merge(entry.getKey().severity(), value, Long::sum);
+            if (entry.getKey().connectionId() != null) {
+                byConnection.merge(entry.getKey().connectionId(), value, Long::sum);
+            }
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("total", total);
+        snapshot.put("bySeverity", bySeverity);
+        snapshot.put("byConnection", byConnection);
+        snapshot.put("reconciledAt", lastReconciledAt);
+        return snapshot;
+    }
+
+    /**
+     * Rebuilds the counters from a single GROUP BY over unacknowledged alerts. Runs are
+     * serialized, so a scheduled run and one triggered by a bulk update cannot interleave and
+     * swap in an older snapshot over a newer one. Increments that race with the swap are
+     * picked up again on the next run.
+     */
+    @Scheduled(fixedDelayString = "${monitor.alert.counter-reconcile-ms:60000}",
+               initialDelayString = "${monitor.alert.counter-reconcile-ms:60000}")
+    public synchronized void reconcile() {
+        try {
+            Map<CounterKey, AtomicLong> fresh = new ConcurrentHashMap<>();
+            List<Object[]> rows = alertRepository.countUnacknowledgedBySeverityAndConnection();
+            for (Object[] row : rows) {
+                String severity = row[0] != null ? (String) row[0] : UNKNOWN_SEVERITY;
+                Long connectionId = (Long) row[1];
+                long count = ((Number) row[2]).longValue();
+                fresh.put(new CounterKey(severity, connectionId), new AtomicLong(count));
+            }
+            counters = fresh;
+            lastReconciledAt = LocalDateTime.now();
+            log.debug("Reconciled alert counters: {} groups", fresh.size());
+        } catch (Exception e) {
+            log.error("Failed to reconcile alert counters", e);
+        }
+    }
+
+    private static CounterKey keyOf(Alert alert) {
+        String severity = alert.getSeverity() != null ? alert.getSeverity() : UNKNOWN_SEVERITY;
+        return new CounterKey(severity, alert.getConnectionId());
+    }
+
+    private record CounterKey(String severity, Long connectionId) {
+    }
+}
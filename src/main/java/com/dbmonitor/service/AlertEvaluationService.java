@@ -0,0 +1,160 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.Alert;
+import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.DatabaseMetrics;
+import com.dbmonitor.repository.AlertRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates collected metric samples against thresholds and raises alerts attributed to
+ * the connection that produced them. Per-connection thresholds on {@link DatabaseConnection}
+ * override the global {@code monitor.alert.*} defaults.
+ */
+@Service
+@Slf4j
+public class AlertEvaluationService {
+
+    @Autowired
+    private AlertService alertService;
+
+    @Autowired
+    private AlertRepository alertRepository;
+
+    @Value("${monitor.alert.cpu-threshold:80}")
+    private double cpuThreshold;
+
+    @Value("${monitor.alert.memory-threshold:85}")
+    private double memoryThreshold;
+
+    @Value("${monitor.alert.connection-pool-threshold:90}")
+    private double connectionPoolThreshold;
+
+    @Value("${monitor.alert.waiting-threads-threshold:10}")
+    private double waitingThreadsThreshold;
+
+    @Value("${monitor.alert.suppress-minutes:5}")
+    private int suppressMinutes;
+
+    // Last time an alert was raised per (connection, type); avoids a repository lookup per sample
+    private final Map<String, LocalDateTime> lastRaised = new ConcurrentHashMap<>();
+
+    /**
+     * Evaluates a sample using the global thresholds (used for the application's own datasource).
+     */
+    public void evaluate(DatabaseMetrics metrics) {
+        evaluate(metrics, null);
+    }
+
+    /**
+     * Evaluates a sample for a monitored connection, applying its threshold overrides.
+     */
+    public void evaluate(DatabaseMetrics metrics, DatabaseConnection connection) {
+        Long connectionId = metrics.getConnectionId();
+        String prefix = metrics.getConnectionName() != null ? "[" + metrics.getConnectionName() + "] " : "";
+
+        String status = metrics.getDatabaseStatus();
+        if (status != null && status.startsWith("ERROR")) {
+            raise(connectionId, "CONNECTION_FAILED", "CRITICAL",
+                    prefix + "Database is unreachable: " + status, 0.0, 0.0);
+            return;
+        }
+
+        double cpu = threshold(connection != null ? connection.getCpuThreshold() : null, cpuThreshold);
+        if (metrics.getCpuUsage() > cpu) {
+            raise(connectionId, "CPU_HIGH", "WARNING",
+                    prefix + String.format("CPU usage is high: %.2f%%", metrics.getCpuUsage()),
+                    metrics.getCpuUsage(), cpu);
+        }
+
+        double memory = threshold(connection != null ? connection.getMemoryThreshold() : null, memoryThreshold);
+        if (metrics.getMemoryUsage() > memory) {
+            raise(connectionId, "MEMORY_HIGH", "WARNING",
+                    prefix + String.format("Memory usage is high: %.2f%%", metrics.getMemoryUsage()),
+                    metrics.getMemoryUsage(), memory);
+        }
+
+        double pool = threshold(connection != null ? connection.getConnectionPoolThreshold() : null,
+                connectionPoolThreshold);
+        if (metrics.getConnectionUsagePercent() > pool) {
+            raise(connectionId, "CONNECTION_POOL_HIGH", "CRITICAL",
+                    prefix + String.format("Connection pool usage is critical: %.2f%%", metrics.getConnectionUsagePercent()),
+                    metrics.getConnectionUsagePercent(), pool);
+        }
+
+        double waiting = threshold(connection != null ? connection.getWaitingThreadsThreshold() : null,
+                waitingThreadsThreshold);
+        if (metrics.getWaitingThreads() > waiting) {
+            raise(connectionId, "THREADS_WAITING", "WARNING",
+                    prefix + String.format("High number of threads waiting for connections: %d", metrics.getWaitingThreads()),
+                    (double) metrics.getWaitingThreads(), waiting);
+        }
+    }
+
+    /**
+     * Creates an alert unless an unacknowledged one of the same type was raised for the
+     * connection within the suppression window.
+     */
+    public void raise(Long connectionId, String type, String severity, String message, double value, double threshold) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime windowStart = now.minusMinutes(suppressMinutes);
+        String key = connectionId + ":" + type;
+
+        LocalDateTime previous = lastRaised.get(key);
+        if (previous != null && previous.isAfter(windowStart)) {
+            return;
+        }
+        // Cache miss (e.g. after restart): fall back to the indexed (connection_id, created_at) lookup
+        if (previous == null && alertRepository
+                .existsByConnectionIdAndAlertTypeAndAcknowledgedFalseAndCreatedAtAfter(connectionId, type, windowStart)) {
+            lastRaised.put(key, now);
+            return;
+        }
+
+        Alert alert = Alert.builder()
+                .connectionId(connectionId)
+                .alertType(type)
+                .severity(severity)
+                .message(message)
+                .createdAt(now)
+                .acknowledged(false)
+                .metricValue(value)
+                .threshold(threshold)
+                .build();
+        alertService.createAlert(alert);
+        lastRaised.put(key, now);
+        log.warn("Alert created for connection {}: {} - {}", connectionId, type, message);
+    }
+
+    /**
+     * Ends the suppression window of an alert that was acknowledged or deleted, so a condition
+     * that is still present raises a new alert on the next evaluation.
+     */
+    public void clearSuppression(Long connectionId, String type) {
+        lastRaised.remove(connectionId + ":" + type);
+    }
+
+    /**
+     * Same as {@link #clearSuppression} after a bulk acknowledgement; null arguments match
+     * every connection or type.
+     */
+    public void clearSuppressions(Long connectionId, String type) {
+        lastRaised.keySet().removeIf(key -> (connectionId == null || key.startsWith(connectionId + ":"))
+                && (type == null || key.endsWith(":" + type)));
+    }
+
+    public void forgetConnection(Long connectionId) {
+        lastRaised.keySet().removeIf(key -> key.startsWith(connectionId + ":"));
+    }
+
+    private static double threshold(Double override, double fallback) {
+        return override != null ? override : fallback;
+    }
+}
@@ -1,48 +1,100 @@
 package com.dbmonitor.service;
 
 import com.dbmonitor.model.Alert;
+import com.dbmonitor.model.AlertView;
+import com.dbmonitor.model.CursorPage;
 import com.dbmonitor.repository.AlertRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class AlertService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private AlertRepository alertRepository;
 
     @Autowired(required = false)
     private NotificationService notificationService;
 
-    public List<Alert> getAllAlerts() {
-        return alertRepository.findAll();
-    }
+    @Autowired
+    private RetentionService retentionService;
+
+    @Autowired
+    private AlertCounterService alertCounterService;
 
-    public List<Alert> getUnacknowledgedAlerts() {
-        return alertRepository.findByAcknowledgedFalseOrderByCreatedAtDesc();
+    // Lazy: the evaluation service creates its alerts through this service
+    @Lazy
+    @Autowired
+    private AlertEvaluationService alertEvaluationService;
+
+    /**
+     * Returns one keyset page of alerts matching the given filters, newest first.
+     * All filters and the cursor are optional.
+     */
+    public CursorPage<AlertView> getAlertPage(Long connectionId, String severity, String alertType,
+                                              Boolean acknowledged, LocalDateTime from, LocalDateTime to,
+                                              LocalDateTime cursorTime, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // Fetch one extra row to know whether another page exists
+        List<AlertView> rows = alertRepository.findPage(connectionId, severity, alertType, acknowledged,
+                from, to, cursorTime, cursorTime != null && cursorId == null ? Long.MAX_VALUE : cursorId,
+                PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, AlertView::getCreatedAt, AlertView::getId);
     }
 
-    public List<Alert> getRecentAlerts(int hours) {
-        LocalDateTime since = LocalDateTime.now().minusHours(hours);
-        return alertRepository.findByCreatedAtAfterOrderByCreatedAtDesc(since);
+    /**
+     * Passes every matching alert, newest first, to {@code sink} while reading them through a
+     * database cursor, so memory use does not depend on the number of rows.
+     *
+     * @return number of alerts passed to the sink
+     */
+    @Transactional(readOnly = true)
+    public long streamAlerts(Long connectionId, String severity, String alertType, Boolean acknowledged,
+                             LocalDateTime from, LocalDateTime to,
+                             LocalDateTime cursorTime, Long cursorId, Consumer<AlertView> sink) {
+        try (Stream<AlertView> alerts = alertRepository.streamAll(connectionId, severity, alertType, acknowledged,
+                from, to, cursorTime, cursorTime != null && cursorId == null ? Long.MAX_VALUE : cursorId)) {
+            long count = 0;
+            Iterator<AlertView> it = alerts.iterator();
+            while (it.hasNext()) {
+                sink.accept(it.next());
+                count++;
+            }
+            return count;
+        }
     }
 
-    public List<Alert> getAlertsBySeverity(String severity) {
-        return alertRepository.findBySeverityOrderByCreatedAtDesc(severity);
+    public CursorPage<AlertView> getAlertsForConnection(Long connectionId, Boolean acknowledged,
+                                                        LocalDateTime cursorTime, Long cursorId, int size) {
+        return getAlertPage(connectionId, null, null, acknowledged, null, null, cursorTime, cursorId, size);
     }
 
     public Long getUnacknowledgedCount() {
-        return alertRepository.countByAcknowledgedFalse();
+        return alertCounterService.getTotal();
+    }
+
+    public Map<String, Object> getUnacknowledgedCounters() {
+        return alertCounterService.getSnapshot();
     }
 
     public Alert createAlert(Alert alert) {
         Alert saved = alertRepository.save(alert);
+        alertCounterService.onCreated(saved);
         log.info("Alert created: {}", alert.getMessage());
         
         // Send notifications
@@ -61,33 +113,58 @@ public class AlertService {
         Optional<Alert> alertOpt = alertRepository.findById(id);
         if (alertOpt.isPresent()) {
             Alert alert = alertOpt.get();
+            boolean wasUnacknowledged = !Boolean.TRUE.equals(alert.getAcknowledged());
             alert.setAcknowledged(true);
             alert.setAcknowledgedAt(LocalDateTime.now());
             alertRepository.save(alert);
+            if (wasUnacknowledged) {
+                alertCounterService.onCleared(alert);
+            }
+            alertEvaluationService.clearSuppression(alert.getConnectionId(), alert.getAlertType());
             log.info("Alert {} acknowledged", id);
         }
     }
 
-    public void acknowledgeAllAlerts() {
-        List<Alert> unacknowledged = getUnacknowledgedAlerts();
-        LocalDateTime now = LocalDateTime.now();
-        unacknowledged.forEach(alert -> {
-            alert.setAcknowledged(true);
-            alert.setAcknowledgedAt(now);
-        });
-        alertRepository.saveAll(unacknowledged);
-        log.info("All alerts acknowledged");
+    public int acknowledgeAllAlerts() {
+        return acknowledgeAlerts(null, null, null, null, null);
+    }
+
+    /**
+     * Acknowledges all unacknowledged alerts matching the filters with a single UPDATE.
+     * Null filters match everything.
+     *
+     * @return number of alerts acknowledged
+     */
+    public int acknowledgeAlerts(Long connectionId, String severity, String alertType,
+                                 LocalDateTime from, LocalDateTime to) {
+        int updated = alertRepository.acknowledgeMatching(connectionId, severity, alertType,
+                from, to, LocalDateTime.now());
+        if (updated > 0) {
+            alertCounterService.reconcile();
+            alertEvaluationService.clearSuppressions(connectionId, alertType);
+        }
+        log.info("Acknowledged {} alerts (connection={}, severity={}, type={}, from={}, to={})",
+                updated, connectionId, severity, alertType, from, to);
+        return updated;
     }
 
     public void deleteAlert(Long id) {
-        alertRepository.deleteById(id);
+        alertRepository.findById(id).ifPresent(alert -> {
+            alertRepository.delete(alert);
+            if (!Boolean.TRUE.equals(alert.getAcknowledged())) {
+                alertCounterService.onCleared(alert);
+                alertEvaluationService.clearSuppression(alert.getConnectionId(), alert.getAlertType());
+            }
+        });
         log.info("Alert {} deleted", id);
     }
 
     public void clearOldAlerts(int days) {
         LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
-        List<Alert> oldAlerts = alertRepository.findByCreatedAtAfterOrderByCreatedAtDesc(cutoff);
-        alertRepository.deleteAll(oldAlerts);
-        log.info("Cleared alerts older than {} days", days);
+        long deleted = retentionService.purgeOlderThan("alerts", cutoff);
+        if (deleted > 0) {
+            alertCounterService.reconcile();
+        }
+        log.info("Cleared {} alerts older than {} days", deleted, days);
     }
 }
@@ -1,20 +1,28 @@
 package com.dbmonitor.service;
 
 import com.dbmonitor.model.AuditLog;
+import com.dbmonitor.model.AuditLogView;
+import com.dbmonitor.model.CursorPage;
 import com.dbmonitor.repository.AuditLogRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class AuditLogService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private AuditLogRepository auditLogRepository;
 
@@ -42,8 +50,41 @@ public class AuditLogService {
         }
     }
 
-    public List<AuditLog> getAllLogs() {
-        return auditLogRepository.findAll();
+    /**
+     * Returns one keyset page of audit entries matching the given filters, newest first.
+     * All filters and the cursor are optional.
+     */
+    public CursorPage<AuditLogView> getLogPage(Long userId, String username, String action, String status,
+                                               LocalDateTime from, LocalDateTime to,
+                                               LocalDateTime cursorTime, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // Fetch one extra row to know whether another page exists
+        List<AuditLogView> rows = auditLogRepository.findViewPage(userId, username, action, status, from, to,
+                cursorTime, cursorTime != null && cursorId == null ? Long.MAX_VALUE : cursorId,
+                PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, AuditLogView::getTimestamp, AuditLogView::getId);
+    }
+
+    /**
+     * Passes every matching entry, newest first, to {@code sink} while reading them through a
+     * database cursor.
+     *
+     * @return number of entries passed to the sink
+     */
+    @Transactional(readOnly = true)
+    public long streamLogs(Long userId, String username, String action, String status,
+                           LocalDateTime from, LocalDateTime to,
+                           LocalDateTime cursorTime, Long cursorId, Consumer<AuditLogView> sink) {
+        try (Stream<AuditLogView> logs = auditLogRepository.streamViews(userId, username, action, status, from, to,
+                cursorTime, cursorTime != null && cursorId == null ? Long.MAX_VALUE : cursorId)) {
+            long count = 0;
+            Iterator<AuditLogView> it = logs.iterator();
+            while (it.hasNext()) {
+                sink.accept(it.next());
+                count++;
+            }
+            return count;
+        }
     }
 
     public List<AuditLog> getLogsByUser(Long userId) {
@@ -0,0 +1,355 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.BlockingChain;
+import com.dbmonitor.model.DatabaseConnection;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples lock waits on every monitored connection, builds the blocker -> waiter graph and
+ * reduces it to one {@link BlockingChain} per head blocker (a session that blocks others but
+ * waits on nobody). Heads are tracked across passes, so a chain's duration keeps growing while
+ * its waiters change. Chains that grow past {@code monitor.locks.chain-alert-sessions} or last
+ * longer than {@code monitor.locks.chain-alert-seconds} raise alerts. Connections are sampled
+ * in parallel on {@code monitor.locks.threads} dedicated threads, so one slow target neither
+ * delays the others nor holds up the shared scheduler.
+ */
+@Service
+@Slf4j
+public class BlockingChainService {
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Autowired
+    private AlertEvaluationService alertEvaluationService;
+
+    @Value("${monitor.locks.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitor.locks.query-timeout-seconds:3}")
+    private int queryTimeoutSeconds;
+
+    @Value("${monitor.locks.chain-alert-seconds:30}")
+    private double chainAlertSeconds;
+
+    @Value("${monitor.locks.chain-alert-sessions:5}")
+    private int chainAlertSessions;
+
+    @Value("${monitor.locks.threads:2}")
+    private int threads;
+
+    // Latest chains per connection, longest-blocking first
+    private final Map<Long, List<BlockingChain>> chains = new ConcurrentHashMap<>();
+    // Head session -> first time it was seen blocking, per connection
+    private final Map<Long, Map<Long, LocalDateTime>> headsFirstSeen = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDateTime> lastSampled = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicBoolean> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong skippedPasses = new AtomicLong();
+
+    private ExecutorService samplers;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        samplers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "lock-sampler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        samplers.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.locks.interval-ms:5000}", initialDelay = 15_000)
+    public void sampleAll() {
+        if (!enabled) {
+            return;
+        }
+        for (DatabaseConnection conn : connectionService.getActiveConnections()) {
+            AtomicBoolean busy = inFlight.computeIfAbsent(conn.getId(), id -> new AtomicBoolean());
+            // Still waiting on the previous pass (e.g. up to the query timeout)
+            if (!busy.compareAndSet(false, true)) {
+                skippedPasses.incrementAndGet();
+                continue;
+            }
+            samplers.execute(() -> {
+                try {
+                    sample(conn);
+                } catch (Exception e) {
+                    log.debug("Lock sample failed for '{}': {}", conn.getConnectionName(), e.getMessage());
+                } finally {
+                    busy.set(false);
+                }
+            });
+        }
+    }
+
+    public List<BlockingChain> getChains(Long connectionId) {
+        return chains.getOrDefault(connectionId, List.of());
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("chainAlertSeconds", chainAlertSeconds);
+        status.put("chainAlertSessions", chainAlertSessions);
+        status.put("skippedPasses", skippedPasses.get());
+        Map<Long, Object> connections = new LinkedHashMap<>();
+        lastSampled.forEach((id, sampledAt) -> {
+            List<BlockingChain> current = getChains(id);
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("lastSampled", sampledAt);
+            info.put("chains", current.size());
+            info.put("blockedSessions", current.stream().mapToInt(BlockingChain::getBlockedSessions).sum());
+            connections.put(id, info);
+        });
+        status.put("connections", connections);
+        return status;
+    }
+
+    public void forgetConnection(Long connectionId) {
+        chains.remove(connectionId);
+        headsFirstSeen.remove(connectionId);
+        lastSampled.remove(connectionId);
+        inFlight.remove(connectionId);
+    }
+
+    /**
+     * Runs one pass for a connection and returns its chains.
+     */
+    public List<BlockingChain> sample(DatabaseConnection conn) throws SQLException {
+        String type = conn.getDatabaseType() != null ? conn.getDatabaseType().toUpperCase().replace(" ", "") : "";
+        if (!type.equals("SQLSERVER") && !type.equals("MYSQL") && !type.equals("POSTGRESQL")) {
+            return List.of();
+        }
+
+        List<Edge> edges = new ArrayList<>();
+        DataSource dataSource = connectionService.getDataSource(conn.getId());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(lockWaitsQuery(type, connection))) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    edges.add(new Edge(rs.getLong("waiter_id"), rs.getLong("blocker_id"),
+                            rs.getDouble("wait_seconds"), rs.getString("wait_type"),
+                            rs.getString("wait_resource"), rs.getString("waiter_query"),
+                            rs.getString("blocker_query")));
+                }
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<BlockingChain> result = buildChains(conn.getId(), edges, now);
+        chains.put(conn.getId(), result);
+        lastSampled.put(conn.getId(), now);
+        for (BlockingChain chain : result) {
+            checkThresholds(conn, chain);
+        }
+        return result;
+    }
+
+    private static String lockWaitsQuery(String type, Connection connection) throws SQLException {
+        return switch (type) {
+            case "SQLSERVER" -> SQLSERVER_LOCK_WAITS;
+            case "MYSQL" -> MYSQL_LOCK_WAITS;
+            // pg_locks.waitstart is new in PostgreSQL 14
+            default -> connection.getMetaData().getDatabaseMajorVersion() >= 14
+                    ? POSTGRESQL_LOCK_WAITS : POSTGRESQL_13_LOCK_WAITS;
+        };
+    }
+
+    private List<BlockingChain> buildChains(Long connectionId, List<Edge> edges, LocalDateTime now) {
+        Map<Long, List<Edge>> waitersByBlocker = new HashMap<>();
+        Map<Long, String> blockerQueries = new HashMap<>();
+        Set<Long> waiting = new HashSet<>();
+        for (Edge edge : edges) {
+            // Self-edges appear for parallel workers of one SQL Server request
+            if (edge.waiterId() == edge.blockerId()) {
+                continue;
+            }
+            waitersByBlocker.computeIfAbsent(edge.blockerId(), k -> new ArrayList<>()).add(edge);
+            waiting.add(edge.waiterId());
+            if (edge.blockerQuery() != null) {
+                blockerQueries.putIfAbsent(edge.blockerId(), edge.blockerQuery());
+            }
+        }
+
+        Map<Long, LocalDateTime> firstSeen = headsFirstSeen.computeIfAbsent(connectionId, k -> new ConcurrentHashMap<>());
+        Set<Long> heads = new HashSet<>(waitersByBlocker.keySet());
+        heads.removeAll(waiting);
+        // Heads that stopped blocking start from scratch if they block again
+        firstSeen.keySet().retainAll(heads);
+
+        List<BlockingChain> result = new ArrayList<>();
+        for (Long head : heads) {
+            LocalDateTime since = firstSeen.computeIfAbsent(head, k -> now);
+            List<BlockingChain.Waiter> waiters = new ArrayList<>();
+            Set<Long> visited = new HashSet<>();
+            visited.add(head);
+            ArrayDeque<Edge> queue = new ArrayDeque<>(waitersByBlocker.get(head));
+            Map<Long, Integer> depths = new HashMap<>();
+            depths.put(head, 0);
+            int depth = 0;
+            double maxWait = 0;
+            while (!queue.isEmpty()) {
+                Edge edge = queue.poll();
+                if (!visited.add(edge.waiterId())) {
+                    continue;
+                }
+                int level = depths.get(edge.blockerId()) + 1;
+                depths.put(edge.waiterId(), level);
+                depth = Math.max(depth, level);
+                maxWait = Math.max(maxWait, edge.waitSeconds());
+                waiters.add(BlockingChain.Waiter.builder()
+                        .sessionId(edge.waiterId())
+                        .blockedBy(edge.blockerId())
+                        .depth(level)
+                        .waitSeconds(edge.waitSeconds())
+                        .waitType(edge.waitType())
+                        .waitResource(edge.waitResource())
+                        .queryText(edge.waiterQuery())
+                        .build());
+                queue.addAll(waitersByBlocker.getOrDefault(edge.waiterId(), List.of()));
+            }
+            // Waits can predate the first pass that saw this head
+            double duration = Math.max(Duration.between(since, now).toMillis() / 1000.0, maxWait);
+            result.add(BlockingChain.builder()
+                    .connectionId(connectionId)
+                    .headSessionId(head)
+                    .headQuery(blockerQueries.get(head))
+                    .blockedSessions(waiters.size())
+                    .depth(depth)
+                    .maxWaitSeconds(maxWait)
+                    .firstSeenAt(since)
+                    .durationSeconds(duration)
+                    .waiters(waiters)
+                    .build());
+        }
+        if (heads.isEmpty() && !waiting.isEmpty()) {
+            // Every waiter is also blocked: a deadlock the engine has not resolved yet
+            log.debug("Lock wait cycle without a head blocker on connection {}: {}", connectionId, waiting);
+        }
+        result.sort(Comparator.comparingDouble(BlockingChain::getDurationSeconds).reversed());
+        return result;
+    }
+
+    private void checkThresholds(DatabaseConnection conn, BlockingChain chain) {
+        String prefix = "[" + conn.getConnectionName() + "] ";
+        if (chain.getBlockedSessions() >= chainAlertSessions) {
+            alertEvaluationService.raise(conn.getId(), "BLOCKING_CHAIN_SIZE", "CRITICAL",
+                    prefix + String.format("Session %d is blocking %d sessions (chain depth %d)",
+                            chain.getHeadSessionId(), chain.getBlockedSessions(), chain.getDepth()),
+                    chain.getBlockedSessions(), chainAlertSessions);
+        }
+        if (chain.getDurationSeconds() >= chainAlertSeconds) {
+            alertEvaluationService.raise(conn.getId(), "BLOCKING_CHAIN_DURATION", "WARNING",
+                    prefix + String.format("Session %d has been blocking %d sessions for %.0f seconds",
+                            chain.getHeadSessionId(), chain.getBlockedSessions(), chain.getDurationSeconds()),
+                    chain.getDurationSeconds(), chainAlertSeconds);
+        }
+    }
+
+    private record Edge(long waiterId, long blockerId, double waitSeconds, String waitType,
+                        String waitResource, String waiterQuery, String blockerQuery) {
+    }
+
+    // Wait time from when the lock wait began; state_change (the current statement's start)
+    // covers the short moment before waitstart is filled in
+    private static final String POSTGRESQL_LOCK_WAITS = """
+        SELECT
+            w.pid AS waiter_id,
+            b.pid AS blocker_id,
+            EXTRACT(EPOCH FROM (now() - COALESCE(
+                (SELECT min(l.waitstart) FROM pg_locks AS l WHERE l.pid = w.pid AND NOT l.granted),
+                w.state_change))) AS wait_seconds,
+            w.wait_event AS wait_type,
+            w.wait_event_type AS wait_resource,
+            w.query AS waiter_query,
+            b.query AS blocker_query
+        FROM pg_stat_activity AS w
+        CROSS JOIN LATERAL unnest(pg_blocking_pids(w.pid)) AS blocker(pid)
+        JOIN pg_stat_activity AS b ON b.pid = blocker.pid
+        WHERE w.wait_event_type = 'Lock'
+        """;
+
+    // Before PostgreSQL 14 the lock wait start is not exposed; wait_seconds is the age of the
+    // waiting statement (state_change), an upper bound on the lock wait
+    private static final String POSTGRESQL_13_LOCK_WAITS = """
+        SELECT
+            w.pid AS waiter_id,
+            b.pid AS blocker_id,
+            EXTRACT(EPOCH FROM (now() - w.state_change)) AS wait_seconds,
+            w.wait_event AS wait_type,
+            w.wait_event_type AS wait_resource,
+            w.query AS waiter_query,
+            b.query AS blocker_query
+        FROM pg_stat_activity AS w
+        CROSS JOIN LATERAL unnest(pg_blocking_pids(w.pid)) AS blocker(pid)
+        JOIN pg_stat_activity AS b ON b.pid = blocker.pid
+        WHERE w.wait_event_type = 'Lock'
+        """;
+
+    private static final String SQLSERVER_LOCK_WAITS = """
+        SELECT
+            r.session_id AS waiter_id,
+            r.blocking_session_id AS blocker_id,
+            r.wait_time / 1000.0 AS wait_seconds,
+            r.wait_type,
+            r.wait_resource,
+            wt.text AS waiter_query,
+            bt.text AS blocker_query
+        FROM sys.dm_exec_requests AS r
+        OUTER APPLY sys.dm_exec_sql_text(r.sql_handle) AS wt
+        LEFT JOIN sys.dm_exec_connections AS c ON c.session_id = r.blocking_session_id
+        OUTER APPLY sys.dm_exec_sql_text(c.most_recent_sql_handle) AS bt
+        WHERE r.blocking_session_id > 0
+        """;
+
+    private static final String MYSQL_LOCK_WAITS = """
+        SELECT
+            rt.PROCESSLIST_ID AS waiter_id,
+            bt.PROCESSLIST_ID AS blocker_id,
+            COALESCE(TIMESTAMPDIFF(SECOND, wtx.trx_wait_started, NOW()), 0) AS wait_seconds,
+            w.ENGINE AS wait_type,
+            wtx.trx_requested_lock_id AS wait_resource,
+            wtx.trx_query AS waiter_query,
+            btx.trx_query AS blocker_query
+        FROM performance_schema.data_lock_waits AS w
+        JOIN performance_schema.threads AS rt ON rt.THREAD_ID = w.REQUESTING_THREAD_ID
+        JOIN performance_schema.threads AS bt ON bt.THREAD_ID = w.BLOCKING_THREAD_ID
+        LEFT JOIN information_schema.INNODB_TRX AS wtx ON wtx.trx_mysql_thread_id = rt.PROCESSLIST_ID
+        LEFT JOIN information_schema.INNODB_TRX AS btx ON btx.trx_mysql_thread_id = bt.PROCESSLIST_ID
+        """;
+}
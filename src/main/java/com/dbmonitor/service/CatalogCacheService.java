@@ -0,0 +1,408 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.CatalogIndex;
+import com.dbmonitor.model.DatabaseConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-connection cache of the indexes defined in each monitored database. The catalog is read
+ * with one query per engine instead of a metadata call per table. Afterwards a cheap probe
+ * returns one signature per table, run at most every {@code monitor.catalog.probe-interval-seconds}
+ * when the cache is used, and only tables whose signature changed (DDL) are read again.
+ */
+@Service
+@Slf4j
+public class CatalogCacheService {
+
+    private static final String FILTER = "/*filter*/";
+    private static final int IDS_PER_QUERY = 500;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Value("${monitor.catalog.probe-interval-seconds:60}")
+    private int probeIntervalSeconds;
+
+    @Value("${monitor.catalog.query-timeout-seconds:30}")
+    private int queryTimeoutSeconds;
+
+    // More changed tables than this are cheaper to read with one full catalog query
+    @Value("${monitor.catalog.max-incremental-tables:200}")
+    private int maxIncrementalTables;
+
+    private final Map<Long, Catalog> catalogs = new ConcurrentHashMap<>();
+    private final Map<Long, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes of every table, keyed by lower-case table name (tables of the same name in
+     * different schemas share a key).
+     */
+    public Map<String, List<CatalogIndex>> getIndexesByTable(Long connectionId) throws SQLException {
+        return catalog(connectionId).byTableName();
+    }
+
+    /**
+     * Indexes of one table; {@code tableName} may be qualified as {@code schema.table}.
+     */
+    public List<CatalogIndex> getIndexes(Long connectionId, String tableName) throws SQLException {
+        int dot = tableName.lastIndexOf('.');
+        String table = tableName.substring(dot + 1);
+        String schema = dot > 0 ? tableName.substring(0, dot) : null;
+        List<CatalogIndex> indexes = catalog(connectionId).byTableName()
+                .getOrDefault(table.toLowerCase(), Collections.emptyList());
+        if (schema == null) {
+            return indexes;
+        }
+        return indexes.stream().filter(index -> schema.equalsIgnoreCase(index.getSchemaName())).toList();
+    }
+
+    /**
+     * Makes the next use of the cache probe for changes, e.g. after an index was built.
+     */
+    public void invalidate(Long connectionId) {
+        catalogs.computeIfPresent(connectionId, (id, catalog) -> catalog.probed(0, catalog.lastRefresh(), 0));
+    }
+
+    public Map<Long, Map<String, Object>> getStatus() {
+        Map<Long, Map<String, Object>> status = new LinkedHashMap<>();
+        catalogs.forEach((id, catalog) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("tables", catalog.byTableId().size());
+            entry.put("indexes", catalog.byTableId().values().stream().mapToInt(List::size).sum());
+            entry.put("loadedAt", catalog.loadedAt());
+            entry.put("lastRefresh", catalog.lastRefresh());
+            entry.put("tablesReloaded", catalog.tablesReloaded());
+            entry.put("refreshMs", catalog.refreshMs());
+            status.put(id, entry);
+        });
+        return status;
+    }
+
+    public void forgetConnection(Long connectionId) {
+        catalogs.remove(connectionId);
+        locks.remove(connectionId);
+    }
+
+    private Catalog catalog(Long connectionId) throws SQLException {
+        Catalog catalog = catalogs.get(connectionId);
+        if (isFresh(catalog)) {
+            return catalog;
+        }
+        synchronized (locks.computeIfAbsent(connectionId, id -> new Object())) {
+            catalog = catalogs.get(connectionId);
+            if (isFresh(catalog)) {
+                return catalog;
+            }
+            DatabaseConnection conn = connectionService.getConnectionById(connectionId)
+                    .orElseThrow(() -> new IllegalArgumentException("Connection not found: " + connectionId));
+            Catalog refreshed = refresh(conn, catalog);
+            catalogs.put(connectionId, refreshed);
+            return refreshed;
+        }
+    }
+
+    private boolean isFresh(Catalog catalog) {
+        return catalog != null && System.currentTimeMillis() - catalog.probedAt() < probeIntervalSeconds * 1000L;
+    }
+
+    private Catalog refresh(DatabaseConnection conn, Catalog previous) throws SQLException {
+        long started = System.currentTimeMillis();
+        String normalizedType = conn.getDatabaseType().toUpperCase().replace(" ", "");
+        CatalogQueries queries = switch (normalizedType) {
+            case "POSTGRESQL" -> new CatalogQueries(POSTGRESQL_PROBE, POSTGRESQL_INDEXES, "t.oid::text");
+            case "SQLSERVER" -> new CatalogQueries(SQLSERVER_PROBE, SQLSERVER_INDEXES,
+                    "CONVERT(varchar(11), t.object_id)");
+            case "MYSQL" -> new CatalogQueries(MYSQL_PROBE, MYSQL_INDEXES, "CONCAT(TABLE_SCHEMA, '.', TABLE_NAME)");
+            default -> null;
+        };
+
+        DataSource dataSource = connectionService.getDataSource(conn.getId());
+        try (Connection connection = dataSource.getConnection()) {
+            if (queries == null) {
+                // No catalog query for this engine: read driver metadata, still only once per interval
+                Map<String, List<CatalogIndex>> indexes = readMetaData(connection);
+                return Catalog.of(indexes, Collections.emptyMap(), started, "FULL", indexes.size());
+            }
+
+            Map<String, String> signatures = readSignatures(connection, queries.probe());
+            if (previous == null || previous.signatures().isEmpty()) {
+                Map<String, List<CatalogIndex>> indexes = readIndexes(connection, queries, null);
+                log.debug("Loaded catalog of '{}': {} tables with indexes in {} ms", conn.getConnectionName(),
+                        indexes.size(), System.currentTimeMillis() - started);
+                return Catalog.of(indexes, signatures, started, "FULL", indexes.size());
+            }
+
+            List<String> changed = new ArrayList<>();
+            signatures.forEach((tableId, signature) -> {
+                if (!Objects.equals(signature, previous.signatures().get(tableId))) {
+                    changed.add(tableId);
+                }
+            });
+            Set<String> removed = new HashSet<>(previous.signatures().keySet());
+            removed.removeAll(signatures.keySet());
+            if (changed.isEmpty() && removed.isEmpty()) {
+                return previous.probed(started, "UNCHANGED", System.currentTimeMillis() - started);
+            }
+            if (changed.size() > maxIncrementalTables) {
+                Map<String, List<CatalogIndex>> indexes = readIndexes(connection, queries, null);
+                return Catalog.of(indexes, signatures, started, "FULL", indexes.size());
+            }
+
+            Map<String, List<CatalogIndex>> indexes = new HashMap<>(previous.byTableId());
+            indexes.keySet().removeAll(removed);
+            indexes.keySet().removeAll(changed);
+            for (int from = 0; from < changed.size(); from += IDS_PER_QUERY) {
+                indexes.putAll(readIndexes(connection, queries,
+                        changed.subList(from, Math.min(changed.size(), from + IDS_PER_QUERY))));
+            }
+            log.debug("Catalog of '{}' changed: {} tables reloaded, {} dropped", conn.getConnectionName(),
+                    changed.size(), removed.size());
+            return Catalog.of(indexes, signatures, started, "INCREMENTAL", changed.size());
+        }
+    }
+
+    private Map<String, String> readSignatures(Connection connection, String sql) throws SQLException {
+        Map<String, String> signatures = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    signatures.put(rs.getString("table_id"), rs.getString("signature"));
+                }
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * Reads index definitions, of all tables or only of {@code tableIds}.
+     */
+    private Map<String, List<CatalogIndex>> readIndexes(Connection connection, CatalogQueries queries,
+                                                        List<String> tableIds) throws SQLException {
+        String filter = "";
+        if (tableIds != null) {
+            filter = "AND " + queries.tableIdExpression() + " IN ("
+                    + String.join(", ", Collections.nCopies(tableIds.size(), "?")) + ")";
+        }
+        Map<String, CatalogIndex> byName = new LinkedHashMap<>();
+        Map<String, List<CatalogIndex>> byTableId = new HashMap<>();
+
+        try (PreparedStatement stmt = connection.prepareStatement(queries.indexes().replace(FILTER, filter))) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            stmt.setFetchSize(1000);
+            if (tableIds != null) {
+                for (int i = 0; i < tableIds.size(); i++) {
+                    stmt.setString(i + 1, tableIds.get(i));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String tableId = rs.getString("table_id");
+                    String key = tableId + "\u0000" + rs.getString("index_name");
+                    CatalogIndex index = byName.get(key);
+                    if (index == null) {
+                        index = CatalogIndex.builder()
+                                .schemaName(rs.getString("schema_name"))
+                                .tableName(rs.getString("table_name"))
+                                .indexName(rs.getString("index_name"))
+                                .unique(rs.getBoolean("is_unique"))
+                                .primaryKey(rs.getBoolean("is_primary"))
+                                .partial(rs.getBoolean("is_partial"))
+                                .build();
+                        byName.put(key, index);
+                        byTableId.computeIfAbsent(tableId, id -> new ArrayList<>()).add(index);
+                    }
+                    String column = rs.getString("column_name");
+                    if (rs.getBoolean("is_included")) {
+                        index.getIncludedColumns().add(column);
+                    } else {
+                        index.getColumns().add(column);
+                    }
+                }
+            }
+        }
+        return byTableId;
+    }
+
+    // approximate=true so drivers don't compute statistics just to list indexes
+    private Map<String, List<CatalogIndex>> readMetaData(Connection connection) throws SQLException {
+        Map<String, List<CatalogIndex>> byTableId = new HashMap<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet tables = metaData.getTables(null, null, "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                String schema = tables.getString("TABLE_SCHEM");
+                String table = tables.getString("TABLE_NAME");
+                Map<String, CatalogIndex> indexes = new LinkedHashMap<>();
+                try (ResultSet info = metaData.getIndexInfo(tables.getString("TABLE_CAT"), schema, table, false, true)) {
+                    while (info.next()) {
+                        String indexName = info.getString("INDEX_NAME");
+                        String column = info.getString("COLUMN_NAME");
+                        if (indexName == null || column == null) {
+                            continue;
+                        }
+                        CatalogIndex index = indexes.get(indexName);
+                        if (index == null) {
+                            index = CatalogIndex.builder()
+                                    .schemaName(schema)
+                                    .tableName(table)
+                                    .indexName(indexName)
+                                    .unique(!info.getBoolean("NON_UNIQUE"))
+                                    .partial(info.getString("FILTER_CONDITION") != null)
+                                    .build();
+                            indexes.put(indexName, index);
+                        }
+                        index.getColumns().add(column);
+                    }
+                }
+                if (!indexes.isEmpty()) {
+                    byTableId.put(schema + "." + table, new ArrayList<>(indexes.values()));
+                }
+            }
+        }
+        return byTableId;
+    }
+
+    private record CatalogQueries(String probe, String indexes, String tableIdExpression) {
+    }
+
+    private record Catalog(Map<String, List<CatalogIndex>> byTableId, Map<String, String> signatures,
+                           Map<String, List<CatalogIndex>> byTableName, LocalDateTime loadedAt, long probedAt,
+                           String lastRefresh, int tablesReloaded, long refreshMs) {
+
+        static Catalog of(Map<String, List<CatalogIndex>> byTableId, Map<String, String> signatures,
+                          long started, String refresh, int tablesReloaded) {
+            Map<String, List<CatalogIndex>> byTableName = new HashMap<>();
+            byTableId.values().forEach(indexes -> indexes.forEach(index -> byTableName
+                    .computeIfAbsent(index.getTableName().toLowerCase(), name -> new ArrayList<>()).add(index)));
+            return new Catalog(byTableId, signatures, byTableName, LocalDateTime.now(), started, refresh,
+                    tablesReloaded, System.currentTimeMillis() - started);
+        }
+
+        Catalog probed(long at, String refresh, long ms) {
+            return new Catalog(byTableId, signatures, byTableName, loadedAt, at, refresh, 0, ms);
+        }
+    }
+
+    // A new index id changes the signature, so CREATE, DROP and REINDEX CONCURRENTLY are seen;
+    // the validity flag marks when a concurrent build completes
+    // pg_get_indexdef spells out the current schema, table, index and column names, so renaming
+    // any of them changes the signature even though every OID stays the same
+    private static final String POSTGRESQL_PROBE = """
+        SELECT
+            t.oid::text AS table_id,
+            n.nspname || '.' || t.relname || ':' || md5(string_agg(
+                i.indexrelid::text || CASE WHEN i.indisvalid THEN '' ELSE '!' END || pg_get_indexdef(i.indexrelid),
+                ',' ORDER BY i.indexrelid)) AS signature
+        FROM pg_index AS i
+        JOIN pg_class AS t ON t.oid = i.indrelid
+        JOIN pg_namespace AS n ON n.oid = t.relnamespace
+        WHERE n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%'
+        GROUP BY t.oid, n.nspname, t.relname
+        """;
+
+    // Positions past indnkeyatts are INCLUDE columns; attnum 0 is an expression. Indexes still
+    // being built concurrently (or left over by a failed build) are invalid and not used by plans
+    private static final String POSTGRESQL_INDEXES = """
+        SELECT
+            t.oid::text AS table_id,
+            n.nspname AS schema_name,
+            t.relname AS table_name,
+            ic.relname AS index_name,
+            i.indisunique AS is_unique,
+            i.indisprimary AS is_primary,
+            i.indpred IS NOT NULL AS is_partial,
+            k.ord > i.indnkeyatts AS is_included,
+            COALESCE(a.attname, pg_get_indexdef(i.indexrelid, k.ord::int, true)) AS column_name
+        FROM pg_index AS i
+        JOIN pg_class AS t ON t.oid = i.indrelid
+        JOIN pg_class AS ic ON ic.oid = i.indexrelid
+        JOIN pg_namespace AS n ON n.oid = t.relnamespace
+        CROSS JOIN LATERAL unnest(i.indkey) WITH ORDINALITY AS k(attnum, ord)
+        LEFT JOIN pg_attribute AS a ON a.attrelid = t.oid AND a.attnum = k.attnum AND k.attnum > 0
+        WHERE n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%'
+          AND i.indisvalid
+        /*filter*/
+        ORDER BY t.oid, ic.relname, k.ord
+        """;
+
+    // modify_date of a table moves when an index on it is created, altered or dropped
+    private static final String SQLSERVER_PROBE = """
+        SELECT
+            CONVERT(varchar(11), t.object_id) AS table_id,
+            CONCAT(t.name, ':', CONVERT(varchar(33), t.modify_date, 126)) AS signature
+        FROM sys.tables AS t
+        WHERE t.is_ms_shipped = 0
+        """;
+
+    // Heaps (type 0) have no columns to list
+    private static final String SQLSERVER_INDEXES = """
+        SELECT
+            CONVERT(varchar(11), t.object_id) AS table_id,
+            s.name AS schema_name,
+            t.name AS table_name,
+            i.name AS index_name,
+            i.is_unique,
+            i.is_primary_key AS is_primary,
+            i.has_filter AS is_partial,
+            ic.is_included_column AS is_included,
+            c.name AS column_name
+        FROM sys.indexes AS i
+        JOIN sys.tables AS t ON t.object_id = i.object_id
+        JOIN sys.schemas AS s ON s.schema_id = t.schema_id
+        JOIN sys.index_columns AS ic ON ic.object_id = i.object_id AND ic.index_id = i.index_id
+        JOIN sys.columns AS c ON c.object_id = ic.object_id AND c.column_id = ic.column_id
+        WHERE t.is_ms_shipped = 0 AND i.type > 0 AND i.is_hypothetical = 0
+        /*filter*/
+        ORDER BY t.object_id, i.name, ic.is_included_column, ic.key_ordinal, ic.index_column_id
+        """;
+
+    // Order-independent checksum of every index column; no GROUP_CONCAT length limit to hit
+    private static final String MYSQL_PROBE = """
+        SELECT
+            CONCAT(TABLE_SCHEMA, '.', TABLE_NAME) AS table_id,
+            CONCAT(COUNT(*), ':', SUM(CRC32(CONCAT_WS(':', INDEX_NAME, COLUMN_NAME, SEQ_IN_INDEX, NON_UNIQUE))))
+                AS signature
+        FROM information_schema.STATISTICS
+        WHERE TABLE_SCHEMA NOT IN ('mysql', 'information_schema', 'performance_schema', 'sys')
+        GROUP BY TABLE_SCHEMA, TABLE_NAME
+        """;
+
+    private static final String MYSQL_INDEXES = """
+        SELECT
+            CONCAT(TABLE_SCHEMA, '.', TABLE_NAME) AS table_id,
+            TABLE_SCHEMA AS schema_name,
+            TABLE_NAME AS table_name,
+            INDEX_NAME AS index_name,
+            NON_UNIQUE = 0 AS is_unique,
+            INDEX_NAME = 'PRIMARY' AS is_primary,
+            0 AS is_partial,
+            0 AS is_included,
+            COALESCE(COLUMN_NAME, '(expression)') AS column_name
+        FROM information_schema.STATISTICS
+        WHERE TABLE_SCHEMA NOT IN ('mysql', 'information_schema', 'performance_schema', 'sys')
+        /*filter*/
+        ORDER BY TABLE_SCHEMA, TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX
+        """;
+}
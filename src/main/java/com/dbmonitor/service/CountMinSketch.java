@@ -0,0 +1,55 @@
+package com.dbmonitor.service;
+
+/**
+ * Count-Min sketch over 64-bit keys with weighted updates. {@link #estimate} never
+ * underestimates and overestimates by at most e/width of the total weight with
+ * probability 1 - e^-depth.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final double[][] table;
+    private final long[] seeds;
+
+    public CountMinSketch(int depth, int width) {
+        int size = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.depth = depth;
+        this.mask = size - 1;
+        this.table = new double[depth][size];
+        this.seeds = new long[depth];
+        for (int i = 0; i < depth; i++) {
+            seeds[i] = 0x9E3779B97F4A7C15L * (i + 1);
+        }
+    }
+
+    /**
+     * Adds {@code weight} for {@code key} and returns the updated estimate.
+     */
+    public double add(long key, double weight) {
+        double estimate = Double.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int index = index(key, i);
+            table[i][index] += weight;
+            estimate = Math.min(estimate, table[i][index]);
+        }
+        return estimate;
+    }
+
+    public double estimate(long key) {
+        double estimate = Double.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, table[i][index(key, i)]);
+        }
+        return estimate;
+    }
+
+    private int index(long key, int row) {
+        // SplitMix64 finalizer so fingerprints that share low bits spread across columns
+        long h = key ^ seeds[row];
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h = h ^ (h >>> 31);
+        return (int) h & mask;
+    }
+}
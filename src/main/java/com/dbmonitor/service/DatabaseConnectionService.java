@@ -32,6 +32,9 @@ public class DatabaseConnectionService {
     // Cache for data sources
     private final Map<Long, HikariDataSource> dataSourceCache = new ConcurrentHashMap<>();
 
+    // Fingerprint dialect per connection, looked up on every ingested statement
+    private final Map<Long, SqlFingerprinter.Dialect> dialectCache = new ConcurrentHashMap<>();
+
     public List<DatabaseConnection> getAllConnections() {
         return connectionRepository.findAll();
     }
@@ -44,6 +47,20 @@ public class DatabaseConnectionService {
         return connectionRepository.findById(id);
     }
 
+    /**
+     * SQL dialect used to fingerprint statements of a connection; GENERIC when it is unknown.
+     * Unknown ids are cached too, so clients reporting for a missing connection do not cost a
+     * lookup per statement; saving or deleting a connection evicts its entry.
+     */
+    public SqlFingerprinter.Dialect getDialect(Long connectionId) {
+        if (connectionId == null) {
+            return SqlFingerprinter.Dialect.GENERIC;
+        }
+        return dialectCache.computeIfAbsent(connectionId, id -> connectionRepository.findById(id)
+                .map(connection -> SqlFingerprinter.Dialect.of(connection.getDatabaseType()))
+                .orElse(SqlFingerprinter.Dialect.GENERIC));
+    }
+
     public Optional<DatabaseConnection> getConnectionByName(String name) {
         return connectionRepository.findByConnectionName(name);
     }
@@ -64,6 +81,7 @@ public class DatabaseConnectionService {
         }
 
         DatabaseConnection saved = connectionRepository.save(connection);
+        dialectCache.remove(saved.getId());
         log.info("Database connection saved: {}", saved.getConnectionName());
         return saved;
     }
@@ -76,6 +94,7 @@ public class DatabaseConnectionService {
             log.info("Closed data source for connection ID: {}", id);
         }
         connectionRepository.deleteById(id);
+        dialectCache.remove(id);
         log.info("Deleted connection ID: {}", id);
     }
 
@@ -1,13 +1,10 @@
 package com.dbmonitor.service;
 
-import com.dbmonitor.model.Alert;
 import com.dbmonitor.model.DatabaseMetrics;
-import com.dbmonitor.repository.AlertRepository;
 import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.HikariPoolMXBean;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -29,17 +26,11 @@ public class DatabaseMonitoringService {
     private DataSource dataSource;
 
     @Autowired
-    private AlertService alertService;
+    private AlertEvaluationService alertEvaluationService;
 
     @Autowired(required = false)
     private TimeSeriesPersistenceService timeSeriesService;
 
-    @Value("${monitor.alert.cpu-threshold:80}")
-    private double cpuThreshold;
-
-    @Value("${monitor.alert.memory-threshold:85}")
-    private double memoryThreshold;
-
     private final List<DatabaseMetrics> metricsHistory = new ArrayList<>();
     private static final int MAX_HISTORY_SIZE = 100;
 
@@ -68,7 +59,7 @@ public class DatabaseMonitoringService {
             }
 
             // Check for alerts
-            checkAndCreateAlerts(metrics);
+            alertEvaluationService.evaluate(metrics);
             
             log.debug("Collected metrics: Active Connections={}, CPU={}%, Memory={}%",
                     metrics.getActiveConnections(), 
@@ -140,60 +131,6 @@ public class DatabaseMonitoringService {
         return builder.build();
     }
 
-    private void checkAndCreateAlerts(DatabaseMetrics metrics) {
-        // Check CPU usage
-        if (metrics.getCpuUsage() > cpuThreshold) {
-            createAlert("CPU_HIGH", "WARNING", 
-                    String.format("CPU usage is high: %.2f%%", metrics.getCpuUsage()),
-                    metrics.getCpuUsage(), cpuThreshold);
-        }
-
-        // Check memory usage
-        if (metrics.getMemoryUsage() > memoryThreshold) {
-            createAlert("MEMORY_HIGH", "WARNING",
-                    String.format("Memory usage is high: %.2f%%", metrics.getMemoryUsage()),
-                    metrics.getMemoryUsage(), memoryThreshold);
-        }
-
-        // Check connection pool
-        if (metrics.getConnectionUsagePercent() > 90) {
-            createAlert("CONNECTION_POOL_HIGH", "CRITICAL",
-                    String.format("Connection pool usage is critical: %.2f%%", metrics.getConnectionUsagePercent()),
-                    metrics.getConnectionUsagePercent(), 90.0);
-        }
-
-        // Check waiting threads
-        if (metrics.getWaitingThreads() > 10) {
-            createAlert("THREADS_WAITING", "WARNING",
-                    String.format("High number of threads waiting for connections: %d", metrics.getWaitingThreads()),
-                    (double) metrics.getWaitingThreads(), 10.0);
-        }
-    }
-
-    private void createAlert(String type, String severity, String message, double value, double threshold) {
-        // Check if similar alert already exists in last 5 minutes
-        LocalDateTime fiveMinutesAgo = LocalDateTime.now().minusMinutes(5);
-        List<Alert> recentAlerts = alertService.getRecentAlerts(0);
-        
-        boolean alertExists = recentAlerts.stream()
-                .filter(a -> a.getCreatedAt().isAfter(fiveMinutesAgo))
-                .anyMatch(a -> a.getAlertType().equals(type) && !a.getAcknowledged());
-        
-        if (!alertExists) {
-            Alert alert = Alert.builder()
-                    .alertType(type)
-                    .severity(severity)
-                    .message(message)
-                    .createdAt(LocalDateTime.now())
-                    .acknowledged(false)
-                    .metricValue(value)
-                    .threshold(threshold)
-                    .build();
-            alertService.createAlert(alert);
-            log.warn("Alert created: {} - {}", type, message);
-        }
-    }
-
     public List<DatabaseMetrics> getMetricsHistory() {
         synchronized (metricsHistory) {
             return new ArrayList<>(metricsHistory);
@@ -0,0 +1,279 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.service.SqlPredicateParser.Predicate;
+import com.dbmonitor.service.SqlPredicateParser.PredicateKind;
+import com.dbmonitor.service.SqlPredicateParser.QueryShape;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proposes composite indexes for a workload. Each query block of each statement yields one
+ * candidate per table, keyed in the order a B-tree serves best: columns compared with
+ * constants, then join columns, then IN lists, then the sort columns, then one range column.
+ * When the block reads few enough other columns of the table they are added as included
+ * columns so the index covers it. Candidates whose key is a prefix of another candidate's key on the same table are merged
+ * into it, and every candidate is weighted by the total time of the distinct statements it
+ * serves.
+ */
+public final class IndexAdvisor {
+
+    /**
+     * One statement of the workload with the time spent in it over the analyzed window.
+     */
+    public record Statement(long fingerprint, String sql, long calls, double totalTimeMs) {
+    }
+
+    public static final class Candidate {
+
+        private final String table;
+        private final List<String> keyColumns;
+        private List<String> includedColumns;
+        private final String access;
+        private final Set<String> quotedNames = new LinkedHashSet<>();
+        private final Map<Long, Statement> statements = new LinkedHashMap<>();
+
+        Candidate(String table, List<String> keyColumns, List<String> includedColumns, String access) {
+            this.table = table;
+            this.keyColumns = keyColumns;
+            this.includedColumns = includedColumns;
+            this.access = access;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public List<String> getKeyColumns() {
+            return keyColumns;
+        }
+
+        public List<String> getIncludedColumns() {
+            return includedColumns;
+        }
+
+        // How the leading statement uses the key, e.g. "equality on a, b; sort on c"
+        public String getAccess() {
+            return access;
+        }
+
+        /**
+         * Whether the table, a part of its qualified name or a column was written as a quoted
+         * identifier, so its case must be kept.
+         */
+        public boolean isQuoted(String name) {
+            return quotedNames.contains(name);
+        }
+
+        public Set<Long> getFingerprints() {
+            return statements.keySet();
+        }
+
+        public double getWorkloadTimeMs() {
+            return statements.values().stream().mapToDouble(Statement::totalTimeMs).sum();
+        }
+
+        public long getCalls() {
+            return statements.values().stream().mapToLong(Statement::calls).sum();
+        }
+    }
+
+    private IndexAdvisor() {
+    }
+
+    /**
+     * Candidates for the workload, heaviest first.
+     */
+    public static List<Candidate> advise(List<Statement> workload, int maxKeyColumns, int maxIncludedColumns) {
+        Map<Statement, List<QueryShape>> parsed = new LinkedHashMap<>();
+        for (Statement statement : workload) {
+            parsed.put(statement, SqlPredicateParser.parse(statement.sql()));
+        }
+
+        // Time spent in statements that look up a column by value; orders equality columns so
+        // that candidates of different statements share key prefixes
+        Map<String, Double> lookupWeight = new HashMap<>();
+        parsed.forEach((statement, shapes) -> {
+            Set<String> columns = new LinkedHashSet<>();
+            for (QueryShape shape : shapes) {
+                for (Predicate predicate : shape.predicates()) {
+                    if (predicate.kind() != PredicateKind.RANGE) {
+                        columns.add(key(predicate.table(), predicate.column()));
+                    }
+                }
+            }
+            columns.forEach(column -> lookupWeight.merge(column, statement.totalTimeMs(), Double::sum));
+        });
+
+        List<Candidate> candidates = new ArrayList<>();
+        parsed.forEach((statement, shapes) -> {
+            for (QueryShape shape : shapes) {
+                for (String table : new LinkedHashSet<>(shape.tables())) {
+                    Candidate candidate = candidate(shape, table, lookupWeight, maxKeyColumns, maxIncludedColumns);
+                    if (candidate != null) {
+                        candidate.statements.put(statement.fingerprint(), statement);
+                        candidates.add(candidate);
+                    }
+                }
+            }
+        });
+
+        List<Candidate> merged = merge(candidates, maxIncludedColumns);
+        merged.sort(Comparator.comparingDouble(Candidate::getWorkloadTimeMs).reversed());
+        return merged;
+    }
+
+    static Candidate candidate(QueryShape shape, String table, Map<String, Double> lookupWeight,
+                               int maxKeyColumns, int maxIncludedColumns) {
+        Comparator<String> byWeight = Comparator
+                .comparingDouble((String column) -> -lookupWeight.getOrDefault(key(table, column), 0.0))
+                .thenComparing(column -> column.toLowerCase(Locale.ROOT));
+        List<String> equality = new ArrayList<>();
+        List<String> join = new ArrayList<>();
+        List<String> in = new ArrayList<>();
+        List<String> range = new ArrayList<>();
+        for (Predicate predicate : shape.predicates()) {
+            if (!predicate.table().equals(table)) {
+                continue;
+            }
+            switch (predicate.kind()) {
+                case EQUALITY -> addDistinct(equality, predicate.column());
+                case JOIN -> addDistinct(join, predicate.column());
+                case IN -> addDistinct(in, predicate.column());
+                case RANGE -> addDistinct(range, predicate.column());
+            }
+        }
+        // Constants are known before the join, so they lead and the same index serves both sides
+        equality.sort(byWeight);
+        join.removeIf(column -> containsIgnoreCase(equality, column));
+        join.sort(byWeight);
+        in.removeIf(column -> containsIgnoreCase(equality, column) || containsIgnoreCase(join, column));
+        in.sort(byWeight);
+
+        List<String> key = new ArrayList<>(equality);
+        key.addAll(join);
+        key.addAll(in);
+        List<String> sort = new ArrayList<>();
+        if (table.equals(shape.sortTable())) {
+            for (String column : shape.sortColumns()) {
+                if (addDistinct(key, column)) {
+                    sort.add(column);
+                }
+            }
+        }
+        String rangeColumn = null;
+        for (String column : range) {
+            if (!containsIgnoreCase(key, column)) {
+                rangeColumn = column;
+                key.add(column);
+                break;
+            }
+        }
+        if (key.isEmpty()) {
+            return null;
+        }
+        if (key.size() > maxKeyColumns) {
+            key = new ArrayList<>(key.subList(0, maxKeyColumns));
+        }
+
+        List<String> included = new ArrayList<>();
+        Set<String> referenced = shape.referencedColumns().get(table);
+        if (referenced != null && !shape.uncoverableTables().contains(table)) {
+            for (String column : referenced) {
+                if (!containsIgnoreCase(key, column)) {
+                    addDistinct(included, column);
+                }
+            }
+            if (included.size() > maxIncludedColumns) {
+                included.clear();
+            }
+        }
+
+        List<String> access = new ArrayList<>();
+        if (!equality.isEmpty()) access.add("equality on " + String.join(", ", equality));
+        if (!join.isEmpty()) access.add("join on " + String.join(", ", join));
+        if (!in.isEmpty()) access.add("IN list on " + String.join(", ", in));
+        if (!sort.isEmpty()) access.add("sort on " + String.join(", ", sort));
+        if (rangeColumn != null) access.add("range on " + rangeColumn);
+        Candidate candidate = new Candidate(table, key, included, String.join("; ", access));
+        List<String> names = new ArrayList<>(List.of(table.split("\\.")));
+        names.addAll(key);
+        names.addAll(included);
+        names.stream().filter(shape.quotedNames()::contains).forEach(candidate.quotedNames::add);
+        return candidate;
+    }
+
+    /**
+     * Folds each candidate into a candidate on the same table whose key starts with its key:
+     * that index serves both.
+     */
+    static List<Candidate> merge(List<Candidate> candidates, int maxIncludedColumns) {
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparingInt((Candidate c) -> -c.getKeyColumns().size())
+                .thenComparing(Comparator.comparingDouble(Candidate::getWorkloadTimeMs).reversed()));
+
+        List<Candidate> merged = new ArrayList<>();
+        for (Candidate candidate : ordered) {
+            Candidate target = null;
+            for (Candidate existing : merged) {
+                if (existing.getTable().equalsIgnoreCase(candidate.getTable())
+                        && startsWith(existing.getKeyColumns(), candidate.getKeyColumns())) {
+                    target = existing;
+                    break;
+                }
+            }
+            if (target == null) {
+                merged.add(candidate);
+                continue;
+            }
+            candidate.statements.forEach(target.statements::putIfAbsent);
+            target.quotedNames.addAll(candidate.quotedNames);
+            List<String> included = new ArrayList<>(target.includedColumns);
+            for (String column : candidate.includedColumns) {
+                if (!containsIgnoreCase(target.keyColumns, column)) {
+                    addDistinct(included, column);
+                }
+            }
+            // A merged block that needs more columns than fit stays uncovered
+            if (included.size() <= maxIncludedColumns) {
+                target.includedColumns = included;
+            }
+        }
+        return merged;
+    }
+
+    static boolean startsWith(List<String> columns, List<String> prefix) {
+        if (prefix.size() > columns.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            if (!columns.get(i).equalsIgnoreCase(prefix.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean addDistinct(List<String> columns, String column) {
+        if (containsIgnoreCase(columns, column)) {
+            return false;
+        }
+        columns.add(column);
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(List<String> columns, String column) {
+        return columns.stream().anyMatch(c -> c.equalsIgnoreCase(column));
+    }
+
+    private static String key(String table, String column) {
+        return (table + "." + column).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,569 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.IndexBuildJob;
+import com.dbmonitor.model.IndexRecommendation;
+import com.dbmonitor.repository.IndexBuildJobRepository;
+import com.dbmonitor.repository.IndexRecommendationRepository;
+import com.dbmonitor.repository.QueryStatIntervalRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds recommended indexes in the background so that applying one neither blocks the caller
+ * nor, where the engine allows it, the writers of the table. The stored CREATE INDEX statement
+ * is run as {@code CREATE INDEX CONCURRENTLY} on PostgreSQL, {@code WITH (ONLINE = ON)} on
+ * SQL Server and with {@code ALGORITHM=INPLACE LOCK=NONE} on MySQL. Builds on one connection
+ * run one at a time: they wait in a per-connection queue, not on a worker, and the next one is
+ * handed to a worker when the previous one ends. While a build runs its progress is read from the engine every
+ * {@code monitor.index-builds.progress-interval-ms}; a build can be cancelled, which cancels the
+ * running statement. Once {@code latency-window-minutes} have passed after a successful build
+ * the mean latency of the statements the index was recommended for is compared with the same
+ * window before it was submitted.
+ */
+@Service
+@Slf4j
+public class IndexBuildService {
+
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "^CREATE\\s+(UNIQUE\\s+)?INDEX\\s+(?:CONCURRENTLY\\s+)?(?:IF\\s+NOT\\s+EXISTS\\s+)?(.+?)\\s+ON\\s+(.+?)\\s*\\(",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    @Autowired
+    private IndexBuildJobRepository jobRepository;
+
+    @Autowired
+    private IndexRecommendationRepository recommendationRepository;
+
+    @Autowired
+    private QueryStatIntervalRepository statIntervalRepository;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Autowired
+    private CatalogCacheService catalogCacheService;
+
+    @Value("${monitor.index-builds.workers:2}")
+    private int workerCount;
+
+    @Value("${monitor.index-builds.latency-window-minutes:60}")
+    private int latencyWindowMinutes;
+
+    private ExecutorService workers;
+
+    // Live state of queued and running builds by job id
+    private final Map<Long, Build> builds = new ConcurrentHashMap<>();
+    // Builds per connection in submission order; the head is the one handed to a worker
+    private final Map<Long, Queue<Build>> connectionQueues = new HashMap<>();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, workerCount), r -> {
+            Thread thread = new Thread(r, "index-build-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Builds cut off by a restart cannot be resumed; the server session that ran them is gone
+        List<IndexBuildJob> interrupted = jobRepository.findByStatusIn(
+                List.of(IndexBuildJob.Status.QUEUED, IndexBuildJob.Status.RUNNING));
+        for (IndexBuildJob job : interrupted) {
+            job.setStatus(IndexBuildJob.Status.FAILED);
+            job.setFinishedAt(LocalDateTime.now());
+            job.setErrorMessage("Interrupted by a monitor restart; an invalid or partial index may be left behind");
+            jobRepository.save(job);
+            recommendationRepository.findById(job.getRecommendationId()).ifPresent(recommendation -> {
+                if ("BUILDING".equals(recommendation.getStatus())) {
+                    recommendation.setStatus("PENDING");
+                    recommendationRepository.save(recommendation);
+                }
+            });
+        }
+        if (!interrupted.isEmpty()) {
+            log.warn("Marked {} index builds interrupted by the restart as failed", interrupted.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builds.values().forEach(build -> {
+            build.cancelRequested = true;
+            cancelStatement(build);
+        });
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues the build of a pending recommendation and returns its job at once.
+     *
+     * @throws IllegalArgumentException when the recommendation or its connection is unknown, or the
+     *                                  statement is not a CREATE INDEX
+     * @throws IllegalStateException    when the recommendation is not pending
+     */
+    public synchronized IndexBuildJob submit(Long recommendationId) {
+        IndexRecommendation recommendation = recommendationRepository.findById(recommendationId)
+                .orElseThrow(() -> new IllegalArgumentException("Recommendation not found"));
+        if (!"PENDING".equals(recommendation.getStatus())) {
+            throw new IllegalStateException("Recommendation is " + recommendation.getStatus() + ", not PENDING");
+        }
+        DatabaseConnection conn = connectionService.getConnectionById(recommendation.getConnectionId())
+                .orElseThrow(() -> new IllegalArgumentException("Connection not found"));
+        String engine = conn.getDatabaseType() != null ? conn.getDatabaseType().toUpperCase().replace(" ", "") : "";
+        String statement = stripSemicolon(recommendation.getCreateIndexStatement());
+        Matcher matcher = CREATE_INDEX.matcher(statement);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Not a CREATE INDEX statement: " + statement);
+        }
+        String online = onlineStatement(engine, statement);
+
+        LocalDateTime now = LocalDateTime.now();
+        IndexBuildJob job = IndexBuildJob.builder()
+                .recommendationId(recommendation.getId())
+                .connectionId(conn.getId())
+                .tableName(matcher.group(3).trim())
+                .indexName(qualifiedIndexName(matcher.group(2).trim(), matcher.group(3).trim()))
+                .ddl(online != null ? online : statement)
+                .online(online != null)
+                .status(IndexBuildJob.Status.QUEUED)
+                .submittedAt(now)
+                .fingerprints(recommendation.getFingerprints())
+                .latencyBeforeMs(meanLatency(conn.getId(), recommendation.getFingerprints(),
+                        now.minusMinutes(latencyWindowMinutes)))
+                .build();
+        job = jobRepository.save(job);
+
+        recommendation.setStatus("BUILDING");
+        recommendationRepository.save(recommendation);
+
+        Build build = new Build(job.getId(), conn.getId(), engine);
+        builds.put(job.getId(), build);
+        enqueue(build);
+        log.info("Queued {} build of index {} on connection '{}' (job {})", job.isOnline() ? "online" : "offline",
+                job.getIndexName(), conn.getConnectionName(), job.getId());
+        return job;
+    }
+
+    /**
+     * Cancels a queued or running build. A queued build is dropped when its turn comes; a running
+     * one has its statement cancelled on the server.
+     *
+     * @return empty when the job does not exist
+     * @throws IllegalStateException when the build already finished
+     */
+    public Optional<IndexBuildJob> cancel(Long jobId) {
+        Optional<IndexBuildJob> job = jobRepository.findById(jobId);
+        if (job.isEmpty()) {
+            return job;
+        }
+        Build build = builds.get(jobId);
+        if (build == null) {
+            throw new IllegalStateException("Build already " + job.get().getStatus());
+        }
+        build.cancelRequested = true;
+        cancelStatement(build);
+        log.info("Cancellation requested for index build job {}", jobId);
+        return job.map(this::withProgress);
+    }
+
+    public Optional<IndexBuildJob> getJob(Long jobId) {
+        return jobRepository.findById(jobId).map(this::withProgress);
+    }
+
+    public List<IndexBuildJob> getJobs(Long connectionId) {
+        List<IndexBuildJob> jobs = connectionId != null
+                ? jobRepository.findByConnectionIdOrderBySubmittedAtDesc(connectionId)
+                : jobRepository.findTop100ByOrderBySubmittedAtDesc();
+        jobs.forEach(this::withProgress);
+        return jobs;
+    }
+
+    /**
+     * Reads the progress of running builds and measures latency after completed ones.
+     */
+    @Scheduled(fixedDelayString = "${monitor.index-builds.progress-interval-ms:5000}")
+    public void poll() {
+        for (Build build : builds.values()) {
+            if (build.sessionId != null && !build.cancelRequested) {
+                try {
+                    readProgress(build);
+                } catch (Exception e) {
+                    log.debug("Could not read progress of index build job {}: {}", build.jobId, e.getMessage());
+                }
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (IndexBuildJob job : jobRepository.findByStatusAndLatencyMeasuredAtIsNullAndFinishedAtBefore(
+                IndexBuildJob.Status.SUCCEEDED, now.minusMinutes(latencyWindowMinutes))) {
+            try {
+                Double after = meanLatency(job.getConnectionId(), job.getFingerprints(), job.getFinishedAt());
+                job.setLatencyAfterMs(after);
+                if (after != null && job.getLatencyBeforeMs() != null && job.getLatencyBeforeMs() > 0) {
+                    job.setLatencyChangePercent((after - job.getLatencyBeforeMs()) / job.getLatencyBeforeMs() * 100);
+                }
+                job.setLatencyMeasuredAt(now);
+                jobRepository.save(job);
+            } catch (Exception e) {
+                log.error("Error measuring latency after index build job {}", job.getId(), e);
+            }
+        }
+    }
+
+    // Starts the build at once when it is the only one of its connection, else queues it
+    private void enqueue(Build build) {
+        boolean first;
+        synchronized (connectionQueues) {
+            Queue<Build> queue = connectionQueues.computeIfAbsent(build.connectionId, id -> new ArrayDeque<>());
+            queue.add(build);
+            first = queue.size() == 1;
+        }
+        if (first) {
+            workers.execute(() -> run(build));
+        }
+    }
+
+    // Removes the finished build and hands the next one of its connection to a worker
+    private void dispatchNext(Build finished) {
+        Build next;
+        synchronized (connectionQueues) {
+            Queue<Build> queue = connectionQueues.get(finished.connectionId);
+            queue.remove(finished);
+            next = queue.peek();
+            if (next == null) {
+                connectionQueues.remove(finished.connectionId);
+            }
+        }
+        if (next != null) {
+            workers.execute(() -> run(next));
+        }
+    }
+
+    private void run(Build build) {
+        try {
+            IndexBuildJob job = jobRepository.findById(build.jobId).orElse(null);
+            if (job == null) {
+                builds.remove(build.jobId);
+                return;
+            }
+            perform(build, job);
+        } finally {
+            dispatchNext(build);
+        }
+    }
+
+    private void perform(Build build, IndexBuildJob job) {
+        try {
+            if (build.cancelRequested) {
+                job.setStatus(IndexBuildJob.Status.CANCELLED);
+                job.setErrorMessage("Cancelled before the build started");
+                return;
+            }
+            execute(build, job);
+            job.setStatus(IndexBuildJob.Status.SUCCEEDED);
+            build.progress = 100.0;
+            build.phase = "done";
+        } catch (Exception e) {
+            if (build.cancelRequested) {
+                job.setStatus(IndexBuildJob.Status.CANCELLED);
+                job.setErrorMessage("Cancelled: " + e.getMessage());
+            } else {
+                job.setStatus(IndexBuildJob.Status.FAILED);
+                job.setErrorMessage(e.getMessage());
+                log.error("Index build job {} failed: {}", job.getId(), e.getMessage());
+            }
+            if ("POSTGRESQL".equals(build.engine) && job.getStartedAt() != null) {
+                dropInvalidIndex(job);
+            }
+        } finally {
+            builds.remove(build.jobId);
+            finish(job, build);
+        }
+    }
+
+    private void execute(Build build, IndexBuildJob job) throws SQLException {
+        DataSource dataSource = connectionService.getDataSource(build.connectionId);
+        try (Connection connection = dataSource.getConnection()) {
+            // CREATE INDEX CONCURRENTLY cannot run inside a transaction block
+            connection.setAutoCommit(true);
+            job.setStartedAt(LocalDateTime.now());
+            job.setSessionId(sessionId(connection, build.engine));
+            job.setStatus(IndexBuildJob.Status.RUNNING);
+            jobRepository.save(job);
+            build.sessionId = job.getSessionId();
+
+            try (Statement stmt = connection.createStatement()) {
+                build.statement = stmt;
+                // A cancel that arrived before the statement was published would otherwise be lost
+                if (build.cancelRequested) {
+                    throw new SQLException("cancelled before execution");
+                }
+                stmt.execute(job.getDdl());
+            } finally {
+                build.statement = null;
+            }
+        }
+    }
+
+    private void finish(IndexBuildJob job, Build build) {
+        job.setFinishedAt(LocalDateTime.now());
+        job.setPhase(build.phase);
+        job.setProgressPercent(build.progress);
+        jobRepository.save(job);
+
+        recommendationRepository.findById(job.getRecommendationId()).ifPresent(recommendation -> {
+            if (job.getStatus() == IndexBuildJob.Status.SUCCEEDED) {
+                recommendation.setStatus("APPLIED");
+                recommendation.setAppliedAt(job.getFinishedAt());
+            } else {
+                recommendation.setStatus("PENDING");
+            }
+            recommendationRepository.save(recommendation);
+        });
+        catalogCacheService.invalidate(job.getConnectionId());
+        log.info("Index build job {} of {} finished: {}", job.getId(), job.getIndexName(), job.getStatus());
+    }
+
+    private void readProgress(Build build) throws SQLException {
+        String sql = switch (build.engine) {
+            case "POSTGRESQL" -> POSTGRESQL_PROGRESS;
+            case "SQLSERVER" -> SQLSERVER_PROGRESS;
+            case "MYSQL" -> MYSQL_PROGRESS;
+            default -> null;
+        };
+        if (sql == null) {
+            return;
+        }
+        DataSource dataSource = connectionService.getDataSource(build.connectionId);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setQueryTimeout(10);
+            stmt.setLong(1, build.sessionId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                build.phase = rs.getString("phase");
+                double percent = rs.getDouble("percent_complete");
+                double done = rs.getDouble("work_done");
+                double total = rs.getDouble("work_total");
+                if (percent > 0) {
+                    build.progress = Math.min(100.0, percent);
+                } else if (total > 0) {
+                    build.progress = Math.min(100.0, done * 100 / total);
+                }
+            }
+        }
+    }
+
+    /**
+     * A failed or cancelled concurrent build leaves an invalid index that still slows writes. The
+     * name is only ever bound as a parameter; the DROP statement is built by the server from the
+     * catalog names of the invalid index it resolves to.
+     */
+    private void dropInvalidIndex(IndexBuildJob job) {
+        DataSource dataSource = connectionService.getDataSource(job.getConnectionId());
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            String drop = null;
+            try (PreparedStatement stmt = connection.prepareStatement(POSTGRESQL_DROP_INVALID_INDEX)) {
+                stmt.setString(1, job.getIndexName());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        drop = rs.getString(1);
+                    }
+                }
+            }
+            if (drop != null) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(drop);
+                }
+                log.info("Dropped invalid index {} left by build job {}", job.getIndexName(), job.getId());
+            }
+        } catch (SQLException e) {
+            log.warn("Could not drop invalid index {} left by build job {}: {}", job.getIndexName(), job.getId(),
+                    e.getMessage());
+            job.setErrorMessage(job.getErrorMessage() + "; invalid index " + job.getIndexName()
+                    + " was not dropped: " + e.getMessage());
+        }
+    }
+
+    private Long sessionId(Connection connection, String engine) throws SQLException {
+        String sql = switch (engine) {
+            case "POSTGRESQL" -> "SELECT pg_backend_pid()";
+            case "SQLSERVER" -> "SELECT @@SPID";
+            case "MYSQL" -> "SELECT CONNECTION_ID()";
+            default -> null;
+        };
+        if (sql == null) {
+            return null;
+        }
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    // Mean latency of the statements since the given time, from harvested statistics
+    private Double meanLatency(Long connectionId, String fingerprints, LocalDateTime since) {
+        if (fingerprints == null || fingerprints.isBlank()) {
+            return null;
+        }
+        long calls = 0;
+        double totalTimeMs = 0;
+        for (String hex : fingerprints.split(",")) {
+            long fingerprint;
+            try {
+                fingerprint = Long.parseUnsignedLong(hex.trim(), 16);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            for (Object[] row : statIntervalRepository.sumByFingerprintSince(connectionId, fingerprint, since)) {
+                if (row[0] instanceof Number c && row[1] instanceof Number t) {
+                    calls += c.longValue();
+                    totalTimeMs += t.doubleValue();
+                }
+            }
+        }
+        return calls > 0 ? totalTimeMs / calls : null;
+    }
+
+    private void cancelStatement(Build build) {
+        Statement stmt = build.statement;
+        if (stmt != null) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                log.warn("Could not cancel index build job {}: {}", build.jobId, e.getMessage());
+            }
+        }
+    }
+
+    private IndexBuildJob withProgress(IndexBuildJob job) {
+        Build build = builds.get(job.getId());
+        if (build != null && job.getStatus() == IndexBuildJob.Status.RUNNING) {
+            job.setPhase(build.phase);
+            job.setProgressPercent(build.progress);
+        }
+        return job;
+    }
+
+    /**
+     * The statement rewritten to build without blocking writers, or null when the engine has no
+     * online build.
+     */
+    static String onlineStatement(String engine, String statement) {
+        return switch (engine) {
+            case "POSTGRESQL" -> statement.replaceFirst("(?i)\\bINDEX\\s+(?!CONCURRENTLY\\b)", "INDEX CONCURRENTLY ");
+            case "SQLSERVER" -> Pattern.compile("\\bWITH\\s*\\(", Pattern.CASE_INSENSITIVE).matcher(statement).find()
+                    ? statement.replaceFirst("(?i)\\bWITH\\s*\\(", "WITH (ONLINE = ON, ")
+                    : statement + " WITH (ONLINE = ON)";
+            case "MYSQL" -> statement + " ALGORITHM=INPLACE LOCK=NONE";
+            default -> null;
+        };
+    }
+
+    // PostgreSQL creates the index in the schema of its table
+    private static String qualifiedIndexName(String indexName, String table) {
+        int dot = table.lastIndexOf('.');
+        return dot > 0 && !indexName.contains(".") ? table.substring(0, dot) + "." + indexName : indexName;
+    }
+
+    private static String stripSemicolon(String statement) {
+        String trimmed = statement == null ? "" : statement.trim();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    private static final class Build {
+        final Long jobId;
+        final Long connectionId;
+        final String engine;
+        volatile Statement statement;
+        volatile Long sessionId;
+        volatile boolean cancelRequested;
+        volatile String phase;
+        volatile Double progress;
+
+        Build(Long jobId, Long connectionId, String engine) {
+            this.jobId = jobId;
+            this.connectionId = connectionId;
+            this.engine = engine;
+        }
+    }
+
+    private static final String POSTGRESQL_DROP_INVALID_INDEX = """
+        SELECT format('DROP INDEX CONCURRENTLY IF EXISTS %I.%I', n.nspname, c.relname)
+        FROM pg_index AS i
+        JOIN pg_class AS c ON c.oid = i.indexrelid
+        JOIN pg_namespace AS n ON n.oid = c.relnamespace
+        WHERE i.indexrelid = to_regclass(?) AND NOT i.indisvalid
+        """;
+
+    // Scans report blocks when known, tuples otherwise; the phase names the pass in progress
+    private static final String POSTGRESQL_PROGRESS = """
+        SELECT
+            phase,
+            NULL::float8 AS percent_complete,
+            CASE WHEN blocks_total > 0 THEN blocks_done ELSE tuples_done END AS work_done,
+            CASE WHEN blocks_total > 0 THEN blocks_total ELSE tuples_total END AS work_total
+        FROM pg_stat_progress_create_index
+        WHERE pid = ?
+        """;
+
+    // percent_complete stays 0 for index builds; row counts come from lightweight query profiling
+    private static final String SQLSERVER_PROGRESS = """
+        SELECT
+            r.command AS phase,
+            r.percent_complete,
+            p.work_done,
+            p.work_total
+        FROM sys.dm_exec_requests AS r
+        OUTER APPLY (
+            SELECT SUM(qp.row_count) AS work_done, SUM(qp.estimate_row_count) AS work_total
+            FROM sys.dm_exec_query_profiles AS qp
+            WHERE qp.session_id = r.session_id
+        ) AS p
+        WHERE r.session_id = ?
+        """;
+
+    // Needs the stage/innodb/alter% instruments and events_stages_current consumer enabled
+    private static final String MYSQL_PROGRESS = """
+        SELECT
+            s.EVENT_NAME AS phase,
+            NULL AS percent_complete,
+            s.WORK_COMPLETED AS work_done,
+            s.WORK_ESTIMATED AS work_total
+        FROM performance_schema.events_stages_current AS s
+        JOIN performance_schema.threads AS t ON t.THREAD_ID = s.THREAD_ID
+        WHERE t.PROCESSLIST_ID = ?
+        """;
+}
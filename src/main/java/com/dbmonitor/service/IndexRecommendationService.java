@@ -1,27 +1,30 @@
 package com.dbmonitor.service;
 
+import com.dbmonitor.model.CatalogIndex;
+import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.IndexBuildJob;
 import com.dbmonitor.model.IndexRecommendation;
-import com.dbmonitor.model.QueryMetrics;
 import com.dbmonitor.repository.IndexRecommendationRepository;
 import com.dbmonitor.repository.QueryMetricsRepository;
+import com.dbmonitor.repository.QueryTextRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class IndexRecommendationService {
 
+    private static final Pattern PLAIN_IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]*");
+
     @Autowired
     private IndexRecommendationRepository indexRecommendationRepository;
 
@@ -31,42 +34,109 @@ public class IndexRecommendationService {
     @Autowired
     private DatabaseConnectionService connectionService;
 
+    @Autowired
+    private CatalogCacheService catalogCacheService;
+
+    @Autowired
+    private QueryStatsHarvesterService harvesterService;
+
+    @Autowired
+    private QueryTextRepository queryTextRepository;
+
+    @Autowired
+    private IndexBuildService indexBuildService;
+
+    @Value("${monitor.index-advisor.window-hours:24}")
+    private int windowHours;
+
+    @Value("${monitor.index-advisor.max-statements:200}")
+    private int maxStatements;
+
+    @Value("${monitor.index-advisor.max-key-columns:4}")
+    private int maxKeyColumns;
+
+    @Value("${monitor.index-advisor.max-included-columns:4}")
+    private int maxIncludedColumns;
+
+    @Value("${monitor.index-advisor.max-recommendations:20}")
+    private int maxRecommendations;
+
+    // Candidates serving less of the analyzed time than this are not recommended
+    @Value("${monitor.index-advisor.min-workload-percent:1.0}")
+    private double minWorkloadPercent;
+
+    /**
+     * Recommends composite indexes for the statements where the connection spent the most
+     * time over {@code monitor.index-advisor.window-hours}. Candidates already served by an
+     * existing index or rejected before are skipped; pending recommendations the workload no
+     * longer supports become OBSOLETE. Without any statements in the window (nothing harvested
+     * or recorded yet, statistics reset) pending recommendations are left as they are.
+     */
     public List<IndexRecommendation> generateRecommendations(Long connectionId) {
         try {
+            DatabaseConnection conn = connectionService.getConnectionById(connectionId)
+                .orElseThrow(() -> new IllegalArgumentException("Connection not found: " + connectionId));
+            String engine = conn.getDatabaseType().toUpperCase().replace(" ", "");
+            List<IndexAdvisor.Statement> workload = loadWorkload(connectionId, LocalDateTime.now().minusHours(windowHours));
+            if (workload.isEmpty()) {
+                log.info("No statements in the last {} h for connection ID: {}, keeping pending index recommendations",
+                    windowHours, connectionId);
+                return Collections.emptyList();
+            }
+            double totalTimeMs = workload.stream().mapToDouble(IndexAdvisor.Statement::totalTimeMs).sum();
+
             List<IndexRecommendation> recommendations = new ArrayList<>();
-            DataSource dataSource = connectionService.getDataSource(connectionId);
+            for (IndexAdvisor.Candidate candidate : IndexAdvisor.advise(workload, maxKeyColumns, maxIncludedColumns)) {
+                double share = totalTimeMs > 0 ? 100.0 * candidate.getWorkloadTimeMs() / totalTimeMs : 0;
+                if (recommendations.size() >= maxRecommendations || share < minWorkloadPercent) {
+                    break;
+                }
+                List<CatalogIndex> existing = existingIndexes(connectionId, candidate.getTable());
+                if (existing.stream().anyMatch(index -> !index.isPartial()
+                        && IndexAdvisor.startsWith(index.getColumns(), candidate.getKeyColumns()))) {
+                    continue;
+                }
+                String columnNames = String.join(",", candidate.getKeyColumns());
+                if (indexRecommendationRepository.existsByConnectionIdAndTableNameAndColumnNamesAndStatusIn(
+                        connectionId, candidate.getTable(), columnNames, List.of("REJECTED", "BUILDING"))) {
+                    continue;
+                }
 
-            // Analyze slow queries
-            List<QueryMetrics> slowQueries = queryMetricsRepository.findByIsSlowTrue();
-            
-            // Analyze queries for potential index candidates
-            Map<String, Set<String>> tableColumns = analyzeQueriesForIndexCandidates(slowQueries);
-            
-            try (Connection conn = dataSource.getConnection()) {
-                // Get existing indexes
-                Map<String, Set<String>> existingIndexes = getExistingIndexes(conn);
-                
-                // Generate recommendations for missing indexes
-                for (Map.Entry<String, Set<String>> entry : tableColumns.entrySet()) {
-                    String tableName = entry.getKey();
-                    Set<String> columns = entry.getValue();
-                    
-                    Set<String> existingCols = existingIndexes.getOrDefault(tableName, new HashSet<>());
-                    
-                    for (String column : columns) {
-                        if (!existingCols.contains(column)) {
-                            IndexRecommendation recommendation = createRecommendation(
-                                connectionId, tableName, column, slowQueries.size()
-                            );
-                            recommendations.add(recommendation);
-                            indexRecommendationRepository.save(recommendation);
-                        }
-                    }
+                IndexRecommendation recommendation = indexRecommendationRepository
+                    .findFirstByConnectionIdAndTableNameAndColumnNamesAndStatus(
+                        connectionId, candidate.getTable(), columnNames, "PENDING")
+                    .orElseGet(() -> IndexRecommendation.builder()
+                        .connectionId(connectionId)
+                        .tableName(candidate.getTable())
+                        .columnNames(columnNames)
+                        .indexType("BTREE")
+                        .status("PENDING")
+                        .build());
+                recommendation.setIncludedColumns(candidate.getIncludedColumns().isEmpty()
+                    ? null : String.join(",", candidate.getIncludedColumns()));
+                recommendation.setRecommendationReason(reason(candidate, share, existing));
+                recommendation.setImpactScore((int) Math.max(1, Math.min(100, Math.round(share))));
+                recommendation.setAffectedQueries((long) candidate.getFingerprints().size());
+                recommendation.setEstimatedPerformanceGain(Math.round(share * 10) / 10.0);
+                recommendation.setWorkloadTimeMs(candidate.getWorkloadTimeMs());
+                recommendation.setFingerprints(candidate.getFingerprints().stream()
+                    .map(fingerprint -> String.format("%016x", fingerprint))
+                    .collect(Collectors.joining(",")));
+                recommendation.setCreateIndexStatement(createIndexStatement(engine, candidate, existing));
+                recommendation.setRecommendedAt(LocalDateTime.now());
+                recommendations.add(indexRecommendationRepository.save(recommendation));
+            }
+
+            Set<Long> current = recommendations.stream().map(IndexRecommendation::getId).collect(Collectors.toSet());
+            for (IndexRecommendation pending : getPendingRecommendations(connectionId)) {
+                if (!current.contains(pending.getId())) {
+                    pending.setStatus("OBSOLETE");
+                    indexRecommendationRepository.save(pending);
                 }
             }
 
-            log.info("Generated {} index recommendations for connection ID: {}", 
-                recommendations.size(), connectionId);
+            log.info("Generated {} index recommendations from {} statements for connection ID: {}",
+                recommendations.size(), workload.size(), connectionId);
             return recommendations;
             
         } catch (Exception e) {
@@ -75,96 +145,120 @@ public class IndexRecommendationService {
         }
     }
 
-    private Map<String, Set<String>> analyzeQueriesForIndexCandidates(List<QueryMetrics> queries) {
-        Map<String, Set<String>> tableColumns = new HashMap<>();
-        
-        // Patterns to extract table and column names from queries
-        Pattern wherePattern = Pattern.compile("WHERE\\s+(\\w+)\\.(\\w+)", Pattern.CASE_INSENSITIVE);
-        Pattern joinPattern = Pattern.compile("JOIN\\s+(\\w+)\\s+ON\\s+(\\w+)\\.(\\w+)", Pattern.CASE_INSENSITIVE);
-        Pattern orderPattern = Pattern.compile("ORDER BY\\s+(\\w+)\\.(\\w+)", Pattern.CASE_INSENSITIVE);
-        
-        for (QueryMetrics query : queries) {
-            String sql = query.getQueryText();
-            if (sql == null) continue;
-            
-            // Extract columns from WHERE clause
-            Matcher whereMatcher = wherePattern.matcher(sql);
-            while (whereMatcher.find()) {
-                String table = whereMatcher.group(1);
-                String column = whereMatcher.group(2);
-                tableColumns.computeIfAbsent(table, k -> new HashSet<>()).add(column);
+    /**
+     * Statements with their total time in the window: harvested engine statistics, or the
+     * executions recorded by the monitor where the engine exposes none.
+     */
+    private List<IndexAdvisor.Statement> loadWorkload(Long connectionId, LocalDateTime since) {
+        List<IndexAdvisor.Statement> workload = new ArrayList<>();
+        for (Map<String, Object> statement : harvesterService.getTopStatements(connectionId, since,
+                LocalDateTime.now(), maxStatements)) {
+            if (statement.get("fingerprint") instanceof Long fingerprint && statement.get("queryText") instanceof String text) {
+                workload.add(new IndexAdvisor.Statement(fingerprint, text,
+                    ((Number) statement.get("calls")).longValue(), ((Number) statement.get("totalTimeMs")).doubleValue()));
             }
-            
-            // Extract columns from JOIN clause
-            Matcher joinMatcher = joinPattern.matcher(sql);
-            while (joinMatcher.find()) {
-                String table = joinMatcher.group(1);
-                String column = joinMatcher.group(3);
-                tableColumns.computeIfAbsent(table, k -> new HashSet<>()).add(column);
+        }
+        if (!workload.isEmpty()) {
+            return workload;
+        }
+
+        List<Object[]> totals = queryMetricsRepository.sumByFingerprintSince(connectionId, since,
+            PageRequest.of(0, maxStatements));
+        Map<Long, String> texts = new HashMap<>();
+        queryTextRepository.findAllById(totals.stream().map(row -> (Long) row[0]).toList())
+            .forEach(text -> texts.put(text.getFingerprint(), text.getQueryText()));
+        for (Object[] row : totals) {
+            String text = texts.get((Long) row[0]);
+            if (text != null && row[2] != null) {
+                workload.add(new IndexAdvisor.Statement((Long) row[0], text, ((Number) row[1]).longValue(),
+                    ((Number) row[2]).doubleValue()));
             }
-            
-            // Extract columns from ORDER BY clause
-            Matcher orderMatcher = orderPattern.matcher(sql);
-            while (orderMatcher.find()) {
-                String table = orderMatcher.group(1);
-                String column = orderMatcher.group(2);
-                tableColumns.computeIfAbsent(table, k -> new HashSet<>()).add(column);
+        }
+        return workload;
+    }
+
+    private List<CatalogIndex> existingIndexes(Long connectionId, String tableName) {
+        try {
+            return catalogCacheService.getIndexes(connectionId, tableName);
+        } catch (SQLException e) {
+            log.warn("Could not read indexes of {} on connection {}: {}", tableName, connectionId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private String reason(IndexAdvisor.Candidate candidate, double share, List<CatalogIndex> existing) {
+        StringBuilder reason = new StringBuilder(candidate.getAccess());
+        if (!candidate.getIncludedColumns().isEmpty()) {
+            reason.append("; covers ").append(String.join(", ", candidate.getIncludedColumns()));
+        }
+        reason.append(String.format("; %d statements, %d calls, %.0f ms (%.1f%% of analyzed time) in the last %d h",
+            candidate.getFingerprints().size(), candidate.getCalls(), candidate.getWorkloadTimeMs(), share, windowHours));
+        // An index whose key is a prefix of this one becomes redundant once this one exists
+        for (CatalogIndex index : existing) {
+            if (!index.isUnique() && !index.isPrimaryKey() && index.getColumns().size() < candidate.getKeyColumns().size()
+                    && IndexAdvisor.startsWith(candidate.getKeyColumns(), index.getColumns())) {
+                reason.append("; supersedes ").append(index.getIndexName());
             }
         }
-        
-        return tableColumns;
+        return reason.toString();
     }
 
-    private Map<String, Set<String>> getExistingIndexes(Connection conn) throws Exception {
-        Map<String, Set<String>> indexes = new HashMap<>();
-        DatabaseMetaData metaData = conn.getMetaData();
-        
-        // Get all tables
-        ResultSet tables = metaData.getTables(null, null, "%", new String[]{"TABLE"});
-        while (tables.next()) {
-            String tableName = tables.getString("TABLE_NAME");
-            
-            // Get indexes for this table
-            ResultSet indexInfo = metaData.getIndexInfo(null, null, tableName, false, false);
-            while (indexInfo.next()) {
-                String columnName = indexInfo.getString("COLUMN_NAME");
-                if (columnName != null) {
-                    indexes.computeIfAbsent(tableName, k -> new HashSet<>()).add(columnName);
-                }
+    private String createIndexStatement(String engine, IndexAdvisor.Candidate candidate, List<CatalogIndex> existing) {
+        String table = candidate.getTable();
+        String target = Arrays.stream(table.split("\\."))
+            .map(part -> quote(engine, part, candidate.isQuoted(part)))
+            .collect(Collectors.joining("."));
+        // Qualify with the schema the catalog found the table in, when that is unambiguous;
+        // the catalog returns the name as stored, so it is quoted as is
+        if (!table.contains(".")) {
+            Set<String> schemas = existing.stream().map(CatalogIndex::getSchemaName)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+            if (schemas.size() == 1) {
+                target = quote(engine, schemas.iterator().next(), true) + "." + target;
             }
         }
-        
-        return indexes;
+
+        List<String> keys = new ArrayList<>(candidate.getKeyColumns());
+        boolean supportsInclude = engine.equals("POSTGRESQL") || engine.equals("SQLSERVER");
+        if (!supportsInclude) {
+            keys.addAll(candidate.getIncludedColumns());
+        }
+        String statement = String.format("CREATE INDEX %s ON %s (%s)", quote(engine, indexName(candidate), false),
+            target, keys.stream().map(column -> quote(engine, column, candidate.isQuoted(column)))
+                .collect(Collectors.joining(", ")));
+        if (supportsInclude && !candidate.getIncludedColumns().isEmpty()) {
+            statement += " INCLUDE (" + candidate.getIncludedColumns().stream()
+                .map(column -> quote(engine, column, candidate.isQuoted(column))).collect(Collectors.joining(", ")) + ")";
+        }
+        return statement;
     }
 
-    private IndexRecommendation createRecommendation(Long connectionId, String tableName, 
-                                                     String columnName, long affectedQueries) {
-        // Calculate impact score (simplified)
-        int impactScore = Math.min(100, (int)(affectedQueries * 10));
-        
-        String createStatement = String.format(
-            "CREATE INDEX idx_%s_%s ON %s(%s);",
-            tableName, columnName, tableName, columnName
-        );
-        
-        return IndexRecommendation.builder()
-            .connectionId(connectionId)
-            .tableName(tableName)
-            .columnNames(columnName)
-            .indexType("BTREE")
-            .recommendationReason("Column frequently used in WHERE/JOIN/ORDER BY clauses")
-            .impactScore(impactScore)
-            .affectedQueries(affectedQueries)
-            .estimatedPerformanceGain(calculatePerformanceGain(affectedQueries))
-            .createIndexStatement(createStatement)
-            .status("PENDING")
-            .recommendedAt(LocalDateTime.now())
-            .build();
+    // idx_<table>_<key columns>, shortened with a hash to stay within identifier limits
+    private static String indexName(IndexAdvisor.Candidate candidate) {
+        String table = candidate.getTable().substring(candidate.getTable().lastIndexOf('.') + 1);
+        String name = ("idx_" + table + "_" + String.join("_", candidate.getKeyColumns()))
+            .toLowerCase().replaceAll("[^a-z0-9_]", "_");
+        if (name.length() > 60) {
+            name = name.substring(0, 51) + "_" + String.format("%08x", name.hashCode());
+        }
+        return name;
     }
 
-    private Double calculatePerformanceGain(long affectedQueries) {
-        // Simplified calculation: more affected queries = higher gain
-        return Math.min(90.0, affectedQueries * 5.0);
+    /**
+     * The identifier as the engine resolves it. A name written unquoted is folded the way the
+     * engine folds it (PostgreSQL to lower case; MySQL and SQL Server compare it as written),
+     * one written quoted keeps its case. Delimiters inside the name are doubled.
+     */
+    private static String quote(String engine, String identifier, boolean quoted) {
+        String name = !quoted && engine.equals("POSTGRESQL") ? identifier.toLowerCase(Locale.ROOT) : identifier;
+        if (!quoted && PLAIN_IDENTIFIER.matcher(name).matches()) {
+            return name;
+        }
+        return switch (engine) {
+            case "MYSQL" -> "`" + name.replace("`", "``") + "`";
+            case "SQLSERVER" -> "[" + name.replace("]", "]]") + "]";
+            default -> "\"" + name.replace("\"", "\"\"") + "\"";
+        };
     }
 
     public List<IndexRecommendation> getRecommendations(Long connectionId) {
@@ -176,33 +270,28 @@ public class IndexRecommendationService {
             connectionId, "PENDING");
     }
 
-    public void applyRecommendation(Long recommendationId) {
-        IndexRecommendation recommendation = indexRecommendationRepository.findById(recommendationId)
-            .orElseThrow(() -> new IllegalArgumentException("Recommendation not found"));
-        
-        try {
-            DataSource dataSource = connectionService.getDataSource(recommendation.getConnectionId());
-            try (Connection conn = dataSource.getConnection();
-                 Statement stmt = conn.createStatement()) {
-                
-                stmt.execute(recommendation.getCreateIndexStatement());
-                
-                recommendation.setStatus("APPLIED");
-                recommendation.setAppliedAt(LocalDateTime.now());
-                indexRecommendationRepository.save(recommendation);
-                
-                log.info("Applied index recommendation: {}", recommendationId);
-            }
-        } catch (Exception e) {
-            log.error("Error applying index recommendation", e);
-            throw new RuntimeException("Failed to apply index recommendation", e);
-        }
+    /**
+     * Starts an online build of the recommended index in the background.
+     *
+     * @see IndexBuildService#submit(Long)
+     */
+    public IndexBuildJob applyRecommendation(Long recommendationId) {
+        return indexBuildService.submit(recommendationId);
     }
 
+    /**
+     * Rejects a pending recommendation so it is not proposed again.
+     *
+     * @throws IllegalStateException when the recommendation is not pending, e.g. while its index
+     *                               is being built (cancel the build instead)
+     */
     public void rejectRecommendation(Long recommendationId) {
         IndexRecommendation recommendation = indexRecommendationRepository.findById(recommendationId)
             .orElseThrow(() -> new IllegalArgumentException("Recommendation not found"));
-        
+        if (!"PENDING".equals(recommendation.getStatus())) {
+            throw new IllegalStateException("Recommendation is " + recommendation.getStatus() + ", not PENDING");
+        }
+
         recommendation.setStatus("REJECTED");
         indexRecommendationRepository.save(recommendation);
         log.info("Rejected index recommendation: {}", recommendationId);
@@ -0,0 +1,153 @@
+package com.dbmonitor.service;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values (milliseconds) below
+ * {@code 2 * SUB_BUCKETS} are counted exactly; above that each power of two is split into
+ * {@code SUB_BUCKETS} linear sub-buckets, bounding the relative error to 1/SUB_BUCKETS.
+ * Counts live in a primitive array that only grows to the highest bucket actually used,
+ * so fast statements cost a few hundred bytes. Histograms with the same layout merge by
+ * adding counts.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int INITIAL_SIZE = LINEAR_LIMIT;
+
+    private long[] counts = new long[INITIAL_SIZE];
+    private long totalCount;
+    private long totalValue;
+    private long maxValue;
+    private long minValue = Long.MAX_VALUE;
+
+    public synchronized void record(long valueMs) {
+        record(valueMs, 1);
+    }
+
+    public synchronized void record(long valueMs, long count) {
+        if (count <= 0) {
+            return;
+        }
+        long value = Math.max(0, valueMs);
+        int index = indexFor(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index] += count;
+        totalCount += count;
+        totalValue += value * count;
+        if (value > maxValue) maxValue = value;
+        if (value < minValue) minValue = value;
+    }
+
+    /**
+     * Adds all counts of {@code other} into this histogram.
+     */
+    public void merge(LatencyHistogram other) {
+        long[] otherCounts;
+        long otherTotal;
+        long otherValue;
+        long otherMax;
+        long otherMin;
+        synchronized (other) {
+            otherCounts = Arrays.copyOf(other.counts, other.counts.length);
+            otherTotal = other.totalCount;
+            otherValue = other.totalValue;
+            otherMax = other.maxValue;
+            otherMin = other.minValue;
+        }
+        synchronized (this) {
+            if (otherCounts.length > counts.length) {
+                counts = Arrays.copyOf(counts, otherCounts.length);
+            }
+            for (int i = 0; i < otherCounts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+            totalCount += otherTotal;
+            totalValue += otherValue;
+            maxValue = Math.max(maxValue, otherMax);
+            minValue = Math.min(minValue, otherMin);
+        }
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMaxValue() {
+        return maxValue;
+    }
+
+    public synchronized long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public synchronized double getMean() {
+        return totalCount == 0 ? 0.0 : (double) totalValue / totalCount;
+    }
+
+    public synchronized long getTotalValue() {
+        return totalValue;
+    }
+
+    /**
+     * Value at the given percentile (0-100), reported as the midpoint of the bucket that
+     * holds it and clamped to the recorded maximum.
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        if (percentile >= 100.0) {
+            return maxValue;
+        }
+        double p = Math.min(100.0, Math.max(0.0, percentile));
+        long target = Math.max(1, (long) Math.ceil(p / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(maxValue, Math.max(getMinValue(), midpointFor(i)));
+            }
+        }
+        return maxValue;
+    }
+
+    static int indexFor(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Whether {@code index} is a plausible latency bucket (values below 2^40 ms); guards
+     * indexes received from clients.
+     */
+    static boolean isValidIndex(int index) {
+        return index >= 0 && index <= indexFor(1L << 40);
+    }
+
+    static long lowerBoundFor(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket)) << shift;
+    }
+
+    static long midpointFor(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        return lowerBoundFor(index) + ((1L << shift) >>> 1);
+    }
+}
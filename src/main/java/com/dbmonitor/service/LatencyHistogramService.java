@@ -0,0 +1,156 @@
+package com.dbmonitor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps latency histograms per (connection, fingerprint) and per connection in rotating
+ * time buckets. Percentiles for a window are computed by merging the buckets it covers,
+ * so tail latency is available without storing every execution.
+ */
+@Service
+@Slf4j
+public class LatencyHistogramService {
+
+    @Value("${monitor.query.histogram.bucket-seconds:60}")
+    private int bucketSeconds;
+
+    @Value("${monitor.query.histogram.retention-buckets:60}")
+    private int retentionBuckets;
+
+    @Value("${monitor.query.histogram.max-fingerprints-per-bucket:5000}")
+    private int maxFingerprintsPerBucket;
+
+    // Time bucket index -> histograms recorded during that bucket
+    private final ConcurrentNavigableMap<Long, Map<HistogramKey, LatencyHistogram>> buckets = new ConcurrentSkipListMap<>();
+
+    public void record(Long connectionId, long fingerprint, long durationMs) {
+        record(connectionId, fingerprint, durationMs, 1);
+    }
+
+    public void record(Long connectionId, long fingerprint, long durationMs, long count) {
+        Map<HistogramKey, LatencyHistogram> bucket = buckets.computeIfAbsent(currentBucket(),
+                k -> new ConcurrentHashMap<>());
+
+        bucket.computeIfAbsent(new HistogramKey(connectionId, null), k -> new LatencyHistogram())
+                .record(durationMs, count);
+
+        HistogramKey key = new HistogramKey(connectionId, fingerprint);
+        LatencyHistogram histogram = bucket.get(key);
+        if (histogram == null) {
+            if (bucket.size() >= maxFingerprintsPerBucket) {
+                // Connection-level histogram still has the sample; only the per-statement detail is dropped
+                return;
+            }
+            histogram = bucket.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        histogram.record(durationMs, count);
+    }
+
+    /**
+     * Latency summary over the last {@code minutes}. A null fingerprint summarizes the whole connection.
+     */
+    public Map<String, Object> getSummary(Long connectionId, Long fingerprint, int minutes) {
+        Map<String, Object> summary = summarize(merge(new HistogramKey(connectionId, fingerprint), window(minutes)));
+        summary.put("connectionId", connectionId);
+        summary.put("fingerprint", fingerprint != null ? String.format("%016x", fingerprint) : null);
+        summary.put("windowMinutes", minutes);
+        return summary;
+    }
+
+    /**
+     * Latency summary of the buckets that start at or after {@code sinceMs}. A bucket that
+     * spans {@code sinceMs} is left out, so nothing recorded before that moment is included.
+     */
+    public Map<String, Object> getSummarySince(Long connectionId, Long fingerprint, long sinceMs) {
+        long bucketMs = bucketSeconds * 1000L;
+        long firstBucket = Math.floorDiv(sinceMs + bucketMs - 1, bucketMs);
+        Map<String, Object> summary = summarize(merge(new HistogramKey(connectionId, fingerprint),
+                buckets.tailMap(firstBucket, true)));
+        summary.put("connectionId", connectionId);
+        summary.put("fingerprint", fingerprint != null ? String.format("%016x", fingerprint) : null);
+        return summary;
+    }
+
+    /**
+     * Per-fingerprint summaries for a connection over the window, worst p99 first.
+     */
+    public List<Map<String, Object>> getFingerprintSummaries(Long connectionId, int minutes, int limit) {
+        Map<Long, LatencyHistogram> merged = new HashMap<>();
+        for (Map<HistogramKey, LatencyHistogram> bucket : window(minutes).values()) {
+            for (Map.Entry<HistogramKey, LatencyHistogram> entry : bucket.entrySet()) {
+                HistogramKey key = entry.getKey();
+                if (key.fingerprint() == null || !Objects.equals(key.connectionId(), connectionId)) {
+                    continue;
+                }
+                merged.computeIfAbsent(key.fingerprint(), k -> new LatencyHistogram()).merge(entry.getValue());
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(merged.size());
+        for (Map.Entry<Long, LatencyHistogram> entry : merged.entrySet()) {
+            Map<String, Object> summary = summarize(entry.getValue());
+            summary.put("fingerprint", String.format("%016x", entry.getKey()));
+            result.add(summary);
+        }
+        result.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("p99")).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.query.histogram.rotate-ms:60000}")
+    public void rotate() {
+        long oldest = currentBucket() - retentionBuckets;
+        Map<Long, Map<HistogramKey, LatencyHistogram>> expired = buckets.headMap(oldest);
+        if (!expired.isEmpty()) {
+            log.debug("Dropping {} expired latency histogram buckets", expired.size());
+            expired.clear();
+        }
+    }
+
+    private static LatencyHistogram merge(HistogramKey key, Map<Long, Map<HistogramKey, LatencyHistogram>> range) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Map<HistogramKey, LatencyHistogram> bucket : range.values()) {
+            LatencyHistogram histogram = bucket.get(key);
+            if (histogram != null) {
+                merged.merge(histogram);
+            }
+        }
+        return merged;
+    }
+
+    private ConcurrentNavigableMap<Long, Map<HistogramKey, LatencyHistogram>> window(int minutes) {
+        long bucketsInWindow = Math.max(1, (minutes * 60L + bucketSeconds - 1) / bucketSeconds);
+        return buckets.tailMap(currentBucket() - bucketsInWindow + 1, true);
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / (bucketSeconds * 1000L);
+    }
+
+    private static Map<String, Object> summarize(LatencyHistogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("mean", histogram.getMean());
+        summary.put("p50", histogram.getValueAtPercentile(50));
+        summary.put("p95", histogram.getValueAtPercentile(95));
+        summary.put("p99", histogram.getValueAtPercentile(99));
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+
+    private record HistogramKey(Long connectionId, Long fingerprint) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.dbmonitor.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer ring buffer. Producers claim a slot
+ * with a CAS on the tail sequence and publish the element into it; the single consumer
+ * drains published slots in order. {@link #offer} fails instead of blocking when full, so
+ * callers can apply drop-on-overload.
+ */
+public class MpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final int capacity;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public MpscRingBuffer(int requestedCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @return false if the buffer is full and the element was not enqueued
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        while (true) {
+            long currentTail = tail.get();
+            if (currentTail - head.get() >= capacity) {
+                return false;
+            }
+            if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                slots.lazySet((int) (currentTail & mask), element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hands up to {@code max} published elements to {@code consumer}. Must only be called
+     * from one thread at a time.
+     *
+     * @return number of elements drained
+     */
+    public int drain(Consumer<E> consumer, int max) {
+        long currentHead = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) (currentHead & mask);
+            E element = slots.get(index);
+            if (element == null) {
+                // Empty, or a producer claimed the slot but has not published yet
+                break;
+            }
+            slots.lazySet(index, null);
+            currentHead++;
+            head.lazySet(currentHead);
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -27,7 +27,25 @@ public class MultiDatabaseMonitoringService {
     private DatabaseConnectionService connectionService;
 
     @Autowired
-    private AlertService alertService;
+    private AlertEvaluationService alertEvaluationService;
+
+    @Autowired
+    private QueryStatsHarvesterService queryStatsHarvesterService;
+
+    @Autowired
+    private ActiveSessionService activeSessionService;
+
+    @Autowired
+    private BlockingChainService blockingChainService;
+
+    @Autowired
+    private ObjectStatsService objectStatsService;
+
+    @Autowired
+    private PlanCaptureBatchService planCaptureBatchService;
+
+    @Autowired
+    private CatalogCacheService catalogCacheService;
 
     // Store metrics history for each database connection
     private final Map<Long, List<DatabaseMetrics>> metricsHistoryMap = new ConcurrentHashMap<>();
@@ -75,10 +93,15 @@ public class MultiDatabaseMonitoringService {
                         String.format("%.2f", metrics.getCpuUsage()),
                         String.format("%.2f", metrics.getMemoryUsage()));
 
+                // Evaluate with this connection's thresholds so alerts are attributed to it
+                alertEvaluationService.evaluate(metrics, conn);
+
             } catch (Exception e) {
                 log.error("Error collecting metrics for connection '{}' (ID: {})",
                     conn.getConnectionName(), conn.getId(), e);
                 e.printStackTrace();
+                alertEvaluationService.raise(conn.getId(), "CONNECTION_FAILED", "CRITICAL",
+                        "[" + conn.getConnectionName() + "] Metrics collection failed: " + e.getMessage(), 0.0, 0.0);
             }
         }
 
@@ -205,6 +228,13 @@ public class MultiDatabaseMonitoringService {
     public void clearHistory(Long connectionId) {
         metricsHistoryMap.remove(connectionId);
         startTimeMap.remove(connectionId);
+        alertEvaluationService.forgetConnection(connectionId);
+        queryStatsHarvesterService.forgetConnection(connectionId);
+        activeSessionService.forgetConnection(connectionId);
+        blockingChainService.forgetConnection(connectionId);
+        objectStatsService.forgetConnection(connectionId);
+        planCaptureBatchService.forgetConnection(connectionId);
+        catalogCacheService.forgetConnection(connectionId);
         log.info("Cleared metrics history for connection ID: {}", connectionId);
     }
 }
@@ -6,13 +6,18 @@ import com.dbmonitor.repository.NotificationPreferenceRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 import com.twilio.Twilio;
 import com.twilio.rest.api.v2010.account.Message;
 import com.twilio.type.PhoneNumber;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
 
+import java.nio.file.Path;
 import java.util.List;
 
 @Service
@@ -151,6 +156,28 @@ public class NotificationService {
         );
     }
 
+    /**
+     * Emails a generated report as an attachment. Unlike alert notifications, failures are
+     * thrown so the caller can record them.
+     */
+    public void sendReportEmail(String[] to, String subject, String text, Path attachment, String filename)
+            throws MessagingException {
+        if (!emailEnabled || mailSender == null) {
+            throw new IllegalStateException("Email notifications are not enabled");
+        }
+
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+        helper.setFrom(fromEmail);
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText(text);
+        helper.addAttachment(filename, new FileSystemResource(attachment));
+
+        mailSender.send(message);
+        log.info("Report {} emailed to {} recipient(s)", filename, to.length);
+    }
+
     public void testEmailNotification(String to) {
         if (!emailEnabled || mailSender == null) {
             throw new IllegalStateException("Email notifications are not enabled");
@@ -0,0 +1,380 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.ObjectStatInterval;
+import com.dbmonitor.repository.ObjectStatIntervalRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snapshots per-table and per-index statistics (size, rows, scans, writes) of every active
+ * connection at a low frequency and stores only what changed since the previous snapshot in
+ * {@code object_stat_intervals}. Unchanged objects cost nothing, so storage grows with
+ * activity rather than with schema size.
+ */
+@Service
+@Slf4j
+public class ObjectStatsService {
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Autowired
+    private ObjectStatIntervalRepository intervalRepository;
+
+    @Value("${monitor.objects.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitor.objects.query-timeout-seconds:60}")
+    private int queryTimeoutSeconds;
+
+    // Last snapshot per connection; the baseline for the next diff
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${monitor.objects.interval-ms:900000}", initialDelay = 120_000)
+    public void collectAll() {
+        if (!enabled) {
+            return;
+        }
+        for (DatabaseConnection conn : connectionService.getActiveConnections()) {
+            try {
+                collect(conn);
+            } catch (Exception e) {
+                log.error("Error collecting object statistics for connection '{}' (ID: {})",
+                        conn.getConnectionName(), conn.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot for one connection and persists the changes against the previous one.
+     *
+     * @return number of interval rows stored
+     */
+    public int collect(DatabaseConnection conn) throws SQLException {
+        String normalizedType = conn.getDatabaseType().toUpperCase().replace(" ", "");
+        String sql = switch (normalizedType) {
+            case "SQLSERVER" -> SQLSERVER_OBJECT_STATS;
+            case "MYSQL" -> MYSQL_OBJECT_STATS;
+            case "POSTGRESQL" -> POSTGRESQL_OBJECT_STATS;
+            default -> null;
+        };
+        if (sql == null) {
+            return 0;
+        }
+
+        LocalDateTime takenAt = LocalDateTime.now();
+        Snapshot current = new Snapshot(takenAt, readStats(conn, sql));
+        Snapshot previous = snapshots.put(conn.getId(), current);
+        if (previous == null) {
+            log.debug("Baseline object statistics snapshot for '{}': {} objects",
+                    conn.getConnectionName(), current.rows().size());
+            return 0;
+        }
+
+        List<ObjectStatInterval> intervals = diff(conn.getId(), previous, current);
+        if (!intervals.isEmpty()) {
+            intervalRepository.saveAll(intervals);
+        }
+        log.debug("Stored {} changed objects of {} for '{}'", intervals.size(), current.rows().size(),
+                conn.getConnectionName());
+        return intervals.size();
+    }
+
+    /**
+     * Latest absolute statistics for a connection, or an empty list if nothing was collected yet.
+     */
+    public List<ObjectRow> getLatestSnapshot(Long connectionId) {
+        Snapshot snapshot = snapshots.get(connectionId);
+        return snapshot != null ? new ArrayList<>(snapshot.rows().values()) : Collections.emptyList();
+    }
+
+    /**
+     * Tables (or indexes) that grew the most in the window (start, end]; {@code sizeBytes} is the
+     * size at the object's last interval in the window.
+     */
+    public List<Map<String, Object>> getGrowth(Long connectionId, String objectType, LocalDateTime start,
+                                               LocalDateTime end, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Object[] row : intervalRepository.sumGrowthBetween(connectionId, objectType, start, end,
+                PageRequest.of(0, Math.max(1, Math.min(limit, 500))))) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("objectType", row[0]);
+            entry.put("schemaName", row[1]);
+            entry.put("tableName", row[2]);
+            entry.put("indexName", row[3]);
+            entry.put("sizeBytesDelta", row[4]);
+            entry.put("rowCountDelta", row[5]);
+            entry.put("sizeBytes", row[6]);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Tables read most by full scans in the window (start, end].
+     */
+    public List<Map<String, Object>> getScans(Long connectionId, LocalDateTime start, LocalDateTime end, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Object[] row : intervalRepository.sumScansBetween(connectionId, start, end,
+                PageRequest.of(0, Math.max(1, Math.min(limit, 500))))) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("schemaName", row[0]);
+            entry.put("tableName", row[1]);
+            entry.put("seqScans", row[2]);
+            entry.put("seqRowsRead", row[3]);
+            entry.put("indexScans", row[4]);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    public List<ObjectStatInterval> getHistory(Long connectionId, String schemaName, String tableName,
+                                               String indexName, LocalDateTime start, LocalDateTime end) {
+        return intervalRepository.findHistory(connectionId, schemaName, tableName, indexName, start, end);
+    }
+
+    public void forgetConnection(Long connectionId) {
+        snapshots.remove(connectionId);
+    }
+
+    private List<ObjectStatInterval> diff(Long connectionId, Snapshot previous, Snapshot current) {
+        List<ObjectStatInterval> intervals = new ArrayList<>();
+        for (ObjectRow now : current.rows().values()) {
+            ObjectRow before = previous.rows().get(now.key());
+            // Any counter dropping or disappearing means the engine restarted or the object's
+            // stats were reset: everything counted now is new
+            boolean reset = before == null || now.countersResetSince(before);
+
+            Long sizeDelta = gauge(now.sizeBytes(), before != null ? before.sizeBytes() : null);
+            Long rowDelta = gauge(now.rowCount(), before != null ? before.rowCount() : null);
+            Long seqScans = counter(now.seqScans(), before != null ? before.seqScans() : null, reset);
+            Long seqRowsRead = counter(now.seqRowsRead(), before != null ? before.seqRowsRead() : null, reset);
+            Long indexScans = counter(now.indexScans(), before != null ? before.indexScans() : null, reset);
+            Long inserted = counter(now.rowsInserted(), before != null ? before.rowsInserted() : null, reset);
+            Long updated = counter(now.rowsUpdated(), before != null ? before.rowsUpdated() : null, reset);
+            Long deleted = counter(now.rowsDeleted(), before != null ? before.rowsDeleted() : null, reset);
+
+            boolean deadRowsChanged = before != null && !Objects.equals(now.deadRows(), before.deadRows());
+            if (before != null && !deadRowsChanged && isZero(sizeDelta) && isZero(rowDelta) && isZero(seqScans)
+                    && isZero(seqRowsRead) && isZero(indexScans) && isZero(inserted) && isZero(updated)
+                    && isZero(deleted)) {
+                continue;
+            }
+
+            intervals.add(ObjectStatInterval.builder()
+                    .connectionId(connectionId)
+                    .intervalStart(previous.takenAt())
+                    .intervalEnd(current.takenAt())
+                    .objectType(now.objectType())
+                    .schemaName(now.schemaName())
+                    .tableName(now.tableName())
+                    .indexName(now.indexName())
+                    .sizeBytes(now.sizeBytes())
+                    .sizeBytesDelta(sizeDelta)
+                    .rowCount(now.rowCount())
+                    .rowCountDelta(rowDelta)
+                    .seqScans(seqScans)
+                    .seqRowsRead(seqRowsRead)
+                    .indexScans(indexScans)
+                    .rowsInserted(inserted)
+                    .rowsUpdated(updated)
+                    .rowsDeleted(deleted)
+                    .deadRows(now.deadRows())
+                    .build());
+        }
+        return intervals;
+    }
+
+    // A new object's size counts as growth from zero
+    private static Long gauge(Long now, Long before) {
+        if (now == null) {
+            return null;
+        }
+        return before != null ? now - before : now;
+    }
+
+    private static Long counter(Long now, Long before, boolean reset) {
+        if (now == null) {
+            return null;
+        }
+        return reset || before == null ? now : Math.max(0, now - before);
+    }
+
+    // SQL Server drops an index's usage row entirely when its stats are cleared
+    private static boolean decreased(Long now, Long before) {
+        return before != null && (now == null || now < before);
+    }
+
+    private static boolean isZero(Long value) {
+        return value == null || value == 0;
+    }
+
+    private Map<String, ObjectRow> readStats(DatabaseConnection conn, String sql) throws SQLException {
+        DataSource dataSource = connectionService.getDataSource(conn.getId());
+        Map<String, ObjectRow> rows = new HashMap<>();
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setQueryTimeout(queryTimeoutSeconds);
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ObjectRow row = new ObjectRow(
+                            rs.getString("object_type"),
+                            rs.getString("schema_name"),
+                            rs.getString("table_name"),
+                            rs.getString("index_name"),
+                            getLong(rs, "size_bytes"),
+                            getLong(rs, "row_count"),
+                            getLong(rs, "seq_scans"),
+                            getLong(rs, "seq_rows_read"),
+                            getLong(rs, "index_scans"),
+                            getLong(rs, "rows_inserted"),
+                            getLong(rs, "rows_updated"),
+                            getLong(rs, "rows_deleted"),
+                            getLong(rs, "dead_rows"));
+                    rows.put(row.key(), row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static final String POSTGRESQL_OBJECT_STATS = """
+        SELECT
+            'TABLE' AS object_type,
+            schemaname AS schema_name,
+            relname AS table_name,
+            CAST(NULL AS text) AS index_name,
+            pg_table_size(relid) AS size_bytes,
+            n_live_tup AS row_count,
+            seq_scan AS seq_scans,
+            seq_tup_read AS seq_rows_read,
+            idx_scan AS index_scans,
+            n_tup_ins AS rows_inserted,
+            n_tup_upd AS rows_updated,
+            n_tup_del AS rows_deleted,
+            n_dead_tup AS dead_rows
+        FROM pg_stat_user_tables
+        UNION ALL
+        SELECT
+            'INDEX', schemaname, relname, indexrelname,
+            pg_relation_size(indexrelid), NULL, NULL, NULL, idx_scan, NULL, NULL, NULL, NULL
+        FROM pg_stat_user_indexes
+        """;
+
+    // Index 0/1 (heap or clustered index) is the table itself
+    private static final String SQLSERVER_OBJECT_STATS = """
+        SELECT
+            CASE WHEN i.index_id IN (0, 1) THEN 'TABLE' ELSE 'INDEX' END AS object_type,
+            s.name AS schema_name,
+            o.name AS table_name,
+            CASE WHEN i.index_id IN (0, 1) THEN NULL ELSE i.name END AS index_name,
+            ps.size_bytes,
+            CASE WHEN i.index_id IN (0, 1) THEN ps.row_count END AS row_count,
+            CASE WHEN i.index_id IN (0, 1) THEN u.user_scans END AS seq_scans,
+            CAST(NULL AS BIGINT) AS seq_rows_read,
+            CASE WHEN i.index_id IN (0, 1) THEN u.user_seeks + u.user_lookups
+                 ELSE u.user_seeks + u.user_scans + u.user_lookups END AS index_scans,
+            CAST(NULL AS BIGINT) AS rows_inserted,
+            u.user_updates AS rows_updated,
+            CAST(NULL AS BIGINT) AS rows_deleted,
+            CAST(NULL AS BIGINT) AS dead_rows
+        FROM sys.indexes AS i
+        JOIN sys.objects AS o ON o.object_id = i.object_id AND o.type = 'U' AND o.is_ms_shipped = 0
+        JOIN sys.schemas AS s ON s.schema_id = o.schema_id
+        JOIN (
+            SELECT object_id, index_id, SUM(used_page_count) * 8192 AS size_bytes, SUM(row_count) AS row_count
+            FROM sys.dm_db_partition_stats
+            GROUP BY object_id, index_id
+        ) AS ps ON ps.object_id = i.object_id AND ps.index_id = i.index_id
+        LEFT JOIN sys.dm_db_index_usage_stats AS u
+            ON u.database_id = DB_ID() AND u.object_id = i.object_id AND u.index_id = i.index_id
+        """;
+
+    // Rows read with INDEX_NAME NULL in the I/O summary are reads that used no index
+    private static final String MYSQL_OBJECT_STATS = """
+        SELECT
+            'TABLE' AS object_type,
+            t.TABLE_SCHEMA AS schema_name,
+            t.TABLE_NAME AS table_name,
+            NULL AS index_name,
+            t.DATA_LENGTH + t.INDEX_LENGTH AS size_bytes,
+            t.TABLE_ROWS AS row_count,
+            NULL AS seq_scans,
+            scan.COUNT_READ AS seq_rows_read,
+            NULL AS index_scans,
+            io.COUNT_INSERT AS rows_inserted,
+            io.COUNT_UPDATE AS rows_updated,
+            io.COUNT_DELETE AS rows_deleted,
+            NULL AS dead_rows
+        FROM information_schema.TABLES AS t
+        LEFT JOIN performance_schema.table_io_waits_summary_by_table AS io
+            ON io.OBJECT_SCHEMA = t.TABLE_SCHEMA AND io.OBJECT_NAME = t.TABLE_NAME
+        LEFT JOIN performance_schema.table_io_waits_summary_by_index_usage AS scan
+            ON scan.OBJECT_SCHEMA = t.TABLE_SCHEMA AND scan.OBJECT_NAME = t.TABLE_NAME AND scan.INDEX_NAME IS NULL
+        WHERE t.TABLE_TYPE = 'BASE TABLE'
+          AND t.TABLE_SCHEMA NOT IN ('mysql', 'information_schema', 'performance_schema', 'sys')
+        UNION ALL
+        SELECT
+            'INDEX', OBJECT_SCHEMA, OBJECT_NAME, INDEX_NAME,
+            NULL, NULL, NULL, NULL, COUNT_FETCH, NULL, NULL, NULL, NULL
+        FROM performance_schema.table_io_waits_summary_by_index_usage
+        WHERE INDEX_NAME IS NOT NULL
+          AND OBJECT_TYPE = 'TABLE'
+          AND OBJECT_SCHEMA NOT IN ('mysql', 'information_schema', 'performance_schema', 'sys')
+        """;
+
+    /**
+     * Absolute statistics of one table or index as read from the engine.
+     */
+    public record ObjectRow(String objectType, String schemaName, String tableName, String indexName,
+                            Long sizeBytes, Long rowCount, Long seqScans, Long seqRowsRead, Long indexScans,
+                            Long rowsInserted, Long rowsUpdated, Long rowsDeleted, Long deadRows) {
+
+        String key() {
+            return objectType + ":" + schemaName + "." + tableName + (indexName != null ? "." + indexName : "");
+        }
+
+        /**
+         * Whether any cumulative counter went backwards or vanished since {@code before}. A
+         * single reset counter is enough: all of an object's counters are reset together.
+         */
+        boolean countersResetSince(ObjectRow before) {
+            return decreased(seqScans, before.seqScans)
+                    || decreased(seqRowsRead, before.seqRowsRead)
+                    || decreased(indexScans, before.indexScans)
+                    || decreased(rowsInserted, before.rowsInserted)
+                    || decreased(rowsUpdated, before.rowsUpdated)
+                    || decreased(rowsDeleted, before.rowsDeleted);
+        }
+    }
+
+    private record Snapshot(LocalDateTime takenAt, Map<String, ObjectRow> rows) {
+    }
+}
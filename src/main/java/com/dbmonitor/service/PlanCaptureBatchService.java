@@ -0,0 +1,315 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.PlanCaptureMode;
+import com.dbmonitor.model.QueryPlan;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps plans of the heaviest statements current without manual analysis. Every
+ * {@code monitor.plans.batch-interval-ms} the top statements of each connection by total time
+ * (from harvested statistics) are captured, at most {@code batch-per-target} at a time per
+ * connection and within {@code batch-budget-seconds} per run, counted from when the run's
+ * first worker starts. A statement is only captured
+ * again when its mean latency moved by {@code batch-change-ratio} or its plan is older than
+ * {@code batch-max-age-hours}.
+ */
+@Service
+@Slf4j
+public class PlanCaptureBatchService {
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Autowired
+    private QueryStatsHarvesterService harvesterService;
+
+    @Autowired
+    private QueryPlanAnalysisService queryPlanAnalysisService;
+
+    @Value("${monitor.plans.batch-enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitor.plans.batch-top-n:20}")
+    private int topN;
+
+    @Value("${monitor.plans.batch-window-minutes:60}")
+    private int windowMinutes;
+
+    @Value("${monitor.plans.batch-threads:4}")
+    private int threads;
+
+    @Value("${monitor.plans.batch-per-target:2}")
+    private int perTarget;
+
+    @Value("${monitor.plans.batch-budget-seconds:120}")
+    private int budgetSeconds;
+
+    @Value("${monitor.plans.batch-max-age-hours:24}")
+    private int maxAgeHours;
+
+    @Value("${monitor.plans.batch-change-ratio:0.5}")
+    private double changeRatio;
+
+    private ExecutorService workers;
+
+    // Latency and time of the last capture per (connection, fingerprint)
+    private final Map<Long, Map<Long, Captured>> captured = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicBoolean> running = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Object>> lastRuns = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "plan-capture-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.plans.batch-interval-ms:900000}", initialDelay = 300_000)
+    public void runAll() {
+        if (!enabled) {
+            return;
+        }
+        for (DatabaseConnection conn : connectionService.getActiveConnections()) {
+            try {
+                run(conn);
+            } catch (Exception e) {
+                log.error("Error starting plan capture for connection '{}' (ID: {})",
+                        conn.getConnectionName(), conn.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Starts a capture run for one connection unless one is still running.
+     *
+     * @return false when a run for the connection is already in progress
+     */
+    public boolean run(DatabaseConnection conn) {
+        AtomicBoolean busy = running.computeIfAbsent(conn.getId(), id -> new AtomicBoolean());
+        if (!busy.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            String type = conn.getDatabaseType() != null ? conn.getDatabaseType().toUpperCase().replace(" ", "") : "";
+            Run run = new Run(conn, type, LocalDateTime.now());
+            run.queue.addAll(candidates(conn.getId(), run));
+            run.candidates = run.queue.size();
+            int workerCount = Math.max(1, Math.min(perTarget, run.queue.size()));
+            run.activeWorkers.set(workerCount);
+            if (run.queue.isEmpty()) {
+                finish(run);
+                return true;
+            }
+            for (int i = 0; i < workerCount; i++) {
+                workers.execute(() -> work(run));
+            }
+            return true;
+        } catch (RuntimeException e) {
+            busy.set(false);
+            throw e;
+        }
+    }
+
+    public Map<Long, Map<String, Object>> getStatus() {
+        Map<Long, Map<String, Object>> status = new LinkedHashMap<>(lastRuns);
+        running.forEach((id, busy) -> {
+            if (busy.get()) {
+                status.computeIfAbsent(id, k -> new LinkedHashMap<>()).put("running", true);
+            }
+        });
+        return status;
+    }
+
+    public void forgetConnection(Long connectionId) {
+        captured.remove(connectionId);
+        lastRuns.remove(connectionId);
+    }
+
+    // Top statements whose plan is missing, stale or whose latency moved since the last capture
+    private List<Candidate> candidates(Long connectionId, Run run) {
+        LocalDateTime end = LocalDateTime.now();
+        Map<String, String> rawTexts = new HashMap<>();
+        for (QueryStatsHarvesterService.StatRow row : harvesterService.getLatestSnapshot(connectionId)) {
+            rawTexts.put(row.statementKey(), row.queryText());
+        }
+        Map<Long, Captured> known = captured.computeIfAbsent(connectionId, k -> new ConcurrentHashMap<>());
+
+        List<Candidate> result = new ArrayList<>();
+        for (Map<String, Object> statement : harvesterService.getTopStatements(connectionId,
+                end.minusMinutes(windowMinutes), end, topN)) {
+            if (!(statement.get("fingerprint") instanceof Long fingerprint)) {
+                continue;
+            }
+            double avgTimeMs = ((Number) statement.get("avgTimeMs")).doubleValue();
+            Captured previous = known.get(fingerprint);
+            if (previous != null && previous.capturedAt().isAfter(end.minusHours(maxAgeHours))
+                    && Math.abs(avgTimeMs - previous.avgTimeMs()) <= previous.avgTimeMs() * changeRatio) {
+                run.unchanged++;
+                continue;
+            }
+            result.add(new Candidate(fingerprint, (String) statement.get("statementKey"),
+                    rawTexts.get((String) statement.get("statementKey")), avgTimeMs));
+        }
+        return result;
+    }
+
+    private void work(Run run) {
+        // The budget starts when the run's first worker does, not while it waits behind other
+        // connections' runs on the shared pool
+        run.deadline.compareAndSet(0, System.currentTimeMillis() + budgetSeconds * 1000L);
+        try {
+            Candidate candidate;
+            while ((candidate = run.queue.poll()) != null) {
+                if (System.currentTimeMillis() > run.deadline.get()) {
+                    run.overBudget.addAndGet(1 + drain(run));
+                    break;
+                }
+                capture(run, candidate);
+            }
+        } finally {
+            if (run.activeWorkers.decrementAndGet() == 0) {
+                finish(run);
+            }
+        }
+    }
+
+    private void capture(Run run, Candidate candidate) {
+        try {
+            PlanCaptureMode mode = PlanCaptureMode.ESTIMATE;
+            String text = candidate.rawText();
+            switch (run.type) {
+                // Cached plan by query_hash; nothing is recompiled
+                case "SQLSERVER" -> mode = PlanCaptureMode.CACHED;
+                // Digest text has ? placeholders that EXPLAIN cannot plan; use a real sample
+                case "MYSQL" -> text = mySqlSampleText(run.conn.getId(), candidate.statementKey());
+                default -> { }
+            }
+            if (text == null || text.isBlank()) {
+                // A cached plan is found by query_hash; only the other modes need text to plan
+                if (mode != PlanCaptureMode.CACHED) {
+                    run.skipped.incrementAndGet();
+                    return;
+                }
+                text = null;
+            }
+            QueryPlan plan = queryPlanAnalysisService.analyzeStatement(run.conn.getId(), text, mode,
+                    candidate.fingerprint());
+            // Failures are remembered too, so a statement that cannot be planned is not retried every run
+            captured.computeIfAbsent(run.conn.getId(), k -> new ConcurrentHashMap<>())
+                    .put(candidate.fingerprint(), new Captured(LocalDateTime.now(), candidate.avgTimeMs()));
+            if (plan.getExecutionPlan() != null && plan.getExecutionPlan().startsWith("ERROR:")) {
+                run.failed.incrementAndGet();
+            } else {
+                run.captured.incrementAndGet();
+            }
+        } catch (Exception e) {
+            run.failed.incrementAndGet();
+            log.debug("Plan capture failed for statement {} on '{}': {}", candidate.statementKey(),
+                    run.conn.getConnectionName(), e.getMessage());
+        }
+    }
+
+    private String mySqlSampleText(Long connectionId, String statementKey) throws SQLException {
+        int separator = statementKey.lastIndexOf(':');
+        DataSource dataSource = connectionService.getDataSource(connectionId);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(MYSQL_SAMPLE_TEXT)) {
+            stmt.setString(1, statementKey.substring(separator + 1));
+            stmt.setString(2, statementKey.substring(0, Math.max(0, separator)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private int drain(Run run) {
+        int drained = 0;
+        while (run.queue.poll() != null) {
+            drained++;
+        }
+        return drained;
+    }
+
+    private void finish(Run run) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("startedAt", run.startedAt);
+        summary.put("finishedAt", LocalDateTime.now());
+        summary.put("candidates", run.candidates);
+        summary.put("unchanged", run.unchanged);
+        summary.put("captured", run.captured.get());
+        summary.put("failed", run.failed.get());
+        summary.put("skipped", run.skipped.get());
+        summary.put("overBudget", run.overBudget.get());
+        lastRuns.put(run.conn.getId(), summary);
+        running.get(run.conn.getId()).set(false);
+        log.debug("Plan capture for '{}': {}", run.conn.getConnectionName(), summary);
+    }
+
+    private record Candidate(long fingerprint, String statementKey, String rawText, double avgTimeMs) {
+    }
+
+    private record Captured(LocalDateTime capturedAt, double avgTimeMs) {
+    }
+
+    private static final class Run {
+        final DatabaseConnection conn;
+        final String type;
+        final LocalDateTime startedAt;
+        // Set by the first worker to start
+        final AtomicLong deadline = new AtomicLong();
+        final ConcurrentLinkedQueue<Candidate> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger activeWorkers = new AtomicInteger();
+        final AtomicInteger captured = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger overBudget = new AtomicInteger();
+        int candidates;
+        int unchanged;
+
+        Run(DatabaseConnection conn, String type, LocalDateTime startedAt) {
+            this.conn = conn;
+            this.type = type;
+            this.startedAt = startedAt;
+        }
+    }
+
+    private static final String MYSQL_SAMPLE_TEXT = """
+        SELECT QUERY_SAMPLE_TEXT
+        FROM performance_schema.events_statements_summary_by_digest
+        WHERE DIGEST = ? AND IFNULL(SCHEMA_NAME, '') = ?
+        """;
+}
@@ -0,0 +1,449 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.PlanNode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Parses the structured plan formats of the supported engines (PostgreSQL
+ * {@code EXPLAIN (FORMAT JSON)}, MySQL {@code EXPLAIN FORMAT=JSON}, SQL Server showplan XML)
+ * into a {@link PlanNode} tree, and derives what plan analysis needs from the tree.
+ */
+public final class PlanParser {
+
+    public static final String POSTGRESQL_JSON = "POSTGRESQL_JSON";
+    public static final String MYSQL_JSON = "MYSQL_JSON";
+    public static final String SQLSERVER_XML = "SQLSERVER_XML";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // MySQL fields that hold details of a node rather than nested operators
+    private static final Set<String> MYSQL_DETAIL_FIELDS = Set.of("cost_info", "used_columns", "possible_keys",
+            "used_key_parts", "ref", "attached_condition", "message", "key_length", "filtered");
+
+    private static final Set<String> SQLSERVER_FULL_SCANS = Set.of("Table Scan", "Clustered Index Scan");
+
+    private PlanParser() {
+    }
+
+    /**
+     * Parses a plan in one of the formats above; returns null for unknown formats.
+     */
+    public static PlanNode parse(String format, String plan) {
+        if (format == null || plan == null || plan.isBlank()) {
+            return null;
+        }
+        try {
+            return switch (format) {
+                case POSTGRESQL_JSON -> parsePostgreSql(plan);
+                case MYSQL_JSON -> parseMySql(plan);
+                case SQLSERVER_XML -> parseSqlServer(plan);
+                default -> null;
+            };
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unparseable " + format + " plan: " + e.getMessage(), e);
+        }
+    }
+
+    // ---- PostgreSQL ----
+
+    static PlanNode parsePostgreSql(String json) throws Exception {
+        JsonNode root = MAPPER.readTree(json);
+        JsonNode top = root.isArray() ? root.get(0) : root;
+        return postgreSqlNode(top.get("Plan"));
+    }
+
+    /**
+     * Total execution time reported by {@code EXPLAIN (ANALYZE, FORMAT JSON)}, or null.
+     */
+    public static Double postgreSqlExecutionTime(String json) {
+        try {
+            JsonNode root = MAPPER.readTree(json);
+            JsonNode top = root.isArray() ? root.get(0) : root;
+            JsonNode time = top.get("Execution Time");
+            return time != null ? time.asDouble() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static PlanNode postgreSqlNode(JsonNode node) {
+        String type = text(node, "Node Type");
+        Long loops = node.has("Actual Loops") ? node.get("Actual Loops").asLong() : null;
+        Double actualRows = node.has("Actual Rows")
+                ? node.get("Actual Rows").asDouble() * (loops != null ? Math.max(1, loops) : 1) : null;
+        PlanNode result = PlanNode.builder()
+                .operator(type)
+                .relation(text(node, "Relation Name"))
+                .indexName(text(node, "Index Name"))
+                .estimatedRows(number(node, "Plan Rows"))
+                .estimatedCost(number(node, "Total Cost"))
+                .actualRows(actualRows)
+                .loops(loops)
+                .actualTimeMs(number(node, "Actual Total Time"))
+                .fullScan("Seq Scan".equals(type))
+                .build();
+        JsonNode plans = node.get("Plans");
+        if (plans != null) {
+            for (JsonNode child : plans) {
+                result.getChildren().add(postgreSqlNode(child));
+            }
+        }
+        return result;
+    }
+
+    // ---- MySQL ----
+
+    static PlanNode parseMySql(String json) throws Exception {
+        JsonNode root = MAPPER.readTree(json);
+        return mySqlNode("query_block", root.has("query_block") ? root.get("query_block") : root);
+    }
+
+    private static PlanNode mySqlNode(String name, JsonNode node) {
+        PlanNode result;
+        if ("table".equals(name)) {
+            String access = text(node, "access_type");
+            result = PlanNode.builder()
+                    .operator("Table (" + (access != null ? access : "?") + ")")
+                    .relation(text(node, "table_name"))
+                    .indexName(text(node, "key"))
+                    .estimatedRows(number(node, "rows_examined_per_scan"))
+                    .fullScan("ALL".equals(access))
+                    .build();
+        } else {
+            result = PlanNode.builder()
+                    .operator(operatorName(name))
+                    .estimatedCost(number(node.path("cost_info"), "query_cost"))
+                    .build();
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (MYSQL_DETAIL_FIELDS.contains(field.getKey())) {
+                continue;
+            }
+            JsonNode value = field.getValue();
+            if (value.isObject()) {
+                result.getChildren().add(mySqlNode(field.getKey(), value));
+            } else if (value.isArray()) {
+                PlanNode container = PlanNode.builder().operator(operatorName(field.getKey())).build();
+                double cost = 0;
+                for (JsonNode element : value) {
+                    if (!element.isObject()) {
+                        continue;
+                    }
+                    // Elements wrap one operator, e.g. nested_loop: [{"table": {...}}, ...]
+                    Map.Entry<String, JsonNode> only = element.size() == 1 ? element.fields().next() : null;
+                    PlanNode child = only != null && only.getValue().isObject()
+                            ? mySqlNode(only.getKey(), only.getValue())
+                            : mySqlNode(field.getKey(), element);
+                    container.getChildren().add(child);
+                    cost += child.getEstimatedCost() != null ? child.getEstimatedCost() : 0;
+                }
+                if (!container.getChildren().isEmpty()) {
+                    container.setEstimatedCost(cost);
+                    result.getChildren().add(container);
+                }
+            }
+        }
+        // Only query_cost covers a whole subtree. prefix_cost is cumulative across a join, so
+        // tables use their own read + eval cost; sorts their sort_cost; containers such as
+        // nested_loop nothing. Each then adds what it contains.
+        if (result.getEstimatedCost() == null) {
+            Double sortCost = number(node.path("cost_info"), "sort_cost");
+            double cost = "table".equals(name) ? tableCost(node.path("cost_info")) : sortCost != null ? sortCost : 0;
+            for (PlanNode child : result.getChildren()) {
+                cost += child.getEstimatedCost() != null ? child.getEstimatedCost() : 0;
+            }
+            result.setEstimatedCost(cost);
+        }
+        return result;
+    }
+
+    private static double tableCost(JsonNode cost) {
+        Double read = number(cost, "read_cost");
+        Double eval = number(cost, "eval_cost");
+        return (read != null ? read : 0) + (eval != null ? eval : 0);
+    }
+
+    private static String operatorName(String field) {
+        String words = field.replace('_', ' ');
+        return Character.toUpperCase(words.charAt(0)) + words.substring(1);
+    }
+
+    // ---- SQL Server ----
+
+    static PlanNode parseSqlServer(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setExpandEntityReferences(false);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        // Read as characters: the plan declares encoding="utf-16" whatever the driver returned
+        Document document = builder.parse(new InputSource(new StringReader(xml)));
+
+        List<Element> statements = new ArrayList<>();
+        collect(document.getDocumentElement(), "StmtSimple", statements::add);
+        PlanNode root = PlanNode.builder().operator("Batch").estimatedCost(0.0).build();
+        for (Element statement : statements) {
+            Element relOp = firstRelOp(statement);
+            if (relOp == null) {
+                continue;
+            }
+            PlanNode node = PlanNode.builder()
+                    .operator(attr(statement, "StatementType", "Statement"))
+                    .estimatedRows(number(statement.getAttribute("StatementEstRows")))
+                    .estimatedCost(number(statement.getAttribute("StatementSubTreeCost")))
+                    .build();
+            node.getChildren().add(sqlServerNode(relOp));
+            root.getChildren().add(node);
+            root.setEstimatedCost(root.getEstimatedCost() + (node.getEstimatedCost() != null ? node.getEstimatedCost() : 0));
+        }
+        // A single statement is the usual case; skip the batch wrapper then
+        return root.getChildren().size() == 1 ? root.getChildren().get(0) : root;
+    }
+
+    private static PlanNode sqlServerNode(Element relOp) {
+        String physicalOp = relOp.getAttribute("PhysicalOp");
+        PlanNode result = PlanNode.builder()
+                .operator(physicalOp)
+                .estimatedRows(number(relOp.getAttribute("EstimateRows")))
+                .estimatedCost(number(relOp.getAttribute("EstimatedTotalSubtreeCost")))
+                .fullScan(SQLSERVER_FULL_SCANS.contains(physicalOp))
+                .build();
+
+        List<Element> children = new ArrayList<>();
+        Element[] object = new Element[1];
+        long[] actual = {-1, 0};
+        walkOperator(relOp, children, object, actual);
+        if (object[0] != null) {
+            result.setRelation(unquote(object[0].getAttribute("Table")));
+            String index = unquote(object[0].getAttribute("Index"));
+            result.setIndexName(index);
+        }
+        if (actual[0] >= 0) {
+            result.setActualRows((double) actual[0]);
+            result.setLoops(actual[1]);
+        }
+        for (Element child : children) {
+            result.getChildren().add(sqlServerNode(child));
+        }
+        return result;
+    }
+
+    // Collects the nearest nested RelOps, the accessed object and runtime counters of one RelOp
+    private static void walkOperator(Element element, List<Element> children, Element[] object, long[] actual) {
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (!(nodes.item(i) instanceof Element child)) {
+                continue;
+            }
+            String name = localName(child);
+            if ("RelOp".equals(name)) {
+                children.add(child);
+            } else {
+                if ("Object".equals(name) && object[0] == null) {
+                    object[0] = child;
+                } else if ("RunTimeCountersPerThread".equals(name)) {
+                    actual[0] = Math.max(0, actual[0]) + (long) number(child.getAttribute("ActualRows"), 0);
+                    actual[1] += (long) number(child.getAttribute("ActualExecutions"), 0);
+                }
+                walkOperator(child, children, object, actual);
+            }
+        }
+    }
+
+    private static Element firstRelOp(Element element) {
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i) instanceof Element child) {
+                if ("RelOp".equals(localName(child))) {
+                    return child;
+                }
+                Element found = firstRelOp(child);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void collect(Element element, String name, Consumer<Element> sink) {
+        if (name.equals(localName(element))) {
+            sink.accept(element);
+            return;
+        }
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i) instanceof Element child) {
+                collect(child, name, sink);
+            }
+        }
+    }
+
+    private static String localName(Node node) {
+        String name = node.getNodeName();
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    private static String attr(Element element, String name, String fallback) {
+        String value = element.getAttribute(name);
+        return value.isEmpty() ? fallback : value;
+    }
+
+    private static String unquote(String identifier) {
+        if (identifier == null || identifier.isEmpty()) {
+            return null;
+        }
+        return identifier.startsWith("[") && identifier.endsWith("]")
+                ? identifier.substring(1, identifier.length() - 1) : identifier;
+    }
+
+    // ---- Analysis ----
+
+    /**
+     * Visits every node of the tree, parents before children.
+     */
+    public static void forEach(PlanNode node, Consumer<PlanNode> visitor) {
+        if (node == null) {
+            return;
+        }
+        visitor.accept(node);
+        for (PlanNode child : node.getChildren()) {
+            forEach(child, visitor);
+        }
+    }
+
+    /**
+     * Node with the highest cost of its own (excluding children).
+     */
+    public static PlanNode mostExpensive(PlanNode root) {
+        PlanNode[] best = new PlanNode[1];
+        forEach(root, node -> {
+            if (best[0] == null || node.getSelfCost() > best[0].getSelfCost()) {
+                best[0] = node;
+            }
+        });
+        return best[0];
+    }
+
+    /**
+     * Executed nodes whose row estimate was off by at least {@code minRatio} and that
+     * produced or were expected to produce at least {@code minRows} rows.
+     */
+    public static List<PlanNode> misestimates(PlanNode root, double minRatio, double minRows) {
+        List<PlanNode> result = new ArrayList<>();
+        forEach(root, node -> {
+            Double error = node.getEstimateError();
+            if (error != null && error >= minRatio
+                    && Math.max(node.getActualRows(), node.getEstimatedRows()) >= minRows) {
+                result.add(node);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Hash of the tree's shape (operators, objects and indexes), independent of costs and
+     * row counts, so two captures of the same plan hash equally.
+     */
+    public static long shapeHash(PlanNode root) {
+        StringBuilder shape = new StringBuilder();
+        appendShape(root, shape);
+        return SqlFingerprinter.hash(shape.toString());
+    }
+
+    private static void appendShape(PlanNode node, StringBuilder shape) {
+        shape.append(node.getOperator()).append('|')
+                .append(node.getRelation() != null ? node.getRelation() : "").append('|')
+                .append(node.getIndexName() != null ? node.getIndexName() : "").append('(');
+        for (PlanNode child : node.getChildren()) {
+            appendShape(child, shape);
+            shape.append(',');
+        }
+        shape.append(')');
+    }
+
+    /**
+     * One line per node, indented by depth; the readable form of a parsed plan.
+     */
+    public static String describe(PlanNode root) {
+        StringBuilder text = new StringBuilder();
+        describe(root, 0, text);
+        return text.toString();
+    }
+
+    private static void describe(PlanNode node, int depth, StringBuilder text) {
+        text.append("  ".repeat(depth)).append("-> ").append(node.getOperator());
+        if (node.getRelation() != null) {
+            text.append(" on ").append(node.getRelation());
+        }
+        if (node.getIndexName() != null) {
+            text.append(" using ").append(node.getIndexName());
+        }
+        if (node.getEstimatedCost() != null) {
+            text.append(String.format(" (cost=%.2f", node.getEstimatedCost()));
+            if (node.getEstimatedRows() != null) {
+                text.append(String.format(" rows=%.0f", node.getEstimatedRows()));
+            }
+            text.append(')');
+        }
+        if (node.getActualRows() != null) {
+            text.append(String.format(" (actual rows=%.0f", node.getActualRows()));
+            if (node.getLoops() != null) {
+                text.append(" loops=").append(node.getLoops());
+            }
+            text.append(')');
+        }
+        text.append('\n');
+        for (PlanNode child : node.getChildren()) {
+            describe(child, depth + 1, text);
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+
+    // MySQL reports costs as strings; asDouble parses both
+    private static Double number(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() ? value.asDouble() : null;
+    }
+
+    private static Double number(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double number(String value, double fallback) {
+        Double parsed = number(value);
+        return parsed != null ? parsed : fallback;
+    }
+}
@@ -0,0 +1,330 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.QueryAggregate;
+import com.dbmonitor.model.QueryExecution;
+import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.QueryStatInterval;
+import com.dbmonitor.repository.QueryStatIntervalRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion pipeline for application-reported executions. Callers fingerprint and enqueue
+ * into a bounded lock-free ring buffer and return immediately; a single flusher thread drains
+ * the buffer, registers new statement texts in the {@code query_texts} dictionary and writes
+ * {@code query_metrics} rows with JDBC batch inserts. When the buffer is full new executions
+ * are dropped and counted rather than blocking request threads.
+ */
+@Service
+@Slf4j
+public class QueryIngestionService {
+
+    private static final String INSERT_SQL = """
+        INSERT INTO query_metrics (connection_id, fingerprint, execution_time,
+            execution_duration_ms, query_type, is_slow, rows_affected, status, error_message)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private LatencyHistogramService latencyHistogramService;
+
+    @Autowired
+    private TopQueryService topQueryService;
+
+    @Autowired
+    private QueryTextService queryTextService;
+
+    @Autowired
+    private QueryStatisticsService queryStatisticsService;
+
+    @Autowired
+    private QueryStatIntervalRepository intervalRepository;
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${monitor.query.slow-threshold-ms:1000}")
+    private long slowQueryThreshold;
+
+    @Value("${monitor.query.ingest.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${monitor.query.ingest.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${monitor.query.ingest.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "query-ingest-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private MpscRingBuffer<QueryMetrics> buffer;
+    private Counter acceptedCounter;
+    private Counter droppedCounter;
+    private Counter persistedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void start() {
+        buffer = new MpscRingBuffer<>(bufferSize);
+        acceptedCounter = meterRegistry.counter("dbmonitor.ingest.accepted");
+        droppedCounter = meterRegistry.counter("dbmonitor.ingest.dropped");
+        persistedCounter = meterRegistry.counter("dbmonitor.ingest.persisted");
+        failedCounter = meterRegistry.counter("dbmonitor.ingest.failed");
+        meterRegistry.gauge("dbmonitor.ingest.buffer.size", buffer, MpscRingBuffer::size);
+
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Query ingestion pipeline started: buffer={}, batch={}, flush every {}ms",
+                buffer.capacity(), batchSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Query ingestion flusher did not stop in time");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Flusher is stopped, so this thread is now the only consumer
+        flushSafely();
+    }
+
+    /**
+     * Enqueues one execution.
+     *
+     * @return false if it was dropped because the buffer is full
+     */
+    public boolean submit(QueryExecution execution) {
+        if (execution == null || execution.getQueryText() == null) {
+            return false;
+        }
+        QueryMetrics row = toRow(execution);
+        if (!buffer.offer(row)) {
+            droppedCounter.increment();
+            return false;
+        }
+        acceptedCounter.increment();
+
+        if ("SUCCESS".equals(row.getStatus())) {
+            latencyHistogramService.record(row.getConnectionId(), row.getFingerprint(), row.getExecutionDurationMs());
+        }
+        topQueryService.record(row.getConnectionId(), row.getFingerprint(), row.getQueryText(),
+                1, row.getExecutionDurationMs(), row.getRowsAffected());
+        queryStatisticsService.record(row.getExecutionTime(), row.getExecutionDurationMs(), row.getIsSlow(),
+                !"SUCCESS".equals(row.getStatus()));
+        if (row.getIsSlow()) {
+            String text = execution.getQueryText();
+            log.warn("Slow query detected: {}ms - {}", row.getExecutionDurationMs(),
+                    text.length() > 100 ? text.substring(0, 100) + "..." : text);
+        }
+        return true;
+    }
+
+    /**
+     * Enqueues a batch of executions.
+     *
+     * @return number accepted; the rest were invalid or dropped
+     */
+    public int submitAll(List<QueryExecution> executions) {
+        int accepted = 0;
+        for (QueryExecution execution : executions) {
+            if (submit(execution)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Stores interval aggregates shipped by the JDBC client as {@code query_stat_intervals}
+     * rows (statement key {@code client:<fingerprint>}) and merges their latency buckets into
+     * the histograms.
+     *
+     * @return number of aggregates stored
+     */
+    public int submitAggregates(List<QueryAggregate> aggregates) {
+        List<QueryStatInterval> intervals = new ArrayList<>(aggregates.size());
+        for (QueryAggregate aggregate : aggregates) {
+            if (aggregate == null || aggregate.getCalls() <= 0 || aggregate.getIntervalEnd() == null) {
+                continue;
+            }
+            if (aggregate.getQueryText() == null) {
+                continue;
+            }
+            // Fingerprints sent by the client are not trusted; the normalized text is re-hashed
+            SqlFingerprinter.Fingerprint computed = SqlFingerprinter.fingerprint(aggregate.getQueryText(),
+                    connectionService.getDialect(aggregate.getConnectionId()));
+            long fingerprint = computed.hash();
+            String queryText = computed.normalizedText();
+            String queryType = computed.queryType();
+
+            intervals.add(QueryStatInterval.builder()
+                    .connectionId(aggregate.getConnectionId())
+                    .intervalStart(aggregate.getIntervalStart())
+                    .intervalEnd(aggregate.getIntervalEnd())
+                    .statementKey("client:" + String.format("%016x", fingerprint))
+                    .fingerprint(fingerprint)
+                    .queryText(queryText)
+                    .queryType(queryType)
+                    .calls(aggregate.getCalls())
+                    .totalTimeMs(aggregate.getTotalTimeMs())
+                    .rowsAffected(aggregate.getRows())
+                    .avgTimeMs(aggregate.getTotalTimeMs() / aggregate.getCalls())
+                    .build());
+
+            if (aggregate.getLatencyBuckets() != null) {
+                for (Map.Entry<Integer, Long> bucket : aggregate.getLatencyBuckets().entrySet()) {
+                    if (bucket.getKey() != null && bucket.getValue() != null
+                            && LatencyHistogram.isValidIndex(bucket.getKey())) {
+                        latencyHistogramService.record(aggregate.getConnectionId(), fingerprint,
+                                LatencyHistogram.midpointFor(bucket.getKey()), bucket.getValue());
+                    }
+                }
+            }
+            topQueryService.record(aggregate.getConnectionId(), fingerprint, queryText,
+                    aggregate.getCalls(), aggregate.getTotalTimeMs(), aggregate.getRows());
+            queryStatisticsService.record(aggregate.getIntervalEnd(), aggregate.getCalls(), aggregate.getTotalTimeMs(),
+                    queryStatisticsService.countSlow(aggregate.getLatencyBuckets()), aggregate.getErrors());
+        }
+        if (!intervals.isEmpty()) {
+            intervalRepository.saveAll(intervals);
+        }
+        acceptedCounter.increment(intervals.stream().mapToLong(QueryStatInterval::getCalls).sum());
+        return intervals.size();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("bufferCapacity", buffer.capacity());
+        status.put("buffered", buffer.size());
+        status.put("accepted", (long) acceptedCounter.count());
+        status.put("dropped", (long) droppedCounter.count());
+        status.put("persisted", (long) persistedCounter.count());
+        status.put("failed", (long) failedCounter.count());
+        return status;
+    }
+
+    private QueryMetrics toRow(QueryExecution execution) {
+        SqlFingerprinter.Fingerprint fingerprint = SqlFingerprinter.fingerprint(execution.getQueryText(),
+                connectionService.getDialect(execution.getConnectionId()));
+        String status = execution.getStatus() != null && !execution.getStatus().isBlank()
+                ? execution.getStatus().toUpperCase() : "SUCCESS";
+        boolean success = "SUCCESS".equals(status);
+        long durationMs = Math.max(0, execution.getExecutionTimeMs());
+        String queryType = execution.getQueryType();
+
+        return QueryMetrics.builder()
+                .connectionId(execution.getConnectionId())
+                .queryText(fingerprint.normalizedText())
+                .fingerprint(fingerprint.hash())
+                .executionTime(execution.getExecutedAt() != null ? execution.getExecutedAt() : LocalDateTime.now())
+                .executionDurationMs(durationMs)
+                .queryType(queryType != null && !queryType.isBlank() ? queryType : fingerprint.queryType())
+                .isSlow(success && durationMs > slowQueryThreshold)
+                .rowsAffected(execution.getRowsAffected() != null ? execution.getRowsAffected() : 0)
+                .status(status)
+                .errorMessage(execution.getErrorMessage())
+                .build();
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error flushing query ingestion buffer", e);
+        }
+    }
+
+    private void flush() {
+        List<QueryMetrics> batch = new ArrayList<>(batchSize);
+        while (true) {
+            batch.clear();
+            int drained = buffer.drain(batch::add, batchSize);
+            if (drained == 0) {
+                return;
+            }
+            try {
+                // Dictionary rows go first, outside the batch transaction; extras are harmless
+                queryTextService.registerAll(batch.stream()
+                        .map(row -> new SqlFingerprinter.Fingerprint(row.getFingerprint(), row.getQueryText(),
+                                SqlFingerprinter.queryType(row.getQueryText())))
+                        .toList());
+                transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+                persistedCounter.increment(drained);
+            } catch (Exception e) {
+                // Dropping the batch keeps the pipeline moving if the repository database is unhealthy
+                failedCounter.increment(drained);
+                log.error("Failed to persist {} query executions", drained, e);
+            }
+            if (drained < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void insertBatch(List<QueryMetrics> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                QueryMetrics row = batch.get(i);
+                if (row.getConnectionId() != null) {
+                    ps.setLong(1, row.getConnectionId());
+                } else {
+                    ps.setNull(1, Types.BIGINT);
+                }
+                ps.setLong(2, row.getFingerprint());
+                ps.setTimestamp(3, Timestamp.valueOf(row.getExecutionTime()));
+                ps.setLong(4, row.getExecutionDurationMs());
+                ps.setString(5, row.getQueryType());
+                ps.setBoolean(6, row.getIsSlow());
+                ps.setInt(7, row.getRowsAffected());
+                ps.setString(8, row.getStatus());
+                ps.setString(9, row.getErrorMessage());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+}
@@ -1,12 +1,18 @@
 package com.dbmonitor.service;
 
+import com.dbmonitor.model.CursorPage;
 import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.QueryAggregate;
+import com.dbmonitor.model.QueryExecution;
 import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.QueryMetricsView;
 import com.dbmonitor.repository.QueryMetricsRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -14,96 +20,176 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class QueryMonitoringService {
 
+    private static final int DATABASE_QUERY_LIMIT = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private QueryMetricsRepository queryMetricsRepository;
 
     @Autowired
     private DatabaseConnectionService connectionService;
 
+    @Autowired
+    private QueryStatsHarvesterService harvesterService;
+
+    @Autowired
+    private LatencyHistogramService latencyHistogramService;
+
+    @Autowired
+    private QueryIngestionService ingestionService;
+
+    @Autowired
+    private TopQueryService topQueryService;
+
+    @Autowired
+    private QueryStatisticsService queryStatisticsService;
+
     @Value("${monitor.query.slow-threshold-ms:1000}")
     private long slowQueryThreshold;
 
     public void recordQuery(String queryText, long executionTimeMs, String queryType, int rowsAffected) {
-        try {
-            QueryMetrics metrics = QueryMetrics.builder()
-                    .queryText(queryText)
-                    .executionTime(LocalDateTime.now())
-                    .executionDurationMs(executionTimeMs)
-                    .queryType(queryType)
-                    .isSlow(executionTimeMs > slowQueryThreshold)
-                    .rowsAffected(rowsAffected)
-                    .status("SUCCESS")
-                    .build();
-
-            queryMetricsRepository.save(metrics);
-
-            if (metrics.getIsSlow()) {
-                log.warn("Slow query detected: {}ms - {}", executionTimeMs, 
-                        queryText.length() > 100 ? queryText.substring(0, 100) + "..." : queryText);
-            }
-        } catch (Exception e) {
-            log.error("Error recording query metrics", e);
+        recordQuery(null, queryText, executionTimeMs, queryType, rowsAffected);
+    }
+
+    public void recordQuery(Long connectionId, String queryText, long executionTimeMs, String queryType, int rowsAffected) {
+        boolean accepted = ingestionService.submit(QueryExecution.builder()
+                .connectionId(connectionId)
+                .queryText(queryText)
+                .executionTimeMs(executionTimeMs)
+                .queryType(queryType)
+                .rowsAffected(rowsAffected)
+                .status("SUCCESS")
+                .build());
+        if (!accepted) {
+            log.debug("Query execution not recorded (ingestion buffer full or empty statement)");
         }
     }
 
     public void recordFailedQuery(String queryText, String queryType, String errorMessage) {
-        try {
-            QueryMetrics metrics = QueryMetrics.builder()
-                    .queryText(queryText)
-                    .executionTime(LocalDateTime.now())
-                    .executionDurationMs(0L)
-                    .queryType(queryType)
-                    .isSlow(false)
-                    .rowsAffected(0)
-                    .status("FAILED")
-                    .errorMessage(errorMessage)
-                    .build();
-
-            queryMetricsRepository.save(metrics);
+        boolean accepted = ingestionService.submit(QueryExecution.builder()
+                .queryText(queryText)
+                .executionTimeMs(0)
+                .queryType(queryType)
+                .rowsAffected(0)
+                .status("FAILED")
+                .errorMessage(errorMessage)
+                .build());
+        if (accepted) {
             log.error("Failed query recorded: {}", errorMessage);
-        } catch (Exception e) {
-            log.error("Error recording failed query", e);
         }
     }
 
-    public List<QueryMetrics> getSlowQueries() {
-        return queryMetricsRepository.findByIsSlowTrue();
+    /**
+     * Bulk variant of {@link #recordQuery}; executions are buffered and batch-inserted.
+     *
+     * @return number of executions accepted
+     */
+    public int recordQueries(List<QueryExecution> executions) {
+        return ingestionService.submitAll(executions);
+    }
+
+    /**
+     * Stores per-interval aggregates reported by the JDBC instrumentation client.
+     *
+     * @return number of aggregates stored
+     */
+    public int recordAggregates(List<QueryAggregate> aggregates) {
+        return ingestionService.submitAggregates(aggregates);
+    }
+
+    public long getSlowQueryCount(int hours) {
+        return queryStatisticsService.getSlowCount(hours * 60);
     }
 
-    public List<QueryMetrics> getRecentSlowQueries(int hours) {
-        LocalDateTime since = LocalDateTime.now().minusHours(hours);
-        return queryMetricsRepository.findTopSlowQueriesSince(since);
+    /**
+     * Count, average time, slow and error counts over the last {@code minutes} (max 24 h),
+     * served from the per-minute rollups.
+     */
+    public Map<String, Object> getStatisticsWindow(int minutes) {
+        return queryStatisticsService.getWindow(minutes);
     }
 
-    public List<QueryMetrics> getQueriesBetween(LocalDateTime start, LocalDateTime end) {
-        return queryMetricsRepository.findByExecutionTimeBetween(start, end);
+    public List<Map<String, Object>> getTopQueries(Long connectionId, TopQueryService.Metric metric, int minutes, int limit) {
+        return topQueryService.getTop(connectionId, metric, minutes, limit);
     }
 
     public Long getTotalQueriesInLastHour() {
-        LocalDateTime oneHourAgo = LocalDateTime.now().minusHours(1);
-        return queryMetricsRepository.countQueriesSince(oneHourAgo);
+        return queryStatisticsService.getCount(60);
+    }
+
+    public Map<String, Object> getLatencySummary(Long connectionId, Long fingerprint, int minutes) {
+        return latencyHistogramService.getSummary(connectionId, fingerprint, minutes);
+    }
+
+    public List<Map<String, Object>> getLatencyByFingerprint(Long connectionId, int minutes, int limit) {
+        return latencyHistogramService.getFingerprintSummaries(connectionId, minutes, limit);
     }
 
     public Double getAverageQueryTime(int hours) {
-        LocalDateTime since = LocalDateTime.now().minusHours(hours);
-        Double avg = queryMetricsRepository.averageExecutionTimeSince(since);
-        return avg != null ? avg : 0.0;
+        return queryStatisticsService.getAverageTime(hours * 60);
     }
 
-    public List<QueryMetrics> getAllQueries() {
-        return queryMetricsRepository.findAll();
+    /**
+     * Returns one keyset page of recorded executions matching the given filters, newest
+     * first. All filters and the cursor are optional.
+     */
+    public CursorPage<QueryMetricsView> getQueryPage(Long connectionId, Long fingerprint, String queryType,
+                                                     String status, Boolean slow, Long minDurationMs,
+                                                     LocalDateTime from, LocalDateTime to,
+                                                     LocalDateTime cursorTime, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // Fetch one extra row to know whether another page exists
+        List<QueryMetricsView> rows = queryMetricsRepository.findViewPage(connectionId, fingerprint, queryType,
+                status, slow, minDurationMs, from, to,
+                cursorTime, cursorTime != null && cursorId == null ? Long.MAX_VALUE : cursorId,
+                PageRequest.of(0, pageSize + 1));
+        return CursorPage.of(rows, pageSize, QueryMetricsView::getExecutionTime, QueryMetricsView::getId);
     }
 
     /**
-     * Get queries from the monitored database (not the monitoring app's own queries)
+     * Passes every matching execution, newest first, to {@code sink} while reading them
+     * through a database cursor, so memory use does not depend on the number of rows.
+     *
+     * @return number of executions passed to the sink
+     */
+    @Transactional(readOnly = true)
+    public long streamQueries(Long connectionId, Long fingerprint, String queryType, String status,
+                              Boolean slow, Long minDurationMs, LocalDateTime from, LocalDateTime to,
+                              LocalDateTime cursorTime, Long cursorId, Consumer<QueryMetricsView> sink) {
+        try (Stream<QueryMetricsView> rows = queryMetricsRepository.streamViews(connectionId, fingerprint,
+                queryType, status, slow, minDurationMs, from, to,
+                cursorTime, cursorTime != null && cursorId == null ? Long.MAX_VALUE : cursorId)) {
+            long count = 0;
+            Iterator<QueryMetricsView> it = rows.iterator();
+            while (it.hasNext()) {
+                sink.accept(it.next());
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Get queries from the monitored database (not the monitoring app's own queries).
+     * Served from the harvester's latest snapshot when one exists, so page views do not
+     * scan the engine's stats views.
      */
     public List<QueryMetrics> getQueriesFromDatabase(Long connectionId) {
+        List<QueryStatsHarvesterService.StatRow> snapshot = harvesterService.getLatestSnapshot(connectionId);
+        if (!snapshot.isEmpty()) {
+            return fromSnapshot(connectionId, snapshot);
+        }
         try {
             DatabaseConnection conn = connectionService.getConnectionById(connectionId)
                     .orElseThrow(() -> new RuntimeException("Connection not found: " + connectionId));
@@ -140,6 +226,29 @@ public class QueryMonitoringService {
         }
     }
 
+    private List<QueryMetrics> fromSnapshot(Long connectionId, List<QueryStatsHarvesterService.StatRow> snapshot) {
+        LocalDateTime takenAt = harvesterService.getLatestSnapshotTime(connectionId);
+        return snapshot.stream()
+                .filter(row -> row.calls() > 0)
+                .sorted(Comparator.comparing(QueryStatsHarvesterService.StatRow::lastSeen,
+                                Comparator.nullsLast(Comparator.reverseOrder()))
+                        .thenComparing(QueryStatsHarvesterService.StatRow::calls, Comparator.reverseOrder()))
+                .limit(DATABASE_QUERY_LIMIT)
+                .map(row -> {
+                    long avgDurationMs = Math.round(row.totalTimeMs() / row.calls());
+                    return QueryMetrics.builder()
+                            .queryText(row.queryText())
+                            .executionTime(row.lastSeen() != null ? row.lastSeen() : takenAt)
+                            .executionDurationMs(avgDurationMs)
+                            .queryType(determineQueryType(row.queryText()))
+                            .isSlow(avgDurationMs > slowQueryThreshold)
+                            .rowsAffected((int) Math.min(Integer.MAX_VALUE, row.rows()))
+                            .status("SUCCESS")
+                            .build();
+                })
+                .toList();
+    }
+
     public List<QueryMetrics> getSlowQueriesFromDatabase(Long connectionId) {
         List<QueryMetrics> allQueries = getQueriesFromDatabase(connectionId);
         return allQueries.stream()
@@ -315,20 +424,10 @@ public class QueryMonitoringService {
         return new ArrayList<>();
     }
 
-    private String determineQueryType(String queryText) {
+    static String determineQueryType(String queryText) {
         if (queryText == null || queryText.isEmpty()) {
             return "UNKNOWN";
         }
-
-        String upper = queryText.trim().toUpperCase();
-        if (upper.startsWith("SELECT")) return "SELECT";
-        if (upper.startsWith("INSERT")) return "INSERT";
-        if (upper.startsWith("UPDATE")) return "UPDATE";
-        if (upper.startsWith("DELETE")) return "DELETE";
-        if (upper.startsWith("CREATE")) return "DDL";
-        if (upper.startsWith("ALTER")) return "DDL";
-        if (upper.startsWith("DROP")) return "DDL";
-
-        return "OTHER";
+        return SqlFingerprinter.queryType(queryText);
     }
 }
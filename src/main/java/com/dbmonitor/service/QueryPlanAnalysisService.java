@@ -1,34 +1,125 @@
 package com.dbmonitor.service;
 
-import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.PlanCaptureMode;
+import com.dbmonitor.model.PlanNode;
 import com.dbmonitor.model.QueryPlan;
+import com.dbmonitor.model.QueryStatInterval;
 import com.dbmonitor.repository.QueryPlanRepository;
+import com.dbmonitor.repository.QueryStatIntervalRepository;
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 @Service
 @Slf4j
 public class QueryPlanAnalysisService {
 
+    // A node whose actual rows differ from the estimate by this factor is a misestimate
+    private static final double MISESTIMATE_RATIO = 10.0;
+    private static final double MISESTIMATE_MIN_ROWS = 100;
+
+    private static final Pattern PG_PARAMETER = Pattern.compile("\\$\\d+");
+
     @Autowired
     private QueryPlanRepository queryPlanRepository;
 
     @Autowired
     private DatabaseConnectionService connectionService;
 
+    @Autowired
+    private QueryTextService queryTextService;
+
+    @Autowired
+    private QueryPlanStoreService queryPlanStoreService;
+
+    @Autowired
+    private QueryStatIntervalRepository statIntervalRepository;
+
+    @Value("${monitor.plans.default-capture-mode:ESTIMATE}")
+    private PlanCaptureMode defaultCaptureMode;
+
+    @Value("${monitor.plans.analyze-enabled:true}")
+    private boolean analyzeEnabled;
+
+    @Value("${monitor.plans.analyze-timeout-ms:5000}")
+    private long analyzeTimeoutMs;
+
+    @Value("${monitor.plans.capture-timeout-seconds:10}")
+    private int captureTimeoutSeconds;
+
     public QueryPlan analyzeQueryPlan(Long connectionId, String queryText) {
+        return analyzeQueryPlan(connectionId, queryText, null);
+    }
+
+    /**
+     * Captures and stores the plan of a statement. A null mode uses
+     * {@code monitor.plans.default-capture-mode}; the mode actually used is recorded in
+     * {@code planType}.
+     *
+     * @throws IllegalArgumentException when the text is not exactly one statement, or ANALYZE
+     *         is requested for a statement that is not a SELECT or ANALYZE capture is disabled
+     */
+    public QueryPlan analyzeQueryPlan(Long connectionId, String queryText, PlanCaptureMode mode) {
+        return capture(connectionId, queryText, mode,
+                SqlFingerprinter.fingerprint(queryText, connectionService.getDialect(connectionId)));
+    }
+
+    /**
+     * Captures a plan for a statement whose fingerprint is already known, e.g. from harvested
+     * statistics, when {@code queryText} is a sample that may not fingerprint identically. With
+     * CACHED the text may be null: SQL Server finds the cached plan by fingerprint alone.
+     */
+    public QueryPlan analyzeStatement(Long connectionId, String queryText, PlanCaptureMode mode, long fingerprint) {
+        SqlFingerprinter.Fingerprint sample = SqlFingerprinter.fingerprint(queryText,
+                connectionService.getDialect(connectionId));
+        return capture(connectionId, queryText, mode,
+                new SqlFingerprinter.Fingerprint(fingerprint, sample.normalizedText(), sample.queryType()));
+    }
+
+    private QueryPlan capture(Long connectionId, String queryText, PlanCaptureMode mode,
+                              SqlFingerprinter.Fingerprint fingerprint) {
+        PlanCaptureMode captureMode = mode != null ? mode : defaultCaptureMode;
+        if (queryText == null) {
+            if (captureMode != PlanCaptureMode.CACHED) {
+                throw new IllegalArgumentException("Plan capture needs the statement text");
+            }
+        } else if (SqlFingerprinter.statementCount(queryText, connectionService.getDialect(connectionId)) != 1) {
+            // The text is appended to EXPLAIN or run under SHOWPLAN, so a second statement after
+            // a ";" would be executed for real
+            throw new IllegalArgumentException("Plan capture takes exactly one statement");
+        }
+        if (captureMode == PlanCaptureMode.ANALYZE) {
+            if (!analyzeEnabled) {
+                throw new IllegalArgumentException("ANALYZE plan capture is disabled");
+            }
+            if (!"SELECT".equals(fingerprint.queryType())) {
+                throw new IllegalArgumentException("ANALYZE plan capture only runs SELECT statements");
+            }
+        }
+
         try {
             DataSource dataSource = connectionService.getDataSource(connectionId);
-            
+            if (queryText != null) {
+                queryTextService.register(fingerprint);
+            }
+
             QueryPlan queryPlan = QueryPlan.builder()
+                .fingerprint(fingerprint.hash())
                 .queryText(queryText)
                 .analyzedAt(LocalDateTime.now())
                 .build();
@@ -36,20 +127,42 @@ public class QueryPlanAnalysisService {
             try (Connection conn = dataSource.getConnection()) {
                 String databaseType = conn.getMetaData().getDatabaseProductName().toLowerCase();
                 
-                if (databaseType.contains("mysql") || databaseType.contains("mariadb")) {
+                if (queryText == null && !databaseType.contains("sql server")) {
+                    queryPlan.setExecutionPlan("ERROR: No statement text to plan and no plan cache to read");
+                } else if (databaseType.contains("mysql") || databaseType.contains("mariadb")) {
+                    // No plan cache view and EXPLAIN ANALYZE has no JSON form: estimate only
                     analyzeMySQLQuery(conn, queryText, queryPlan);
                 } else if (databaseType.contains("postgresql")) {
-                    analyzePostgreSQLQuery(conn, queryText, queryPlan);
+                    if (captureMode == PlanCaptureMode.ANALYZE) {
+                        analyzePostgreSQLQueryAnalyze(conn, queryText, queryPlan);
+                    } else {
+                        analyzePostgreSQLQuery(conn, queryText, queryPlan);
+                    }
                 } else if (databaseType.contains("sql server")) {
-                    analyzeSQLServerQuery(conn, queryText, queryPlan);
+                    // SQL Server has no read-only transaction, so ANALYZE never executes the
+                    // statement: it reads the last actual plan the engine kept instead
+                    long hash = fingerprint.hash();
+                    boolean captured = switch (captureMode) {
+                        case ANALYZE -> captureSQLServerPlan(conn, connectionId, hash, queryPlan,
+                                SQLSERVER_LAST_ACTUAL_PLAN, "LAST ACTUAL PLAN")
+                                || captureSQLServerPlan(conn, connectionId, hash, queryPlan,
+                                SQLSERVER_CACHED_PLAN, "CACHED PLAN");
+                        case CACHED -> captureSQLServerPlan(conn, connectionId, hash, queryPlan,
+                                SQLSERVER_CACHED_PLAN, "CACHED PLAN");
+                        case ESTIMATE -> false;
+                    };
+                    if (!captured && queryText == null) {
+                        queryPlan.setExecutionPlan("ERROR: No cached plan and no statement text to estimate");
+                    } else if (!captured) {
+                        analyzeSQLServerQuery(dataSource, conn, queryText, queryPlan);
+                    }
                 } else {
                     log.warn("Query plan analysis not supported for database type: {}", databaseType);
                     queryPlan.setPlanType("NOT_SUPPORTED");
                 }
             }
 
-            queryPlanRepository.save(queryPlan);
-            return queryPlan;
+            return queryPlanStoreService.record(connectionId, queryPlan);
         } catch (Exception e) {
             log.error("Error analyzing query plan", e);
             throw new RuntimeException("Failed to analyze query plan", e);
@@ -58,41 +171,13 @@ public class QueryPlanAnalysisService {
 
     private void analyzeMySQLQuery(Connection conn, String queryText, QueryPlan queryPlan) {
         try (Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(captureTimeoutSeconds);
             queryPlan.setPlanType("EXPLAIN");
-            
-            // Run EXPLAIN
-            ResultSet rs = stmt.executeQuery("EXPLAIN " + queryText);
-            StringBuilder plan = new StringBuilder();
-            
-            boolean usesIndex = false;
-            boolean hasFullTableScan = false;
-            long estimatedRows = 0;
-            
-            while (rs.next()) {
-                String type = rs.getString("type");
-                String key = rs.getString("key");
-                long rows = rs.getLong("rows");
-                
-                plan.append("Type: ").append(type)
-                    .append(", Key: ").append(key)
-                    .append(", Rows: ").append(rows)
-                    .append(", Extra: ").append(rs.getString("Extra"))
-                    .append("\n");
-                
-                if (key != null && !key.equals("NULL")) {
-                    usesIndex = true;
-                }
-                if ("ALL".equals(type)) {
-                    hasFullTableScan = true;
+            try (ResultSet rs = stmt.executeQuery("EXPLAIN FORMAT=JSON " + queryText)) {
+                if (rs.next()) {
+                    applyPlanTree(queryPlan, PlanParser.MYSQL_JSON, rs.getString(1));
                 }
-                estimatedRows += rows;
             }
-            
-            queryPlan.setExecutionPlan(plan.toString());
-            queryPlan.setUsesIndex(usesIndex);
-            queryPlan.setHasFullTableScan(hasFullTableScan);
-            queryPlan.setEstimatedRows(estimatedRows);
-            
         } catch (Exception e) {
             log.error("Error analyzing MySQL query", e);
             queryPlan.setExecutionPlan("ERROR: " + e.getMessage());
@@ -101,104 +186,193 @@ public class QueryPlanAnalysisService {
 
     private void analyzePostgreSQLQuery(Connection conn, String queryText, QueryPlan queryPlan) {
         try (Statement stmt = conn.createStatement()) {
-            queryPlan.setPlanType("EXPLAIN ANALYZE");
-            
-            // Run EXPLAIN ANALYZE
-            ResultSet rs = stmt.executeQuery("EXPLAIN ANALYZE " + queryText);
-            StringBuilder plan = new StringBuilder();
-            
-            boolean usesIndex = false;
-            boolean hasFullTableScan = false;
-            
-            while (rs.next()) {
-                String planLine = rs.getString(1);
-                plan.append(planLine).append("\n");
-                
-                if (planLine.contains("Index Scan") || planLine.contains("Index Only Scan")) {
-                    usesIndex = true;
-                }
-                if (planLine.contains("Seq Scan")) {
-                    hasFullTableScan = true;
+            stmt.setQueryTimeout(captureTimeoutSeconds);
+            // Normalized statements carry $n parameters; PostgreSQL 16 can plan them generically
+            boolean generic = PG_PARAMETER.matcher(queryText).find()
+                    && conn.getMetaData().getDatabaseMajorVersion() >= 16;
+            queryPlan.setPlanType(generic ? "EXPLAIN GENERIC_PLAN" : "EXPLAIN");
+            String explain = generic ? "EXPLAIN (GENERIC_PLAN, FORMAT JSON) " : "EXPLAIN (FORMAT JSON) ";
+            try (ResultSet rs = stmt.executeQuery(explain + queryText)) {
+                if (rs.next()) {
+                    applyPlanTree(queryPlan, PlanParser.POSTGRESQL_JSON, rs.getString(1));
                 }
-                
-                // Extract cost and rows from plan line
-                if (planLine.contains("cost=")) {
-                    try {
-                        int costStart = planLine.indexOf("cost=") + 5;
-                        int costEnd = planLine.indexOf("..", costStart);
-                        if (costEnd > costStart) {
-                            String costStr = planLine.substring(costStart, costEnd);
-                            queryPlan.setEstimatedCost(Double.parseDouble(costStr));
+            }
+        } catch (Exception e) {
+            log.error("Error analyzing PostgreSQL query", e);
+            queryPlan.setExecutionPlan("ERROR: " + e.getMessage());
+        }
+    }
+
+    // Runs in a read-only transaction with a statement timeout, always rolled back
+    private void analyzePostgreSQLQueryAnalyze(Connection conn, String queryText, QueryPlan queryPlan) {
+        try {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                queryPlan.setPlanType("EXPLAIN ANALYZE");
+                stmt.execute("SET TRANSACTION READ ONLY");
+                stmt.execute("SET LOCAL statement_timeout = " + analyzeTimeoutMs);
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN (ANALYZE, FORMAT JSON) " + queryText)) {
+                    if (rs.next()) {
+                        String json = rs.getString(1);
+                        applyPlanTree(queryPlan, PlanParser.POSTGRESQL_JSON, json);
+                        Double executionTime = PlanParser.postgreSqlExecutionTime(json);
+                        if (executionTime != null) {
+                            queryPlan.setExecutionTimeMs((int) Math.round(executionTime));
                         }
-                    } catch (Exception e) {
-                        log.debug("Could not parse cost from plan line", e);
-                    }
-                }
-                
-                if (planLine.contains("rows=")) {
-                    try {
-                        int rowsStart = planLine.indexOf("rows=") + 5;
-                        int rowsEnd = planLine.indexOf(" ", rowsStart);
-                        if (rowsEnd == -1) rowsEnd = planLine.length();
-                        String rowsStr = planLine.substring(rowsStart, rowsEnd);
-                        queryPlan.setEstimatedRows(Long.parseLong(rowsStr));
-                    } catch (Exception e) {
-                        log.debug("Could not parse rows from plan line", e);
                     }
                 }
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
             }
-            
-            queryPlan.setExecutionPlan(plan.toString());
-            queryPlan.setUsesIndex(usesIndex);
-            queryPlan.setHasFullTableScan(hasFullTableScan);
-            
         } catch (Exception e) {
             log.error("Error analyzing PostgreSQL query", e);
             queryPlan.setExecutionPlan("ERROR: " + e.getMessage());
         }
     }
 
-    private void analyzeSQLServerQuery(Connection conn, String queryText, QueryPlan queryPlan) {
+    private void analyzeSQLServerQuery(DataSource dataSource, Connection conn, String queryText, QueryPlan queryPlan) {
         try (Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(captureTimeoutSeconds);
             queryPlan.setPlanType("EXECUTION PLAN");
-            
-            // Enable showplan
-            stmt.execute("SET SHOWPLAN_TEXT ON");
-            
-            ResultSet rs = stmt.executeQuery(queryText);
-            StringBuilder plan = new StringBuilder();
-            
-            while (rs.next()) {
-                plan.append(rs.getString(1)).append("\n");
+
+            stmt.execute("SET SHOWPLAN_XML ON");
+            try (ResultSet rs = stmt.executeQuery(queryText)) {
+                if (rs.next()) {
+                    applyPlanTree(queryPlan, PlanParser.SQLSERVER_XML, rs.getString(1));
+                }
+            } finally {
+                resetSessionOption(dataSource, conn, "SET SHOWPLAN_XML OFF");
             }
-            
-            stmt.execute("SET SHOWPLAN_TEXT OFF");
-            
-            String planText = plan.toString();
-            queryPlan.setExecutionPlan(planText);
-            queryPlan.setUsesIndex(planText.contains("Index Seek") || planText.contains("Index Scan"));
-            queryPlan.setHasFullTableScan(planText.contains("Table Scan"));
-            
         } catch (Exception e) {
             log.error("Error analyzing SQL Server query", e);
             queryPlan.setExecutionPlan("ERROR: " + e.getMessage());
         }
     }
 
+    /**
+     * Reads a plan SQL Server kept for the statement, found by the query_hash the statistics
+     * harvester recorded for its fingerprint. Returns false when there is none.
+     */
+    private boolean captureSQLServerPlan(Connection conn, Long connectionId, long fingerprint,
+                                         QueryPlan queryPlan, String sql, String planType) {
+        QueryStatInterval harvested = statIntervalRepository
+                .findFirstByConnectionIdAndFingerprintOrderByIntervalEndDesc(connectionId, fingerprint);
+        if (harvested == null) {
+            return false;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setQueryTimeout(captureTimeoutSeconds);
+            stmt.setString(1, harvested.getStatementKey());
+            try (ResultSet rs = stmt.executeQuery()) {
+                String xml = rs.next() ? rs.getString(1) : null;
+                if (xml == null) {
+                    return false;
+                }
+                queryPlan.setPlanType(planType);
+                applyPlanTree(queryPlan, PlanParser.SQLSERVER_XML, xml);
+                return true;
+            }
+        } catch (Exception e) {
+            log.debug("No {} for statement {}: {}", planType.toLowerCase(), harvested.getStatementKey(), e.getMessage());
+            return false;
+        }
+    }
+
+    // A pooled connection left with SHOWPLAN_XML on would break every later
+    // user of it, so it is evicted from the pool when the option cannot be switched off
+    private void resetSessionOption(DataSource dataSource, Connection conn, String sql) {
+        try (Statement reset = conn.createStatement()) {
+            reset.execute(sql);
+        } catch (SQLException e) {
+            log.warn("Could not run '{}', evicting the connection: {}", sql, e.getMessage());
+            if (dataSource instanceof HikariDataSource hikari) {
+                hikari.evictConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * Parses a structured plan and fills the plan's summary columns from the operator tree.
+     */
+    private void applyPlanTree(QueryPlan queryPlan, String format, String rawPlan) {
+        PlanNode root = PlanParser.parse(format, rawPlan);
+        queryPlan.setExecutionPlan(rawPlan);
+        queryPlan.setPlanFormat(format);
+        queryPlan.setPlanTree(root);
+
+        Set<String> indexes = new LinkedHashSet<>();
+        boolean[] fullScan = new boolean[1];
+        PlanParser.forEach(root, node -> {
+            if (node.isFullScan()) {
+                fullScan[0] = true;
+            } else if (node.getIndexName() != null) {
+                indexes.add(node.getIndexName());
+            }
+        });
+        queryPlan.setUsesIndex(!indexes.isEmpty());
+        queryPlan.setIndexesUsed(indexes.isEmpty() ? null : String.join(",", indexes));
+        queryPlan.setHasFullTableScan(fullScan[0]);
+        if (root.getEstimatedCost() != null) {
+            queryPlan.setEstimatedCost(root.getEstimatedCost());
+        }
+        if (root.getEstimatedRows() != null) {
+            queryPlan.setEstimatedRows(Math.round(root.getEstimatedRows()));
+        }
+        if (root.getActualRows() != null) {
+            queryPlan.setActualRows(Math.round(root.getActualRows()));
+        }
+        queryPlan.setMisestimatedNodes(PlanParser.misestimates(root, MISESTIMATE_RATIO, MISESTIMATE_MIN_ROWS).size());
+        PlanNode expensive = PlanParser.mostExpensive(root);
+        if (expensive != null) {
+            queryPlan.setExpensiveOperator(expensive.getRelation() != null
+                    ? expensive.getOperator() + " on " + expensive.getRelation()
+                    : expensive.getOperator());
+        }
+    }
+
+    /**
+     * Operator tree of a stored plan, parsed from its structured form; empty for plans
+     * captured as text.
+     */
+    public Optional<PlanNode> getPlanTree(Long planId) {
+        return queryPlanRepository.findById(planId)
+                .map(plan -> PlanParser.parse(plan.getPlanFormat(), plan.getExecutionPlan()));
+    }
+
     public List<QueryPlan> getQueryPlans(Long queryId) {
-        return queryPlanRepository.findByQueryMetricsId(queryId);
+        return queryTextService.attachPlanTexts(queryPlanRepository.findByQueryMetricsId(queryId));
     }
 
     public List<QueryPlan> getQueriesWithFullTableScans() {
-        return queryPlanRepository.findByHasFullTableScanTrue();
+        return queryTextService.attachPlanTexts(queryPlanRepository.findByHasFullTableScanTrue());
     }
 
     public List<QueryPlan> getQueriesWithoutIndexes() {
-        return queryPlanRepository.findByUsesIndexFalse();
+        return queryTextService.attachPlanTexts(queryPlanRepository.findByUsesIndexFalse());
     }
 
     public List<QueryPlan> getRecentQueryPlans(int hours) {
         LocalDateTime since = LocalDateTime.now().minusHours(hours);
-        return queryPlanRepository.findByAnalyzedAtAfter(since);
+        return queryTextService.attachPlanTexts(queryPlanRepository.findByAnalyzedAtAfter(since));
     }
+
+    private static final String SQLSERVER_CACHED_PLAN = """
+        SELECT TOP 1 qp.query_plan
+        FROM sys.dm_exec_query_stats AS qs
+        CROSS APPLY sys.dm_exec_text_query_plan(qs.plan_handle, qs.statement_start_offset, qs.statement_end_offset) AS qp
+        WHERE CONVERT(VARCHAR(34), qs.query_hash, 1) = ?
+          AND qp.query_plan IS NOT NULL
+        ORDER BY qs.last_execution_time DESC
+        """;
+
+    // Last actual plan of the statement's batch; needs SQL Server 2019+ with LAST_QUERY_PLAN_STATS on
+    private static final String SQLSERVER_LAST_ACTUAL_PLAN = """
+        SELECT TOP 1 CONVERT(NVARCHAR(MAX), ps.query_plan)
+        FROM sys.dm_exec_query_stats AS qs
+        CROSS APPLY sys.dm_exec_query_plan_stats(qs.plan_handle) AS ps
+        WHERE CONVERT(VARCHAR(34), qs.query_hash, 1) = ?
+          AND ps.query_plan IS NOT NULL
+        ORDER BY qs.last_execution_time DESC
+        """;
 }
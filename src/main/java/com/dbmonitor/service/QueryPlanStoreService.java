@@ -0,0 +1,236 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.QueryPlan;
+import com.dbmonitor.repository.QueryPlanRepository;
+import com.dbmonitor.repository.QueryStatIntervalRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores captured plans once per (connection, statement fingerprint, plan hash). Capturing a
+ * plan that is already known only moves its {@code lastSeenAt}. When a statement shows up with
+ * a different plan than the one seen before it and its latency rose by more than
+ * {@code monitor.plans.regression-factor}, the new plan is flagged as a regression and a
+ * {@code PLAN_REGRESSION} alert is raised. Each plan's latency only counts executions after
+ * the switch to it, so the old and new plan are never averaged together.
+ */
+@Service
+@Slf4j
+public class QueryPlanStoreService {
+
+    // "Key: value" detail lines of a text plan, as opposed to operator lines
+    private static final Pattern DETAIL_LINE = Pattern.compile("^([A-Z][A-Za-z /-]*):\\s*(.*)$");
+    // Estimate and runtime annotations of an operator line: (cost=...), (actual ...), (never executed)
+    private static final Pattern ANNOTATION = Pattern.compile("\\s*\\((cost|actual|rows|never executed)[^)]*\\)");
+    // Details that describe what an operator does; every other detail (Buffers, Memory Usage,
+    // Sort Method, Rows Removed by Filter, timings...) is runtime or size information
+    private static final Set<String> SHAPE_DETAILS = Set.of("Filter", "Join Filter", "One-Time Filter",
+            "Index Cond", "Recheck Cond", "Hash Cond", "Merge Cond", "Sort Key", "Group Key", "Order By",
+            "Cache Key", "TID Cond", "Hash Key");
+
+    @Autowired
+    private QueryPlanRepository queryPlanRepository;
+
+    @Autowired
+    private QueryTextService queryTextService;
+
+    @Autowired
+    private QueryStatIntervalRepository statIntervalRepository;
+
+    @Autowired
+    private LatencyHistogramService latencyHistogramService;
+
+    @Autowired
+    private AlertEvaluationService alertEvaluationService;
+
+    @Value("${monitor.plans.latency-window-minutes:60}")
+    private int latencyWindowMinutes;
+
+    @Value("${monitor.plans.regression-factor:1.5}")
+    private double regressionFactor;
+
+    @Value("${monitor.plans.regression-min-delta-ms:10}")
+    private double regressionMinDeltaMs;
+
+    @Value("${monitor.plans.regression-window-hours:24}")
+    private int regressionWindowHours;
+
+    /**
+     * Records a freshly captured plan. Returns the stored row, which is an existing one when
+     * the statement already ran with the same plan.
+     */
+    public synchronized QueryPlan record(Long connectionId, QueryPlan captured) {
+        LocalDateTime now = LocalDateTime.now();
+        long planHash = captured.getPlanTree() != null
+                ? PlanParser.shapeHash(captured.getPlanTree())
+                : planHash(captured.getExecutionPlan());
+        Long fingerprint = captured.getFingerprint();
+
+        QueryPlan plan = queryPlanRepository
+                .findFirstByConnectionIdAndFingerprintAndPlanHash(connectionId, fingerprint, planHash)
+                .map(existing -> {
+                    // Keep the latest text so current estimates and actuals are visible
+                    existing.setExecutionPlan(captured.getExecutionPlan());
+                    existing.setPlanType(captured.getPlanType());
+                    existing.setPlanFormat(captured.getPlanFormat());
+                    existing.setMisestimatedNodes(captured.getMisestimatedNodes());
+                    existing.setExpensiveOperator(captured.getExpensiveOperator());
+                    existing.setEstimatedCost(captured.getEstimatedCost());
+                    existing.setEstimatedRows(captured.getEstimatedRows());
+                    existing.setActualRows(captured.getActualRows());
+                    existing.setExecutionTimeMs(captured.getExecutionTimeMs());
+                    existing.setUsesIndex(captured.getUsesIndex());
+                    existing.setIndexesUsed(captured.getIndexesUsed());
+                    existing.setHasFullTableScan(captured.getHasFullTableScan());
+                    existing.setSeenCount((existing.getSeenCount() != null ? existing.getSeenCount() : 0) + 1);
+                    return existing;
+                })
+                .orElseGet(() -> {
+                    captured.setConnectionId(connectionId);
+                    captured.setPlanHash(planHash);
+                    captured.setFirstSeenAt(now);
+                    captured.setSeenCount(1L);
+                    captured.setRegression(false);
+                    return captured;
+                });
+        plan.setQueryText(captured.getQueryText());
+        plan.setPlanTree(captured.getPlanTree());
+        plan.setAnalyzedAt(now);
+        plan.setLastSeenAt(now);
+
+        // The plan seen before this one; everything it ran is not this plan's latency
+        Optional<QueryPlan> other = queryPlanRepository
+                .findFirstByConnectionIdAndFingerprintAndPlanHashNotOrderByLastSeenAtDesc(connectionId, fingerprint, planHash);
+        LocalDateTime switchedAt = other.map(QueryPlan::getLastSeenAt)
+                .filter(lastSeen -> plan.getFirstSeenAt() == null || lastSeen.isAfter(plan.getFirstSeenAt()))
+                .orElse(plan.getFirstSeenAt());
+        Double latency = currentLatency(connectionId, fingerprint, switchedAt);
+        if (latency != null) {
+            plan.setLatencyMs(latency);
+        }
+        if (isComparable(plan)) {
+            checkRegression(connectionId, plan, other);
+        }
+        return queryPlanRepository.save(plan);
+    }
+
+    /**
+     * Every distinct plan of a statement, most recently seen first.
+     */
+    public List<QueryPlan> getPlanHistory(Long connectionId, Long fingerprint) {
+        return queryTextService.attachPlanTexts(
+                queryPlanRepository.findByConnectionIdAndFingerprintOrderByLastSeenAtDesc(connectionId, fingerprint));
+    }
+
+    public List<QueryPlan> getRegressions(int hours) {
+        return queryTextService.attachPlanTexts(queryPlanRepository.findByRegressionTrueAndLastSeenAtAfterOrderByLastSeenAtDesc(
+                LocalDateTime.now().minusHours(hours)));
+    }
+
+    // Compares against the plan the statement used before; the flag follows the latest capture
+    // until the plan has been around for the regression window, then it is left as is
+    private void checkRegression(Long connectionId, QueryPlan plan, Optional<QueryPlan> other) {
+        if (plan.getFirstSeenAt() != null
+                && plan.getFirstSeenAt().isBefore(LocalDateTime.now().minusHours(regressionWindowHours))) {
+            return;
+        }
+        Optional<QueryPlan> previous = other
+                .filter(QueryPlanStoreService::isComparable)
+                // Text and structured captures of one plan hash differently
+                .filter(before -> Objects.equals(before.getPlanFormat(), plan.getPlanFormat()));
+        if (previous.isEmpty() || previous.get().getLatencyMs() == null || plan.getLatencyMs() == null) {
+            plan.setRegression(false);
+            return;
+        }
+
+        QueryPlan before = previous.get();
+        boolean regressed = plan.getLatencyMs() > before.getLatencyMs() * regressionFactor
+                && plan.getLatencyMs() - before.getLatencyMs() >= regressionMinDeltaMs;
+        boolean wasRegression = Boolean.TRUE.equals(plan.getRegression());
+        plan.setRegression(regressed);
+        plan.setPreviousPlanId(before.getId());
+        if (regressed && !wasRegression) {
+            log.warn("Plan regression on connection {} for fingerprint {}: {} ms -> {} ms",
+                    connectionId, String.format("%016x", plan.getFingerprint()),
+                    before.getLatencyMs(), plan.getLatencyMs());
+            alertEvaluationService.raise(connectionId, "PLAN_REGRESSION", "WARNING",
+                    String.format("Plan change for statement %016x raised mean latency from %.1f ms to %.1f ms",
+                            plan.getFingerprint(), before.getLatencyMs(), plan.getLatencyMs()),
+                    plan.getLatencyMs(), before.getLatencyMs() * regressionFactor);
+        }
+    }
+
+    /**
+     * Mean latency of the statement over the latency window, counting only executions after
+     * {@code switchedAt}: recorded executions when the statement is instrumented, otherwise the
+     * engine statistics harvested for it. Null when nothing ran since the switch.
+     */
+    private Double currentLatency(Long connectionId, Long fingerprint, LocalDateTime switchedAt) {
+        if (fingerprint == null) {
+            return null;
+        }
+        LocalDateTime windowStart = LocalDateTime.now().minusMinutes(latencyWindowMinutes);
+        LocalDateTime since = switchedAt != null && switchedAt.isAfter(windowStart) ? switchedAt : windowStart;
+        Map<String, Object> summary = latencyHistogramService.getSummarySince(connectionId, fingerprint,
+                since.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        if (summary.get("count") instanceof Number count && count.longValue() > 0) {
+            return ((Number) summary.get("mean")).doubleValue();
+        }
+        List<Object[]> totals = statIntervalRepository.sumByFingerprintStartedSince(connectionId, fingerprint, since);
+        if (!totals.isEmpty() && totals.get(0)[0] instanceof Number calls && calls.longValue() > 0
+                && totals.get(0)[1] instanceof Number totalTime) {
+            return totalTime.doubleValue() / calls.longValue();
+        }
+        return null;
+    }
+
+    private static boolean isComparable(QueryPlan plan) {
+        return plan.getExecutionPlan() != null && !plan.getExecutionPlan().startsWith("ERROR:")
+                && !"NOT_SUPPORTED".equals(plan.getPlanType());
+    }
+
+    /**
+     * Hash of a text plan's shape, so re-capturing the same plan with different estimates,
+     * timings or memory use maps to the same hash. The plan is read line by line: operator
+     * lines keep their depth and operator with the estimate and runtime annotations removed;
+     * detail lines are kept only when they describe the operator (conditions, sort and group
+     * keys), with their literals normalized. Structured plans use {@link PlanParser#shapeHash}
+     * instead.
+     */
+    static long planHash(String executionPlan) {
+        if (executionPlan == null) {
+            return 0;
+        }
+        StringBuilder shape = new StringBuilder();
+        for (String line : executionPlan.split("\\R")) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Matcher detail = DETAIL_LINE.matcher(trimmed);
+            if (detail.matches()) {
+                if (SHAPE_DETAILS.contains(detail.group(1))) {
+                    shape.append(detail.group(1)).append(": ")
+                            .append(SqlFingerprinter.normalize(detail.group(2))).append('\n');
+                }
+                continue;
+            }
+            int depth = line.length() - line.stripLeading().length();
+            shape.append(depth).append(' ')
+                    .append(ANNOTATION.matcher(trimmed).replaceAll("").strip()).append('\n');
+        }
+        return SqlFingerprinter.hash(shape.toString());
+    }
+}
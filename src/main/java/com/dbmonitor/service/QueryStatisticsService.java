@@ -0,0 +1,250 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.QueryMinuteStat;
+import com.dbmonitor.repository.QueryMinuteStatRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolling per-minute query statistics (count, total time, slow and error counts). Ingestion
+ * updates the in-memory minute buckets; a scheduled flush adds the change since the previous
+ * flush to {@code query_minute_stats}, and the last 24 hours are reloaded on startup. Any
+ * window up to 24 hours is answered by summing at most 1440 buckets. Execution times come from
+ * clients, so they are clamped to the last 24 hours: a fast client clock counts in the current
+ * minute instead of creating future buckets.
+ */
+@Service
+@Slf4j
+public class QueryStatisticsService {
+
+    public static final int MAX_WINDOW_MINUTES = 24 * 60;
+
+    private static final String UPDATE_SQL = """
+        UPDATE query_minute_stats
+        SET query_count = query_count + ?, total_time_ms = total_time_ms + ?,
+            slow_count = slow_count + ?, error_count = error_count + ?
+        WHERE minute_start = ?
+        """;
+
+    private static final String INSERT_SQL = """
+        INSERT INTO query_minute_stats (minute_start, query_count, total_time_ms, slow_count, error_count)
+        VALUES (?, ?, ?, ?, ?)
+        """;
+
+    @Autowired
+    private QueryMinuteStatRepository minuteStatRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${monitor.query.slow-threshold-ms:1000}")
+    private long slowQueryThreshold;
+
+    // Epoch minute -> activity recorded for that minute
+    private final ConcurrentNavigableMap<Long, MinuteBucket> minutes = new ConcurrentSkipListMap<>();
+
+    @PostConstruct
+    public void load() {
+        try {
+            LocalDateTime since = toLocalDateTime(currentMinute() - MAX_WINDOW_MINUTES);
+            for (QueryMinuteStat stat : minuteStatRepository.findByMinuteStartGreaterThanEqualOrderByMinuteStartAsc(since)) {
+                MinuteBucket bucket = minutes.computeIfAbsent(toMinute(stat.getMinuteStart()), k -> new MinuteBucket());
+                bucket.count.add(value(stat.getQueryCount()));
+                bucket.totalTimeMs.add(stat.getTotalTimeMs() != null ? stat.getTotalTimeMs() : 0.0);
+                bucket.slow.add(value(stat.getSlowCount()));
+                bucket.errors.add(value(stat.getErrorCount()));
+                bucket.markPersisted();
+            }
+            log.info("Loaded {} minutes of query statistics", minutes.size());
+        } catch (Exception e) {
+            log.warn("Could not load query statistics history: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public void record(LocalDateTime executedAt, long durationMs, boolean slow, boolean error) {
+        MinuteBucket bucket = bucket(executedAt);
+        bucket.count.increment();
+        bucket.totalTimeMs.add(durationMs);
+        if (slow) {
+            bucket.slow.increment();
+        }
+        if (error) {
+            bucket.errors.increment();
+        }
+    }
+
+    /**
+     * Records pre-aggregated activity, e.g. one client interval of one statement.
+     */
+    public void record(LocalDateTime executedAt, long calls, double totalTimeMs, long slow, long errors) {
+        MinuteBucket bucket = bucket(executedAt);
+        bucket.count.add(calls);
+        bucket.totalTimeMs.add(totalTimeMs);
+        bucket.slow.add(slow);
+        bucket.errors.add(errors);
+    }
+
+    /**
+     * Number of executions in the given histogram buckets that exceeded the slow threshold,
+     * counting a bucket as slow when its lower bound does.
+     */
+    public long countSlow(Map<Integer, Long> latencyBuckets) {
+        long slow = 0;
+        if (latencyBuckets == null) {
+            return 0;
+        }
+        for (Map.Entry<Integer, Long> entry : latencyBuckets.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null && LatencyHistogram.isValidIndex(entry.getKey())
+                    && LatencyHistogram.lowerBoundFor(entry.getKey()) > slowQueryThreshold) {
+                slow += entry.getValue();
+            }
+        }
+        return slow;
+    }
+
+    /**
+     * Totals over the last {@code windowMinutes} (including the current minute), capped at 24 hours.
+     */
+    public Map<String, Object> getWindow(int windowMinutes) {
+        Totals totals = totals(windowMinutes);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMinutes", totals.windowMinutes());
+        stats.put("count", totals.count());
+        stats.put("averageTimeMs", totals.averageTimeMs());
+        stats.put("slowCount", totals.slow());
+        stats.put("errorCount", totals.errors());
+        return stats;
+    }
+
+    public long getCount(int windowMinutes) {
+        return totals(windowMinutes).count();
+    }
+
+    public double getAverageTime(int windowMinutes) {
+        return totals(windowMinutes).averageTimeMs();
+    }
+
+    public long getSlowCount(int windowMinutes) {
+        return totals(windowMinutes).slow();
+    }
+
+    /**
+     * Writes what changed since the last flush and drops buckets older than 24 hours from memory.
+     */
+    @Scheduled(fixedDelayString = "${monitor.query.statistics.flush-ms:60000}")
+    public synchronized void flush() {
+        for (Map.Entry<Long, MinuteBucket> entry : minutes.entrySet()) {
+            MinuteBucket bucket = entry.getValue();
+            long count = bucket.count.sum();
+            double totalTime = bucket.totalTimeMs.sum();
+            long slow = bucket.slow.sum();
+            long errors = bucket.errors.sum();
+            long deltaCount = count - bucket.persistedCount;
+            if (deltaCount == 0) {
+                continue;
+            }
+            double deltaTime = totalTime - bucket.persistedTimeMs;
+            long deltaSlow = slow - bucket.persistedSlow;
+            long deltaErrors = errors - bucket.persistedErrors;
+            Timestamp minuteStart = Timestamp.valueOf(toLocalDateTime(entry.getKey()));
+            try {
+                int updated = jdbcTemplate.update(UPDATE_SQL, deltaCount, deltaTime, deltaSlow, deltaErrors, minuteStart);
+                if (updated == 0) {
+                    jdbcTemplate.update(INSERT_SQL, minuteStart, deltaCount, deltaTime, deltaSlow, deltaErrors);
+                }
+                bucket.persistedCount = count;
+                bucket.persistedTimeMs = totalTime;
+                bucket.persistedSlow = slow;
+                bucket.persistedErrors = errors;
+            } catch (Exception e) {
+                log.error("Error persisting query statistics for minute {}", minuteStart, e);
+                return;
+            }
+        }
+        minutes.headMap(currentMinute() - MAX_WINDOW_MINUTES).clear();
+    }
+
+    private Totals totals(int windowMinutes) {
+        int window = Math.max(1, Math.min(windowMinutes, MAX_WINDOW_MINUTES));
+        long count = 0;
+        double totalTime = 0;
+        long slow = 0;
+        long errors = 0;
+        long now = currentMinute();
+        for (MinuteBucket bucket : minutes.subMap(now - window + 1, true, now, true).values()) {
+            count += bucket.count.sum();
+            totalTime += bucket.totalTimeMs.sum();
+            slow += bucket.slow.sum();
+            errors += bucket.errors.sum();
+        }
+        return new Totals(window, count, count > 0 ? totalTime / count : 0.0, slow, errors);
+    }
+
+    private MinuteBucket bucket(LocalDateTime executedAt) {
+        long now = currentMinute();
+        long minute = executedAt != null ? toMinute(executedAt) : now;
+        minute = Math.max(now - MAX_WINDOW_MINUTES, Math.min(minute, now));
+        return minutes.computeIfAbsent(minute, k -> new MinuteBucket());
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000L;
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() / 60_000L;
+    }
+
+    private static LocalDateTime toLocalDateTime(long minute) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(minute * 60_000L), ZoneId.systemDefault());
+    }
+
+    private static long value(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private record Totals(int windowMinutes, long count, double averageTimeMs, long slow, long errors) {
+    }
+
+    private static final class MinuteBucket {
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder totalTimeMs = new DoubleAdder();
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        // Totals already written to query_minute_stats; only touched under flush()
+        private long persistedCount;
+        private double persistedTimeMs;
+        private long persistedSlow;
+        private long persistedErrors;
+
+        private void markPersisted() {
+            persistedCount = count.sum();
+            persistedTimeMs = totalTimeMs.sum();
+            persistedSlow = slow.sum();
+            persistedErrors = errors.sum();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.DatabaseConnection;
+import com.dbmonitor.model.QueryStatInterval;
+import com.dbmonitor.repository.QueryStatIntervalRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodically snapshots the engine's cumulative statement statistics for every active
+ * connection and stores the per-interval deltas, so "what was slow between 14:00 and 14:05"
+ * is answered from {@code query_stat_intervals} instead of the live stats views.
+ */
+@Service
+@Slf4j
+public class QueryStatsHarvesterService {
+
+    @Autowired
+    private DatabaseConnectionService connectionService;
+
+    @Autowired
+    private QueryStatIntervalRepository intervalRepository;
+
+    @Value("${monitor.query.harvest-enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitor.query.harvest-timeout-seconds:30}")
+    private int queryTimeoutSeconds;
+
+    // Last snapshot per connection; the baseline for the next diff
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${monitor.query.harvest-interval-ms:60000}",
+               initialDelayString = "${monitor.query.harvest-interval-ms:60000}")
+    public void harvestAll() {
+        if (!enabled) {
+            return;
+        }
+        for (DatabaseConnection conn : connectionService.getActiveConnections()) {
+            try {
+                harvest(conn);
+            } catch (Exception e) {
+                log.error("Error harvesting query statistics for connection '{}' (ID: {})",
+                        conn.getConnectionName(), conn.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot for one connection and persists the delta against the previous one.
+     *
+     * @return number of interval rows stored
+     */
+    public int harvest(DatabaseConnection conn) throws SQLException {
+        String normalizedType = conn.getDatabaseType().toUpperCase().replace(" ", "");
+        if (!"SQLSERVER".equals(normalizedType) && !"MYSQL".equals(normalizedType)
+                && !"POSTGRESQL".equals(normalizedType)) {
+            return 0;
+        }
+
+        LocalDateTime takenAt = LocalDateTime.now();
+        Snapshot current = readStats(conn, normalizedType, takenAt);
+        Snapshot previous = snapshots.put(conn.getId(), current);
+
+        if (previous == null) {
+            log.debug("Baseline query statistics snapshot for '{}': {} statements",
+                    conn.getConnectionName(), current.rows().size());
+            return 0;
+        }
+
+        List<QueryStatInterval> intervals = diff(conn.getId(), SqlFingerprinter.Dialect.of(normalizedType),
+                previous, current);
+        if (!intervals.isEmpty()) {
+            intervalRepository.saveAll(intervals);
+        }
+        log.debug("Harvested {} active statements for '{}'", intervals.size(), conn.getConnectionName());
+        return intervals.size();
+    }
+
+    /**
+     * Latest cumulative statistics for a connection, or an empty list if nothing was harvested yet.
+     */
+    public List<StatRow> getLatestSnapshot(Long connectionId) {
+        Snapshot snapshot = snapshots.get(connectionId);
+        return snapshot != null ? new ArrayList<>(snapshot.rows().values()) : Collections.emptyList();
+    }
+
+    public LocalDateTime getLatestSnapshotTime(Long connectionId) {
+        Snapshot snapshot = snapshots.get(connectionId);
+        return snapshot != null ? snapshot.takenAt() : null;
+    }
+
+    /**
+     * Heaviest statements by total time in the window (start, end].
+     */
+    public List<Map<String, Object>> getTopStatements(Long connectionId, LocalDateTime start, LocalDateTime end, int limit) {
+        List<Object[]> rows = intervalRepository.sumByStatementBetween(connectionId, start, end,
+                PageRequest.of(0, Math.max(1, Math.min(limit, 500))));
+        // Text and fingerprint come from each statement's latest interval, read in one query
+        Map<String, QueryStatInterval> latestByKey = new HashMap<>();
+        if (!rows.isEmpty()) {
+            List<String> keys = rows.stream().map(row -> (String) row[0]).toList();
+            for (QueryStatInterval latest : intervalRepository.findLatestByStatementKeys(connectionId, keys)) {
+                latestByKey.putIfAbsent(latest.getStatementKey(), latest);
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            String key = (String) row[0];
+            long calls = row[1] != null ? ((Number) row[1]).longValue() : 0;
+            double totalTime = row[2] != null ? ((Number) row[2]).doubleValue() : 0;
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("statementKey", key);
+            QueryStatInterval latest = latestByKey.get(key);
+            if (latest != null) {
+                entry.put("fingerprint", latest.getFingerprint());
+                entry.put("queryText", latest.getQueryText());
+                entry.put("queryType", latest.getQueryType());
+            }
+            entry.put("calls", calls);
+            entry.put("totalTimeMs", totalTime);
+            entry.put("avgTimeMs", calls > 0 ? totalTime / calls : 0.0);
+            entry.put("rows", row[3] != null ? ((Number) row[3]).longValue() : 0);
+            entry.put("intervals", row[4]);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    public List<QueryStatInterval> getIntervals(Long connectionId, LocalDateTime start, LocalDateTime end) {
+        return intervalRepository.findByConnectionIdAndIntervalEndBetweenOrderByIntervalEndAsc(connectionId, start, end);
+    }
+
+    public void forgetConnection(Long connectionId) {
+        snapshots.remove(connectionId);
+    }
+
+    /**
+     * Per-statement deltas between two snapshots. Counters are compared per instance (one
+     * cached plan on SQL Server, the statement itself elsewhere), so a plan that is evicted
+     * simply stops contributing instead of making the statement's sum look like a reset.
+     */
+    private List<QueryStatInterval> diff(Long connectionId, SqlFingerprinter.Dialect dialect,
+                                         Snapshot previous, Snapshot current) {
+        Map<String, double[]> deltas = new LinkedHashMap<>();
+        for (Map.Entry<String, StatRow> entry : current.instances().entrySet()) {
+            StatRow now = entry.getValue();
+            StatRow before = previous.instances().get(entry.getKey());
+
+            long calls;
+            double totalTime;
+            long rows;
+            if (before == null || now.calls() < before.calls()) {
+                // New instance, or its counters were reset: everything counted is new
+                calls = now.calls();
+                totalTime = now.totalTimeMs();
+                rows = now.rows();
+            } else {
+                calls = now.calls() - before.calls();
+                totalTime = Math.max(0, now.totalTimeMs() - before.totalTimeMs());
+                rows = Math.max(0, now.rows() - before.rows());
+            }
+            if (calls <= 0) {
+                continue;
+            }
+            double[] delta = deltas.computeIfAbsent(now.statementKey(), k -> new double[3]);
+            delta[0] += calls;
+            delta[1] += totalTime;
+            delta[2] += rows;
+        }
+
+        List<QueryStatInterval> intervals = new ArrayList<>(deltas.size());
+        deltas.forEach((statementKey, delta) -> {
+            long calls = (long) delta[0];
+            SqlFingerprinter.Fingerprint fingerprint = SqlFingerprinter.fingerprint(
+                    current.rows().get(statementKey).queryText(), dialect);
+            intervals.add(QueryStatInterval.builder()
+                    .connectionId(connectionId)
+                    .intervalStart(previous.takenAt())
+                    .intervalEnd(current.takenAt())
+                    .statementKey(statementKey)
+                    .fingerprint(fingerprint.hash())
+                    .queryText(fingerprint.normalizedText())
+                    .queryType(fingerprint.queryType())
+                    .calls(calls)
+                    .totalTimeMs(delta[1])
+                    .rowsAffected((long) delta[2])
+                    .avgTimeMs(delta[1] / calls)
+                    .build());
+        });
+        return intervals;
+    }
+
+    private Snapshot readStats(DatabaseConnection conn, String normalizedType, LocalDateTime takenAt)
+            throws SQLException {
+        DataSource dataSource = connectionService.getDataSource(conn.getId());
+        Map<String, StatRow> instances = new HashMap<>();
+
+        try (Connection connection = dataSource.getConnection()) {
+            String sql = switch (normalizedType) {
+                case "SQLSERVER" -> SQLSERVER_STATS;
+                case "MYSQL" -> MYSQL_STATS;
+                default -> postgreSqlStats(connection.getMetaData().getDatabaseMajorVersion());
+            };
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setQueryTimeout(queryTimeoutSeconds);
+                stmt.setFetchSize(1000);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String key = rs.getString("statement_key");
+                        if (key == null) {
+                            continue;
+                        }
+                        String text = rs.getString("query_text");
+                        Timestamp lastSeen = rs.getTimestamp("last_seen");
+                        instances.put(rs.getString("instance_key"), new StatRow(key,
+                                text != null ? text.trim() : "",
+                                rs.getLong("calls"),
+                                rs.getDouble("total_time_ms"),
+                                rs.getLong("total_rows"),
+                                lastSeen != null ? lastSeen.toLocalDateTime() : null));
+                    }
+                }
+            }
+        }
+        return new Snapshot(takenAt, instances, aggregate(instances.values()));
+    }
+
+    // Sums the instances of each statement into one row
+    private static Map<String, StatRow> aggregate(Iterable<StatRow> instances) {
+        Map<String, StatRow> rows = new HashMap<>();
+        for (StatRow instance : instances) {
+            rows.merge(instance.statementKey(), instance, (a, b) -> new StatRow(a.statementKey(),
+                    a.queryText().compareTo(b.queryText()) <= 0 ? a.queryText() : b.queryText(),
+                    a.calls() + b.calls(),
+                    a.totalTimeMs() + b.totalTimeMs(),
+                    a.rows() + b.rows(),
+                    a.lastSeen() == null ? b.lastSeen()
+                            : b.lastSeen() == null || a.lastSeen().isAfter(b.lastSeen()) ? a.lastSeen() : b.lastSeen()));
+        }
+        return rows;
+    }
+
+    private static String postgreSqlStats(int majorVersion) {
+        return POSTGRESQL_STATS.formatted(majorVersion >= 14 ? " || ':' || toplevel::text" : "",
+                majorVersion >= 13 ? "total_exec_time" : "total_time");
+    }
+
+    // One row per cached plan and statement; rows of one query_hash are summed per snapshot
+    private static final String SQLSERVER_STATS = """
+        SELECT
+            CONVERT(VARCHAR(34), qs.query_hash, 1) AS statement_key,
+            CONVERT(VARCHAR(130), qs.plan_handle, 1) + ':' + CAST(qs.statement_start_offset AS VARCHAR(11))
+                + ':' + CAST(qs.statement_end_offset AS VARCHAR(11)) AS instance_key,
+            SUBSTRING(st.text, (qs.statement_start_offset/2) + 1,
+                ((CASE qs.statement_end_offset
+                    WHEN -1 THEN DATALENGTH(st.text)
+                    ELSE qs.statement_end_offset
+                END - qs.statement_start_offset)/2) + 1) AS query_text,
+            qs.execution_count AS calls,
+            qs.total_elapsed_time / 1000.0 AS total_time_ms,
+            qs.total_rows AS total_rows,
+            qs.last_execution_time AS last_seen
+        FROM sys.dm_exec_query_stats AS qs
+        CROSS APPLY sys.dm_exec_sql_text(qs.sql_handle) AS st
+        WHERE st.text IS NOT NULL
+        """;
+
+    private static final String MYSQL_STATS = """
+        SELECT
+            CONCAT(IFNULL(SCHEMA_NAME, ''), ':', DIGEST) AS statement_key,
+            CONCAT(IFNULL(SCHEMA_NAME, ''), ':', DIGEST) AS instance_key,
+            DIGEST_TEXT AS query_text,
+            COUNT_STAR AS calls,
+            SUM_TIMER_WAIT / 1000000000 AS total_time_ms,
+            SUM_ROWS_AFFECTED + SUM_ROWS_SENT AS total_rows,
+            LAST_SEEN AS last_seen
+        FROM performance_schema.events_statements_summary_by_digest
+        WHERE DIGEST IS NOT NULL
+        """;
+
+    // The first %s adds toplevel on PostgreSQL 14+, where track = all keeps a row for top-level
+    // and one for nested executions of a statement; both count towards it. The second %s is
+    // total_exec_time on PostgreSQL 13+ and total_time before.
+    private static final String POSTGRESQL_STATS = """
+        SELECT
+            userid::text || ':' || dbid::text || ':' || queryid::text AS statement_key,
+            userid::text || ':' || dbid::text || ':' || queryid::text%s AS instance_key,
+            query AS query_text,
+            calls,
+            %s AS total_time_ms,
+            rows AS total_rows,
+            CAST(NULL AS timestamp) AS last_seen
+        FROM pg_stat_statements
+        WHERE queryid IS NOT NULL
+        """;
+
+    /**
+     * Cumulative counters for one statement as read from the engine's stats view.
+     */
+    public record StatRow(String statementKey, String queryText, long calls, double totalTimeMs,
+                          long rows, LocalDateTime lastSeen) {
+    }
+
+    // instances: counters as read, by instance key; rows: their per-statement sums
+    private record Snapshot(LocalDateTime takenAt, Map<String, StatRow> instances, Map<String, StatRow> rows) {
+    }
+}
@@ -0,0 +1,168 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.QueryPlan;
+import com.dbmonitor.model.QueryText;
+import com.dbmonitor.repository.QueryTextRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Maintains the {@code query_texts} dictionary. Every fingerprint seen recently is kept in an
+ * in-memory LRU, so the steady state of ingestion does no dictionary lookups at all; unknown
+ * fingerprints are checked in one IN query per chunk and the missing ones batch-inserted.
+ * Texts of returned metrics and plans are attached in bulk rather than loaded per row.
+ */
+@Service
+@Slf4j
+public class QueryTextService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO query_texts (fingerprint, query_text, query_type, first_seen) VALUES (?, ?, ?, ?)";
+
+    // Well below SQL Server's 2100 parameter limit
+    private static final int LOOKUP_CHUNK = 1000;
+
+    @Autowired
+    private QueryTextRepository queryTextRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${monitor.query.text-cache-size:50000}")
+    private int cacheSize;
+
+    // Access-ordered, so the least recently seen fingerprint is evicted first
+    private final Map<Long, Boolean> known = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    public void register(SqlFingerprinter.Fingerprint fingerprint) {
+        registerAll(List.of(fingerprint));
+    }
+
+    /**
+     * Makes sure every fingerprint has a dictionary row. Safe to call concurrently; a row
+     * inserted by another caller in between is simply skipped.
+     */
+    public void registerAll(Collection<SqlFingerprinter.Fingerprint> fingerprints) {
+        Map<Long, SqlFingerprinter.Fingerprint> unknown = new LinkedHashMap<>();
+        synchronized (known) {
+            for (SqlFingerprinter.Fingerprint fingerprint : fingerprints) {
+                if (known.get(fingerprint.hash()) == null) {
+                    unknown.putIfAbsent(fingerprint.hash(), fingerprint);
+                }
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+
+        Set<Long> existing = new HashSet<>();
+        List<Long> ids = new ArrayList<>(unknown.keySet());
+        for (int i = 0; i < ids.size(); i += LOOKUP_CHUNK) {
+            existing.addAll(queryTextRepository.findExistingFingerprints(
+                    ids.subList(i, Math.min(ids.size(), i + LOOKUP_CHUNK))));
+        }
+
+        List<SqlFingerprinter.Fingerprint> missing = unknown.values().stream()
+                .filter(f -> !existing.contains(f.hash()))
+                .toList();
+        if (!missing.isEmpty()) {
+            insert(missing);
+        }
+
+        synchronized (known) {
+            for (Long id : ids) {
+                known.put(id, Boolean.TRUE);
+            }
+        }
+    }
+
+    public List<QueryMetrics> attachTexts(List<QueryMetrics> rows) {
+        Map<Long, QueryText> texts = findTexts(rows.stream().map(QueryMetrics::getFingerprint).toList());
+        rows.forEach(row -> row.setText(texts.get(row.getFingerprint())));
+        return rows;
+    }
+
+    /**
+     * Attaches texts to the plans and to the executions they were captured from.
+     */
+    public List<QueryPlan> attachPlanTexts(List<QueryPlan> plans) {
+        List<Long> fingerprints = new ArrayList<>();
+        for (QueryPlan plan : plans) {
+            fingerprints.add(plan.getFingerprint());
+            if (plan.getQueryMetrics() != null) {
+                fingerprints.add(plan.getQueryMetrics().getFingerprint());
+            }
+        }
+        Map<Long, QueryText> texts = findTexts(fingerprints);
+        for (QueryPlan plan : plans) {
+            plan.setText(texts.get(plan.getFingerprint()));
+            if (plan.getQueryMetrics() != null) {
+                plan.getQueryMetrics().setText(texts.get(plan.getQueryMetrics().getFingerprint()));
+            }
+        }
+        return plans;
+    }
+
+    private Map<Long, QueryText> findTexts(Collection<Long> fingerprints) {
+        List<Long> ids = fingerprints.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, QueryText> texts = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += LOOKUP_CHUNK) {
+            queryTextRepository.findAllById(ids.subList(i, Math.min(ids.size(), i + LOOKUP_CHUNK)))
+                    .forEach(text -> texts.put(text.getFingerprint(), text));
+        }
+        return texts;
+    }
+
+    /**
+     * Forgets cached fingerprints whose dictionary rows were purged, so they are re-inserted
+     * when the statement shows up again.
+     */
+    public void evict(Collection<Long> fingerprints) {
+        synchronized (known) {
+            fingerprints.forEach(known::remove);
+        }
+    }
+
+    private void insert(List<SqlFingerprinter.Fingerprint> missing) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, missing, missing.size(), (ps, f) -> {
+                ps.setLong(1, f.hash());
+                ps.setString(2, f.normalizedText());
+                ps.setString(3, f.queryType());
+                ps.setTimestamp(4, now);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Raced with another registration; retry row by row and skip the duplicates
+            for (SqlFingerprinter.Fingerprint f : missing) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, f.hash(), f.normalizedText(), f.queryType(), now);
+                } catch (DataIntegrityViolationException duplicate) {
+                    log.debug("Query text {} already registered", f.hashHex());
+                }
+            }
+        }
+    }
+}
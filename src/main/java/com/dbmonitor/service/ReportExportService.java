@@ -1,20 +1,22 @@
 package com.dbmonitor.service;
 
-import com.dbmonitor.model.Alert;
 import com.dbmonitor.model.DatabaseMetrics;
-import com.dbmonitor.model.QueryMetrics;
+import com.dbmonitor.model.ReportType;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Table;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 
@@ -33,11 +35,24 @@ public class ReportExportService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    public byte[] exportMetricsToPdf(Long connectionId) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PdfWriter writer = new PdfWriter(baos);
-            PdfDocument pdfDoc = new PdfDocument(writer);
-            Document document = new Document(pdfDoc);
+    // Rows of the current sheet kept in memory before older ones are spilled to disk
+    private static final int EXCEL_ROW_WINDOW = 200;
+    private static final int EXCEL_MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final int EXCEL_MAX_CELL_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+    private static final int PDF_FLUSH_ROWS = 200;
+
+    public void write(ReportType type, Long connectionId, LocalDateTime from, LocalDateTime to, OutputStream out) {
+        switch (type) {
+            case METRICS_PDF -> writeMetricsPdf(connectionId, out);
+            case METRICS_EXCEL -> writeMetricsExcel(connectionId, out);
+            case QUERIES_EXCEL -> writeQueriesExcel(from, to, out);
+            case ALERTS_PDF -> writeAlertsPdf(from, to, out);
+        }
+    }
+
+    public void writeMetricsPdf(Long connectionId, OutputStream out) {
+        try {
+            Document document = openPdf(out);
 
             // Title
             document.add(new Paragraph("Database Metrics Report")
@@ -79,15 +94,14 @@ public class ReportExportService {
             }
 
             document.close();
-            return baos.toByteArray();
         } catch (Exception e) {
             log.error("Error generating PDF report", e);
             throw new RuntimeException("Failed to generate PDF report", e);
         }
     }
 
-    public byte[] exportMetricsToExcel(Long connectionId) {
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+    public void writeMetricsExcel(Long connectionId, OutputStream out) {
+        try (Workbook workbook = new XSSFWorkbook()) {
             
             // Current Metrics Sheet
             Sheet currentSheet = workbook.createSheet("Current Metrics");
@@ -132,81 +146,107 @@ public class ReportExportService {
                 row.createCell(5).setCellValue(metric.getConnectionUsagePercent());
             }
 
-            workbook.write(baos);
-            return baos.toByteArray();
+            workbook.write(out);
         } catch (Exception e) {
             log.error("Error generating Excel report", e);
             throw new RuntimeException("Failed to generate Excel report", e);
         }
     }
 
-    public byte[] exportQueriesToExcel() {
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            
-            Sheet sheet = workbook.createSheet("Queries");
-            List<QueryMetrics> queries = queryMonitoringService.getAllQueries();
-            
-            int rowNum = 0;
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue("Query Type");
-            row.createCell(1).setCellValue("Execution Time (ms)");
-            row.createCell(2).setCellValue("Status");
-            row.createCell(3).setCellValue("Executed At");
-            row.createCell(4).setCellValue("Query");
-
-            for (QueryMetrics query : queries) {
-                row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(query.getQueryType());
-                row.createCell(1).setCellValue(query.getExecutionDurationMs());
-                row.createCell(2).setCellValue(query.getStatus());
-                row.createCell(3).setCellValue(query.getExecutionTime().format(DATE_FORMATTER));
-                row.createCell(4).setCellValue(query.getQueryText());
+    /**
+     * Writes recorded executions in the range (newest first) as XLSX. Rows go through an
+     * SXSSF window, so only {@code EXCEL_ROW_WINDOW} rows are held in memory and the rest are
+     * spilled to a compressed temp file until the workbook is written; sheets roll over at
+     * Excel's row limit.
+     */
+    public void writeQueriesExcel(LocalDateTime from, LocalDateTime to, OutputStream out) {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_WINDOW)) {
+            workbook.setCompressTempFiles(true);
+            try {
+                Sheet[] sheet = {createQueriesSheet(workbook, 1)};
+                int[] rowNum = {1};
+                queryMonitoringService.streamQueries(null, null, null, null, null, null, from, to, null, null, query -> {
+                    if (rowNum[0] >= EXCEL_MAX_ROWS) {
+                        sheet[0] = createQueriesSheet(workbook, workbook.getNumberOfSheets() + 1);
+                        rowNum[0] = 1;
+                    }
+                    Row row = sheet[0].createRow(rowNum[0]++);
+                    row.createCell(0).setCellValue(query.getQueryType());
+                    row.createCell(1).setCellValue(query.getExecutionDurationMs() != null ? query.getExecutionDurationMs() : 0);
+                    row.createCell(2).setCellValue(query.getStatus());
+                    row.createCell(3).setCellValue(query.getExecutionTime().format(DATE_FORMATTER));
+                    row.createCell(4).setCellValue(truncateForCell(query.getQueryText()));
+                });
+
+                workbook.write(out);
+            } finally {
+                // Removes the temp files holding spilled rows
+                workbook.dispose();
             }
-
-            workbook.write(baos);
-            return baos.toByteArray();
         } catch (Exception e) {
             log.error("Error generating queries Excel report", e);
             throw new RuntimeException("Failed to generate queries Excel report", e);
         }
     }
 
-    public byte[] exportAlertsToPdf() {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PdfWriter writer = new PdfWriter(baos);
-            PdfDocument pdfDoc = new PdfDocument(writer);
-            Document document = new Document(pdfDoc);
+    public void writeAlertsPdf(LocalDateTime from, LocalDateTime to, OutputStream out) {
+        try {
+            Document document = openPdf(out);
 
             document.add(new Paragraph("Database Alerts Report")
                 .setFontSize(20)
                 .setBold());
 
-            List<Alert> alerts = alertService.getAllAlerts();
-            
-            Table table = new Table(new float[]{2, 2, 3, 2, 2});
+            Table table = new Table(new float[]{2, 2, 3, 2, 2}, true);
             table.addHeaderCell("Type");
             table.addHeaderCell("Severity");
             table.addHeaderCell("Message");
             table.addHeaderCell("Created At");
             table.addHeaderCell("Acknowledged");
+            document.add(table);
 
-            for (Alert alert : alerts) {
+            long[] rows = {0};
+            alertService.streamAlerts(null, null, null, null, from, to, null, null, alert -> {
                 table.addCell(alert.getAlertType());
                 table.addCell(alert.getSeverity());
                 table.addCell(alert.getMessage());
                 table.addCell(alert.getCreatedAt().format(DATE_FORMATTER));
-                table.addCell(alert.getAcknowledged() ? "Yes" : "No");
-            }
-            
-            document.add(table);
+                table.addCell(Boolean.TRUE.equals(alert.getAcknowledged()) ? "Yes" : "No");
+                if (++rows[0] % PDF_FLUSH_ROWS == 0) {
+                    table.flush();
+                }
+            });
+
+            table.complete();
             document.close();
-            return baos.toByteArray();
         } catch (Exception e) {
             log.error("Error generating alerts PDF report", e);
             throw new RuntimeException("Failed to generate alerts PDF report", e);
         }
     }
 
+    // Leaves the response stream open for the servlet container to finish
+    private Document openPdf(OutputStream out) {
+        PdfWriter writer = new PdfWriter(out);
+        writer.setCloseStream(false);
+        return new Document(new PdfDocument(writer));
+    }
+
+    private Sheet createQueriesSheet(Workbook workbook, int number) {
+        Sheet sheet = workbook.createSheet(number == 1 ? "Queries" : "Queries " + number);
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Query Type");
+        header.createCell(1).setCellValue("Execution Time (ms)");
+        header.createCell(2).setCellValue("Status");
+        header.createCell(3).setCellValue("Executed At");
+        header.createCell(4).setCellValue("Query");
+        return sheet;
+    }
+
+    private static String truncateForCell(String value) {
+        return value != null && value.length() > EXCEL_MAX_CELL_LENGTH ? value.substring(0, EXCEL_MAX_CELL_LENGTH) : value;
+    }
+
     private void addExcelRow(Sheet sheet, int rowNum, String label, String value) {
         Row row = sheet.createRow(rowNum);
         row.createCell(0).setCellValue(label);
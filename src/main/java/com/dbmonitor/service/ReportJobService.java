@@ -0,0 +1,264 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.ReportJob;
+import com.dbmonitor.model.ReportType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Generates reports on a bounded worker pool instead of the request thread. Submitting
+ * returns a job right away; the finished report is written to a file in the work directory
+ * and downloaded separately. Jobs with the same (type, connection, range) submitted within
+ * the cache TTL share one result, including jobs that are still running.
+ */
+@Service
+@Slf4j
+public class ReportJobService {
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    @Value("${monitor.reports.workers:2}")
+    private int workers;
+
+    @Value("${monitor.reports.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${monitor.reports.cache-ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    @Value("${monitor.reports.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    @Value("${monitor.reports.work-directory:${java.io.tmpdir}/dbmonitor-reports}")
+    private String workDirectory;
+
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<CacheKey, ReportJob> cache = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+    private Path workDir;
+
+    @PostConstruct
+    public void start() throws IOException {
+        workDir = Paths.get(workDirectory).toAbsolutePath();
+        Files.createDirectories(workDir);
+        // Jobs do not survive a restart, so neither do their files
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(workDir)) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "report-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("Report jobs: {} workers, queue {}, work directory {}", workers, queueCapacity, workDir);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns a job producing the report, reusing a queued, running or recently completed one
+     * with the same parameters.
+     *
+     * @throws RejectedExecutionException when the job queue is full
+     */
+    public ReportJob submit(ReportType type, Long connectionId, LocalDateTime from, LocalDateTime to) {
+        CacheKey key = key(type, connectionId, from, to);
+        ReportJob[] created = new ReportJob[1];
+        ReportJob job = cache.compute(key, (k, existing) -> {
+            if (existing != null && isReusable(existing)) {
+                return existing;
+            }
+            created[0] = newJob(k, null);
+            return created[0];
+        });
+        if (created[0] != null) {
+            enqueue(created[0], null);
+        }
+        return job;
+    }
+
+    /**
+     * Always generates a fresh report and calls {@code onFinished} from the worker thread
+     * once it completes or fails. Used for scheduled delivery.
+     *
+     * @throws RejectedExecutionException when the job queue is full
+     */
+    public ReportJob submitUncached(ReportType type, Long connectionId, LocalDateTime from, LocalDateTime to,
+                                    Long scheduleId, Consumer<ReportJob> onFinished) {
+        ReportJob job = newJob(key(type, connectionId, from, to), scheduleId);
+        enqueue(job, onFinished);
+        return job;
+    }
+
+    /**
+     * A completed report with these parameters that is still within the cache TTL.
+     */
+    public Optional<ReportJob> findCached(ReportType type, Long connectionId, LocalDateTime from, LocalDateTime to) {
+        ReportJob job = cache.get(key(type, connectionId, from, to));
+        return job != null && job.getStatus() == ReportJob.Status.COMPLETED && isReusable(job)
+                ? Optional.of(job) : Optional.empty();
+    }
+
+    public Optional<ReportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<ReportJob> getJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(ReportJob::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("workers", workers);
+        status.put("active", executor.getActiveCount());
+        status.put("queued", executor.getQueue().size());
+        status.put("queueCapacity", queueCapacity);
+        status.put("jobs", jobs.size());
+        status.put("cachedResults", cache.size());
+        return status;
+    }
+
+    /**
+     * Drops cache entries past their TTL and deletes jobs, with their files, past retention.
+     */
+    @Scheduled(fixedDelayString = "${monitor.reports.cleanup-ms:60000}")
+    public void cleanup() {
+        cache.values().removeIf(job -> !isReusable(job));
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(Math.max(jobRetentionMinutes, cacheTtlMinutes));
+        for (ReportJob job : jobs.values()) {
+            if (job.getCompletedAt() != null && job.getCompletedAt().isBefore(cutoff)) {
+                jobs.remove(job.getId());
+                deleteQuietly(job.getFile());
+            }
+        }
+    }
+
+    private ReportJob newJob(CacheKey key, Long scheduleId) {
+        if (key.type().isPerConnection() && key.connectionId() == null) {
+            throw new IllegalArgumentException(key.type() + " requires a connectionId");
+        }
+        return ReportJob.builder()
+                .id(UUID.randomUUID().toString())
+                .type(key.type())
+                .connectionId(key.connectionId())
+                .from(key.from())
+                .to(key.to())
+                .scheduleId(scheduleId)
+                .submittedAt(LocalDateTime.now())
+                .status(ReportJob.Status.QUEUED)
+                .build();
+    }
+
+    private void enqueue(ReportJob job, Consumer<ReportJob> onFinished) {
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, onFinished));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            cache.remove(key(job.getType(), job.getConnectionId(), job.getFrom(), job.getTo()), job);
+            throw e;
+        }
+    }
+
+    private void run(ReportJob job, Consumer<ReportJob> onFinished) {
+        job.setStartedAt(LocalDateTime.now());
+        job.setStatus(ReportJob.Status.RUNNING);
+        Path part = workDir.resolve(job.getId() + ".part");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part))) {
+                reportExportService.write(job.getType(), job.getConnectionId(), job.getFrom(), job.getTo(), out);
+            }
+            Path file = workDir.resolve(job.getId() + "." + job.getType().getExtension());
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING);
+            job.setFile(file);
+            job.setSizeBytes(Files.size(file));
+            job.setCompletedAt(LocalDateTime.now());
+            job.setStatus(ReportJob.Status.COMPLETED);
+            log.info("Report job {} ({}) completed: {} bytes", job.getId(), job.getType(), job.getSizeBytes());
+        } catch (Exception e) {
+            deleteQuietly(part);
+            job.setError(e.getMessage());
+            job.setCompletedAt(LocalDateTime.now());
+            job.setStatus(ReportJob.Status.FAILED);
+            cache.remove(key(job.getType(), job.getConnectionId(), job.getFrom(), job.getTo()), job);
+            log.error("Report job {} ({}) failed", job.getId(), job.getType(), e);
+        }
+
+        if (onFinished != null) {
+            try {
+                onFinished.accept(job);
+            } catch (Exception e) {
+                log.error("Error handling completion of report job {}", job.getId(), e);
+            }
+        }
+    }
+
+    private boolean isReusable(ReportJob job) {
+        return switch (job.getStatus()) {
+            case QUEUED, RUNNING -> true;
+            case COMPLETED -> job.getCompletedAt().isAfter(LocalDateTime.now().minusMinutes(cacheTtlMinutes));
+            case FAILED -> false;
+        };
+    }
+
+    // Metrics reports ignore the range and the others the connection, so leave them out of the key
+    private static CacheKey key(ReportType type, Long connectionId, LocalDateTime from, LocalDateTime to) {
+        return type.isPerConnection()
+                ? new CacheKey(type, connectionId, null, null)
+                : new CacheKey(type, null, from, to);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete report file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private record CacheKey(ReportType type, Long connectionId, LocalDateTime from, LocalDateTime to) {
+    }
+}
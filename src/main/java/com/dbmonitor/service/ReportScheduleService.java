@@ -0,0 +1,203 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.ReportJob;
+import com.dbmonitor.model.ReportSchedule;
+import com.dbmonitor.repository.ReportScheduleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs report schedules through the report job pool and delivers the result to a directory
+ * or by email. Due schedules are picked up by polling {@code nextRunAt}, so runs missed while
+ * the application was down collapse into one run on startup.
+ */
+@Service
+@Slf4j
+public class ReportScheduleService {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Autowired
+    private ReportScheduleRepository scheduleRepository;
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Value("${monitor.reports.delivery-directory:./reports}")
+    private String deliveryDirectory;
+
+    @Value("${monitor.reports.email-max-attachment-mb:20}")
+    private long emailMaxAttachmentMb;
+
+    @Value("${monitor.reports.default-range-hours:24}")
+    private int defaultRangeHours;
+
+    public List<ReportSchedule> getSchedules() {
+        return scheduleRepository.findAll();
+    }
+
+    public Optional<ReportSchedule> getSchedule(Long id) {
+        return scheduleRepository.findById(id);
+    }
+
+    public ReportSchedule save(ReportSchedule schedule) {
+        validate(schedule);
+        if (schedule.getEnabled() == null) {
+            schedule.setEnabled(true);
+        }
+        schedule.setNextRunAt(nextRun(schedule.getCronExpression(), LocalDateTime.now()));
+        return scheduleRepository.save(schedule);
+    }
+
+    public void delete(Long id) {
+        scheduleRepository.deleteById(id);
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.reports.schedule-check-ms:60000}")
+    public void runDueSchedules() {
+        LocalDateTime now = LocalDateTime.now();
+        for (ReportSchedule schedule : scheduleRepository.findByEnabledTrueAndNextRunAtLessThanEqual(now)) {
+            schedule.setNextRunAt(nextRun(schedule.getCronExpression(), now));
+            try {
+                run(schedule, now);
+            } catch (Exception e) {
+                log.warn("Could not start scheduled report '{}': {}", schedule.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs a schedule immediately without changing its next run time.
+     */
+    public ReportJob runNow(Long id) {
+        ReportSchedule schedule = scheduleRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Report schedule not found: " + id));
+        return run(schedule, LocalDateTime.now());
+    }
+
+    private ReportJob run(ReportSchedule schedule, LocalDateTime now) {
+        int rangeHours = schedule.getRangeHours() != null ? schedule.getRangeHours() : defaultRangeHours;
+        // Saved before submitting so a fast delivery cannot be overwritten by this update
+        schedule.setLastRunAt(now);
+        schedule.setLastStatus("RUNNING");
+        schedule.setLastError(null);
+        scheduleRepository.save(schedule);
+        try {
+            return reportJobService.submitUncached(schedule.getReportType(), schedule.getConnectionId(),
+                    now.minusHours(rangeHours), now, schedule.getId(), finished -> deliver(schedule.getId(), finished));
+        } catch (RejectedExecutionException e) {
+            recordFailure(schedule, "Report queue is full");
+            throw e;
+        } catch (RuntimeException e) {
+            recordFailure(schedule, e.getMessage());
+            throw e;
+        }
+    }
+
+    private void deliver(Long scheduleId, ReportJob job) {
+        Optional<ReportSchedule> found = scheduleRepository.findById(scheduleId);
+        if (found.isEmpty()) {
+            return;
+        }
+        ReportSchedule schedule = found.get();
+        if (job.getStatus() != ReportJob.Status.COMPLETED) {
+            recordFailure(schedule, job.getError());
+            return;
+        }
+
+        String filename = schedule.getName().replaceAll("[^A-Za-z0-9._-]", "_") + "-"
+                + job.getCompletedAt().format(FILE_TIMESTAMP) + "." + job.getType().getExtension();
+        try {
+            if (schedule.getDeliveryType() == ReportSchedule.DeliveryType.EMAIL) {
+                if (job.getSizeBytes() > emailMaxAttachmentMb * 1024 * 1024) {
+                    throw new IllegalStateException("Report is " + job.getSizeBytes()
+                            + " bytes, over the email attachment limit");
+                }
+                notificationService.sendReportEmail(recipients(schedule), "Database Monitor report: " + schedule.getName(),
+                        "Scheduled report \"" + schedule.getName() + "\" generated at " + job.getCompletedAt() + ".",
+                        job.getFile(), filename);
+            } else {
+                Path directory = deliveryPath(schedule.getTarget());
+                Files.createDirectories(directory);
+                Files.copy(job.getFile(), directory.resolve(filename), StandardCopyOption.REPLACE_EXISTING);
+            }
+            schedule.setLastStatus("DELIVERED");
+            schedule.setLastError(null);
+            scheduleRepository.save(schedule);
+            log.info("Scheduled report '{}' delivered as {}", schedule.getName(), filename);
+        } catch (Exception e) {
+            log.error("Error delivering scheduled report '{}'", schedule.getName(), e);
+            recordFailure(schedule, e.getMessage());
+        }
+    }
+
+    private void recordFailure(ReportSchedule schedule, String error) {
+        schedule.setLastStatus("FAILED");
+        schedule.setLastError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        scheduleRepository.save(schedule);
+    }
+
+    private void validate(ReportSchedule schedule) {
+        if (schedule.getName() == null || schedule.getName().isBlank()) {
+            throw new IllegalArgumentException("Schedule name is required");
+        }
+        if (schedule.getReportType() == null || schedule.getDeliveryType() == null) {
+            throw new IllegalArgumentException("Report type and delivery type are required");
+        }
+        if (schedule.getReportType().isPerConnection() && schedule.getConnectionId() == null) {
+            throw new IllegalArgumentException(schedule.getReportType() + " requires a connectionId");
+        }
+        if (schedule.getCronExpression() == null || !CronExpression.isValidExpression(schedule.getCronExpression())) {
+            throw new IllegalArgumentException("Invalid cron expression: " + schedule.getCronExpression());
+        }
+        if (schedule.getDeliveryType() == ReportSchedule.DeliveryType.EMAIL) {
+            if (recipients(schedule).length == 0) {
+                throw new IllegalArgumentException("Email delivery requires at least one address");
+            }
+        } else {
+            deliveryPath(schedule.getTarget());
+        }
+    }
+
+    // Targets are confined to the delivery directory so API users cannot write elsewhere
+    private Path deliveryPath(String target) {
+        Path base = Paths.get(deliveryDirectory).toAbsolutePath().normalize();
+        Path path = target == null || target.isBlank() ? base : base.resolve(target).normalize();
+        if (!path.startsWith(base)) {
+            throw new IllegalArgumentException("Delivery target must be inside " + base);
+        }
+        return path;
+    }
+
+    private static String[] recipients(ReportSchedule schedule) {
+        if (schedule.getTarget() == null) {
+            return new String[0];
+        }
+        return Arrays.stream(schedule.getTarget().split(","))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static LocalDateTime nextRun(String cron, LocalDateTime after) {
+        return CronExpression.parse(cron).next(after);
+    }
+}
@@ -0,0 +1,326 @@
+package com.dbmonitor.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Purges rows older than the configured retention from every growing table in the
+ * repository database. Rows are removed in bounded chunks: the timestamp of the N-th oldest
+ * row is looked up on the indexed timestamp column and everything up to it is deleted in a
+ * single statement, so a purge never holds long locks against concurrent ingestion.
+ *
+ * <p>After the timed tables, {@code query_texts} rows that no execution or plan references any
+ * more are removed in chunks, once they are older than their own retention.
+ */
+@Service
+@Slf4j
+public class RetentionService {
+
+    private static final String QUERY_TEXTS = "query_texts";
+
+    // Fingerprints per orphan delete; well below SQL Server's 2100 parameter limit
+    private static final int TEXT_CHUNK = 1000;
+
+    private static final String ORPHAN_TEXTS_SQL = "SELECT fingerprint FROM query_texts WHERE first_seen < ?"
+            + unreferenced() + " ORDER BY fingerprint OFFSET 0 ROWS FETCH NEXT " + TEXT_CHUNK + " ROWS ONLY";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private QueryTextService queryTextService;
+
+    @Value("${monitor.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${monitor.retention.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${monitor.retention.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    @Value("${monitor.retention.alerts-days:30}")
+    private int alertsDays;
+
+    @Value("${monitor.retention.query-metrics-days:7}")
+    private int queryMetricsDays;
+
+    @Value("${monitor.retention.audit-logs-days:90}")
+    private int auditLogsDays;
+
+    @Value("${monitor.retention.login-attempts-days:30}")
+    private int loginAttemptsDays;
+
+    @Value("${monitor.retention.replication-status-days:14}")
+    private int replicationStatusDays;
+
+    @Value("${monitor.retention.backup-status-days:30}")
+    private int backupStatusDays;
+
+    @Value("${monitor.retention.query-plans-days:30}")
+    private int queryPlansDays;
+
+    @Value("${monitor.retention.query-stat-intervals-days:14}")
+    private int queryStatIntervalsDays;
+
+    @Value("${monitor.retention.query-minute-stats-days:30}")
+    private int queryMinuteStatsDays;
+
+    @Value("${monitor.retention.object-stat-intervals-days:90}")
+    private int objectStatIntervalsDays;
+
+    @Value("${monitor.retention.query-texts-days:7}")
+    private int queryTextsDays;
+
+    private final Map<String, RetentionPolicy> policies = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> lastRunByTable = new ConcurrentHashMap<>();
+    private final Map<String, Counter> deletedCounters = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        register("alerts", "created_at", alertsDays);
+        // query_plans keeps a nullable FK to query_metrics; detach before the rows go away
+        register("query_metrics", "execution_time", queryMetricsDays,
+                "UPDATE query_plans SET query_id = NULL WHERE query_id IN "
+                        + "(SELECT id FROM query_metrics WHERE execution_time <= ?)");
+        register("audit_logs", "timestamp", auditLogsDays);
+        register("login_attempts", "attempt_time", loginAttemptsDays);
+        register("replication_status", "last_checked", replicationStatusDays);
+        register("backup_status", "checked_at", backupStatusDays);
+        register("query_plans", "analyzed_at", queryPlansDays);
+        register("query_stat_intervals", "interval_end", queryStatIntervalsDays);
+        register("query_minute_stats", "minute_start", queryMinuteStatsDays);
+        register("object_stat_intervals", "interval_end", objectStatIntervalsDays);
+    }
+
+    /**
+     * Registers (or replaces) a retention policy. A non-positive retention disables purging
+     * for the table.
+     */
+    public void register(String table, String timestampColumn, int retentionDays) {
+        register(table, timestampColumn, retentionDays, null);
+    }
+
+    /**
+     * Registers a policy whose rows are referenced from another table. {@code detachSql} is run
+     * with the chunk boundary timestamp before each delete to clear those references.
+     */
+    public void register(String table, String timestampColumn, int retentionDays, String detachSql) {
+        policies.put(table, new RetentionPolicy(table, timestampColumn, retentionDays, detachSql));
+    }
+
+    @Scheduled(cron = "${monitor.retention.cron:0 15 * * * *}")
+    public void purgeAll() {
+        if (!enabled) {
+            log.debug("Retention purge is disabled");
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Retention purge already running, skipping this trigger");
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            for (RetentionPolicy policy : policies.values()) {
+                if (policy.retentionDays() <= 0) {
+                    continue;
+                }
+                try {
+                    purge(policy, now.minusDays(policy.retentionDays()));
+                } catch (Exception e) {
+                    log.error("Retention purge failed for table {}", policy.table(), e);
+                    recordRun(policy.table(), 0, 0, "FAILED: " + e.getMessage());
+                }
+            }
+            if (queryTextsDays > 0) {
+                try {
+                    purgeOrphanTexts(now.minusDays(queryTextsDays));
+                } catch (Exception e) {
+                    log.error("Retention purge failed for table {}", QUERY_TEXTS, e);
+                    recordRun(QUERY_TEXTS, 0, 0, "FAILED: " + e.getMessage());
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Purges rows of a registered table older than {@code cutoff}.
+     *
+     * @return number of rows deleted
+     */
+    public long purgeOlderThan(String table, LocalDateTime cutoff) {
+        RetentionPolicy policy = policies.get(table);
+        if (policy == null) {
+            throw new IllegalArgumentException("No retention policy registered for table: " + table);
+        }
+        return purge(policy, cutoff);
+    }
+
+    public Map<String, Map<String, Object>> getStatus() {
+        Map<String, Map<String, Object>> status = new LinkedHashMap<>();
+        for (RetentionPolicy policy : policies.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("timestampColumn", policy.timestampColumn());
+            entry.put("retentionDays", policy.retentionDays());
+            Map<String, Object> lastRun = lastRunByTable.get(policy.table());
+            if (lastRun != null) {
+                entry.putAll(lastRun);
+            }
+            status.put(policy.table(), entry);
+        }
+        Map<String, Object> texts = new LinkedHashMap<>();
+        texts.put("timestampColumn", "first_seen");
+        texts.put("retentionDays", queryTextsDays);
+        texts.put("unreferencedOnly", true);
+        Map<String, Object> lastRun = lastRunByTable.get(QUERY_TEXTS);
+        if (lastRun != null) {
+            texts.putAll(lastRun);
+        }
+        status.put(QUERY_TEXTS, texts);
+        return status;
+    }
+
+    /**
+     * Deletes dictionary texts first seen before {@code cutoff} that no execution or plan row
+     * references. The delete re-checks the references, so rows ingested in between keep their
+     * text; purged fingerprints are dropped from the ingestion cache so they are registered
+     * again if the statement comes back.
+     *
+     * @return number of rows deleted
+     */
+    public long purgeOrphanTexts(LocalDateTime cutoff) {
+        long started = System.currentTimeMillis();
+        long deleted = 0;
+        int batches = 0;
+        boolean finished = false;
+
+        while (batches < maxBatchesPerRun) {
+            List<Long> orphans = jdbcTemplate.queryForList(ORPHAN_TEXTS_SQL, Long.class, Timestamp.valueOf(cutoff));
+            if (orphans.isEmpty()) {
+                finished = true;
+                break;
+            }
+            String placeholders = String.join(",", Collections.nCopies(orphans.size(), "?"));
+            int removed = jdbcTemplate.update("DELETE FROM query_texts WHERE fingerprint IN (" + placeholders + ")"
+                    + unreferenced(), orphans.toArray());
+            queryTextService.evict(orphans);
+            deleted += removed;
+            batches++;
+            counterFor(QUERY_TEXTS).increment(removed);
+            if (orphans.size() < TEXT_CHUNK) {
+                finished = true;
+                break;
+            }
+        }
+
+        recordRun(QUERY_TEXTS, deleted, batches, finished ? "COMPLETED" : "PARTIAL");
+        if (deleted > 0) {
+            log.info("Retention purged {} unreferenced rows from {} in {} batches ({} ms)",
+                    deleted, QUERY_TEXTS, batches, System.currentTimeMillis() - started);
+        }
+        return deleted;
+    }
+
+    private long purge(RetentionPolicy policy, LocalDateTime cutoff) {
+        String table = policy.table();
+        String column = policy.timestampColumn();
+        // Only the boundary row is read; OFFSET/FETCH works on H2, SQL Server and PostgreSQL
+        String boundarySql = "SELECT " + column + " FROM " + table + " WHERE " + column + " < ? ORDER BY "
+                + column + " OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY";
+        String lastBoundarySql = "SELECT MAX(" + column + ") FROM " + table + " WHERE " + column + " < ?";
+        String deleteSql = "DELETE FROM " + table + " WHERE " + column + " <= ?";
+
+        long started = System.currentTimeMillis();
+        long deleted = 0;
+        int batches = 0;
+        boolean finished = false;
+
+        while (batches < maxBatchesPerRun) {
+            // The batch-size-th oldest timestamp bounds the chunk; ties may add a few rows
+            List<Timestamp> nth = jdbcTemplate.queryForList(boundarySql, Timestamp.class,
+                    Timestamp.valueOf(cutoff), batchSize - 1);
+            Timestamp boundary = nth.isEmpty() ? null : nth.get(0);
+            boolean lastChunk = boundary == null;
+            if (lastChunk) {
+                // Fewer than batch-size rows are left; the newest of them bounds the final chunk
+                boundary = jdbcTemplate.queryForObject(lastBoundarySql, Timestamp.class, Timestamp.valueOf(cutoff));
+                if (boundary == null) {
+                    finished = true;
+                    break;
+                }
+            }
+
+            if (policy.detachSql() != null) {
+                jdbcTemplate.update(policy.detachSql(), boundary);
+            }
+            // Each chunk commits on its own, keeping lock duration bounded by batch size
+            int removed = jdbcTemplate.update(deleteSql, boundary);
+            deleted += removed;
+            batches++;
+            counterFor(table).increment(removed);
+
+            if (lastChunk) {
+                finished = true;
+                break;
+            }
+        }
+        if (!finished) {
+            // The batch limit was reached; the run is only partial if expired rows are left
+            finished = jdbcTemplate.queryForObject(lastBoundarySql, Timestamp.class, Timestamp.valueOf(cutoff)) == null;
+        }
+
+        long duration = System.currentTimeMillis() - started;
+        recordRun(table, deleted, batches, finished ? "COMPLETED" : "PARTIAL");
+        if (deleted > 0) {
+            log.info("Retention purged {} rows from {} older than {} in {} batches ({} ms)",
+                    deleted, table, cutoff, batches, duration);
+        }
+        return deleted;
+    }
+
+    private static String unreferenced() {
+        return " AND NOT EXISTS (SELECT 1 FROM query_metrics m WHERE m.fingerprint = query_texts.fingerprint)"
+                + " AND NOT EXISTS (SELECT 1 FROM query_plans p WHERE p.fingerprint = query_texts.fingerprint)";
+    }
+
+    private void recordRun(String table, long deleted, int batches, String status) {
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("lastRunAt", LocalDateTime.now());
+        run.put("lastRunDeleted", deleted);
+        run.put("lastRunBatches", batches);
+        run.put("lastRunStatus", status);
+        lastRunByTable.put(table, run);
+    }
+
+    private Counter counterFor(String table) {
+        return deletedCounters.computeIfAbsent(table, t -> Counter.builder("dbmonitor.retention.deleted.rows")
+                .description("Rows purged by the retention job")
+                .tag("table", t)
+                .register(meterRegistry));
+    }
+
+    private record RetentionPolicy(String table, String timestampColumn, int retentionDays, String detachSql) {
+    }
+}
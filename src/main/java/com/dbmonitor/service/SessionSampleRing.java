@@ -0,0 +1,110 @@
+package com.dbmonitor.service;
+
+/**
+ * Fixed-size ring of active session samples for one connection, stored column-wise in
+ * primitive arrays (about 28 bytes per sample, no per-sample objects). When full the oldest
+ * samples are overwritten. Strings are kept as {@link StringDictionary} ids and statements as
+ * 64-bit fingerprints. Sampling ticks are recorded separately so idle ticks (no active
+ * sessions) still count towards average active sessions.
+ */
+public class SessionSampleRing {
+
+    /**
+     * Receives samples from newest to oldest.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long sampledAtMs, int sessionId, int waitClassId, int waitEventId, long sqlId);
+    }
+
+    private final long[] sampledAt;
+    private final int[] sessionIds;
+    private final int[] waitClassIds;
+    private final int[] waitEventIds;
+    private final long[] sqlIds;
+
+    private final long[] ticks;
+
+    // Total samples ever added; the next write goes to written % capacity
+    private long written;
+    private long tickCount;
+
+    public SessionSampleRing(int capacity, int tickCapacity) {
+        int size = Math.max(1, capacity);
+        ticks = new long[Math.max(1, tickCapacity)];
+        sampledAt = new long[size];
+        sessionIds = new int[size];
+        waitClassIds = new int[size];
+        waitEventIds = new int[size];
+        sqlIds = new long[size];
+    }
+
+    /**
+     * Records that a sampling pass ran, whether or not it found active sessions.
+     */
+    public synchronized void tick(long sampledAtMs) {
+        ticks[(int) (tickCount % ticks.length)] = sampledAtMs;
+        tickCount++;
+    }
+
+    /**
+     * Time of the latest sampling pass, or -1 before the first one.
+     */
+    public synchronized long getLastTickMs() {
+        return tickCount == 0 ? -1 : ticks[(int) ((tickCount - 1) % ticks.length)];
+    }
+
+    public synchronized int ticksSince(long sinceMs) {
+        long available = Math.min(tickCount, ticks.length);
+        int count = 0;
+        for (long i = 1; i <= available; i++) {
+            if (ticks[(int) ((tickCount - i) % ticks.length)] < sinceMs) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    public synchronized void add(long sampledAtMs, int sessionId, int waitClassId, int waitEventId, long sqlId) {
+        int slot = (int) (written % sampledAt.length);
+        sampledAt[slot] = sampledAtMs;
+        sessionIds[slot] = sessionId;
+        waitClassIds[slot] = waitClassId;
+        waitEventIds[slot] = waitEventId;
+        sqlIds[slot] = sqlId;
+        written++;
+    }
+
+    /**
+     * Visits samples taken at or after {@code sinceMs}, newest first.
+     */
+    public synchronized void forEachSince(long sinceMs, Visitor visitor) {
+        long available = Math.min(written, sampledAt.length);
+        for (long i = 1; i <= available; i++) {
+            int slot = (int) ((written - i) % sampledAt.length);
+            if (sampledAt[slot] < sinceMs) {
+                return;
+            }
+            visitor.visit(sampledAt[slot], sessionIds[slot], waitClassIds[slot], waitEventIds[slot], sqlIds[slot]);
+        }
+    }
+
+    /**
+     * Time of the oldest sample still held, or -1 when empty.
+     */
+    public synchronized long getOldestMs() {
+        if (written == 0) {
+            return -1;
+        }
+        return written <= sampledAt.length ? sampledAt[0] : sampledAt[(int) (written % sampledAt.length)];
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(written, sampledAt.length);
+    }
+
+    public int capacity() {
+        return sampledAt.length;
+    }
+}
@@ -0,0 +1,178 @@
+package com.dbmonitor.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Weighted Space-Saving heavy-hitter summary over 64-bit keys (statement fingerprints).
+ * At most {@code capacity} counters are kept; an unseen key replaces the smallest counter
+ * and inherits its count as the error bound. Any key whose true weight exceeds
+ * total/capacity is guaranteed to be present, and each reported weight overestimates the
+ * true one by at most {@code error}.
+ *
+ * <p>While a summary is still receiving updates it also keeps a Count-Min sketch: weights are
+ * capped by the sketch estimate, and an unseen key only evicts the smallest counter once its
+ * sketch estimate exceeds it, so a stream of one-off statements cannot churn out the real
+ * heavy hitters. {@link #seal()} drops the sketch once the summary is read-only.
+ */
+public class SpaceSavingTopK {
+
+    private static final Comparator<Counter> BY_WEIGHT = Comparator
+            .comparingDouble((Counter c) -> c.weight)
+            .thenComparingLong(c -> c.key);
+
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> ordered = new TreeSet<>(BY_WEIGHT);
+    private double totalWeight;
+    private double mergedUntracked;
+    private CountMinSketch sketch;
+
+    public SpaceSavingTopK(int capacity) {
+        this(capacity, 0, 0);
+    }
+
+    /**
+     * @param sketchDepth rows of the admission sketch, 0 for plain Space-Saving
+     */
+    public SpaceSavingTopK(int capacity, int sketchDepth, int sketchWidth) {
+        this.capacity = Math.max(1, capacity);
+        this.sketch = sketchDepth > 0 ? new CountMinSketch(sketchDepth, sketchWidth) : null;
+    }
+
+    public synchronized void add(long key, double weight, String label) {
+        if (weight <= 0) {
+            return;
+        }
+        totalWeight += weight;
+        double estimate = sketch != null ? sketch.add(key, weight) : Double.MAX_VALUE;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            ordered.remove(counter);
+            counter.weight = Math.min(counter.weight + weight, estimate);
+            counter.error = Math.min(counter.error, counter.weight - weight);
+            ordered.add(counter);
+            return;
+        }
+
+        if (counters.size() < capacity) {
+            counter = new Counter(key, weight, 0, label);
+        } else {
+            Counter smallest = ordered.first();
+            if (estimate <= smallest.weight) {
+                // Cannot be heavier than anything tracked yet; the sketch remembers it
+                return;
+            }
+            ordered.pollFirst();
+            counters.remove(smallest.key);
+            double initial = Math.min(smallest.weight + weight, estimate);
+            counter = new Counter(key, initial, initial - weight, label);
+        }
+        counters.put(key, counter);
+        ordered.add(counter);
+    }
+
+    /**
+     * Releases the admission sketch; later updates fall back to plain Space-Saving.
+     */
+    public synchronized void seal() {
+        sketch = null;
+    }
+
+    /**
+     * Adds every counter of {@code other}; used to combine per-bucket summaries into a window.
+     * A key missing from one side may still weigh up to that side's {@link #untracked} bound
+     * there, so that amount is added to both its weight and its error: merged errors are the
+     * sum of the inputs' bounds and every reported weight stays an overestimate.
+     */
+    public void merge(SpaceSavingTopK other) {
+        List<Entry> entries;
+        double otherUntracked;
+        double otherTotal;
+        synchronized (other) {
+            entries = other.top(Integer.MAX_VALUE);
+            otherUntracked = other.untracked();
+            otherTotal = other.totalWeight;
+        }
+        synchronized (this) {
+            double thisUntracked = untracked();
+            Map<Long, Entry> incoming = new HashMap<>();
+            for (Entry entry : entries) {
+                incoming.put(entry.key(), entry);
+            }
+            if (otherUntracked > 0) {
+                for (Counter counter : new ArrayList<>(ordered)) {
+                    if (!incoming.containsKey(counter.key)) {
+                        ordered.remove(counter);
+                        counter.weight += otherUntracked;
+                        counter.error += otherUntracked;
+                        ordered.add(counter);
+                    }
+                }
+            }
+            for (Entry entry : entries) {
+                Counter counter = counters.get(entry.key());
+                if (counter != null) {
+                    ordered.remove(counter);
+                    counter.weight += entry.weight();
+                    counter.error += entry.error();
+                } else {
+                    counter = new Counter(entry.key(), entry.weight() + thisUntracked,
+                            entry.error() + thisUntracked, entry.label());
+                    counters.put(entry.key(), counter);
+                }
+                ordered.add(counter);
+            }
+            while (counters.size() > capacity) {
+                counters.remove(ordered.pollFirst().key);
+            }
+            mergedUntracked = thisUntracked + otherUntracked;
+            totalWeight += otherTotal;
+        }
+    }
+
+    /**
+     * Most a key without a counter can weigh: the smallest counter once the summary is full
+     * (evicted and rejected keys never exceed it), or what merged inputs may have dropped.
+     */
+    private double untracked() {
+        double floor = counters.size() < capacity ? 0 : ordered.first().weight;
+        return Math.max(floor, mergedUntracked);
+    }
+
+    public synchronized List<Entry> top(int limit) {
+        List<Entry> result = new ArrayList<>(Math.min(limit, counters.size()));
+        for (Counter counter : ordered.descendingSet()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(new Entry(counter.key, counter.weight, counter.error, counter.label));
+        }
+        return result;
+    }
+
+    public synchronized double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public record Entry(long key, double weight, double error, String label) {
+    }
+
+    private static final class Counter {
+        private final long key;
+        private double weight;
+        private double error;
+        private final String label;
+
+        private Counter(long key, double weight, double error, String label) {
+            this.key = key;
+            this.weight = weight;
+            this.error = error;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,923 @@
+package com.dbmonitor.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts what an index could serve from a SQL statement: per query block the tables read,
+ * the sargable predicates on their columns (equality, IN, range, join), the ORDER BY (or
+ * GROUP BY) columns an index could deliver presorted, and every column referenced, which
+ * decides whether an index can cover the block.
+ *
+ * <p>Works on raw or normalized ({@link SqlFingerprinter}) text of SELECT, UPDATE, DELETE and
+ * INSERT ... SELECT statements, including joins, derived tables, CTEs and subqueries (each
+ * parsed as its own block). It is a tolerant recognizer, not a validating parser: anything
+ * it does not understand is skipped, and it never throws.
+ */
+public final class SqlPredicateParser {
+
+    public enum PredicateKind {
+        EQUALITY, IN, RANGE, JOIN
+    }
+
+    /**
+     * A sargable condition on one column; {@code table} is the name as written in the
+     * statement, possibly schema-qualified.
+     */
+    public record Predicate(String table, String column, PredicateKind kind) {
+    }
+
+    /**
+     * One query block. {@code sortColumns} are set when every leading ORDER BY (or, without
+     * one, GROUP BY) item is a plain column of {@code sortTable} in one direction. Tables in
+     * {@code uncoverableTables} need columns the parser cannot list (SELECT *, ambiguous
+     * names, rows that are written). {@code quotedNames} are the names written as quoted
+     * identifiers in the statement: they keep their case, where unquoted names are folded by
+     * the engine.
+     */
+    public record QueryShape(List<String> tables, List<Predicate> predicates, String sortTable,
+                             List<String> sortColumns, Map<String, Set<String>> referencedColumns,
+                             Set<String> uncoverableTables, Set<String> quotedNames) {
+    }
+
+    private static final int MAX_DEPTH = 32;
+
+    private static final int WORD = 0;
+    private static final int IDENT = 1;     // quoted identifier
+    private static final int STRING = 2;
+    private static final int NUMBER = 3;
+    private static final int PARAM = 4;
+    private static final int OP = 5;
+    private static final int OPEN = 6;
+    private static final int CLOSE = 7;
+    private static final int COMMA = 8;
+    private static final int DOT = 9;
+    private static final int OTHER = 10;
+
+    private static final Set<String> SELECT_CLAUSES = Set.of("select", "from", "where", "group", "having",
+            "order", "limit", "offset", "fetch", "for", "window", "qualify", "into");
+    private static final Set<String> DELETE_CLAUSES = Set.of("delete", "from", "using", "where", "order",
+            "limit", "returning", "output");
+    private static final Set<String> UPDATE_CLAUSES = Set.of("update", "set", "from", "where", "order",
+            "limit", "returning", "output");
+    private static final Set<String> SET_OPERATORS = Set.of("union", "intersect", "except", "minus");
+    private static final Set<String> JOIN_WORDS = Set.of("join", "inner", "left", "right", "full", "outer",
+            "cross", "natural", "straight_join", "apply");
+    private static final Set<String> COMPARISONS = Set.of("=", "<", ">", "<=", ">=", "<>", "!=");
+
+    // Words that are never column references; a quoted identifier always is one
+    private static final Set<String> KEYWORDS = Set.of("select", "from", "where", "and", "or", "not", "null",
+            "is", "in", "between", "like", "ilike", "exists", "case", "when", "then", "else", "end", "as", "asc",
+            "desc", "distinct", "true", "false", "interval", "on", "using", "join", "inner", "left", "right",
+            "full", "outer", "cross", "natural", "group", "order", "by", "having", "limit", "offset", "fetch",
+            "first", "next", "rows", "row", "only", "union", "all", "any", "some", "escape", "collate",
+            "current_date", "current_time", "current_timestamp", "localtime", "localtimestamp", "date", "time",
+            "timestamp", "with", "without", "zone", "over", "partition", "filter", "within", "nulls", "last",
+            "cast", "year", "month", "day", "hour", "minute", "second", "similar", "to", "array", "values",
+            "default", "unknown", "top", "percent", "ties", "lateral", "set", "update", "delete", "insert",
+            "into", "returning", "for", "of", "window", "nowait", "skip", "locked", "share", "straight_join",
+            "apply", "recursive", "materialized", "intersect", "except", "minus", "output", "use", "force",
+            "ignore", "index", "key", "qualify");
+
+    private SqlPredicateParser() {
+    }
+
+    /**
+     * Query blocks of a statement (subqueries before the block containing them); empty when
+     * nothing was recognized.
+     */
+    public static List<QueryShape> parse(String sql) {
+        List<QueryShape> shapes = new ArrayList<>();
+        if (sql == null || sql.isBlank()) {
+            return shapes;
+        }
+        try {
+            List<Token> tokens = tokenize(sql);
+            Set<String> quotedNames = new LinkedHashSet<>();
+            for (Token token : tokens) {
+                if (token.kind() == IDENT) {
+                    quotedNames.add(token.text());
+                }
+            }
+            new Parser(tokens, shapes, Set.copyOf(quotedNames)).statement(0, tokens.size(), 0);
+        } catch (RuntimeException e) {
+            // Malformed or unsupported syntax: keep whatever blocks were recognized
+        }
+        return shapes;
+    }
+
+    private record Token(int kind, String text) {
+
+        boolean is(String word) {
+            return kind == WORD && text.equalsIgnoreCase(word);
+        }
+
+        boolean isName() {
+            return kind == IDENT || (kind == WORD && !KEYWORDS.contains(text.toLowerCase()));
+        }
+    }
+
+    private static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '\'') {
+                StringBuilder text = new StringBuilder();
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            text.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    text.append(sql.charAt(i++));
+                }
+                i++;
+                tokens.add(new Token(STRING, text.toString()));
+            } else if (c == '"' || c == '`' || c == '[') {
+                // A doubled closing delimiter stands for itself
+                char closing = c == '[' ? ']' : c;
+                StringBuilder text = new StringBuilder();
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == closing) {
+                        if (i + 1 < n && sql.charAt(i + 1) == closing) {
+                            text.append(closing);
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    text.append(sql.charAt(i++));
+                }
+                i++;
+                tokens.add(new Token(IDENT, text.toString()));
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(sql.charAt(i + 1)))) {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                tokens.add(new Token(NUMBER, sql.substring(start, i)));
+            } else if (c == '?') {
+                // "?+" is a collapsed IN-list in normalized text
+                i += i + 1 < n && sql.charAt(i + 1) == '+' ? 2 : 1;
+                tokens.add(new Token(PARAM, "?"));
+            } else if ((c == '$' || c == '@') && i + 1 < n && Character.isLetterOrDigit(sql.charAt(i + 1))
+                    || c == ':' && i + 1 < n && Character.isLetter(sql.charAt(i + 1))) {
+                int start = i++;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) i++;
+                tokens.add(new Token(PARAM, sql.substring(start, i)));
+            } else if (Character.isLetter(c) || c == '_' || c == '#') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'
+                        || sql.charAt(i) == '$' || sql.charAt(i) == '#')) i++;
+                tokens.add(new Token(WORD, sql.substring(start, i)));
+            } else if (c == '(') {
+                tokens.add(new Token(OPEN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(CLOSE, ")"));
+                i++;
+            } else if (c == ',') {
+                tokens.add(new Token(COMMA, ","));
+                i++;
+            } else if (c == '.') {
+                tokens.add(new Token(DOT, "."));
+                i++;
+            } else if (c == ';') {
+                tokens.add(new Token(OTHER, ";"));
+                i++;
+            } else {
+                String two = i + 1 < n ? sql.substring(i, i + 2) : "";
+                if (two.equals("<=") || two.equals(">=") || two.equals("<>") || two.equals("!=")
+                        || two.equals("::") || two.equals("||")) {
+                    tokens.add(new Token(OP, two));
+                    i += 2;
+                } else {
+                    tokens.add(new Token(OP, String.valueOf(c)));
+                    i++;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Parser {
+
+        private final List<Token> tokens;
+        private final List<QueryShape> shapes;
+        private final Set<String> quotedNames;
+
+        Parser(List<Token> tokens, List<QueryShape> shapes, Set<String> quotedNames) {
+            this.tokens = tokens;
+            this.shapes = shapes;
+            this.quotedNames = quotedNames;
+        }
+
+        void statement(int from, int to, int depth) {
+            if (depth > MAX_DEPTH || from >= to) {
+                return;
+            }
+            // Set operators split the statement into independent blocks
+            List<int[]> parts = new ArrayList<>();
+            int start = from;
+            int level = 0;
+            for (int i = from; i < to; i++) {
+                Token token = tokens.get(i);
+                if (token.kind() == OPEN) {
+                    level++;
+                } else if (token.kind() == CLOSE) {
+                    level--;
+                } else if (level == 0 && token.kind() == WORD && SET_OPERATORS.contains(token.text().toLowerCase())) {
+                    parts.add(new int[]{start, i});
+                    start = i + 1;
+                    while (start < to && (tokens.get(start).is("all") || tokens.get(start).is("distinct"))) start++;
+                }
+            }
+            parts.add(new int[]{start, to});
+            for (int[] part : parts) {
+                block(part[0], part[1], depth);
+            }
+        }
+
+        private void block(int from, int to, int depth) {
+            while (to > from && tokens.get(to - 1).kind() == OTHER) to--;
+            if (from >= to) {
+                return;
+            }
+            Token first = tokens.get(from);
+            if (first.kind() == OPEN && close(from, to) == to - 1) {
+                statement(from + 1, to - 1, depth + 1);
+            } else if (first.is("with")) {
+                with(from + 1, to, depth);
+            } else if (first.is("select")) {
+                select(from, to, depth);
+            } else if (first.is("update")) {
+                update(from, to, depth);
+            } else if (first.is("delete")) {
+                delete(from, to, depth);
+            } else if (first.is("insert") || first.is("replace")) {
+                int level = 0;
+                for (int i = from; i < to; i++) {
+                    Token token = tokens.get(i);
+                    if (token.kind() == OPEN) level++;
+                    else if (token.kind() == CLOSE) level--;
+                    else if (level == 0 && (token.is("select") || token.is("with"))) {
+                        statement(i, to, depth + 1);
+                        return;
+                    }
+                }
+                subqueries(from, to, depth);
+            }
+        }
+
+        // WITH [RECURSIVE] name [(columns)] AS [NOT] [MATERIALIZED] (body), ... main
+        private void with(int from, int to, int depth) {
+            int i = from;
+            if (i < to && tokens.get(i).is("recursive")) i++;
+            while (i < to) {
+                while (i < to && tokens.get(i).kind() != OPEN && !tokens.get(i).is("as")) i++;
+                if (i < to && tokens.get(i).kind() == OPEN) {
+                    i = close(i, to) + 1;
+                }
+                while (i < to && tokens.get(i).kind() != OPEN) i++;
+                if (i >= to) {
+                    return;
+                }
+                int end = close(i, to);
+                statement(i + 1, end, depth + 1);
+                i = end + 1;
+                if (i < to && tokens.get(i).kind() == COMMA) {
+                    i++;
+                } else {
+                    statement(i, to, depth + 1);
+                    return;
+                }
+            }
+        }
+
+        private void select(int from, int to, int depth) {
+            Map<String, int[]> clauses = clauses(from, to, SELECT_CLAUSES);
+            Block block = new Block();
+            int[] fromClause = clauses.get("from");
+            List<int[]> joinConditions = new ArrayList<>();
+            if (fromClause != null) {
+                tableList(fromClause[0], fromClause[1], block, joinConditions, depth);
+            }
+            subqueries(from, to, depth);
+
+            int[] selectList = clauses.get("select");
+            if (selectList != null) {
+                selectList(selectList[0], selectList[1], block);
+            }
+            for (int[] condition : joinConditions) {
+                conditions(condition[0], condition[1], block);
+            }
+            int[] where = clauses.get("where");
+            if (where != null) {
+                conditions(where[0], where[1], block);
+            }
+            int[] having = clauses.get("having");
+            if (having != null) {
+                references(having[0], having[1], block);
+            }
+            int[] groupBy = clauses.get("group");
+            if (groupBy != null) {
+                references(groupBy[0], groupBy[1], block);
+            }
+            int[] orderBy = clauses.get("order");
+            if (orderBy != null) {
+                references(orderBy[0], orderBy[1], block);
+                sort(orderBy[0], orderBy[1], block);
+            } else if (groupBy != null) {
+                sort(groupBy[0], groupBy[1], block);
+            }
+            block.finish(shapes, quotedNames);
+        }
+
+        // UPDATE target [alias] SET ... [FROM ...] WHERE ...; MySQL allows joins before SET
+        private void update(int from, int to, int depth) {
+            Map<String, int[]> clauses = clauses(from, to, UPDATE_CLAUSES);
+            Block block = new Block();
+            block.writes = true;
+            List<int[]> joinConditions = new ArrayList<>();
+            int[] fromClause = clauses.get("from");
+            if (fromClause != null) {
+                tableList(fromClause[0], fromClause[1], block, joinConditions, depth);
+            }
+            int[] target = clauses.get("update");
+            if (target != null) {
+                int start = target[0];
+                while (start < target[1] && (tokens.get(start).is("only") || tokens.get(start).is("low_priority")
+                        || tokens.get(start).is("ignore") || tokens.get(start).is("top"))) start++;
+                // T-SQL "UPDATE alias SET ... FROM table alias" names an alias already known
+                boolean alias = target[1] - start == 1 && block.aliases.containsKey(tokens.get(start).text().toLowerCase());
+                if (!alias) {
+                    tableList(start, target[1], block, joinConditions, depth);
+                }
+            }
+            subqueries(from, to, depth);
+            for (int[] condition : joinConditions) {
+                conditions(condition[0], condition[1], block);
+            }
+            int[] where = clauses.get("where");
+            if (where != null) {
+                conditions(where[0], where[1], block);
+            }
+            block.finish(shapes, quotedNames);
+        }
+
+        // DELETE [targets] FROM table [alias] [USING ...] WHERE ...
+        private void delete(int from, int to, int depth) {
+            Map<String, int[]> clauses = clauses(from, to, DELETE_CLAUSES);
+            Block block = new Block();
+            block.writes = true;
+            List<int[]> joinConditions = new ArrayList<>();
+            for (String clause : List.of("from", "using")) {
+                int[] range = clauses.get(clause);
+                if (range != null) {
+                    tableList(range[0], range[1], block, joinConditions, depth);
+                }
+            }
+            subqueries(from, to, depth);
+            for (int[] condition : joinConditions) {
+                conditions(condition[0], condition[1], block);
+            }
+            int[] where = clauses.get("where");
+            if (where != null) {
+                conditions(where[0], where[1], block);
+            }
+            block.finish(shapes, quotedNames);
+        }
+
+        /**
+         * Ranges of the top-level clauses, keyed by their (first) keyword. The range excludes
+         * the keyword and a following BY.
+         */
+        private Map<String, int[]> clauses(int from, int to, Set<String> keywords) {
+            Map<String, int[]> clauses = new LinkedHashMap<>();
+            String current = null;
+            int start = from;
+            int level = 0;
+            for (int i = from; i < to; i++) {
+                Token token = tokens.get(i);
+                if (token.kind() == OPEN) {
+                    level++;
+                } else if (token.kind() == CLOSE) {
+                    level--;
+                } else if (level == 0 && token.kind() == WORD && keywords.contains(token.text().toLowerCase())
+                        && !clauses.containsKey(token.text().toLowerCase())
+                        && !(token.is("set") && !"update".equals(current))) {
+                    if (current != null) {
+                        clauses.put(current, new int[]{start, i});
+                    }
+                    current = token.text().toLowerCase();
+                    start = i + 1;
+                    if (start < to && tokens.get(start).is("by")) {
+                        start++;
+                    }
+                }
+            }
+            if (current != null) {
+                clauses.put(current, new int[]{start, to});
+            }
+            return clauses;
+        }
+
+        // Parses every parenthesized SELECT inside the range as its own block
+        private void subqueries(int from, int to, int depth) {
+            for (int i = from; i < to; i++) {
+                if (tokens.get(i).kind() == OPEN && i + 1 < to
+                        && (tokens.get(i + 1).is("select") || tokens.get(i + 1).is("with"))) {
+                    int end = close(i, to);
+                    statement(i + 1, end, depth + 1);
+                    i = end;
+                }
+            }
+        }
+
+        /**
+         * FROM list: table references separated by commas or joins. ON ranges are returned so
+         * they are analyzed once every alias is known.
+         */
+        private void tableList(int from, int to, Block block, List<int[]> joinConditions, int depth) {
+            int i = from;
+            boolean expectTable = true;
+            String previous = null;
+            String current = null;
+            while (i < to) {
+                Token token = tokens.get(i);
+                if (expectTable) {
+                    if (token.is("lateral") || token.is("only")) {
+                        i++;
+                        continue;
+                    }
+                    if (token.kind() == OPEN) {
+                        int end = close(i, to);
+                        boolean derived = i + 1 < to && (tokens.get(i + 1).is("select") || tokens.get(i + 1).is("with"));
+                        if (!derived) {
+                            // Parenthesized join: its tables belong to this block
+                            tableList(i + 1, end, block, joinConditions, depth);
+                        }
+                        i = alias(end + 1, to, block, null);
+                        previous = current;
+                        current = null;
+                        expectTable = false;
+                        continue;
+                    }
+                    if (token.isName()) {
+                        StringBuilder name = new StringBuilder(token.text());
+                        String last = token.text();
+                        i++;
+                        while (i + 1 < to && tokens.get(i).kind() == DOT && tokens.get(i + 1).isName()) {
+                            last = tokens.get(i + 1).text();
+                            name.append('.').append(last);
+                            i += 2;
+                        }
+                        if (i < to && tokens.get(i).kind() == OPEN) {
+                            // Table function, e.g. unnest(...) or generate_series(...)
+                            i = alias(close(i, to) + 1, to, block, null);
+                            previous = current;
+                            current = null;
+                        } else {
+                            String table = name.toString();
+                            block.addTable(table, last);
+                            i = alias(i, to, block, table);
+                            previous = current;
+                            current = table;
+                        }
+                        expectTable = false;
+                        continue;
+                    }
+                    i++;
+                } else if (token.kind() == COMMA) {
+                    expectTable = true;
+                    i++;
+                } else if (token.kind() == WORD && JOIN_WORDS.contains(token.text().toLowerCase())) {
+                    if (token.is("join") || token.is("straight_join") || token.is("apply")) {
+                        expectTable = true;
+                    }
+                    i++;
+                } else if (token.is("on")) {
+                    int end = i + 1;
+                    int level = 0;
+                    while (end < to) {
+                        Token t = tokens.get(end);
+                        if (t.kind() == OPEN) level++;
+                        else if (t.kind() == CLOSE) level--;
+                        else if (level == 0 && (t.kind() == COMMA
+                                || t.kind() == WORD && JOIN_WORDS.contains(t.text().toLowerCase()))) break;
+                        end++;
+                    }
+                    joinConditions.add(new int[]{i + 1, end});
+                    i = end;
+                } else if (token.is("using") && i + 1 < to && tokens.get(i + 1).kind() == OPEN) {
+                    int end = close(i + 1, to);
+                    for (int j = i + 2; j < end; j++) {
+                        if (tokens.get(j).isName()) {
+                            String column = tokens.get(j).text();
+                            if (current != null) block.predicate(current, column, PredicateKind.JOIN);
+                            if (previous != null) block.predicate(previous, column, PredicateKind.JOIN);
+                        }
+                    }
+                    i = end + 1;
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        // Optional [AS] alias plus table hints on either side of it; returns the next index
+        private int alias(int i, int to, Block block, String table) {
+            i = hints(i, to);
+            String alias = null;
+            if (i < to && tokens.get(i).is("as")) {
+                i++;
+                if (i < to) {
+                    alias = tokens.get(i++).text();
+                }
+            } else if (i < to && tokens.get(i).isName()) {
+                alias = tokens.get(i++).text();
+            }
+            if (alias != null) {
+                // Column aliases of a derived table: AS d(a, b)
+                if (i < to && tokens.get(i).kind() == OPEN) {
+                    i = close(i, to) + 1;
+                }
+                block.aliases.put(alias.toLowerCase(), table);
+            }
+            return hints(i, to);
+        }
+
+        // WITH (NOLOCK), USE/FORCE/IGNORE INDEX [FOR ...] (...)
+        private int hints(int i, int to) {
+            while (i < to) {
+                Token token = tokens.get(i);
+                if (token.is("with") && i + 1 < to && tokens.get(i + 1).kind() == OPEN) {
+                    i = close(i + 1, to) + 1;
+                } else if ((token.is("use") || token.is("force") || token.is("ignore")) && i + 1 < to
+                        && (tokens.get(i + 1).is("index") || tokens.get(i + 1).is("key"))) {
+                    i += 2;
+                    while (i < to && tokens.get(i).kind() != OPEN) i++;
+                    i = i < to ? close(i, to) + 1 : to;
+                } else {
+                    return i;
+                }
+            }
+            return i;
+        }
+
+        private void selectList(int from, int to, Block block) {
+            int i = from;
+            while (i < to && (tokens.get(i).is("distinct") || tokens.get(i).is("all"))) i++;
+            if (i < to && tokens.get(i).is("top")) {
+                i++;
+                i = i < to && tokens.get(i).kind() == OPEN ? close(i, to) + 1 : i + 1;
+                if (i < to && tokens.get(i).is("percent")) i++;
+            }
+            if (i + 1 < to && tokens.get(i - 1).is("distinct") && tokens.get(i).is("on") && tokens.get(i + 1).kind() == OPEN) {
+                int end = close(i + 1, to);
+                references(i + 2, end, block);
+                i = end + 1;
+            }
+            for (int[] item : split(i, to)) {
+                int start = item[0];
+                int end = item[1];
+                if (end - start == 1 && tokens.get(start).text().equals("*")) {
+                    block.uncoverable.addAll(block.tables);
+                    continue;
+                }
+                if (end - start >= 3 && tokens.get(end - 1).text().equals("*") && tokens.get(end - 2).kind() == DOT) {
+                    String table = block.aliases.get(tokens.get(end - 3).text().toLowerCase());
+                    if (table != null) {
+                        block.uncoverable.add(table);
+                    }
+                    continue;
+                }
+                // Drop a trailing column alias, with or without AS
+                if (end - start >= 2 && tokens.get(end - 1).isName()) {
+                    Token before = tokens.get(end - 2);
+                    if (before.is("as")) {
+                        end -= 2;
+                    } else if (before.kind() == CLOSE || before.isName() || before.kind() == STRING
+                            || before.kind() == NUMBER || before.kind() == PARAM || before.is("end")) {
+                        end -= 1;
+                    }
+                }
+                references(start, end, block);
+            }
+        }
+
+        private void sort(int from, int to, Block block) {
+            String table = null;
+            Boolean descending = null;
+            List<String> columns = new ArrayList<>();
+            for (int[] item : split(from, to)) {
+                int start = item[0];
+                int end = item[1];
+                if (end - start >= 2 && tokens.get(end - 2).is("nulls")) {
+                    end -= 2;
+                }
+                boolean desc = false;
+                if (end > start && (tokens.get(end - 1).is("asc") || tokens.get(end - 1).is("desc"))) {
+                    desc = tokens.get(end - 1).is("desc");
+                    end--;
+                }
+                String[] ref = columnRef(start, end);
+                String resolved = ref != null ? block.resolve(ref) : null;
+                if (resolved == null || (table != null && !table.equals(resolved))
+                        || (descending != null && descending != desc)) {
+                    break;
+                }
+                table = resolved;
+                descending = desc;
+                columns.add(ref[ref.length - 1]);
+            }
+            if (!columns.isEmpty()) {
+                block.sortTable = table;
+                block.sortColumns = columns;
+            }
+        }
+
+        private void conditions(int from, int to, Block block) {
+            references(from, to, block);
+            for (int[] conjunct : conjuncts(from, to)) {
+                condition(conjunct[0], conjunct[1], block);
+            }
+        }
+
+        // Splits at top-level AND; the AND of BETWEEN x AND y does not split
+        private List<int[]> conjuncts(int from, int to) {
+            List<int[]> result = new ArrayList<>();
+            int start = from;
+            int level = 0;
+            boolean between = false;
+            for (int i = from; i < to; i++) {
+                Token token = tokens.get(i);
+                if (token.kind() == OPEN) {
+                    level++;
+                } else if (token.kind() == CLOSE) {
+                    level--;
+                } else if (level == 0 && token.is("between")) {
+                    between = true;
+                } else if (level == 0 && token.is("and")) {
+                    if (between) {
+                        between = false;
+                    } else {
+                        result.add(new int[]{start, i});
+                        start = i + 1;
+                    }
+                }
+            }
+            result.add(new int[]{start, to});
+            return result;
+        }
+
+        private void condition(int from, int to, Block block) {
+            while (to - from >= 2 && tokens.get(from).kind() == OPEN && close(from, to) == to - 1) {
+                from++;
+                to--;
+            }
+            if (from >= to || tokens.get(from).is("not") || tokens.get(from).is("exists")) {
+                return;
+            }
+            int level = 0;
+            int op = -1;
+            for (int i = from; i < to; i++) {
+                Token token = tokens.get(i);
+                if (token.kind() == OPEN) {
+                    level++;
+                } else if (token.kind() == CLOSE) {
+                    level--;
+                } else if (level == 0) {
+                    if (token.is("or")) {
+                        // Disjunctions cannot be served by one index range
+                        return;
+                    }
+                    if (op < 0 && (token.kind() == OP && COMPARISONS.contains(token.text())
+                            || token.is("in") || token.is("between") || token.is("like") || token.is("ilike")
+                            || token.is("is") || token.is("not"))) {
+                        op = i;
+                    }
+                }
+            }
+            if (op < 0) {
+                return;
+            }
+            Token operator = tokens.get(op);
+            String[] left = columnRef(from, op);
+            String leftTable = left != null ? block.resolve(left) : null;
+
+            if (operator.is("not")) {
+                return;
+            }
+            if (operator.is("in")) {
+                if (leftTable != null) block.predicate(leftTable, left[left.length - 1], PredicateKind.IN);
+            } else if (operator.is("between")) {
+                if (leftTable != null) block.predicate(leftTable, left[left.length - 1], PredicateKind.RANGE);
+            } else if (operator.is("like") || operator.is("ilike")) {
+                boolean leadingWildcard = op + 1 < to && tokens.get(op + 1).kind() == STRING
+                        && (tokens.get(op + 1).text().startsWith("%") || tokens.get(op + 1).text().startsWith("_"));
+                if (leftTable != null && !leadingWildcard) {
+                    block.predicate(leftTable, left[left.length - 1], PredicateKind.RANGE);
+                }
+            } else if (operator.is("is")) {
+                if (leftTable != null && op + 1 < to && tokens.get(op + 1).is("null")) {
+                    block.predicate(leftTable, left[left.length - 1], PredicateKind.EQUALITY);
+                }
+            } else {
+                String symbol = operator.text();
+                if (symbol.equals("<>") || symbol.equals("!=")) {
+                    return;
+                }
+                String[] right = columnRef(op + 1, to);
+                String rightTable = right != null ? block.resolve(right) : null;
+                PredicateKind kind = symbol.equals("=") ? PredicateKind.EQUALITY : PredicateKind.RANGE;
+                if (leftTable != null && rightTable != null) {
+                    // Column compared with a column of another table reference is a join
+                    boolean sameReference = left.length > 1 && right.length > 1
+                            && left[left.length - 2].equalsIgnoreCase(right[right.length - 2]);
+                    if (kind == PredicateKind.EQUALITY && !sameReference && !(left.length == 1 && right.length == 1)) {
+                        block.predicate(leftTable, left[left.length - 1], PredicateKind.JOIN);
+                        block.predicate(rightTable, right[right.length - 1], PredicateKind.JOIN);
+                    }
+                } else if (leftTable != null && !refersTo(op + 1, to, block, leftTable)) {
+                    block.predicate(leftTable, left[left.length - 1], kind);
+                } else if (rightTable != null && !refersTo(from, op, block, rightTable)) {
+                    block.predicate(rightTable, right[right.length - 1], kind);
+                }
+            }
+        }
+
+        // Whether the expression reads a column of the given table (then it is not a constant)
+        private boolean refersTo(int from, int to, Block block, String table) {
+            Block probe = block.probe();
+            references(from, to, probe);
+            return probe.referenced.containsKey(table) || probe.unresolved;
+        }
+
+        /**
+         * The range as a plain column reference (column, table.column or schema.table.column),
+         * or null when it is anything else.
+         */
+        private String[] columnRef(int from, int to) {
+            int length = to - from;
+            if (length != 1 && length != 3 && length != 5) {
+                return null;
+            }
+            String[] parts = new String[(length + 1) / 2];
+            for (int i = 0; i < length; i++) {
+                Token token = tokens.get(from + i);
+                if (i % 2 == 0) {
+                    if (!token.isName()) return null;
+                    parts[i / 2] = token.text();
+                } else if (token.kind() != DOT) {
+                    return null;
+                }
+            }
+            return parts;
+        }
+
+        // Records every column reference in the range
+        private void references(int from, int to, Block block) {
+            int i = from;
+            while (i < to) {
+                Token token = tokens.get(i);
+                boolean afterCast = i > from && (tokens.get(i - 1).text().equals("::") || tokens.get(i - 1).is("as"));
+                if (token.kind() == OPEN && i + 1 < to && (tokens.get(i + 1).is("select") || tokens.get(i + 1).is("with"))) {
+                    // Subqueries are blocks of their own
+                    i = close(i, to) + 1;
+                    continue;
+                }
+                if (!token.isName() || afterCast || (i > from && tokens.get(i - 1).kind() == DOT)) {
+                    i++;
+                    continue;
+                }
+                List<String> parts = new ArrayList<>();
+                parts.add(token.text());
+                int j = i + 1;
+                while (j + 1 < to && tokens.get(j).kind() == DOT && tokens.get(j + 1).isName()) {
+                    parts.add(tokens.get(j + 1).text());
+                    j += 2;
+                }
+                boolean function = j < to && tokens.get(j).kind() == OPEN;
+                boolean star = j + 1 < to && tokens.get(j).kind() == DOT && tokens.get(j + 1).text().equals("*");
+                if (star) {
+                    String table = block.aliases.get(parts.get(parts.size() - 1).toLowerCase());
+                    if (table != null) block.uncoverable.add(table);
+                    j += 2;
+                } else if (!function) {
+                    String[] ref = parts.toArray(new String[0]);
+                    String table = block.resolve(ref);
+                    if (table != null) {
+                        block.referenced.computeIfAbsent(table, t -> new LinkedHashSet<>()).add(ref[ref.length - 1]);
+                    } else if (ref.length == 1) {
+                        block.unresolved = true;
+                    }
+                }
+                i = j;
+            }
+        }
+
+        // Top-level comma-separated items
+        private List<int[]> split(int from, int to) {
+            List<int[]> items = new ArrayList<>();
+            int start = from;
+            int level = 0;
+            for (int i = from; i < to; i++) {
+                Token token = tokens.get(i);
+                if (token.kind() == OPEN) {
+                    level++;
+                } else if (token.kind() == CLOSE) {
+                    level--;
+                } else if (level == 0 && token.kind() == COMMA) {
+                    items.add(new int[]{start, i});
+                    start = i + 1;
+                }
+            }
+            if (start < to) {
+                items.add(new int[]{start, to});
+            }
+            return items;
+        }
+
+        // Index of the parenthesis closing the one at {@code open}, or to - 1 if unbalanced
+        private int close(int open, int to) {
+            int level = 0;
+            for (int i = open; i < to; i++) {
+                if (tokens.get(i).kind() == OPEN) {
+                    level++;
+                } else if (tokens.get(i).kind() == CLOSE && --level == 0) {
+                    return i;
+                }
+            }
+            return to - 1;
+        }
+    }
+
+    private static final class Block {
+
+        final List<String> tables = new ArrayList<>();
+        // Alias (or bare table name) -> table; null for derived tables and table functions
+        final Map<String, String> aliases = new HashMap<>();
+        final List<Predicate> predicates = new ArrayList<>();
+        final Map<String, Set<String>> referenced = new LinkedHashMap<>();
+        final Set<String> uncoverable = new LinkedHashSet<>();
+        String sortTable;
+        List<String> sortColumns = List.of();
+        boolean unresolved;
+        boolean writes;
+
+        void addTable(String table, String name) {
+            tables.add(table);
+            aliases.putIfAbsent(name.toLowerCase(), table);
+            aliases.putIfAbsent(table.toLowerCase(), table);
+        }
+
+        // Table of a column reference; unqualified names only resolve in single-table blocks
+        String resolve(String[] ref) {
+            if (ref.length == 1) {
+                return tables.size() == 1 && !aliases.containsValue(null) ? tables.get(0) : null;
+            }
+            return aliases.get(ref[ref.length - 2].toLowerCase());
+        }
+
+        void predicate(String table, String column, PredicateKind kind) {
+            predicates.add(new Predicate(table, column, kind));
+            referenced.computeIfAbsent(table, t -> new LinkedHashSet<>()).add(column);
+        }
+
+        Block probe() {
+            Block probe = new Block();
+            probe.tables.addAll(tables);
+            probe.aliases.putAll(aliases);
+            return probe;
+        }
+
+        void finish(List<QueryShape> shapes, Set<String> quotedNames) {
+            if (tables.isEmpty()) {
+                return;
+            }
+            if (unresolved || writes) {
+                uncoverable.addAll(tables);
+            }
+            shapes.add(new QueryShape(List.copyOf(tables), List.copyOf(predicates), sortTable,
+                    List.copyOf(sortColumns), referenced, uncoverable, quotedNames));
+        }
+    }
+}
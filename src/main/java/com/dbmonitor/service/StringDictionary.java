@@ -0,0 +1,62 @@
+package com.dbmonitor.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps a small, slowly growing set of strings (wait classes, wait events, session states) to
+ * dense int ids so samples can be stored in primitive arrays. Once {@code maxSize} strings
+ * are known, new ones share the id of {@link #OVERFLOW}, which is always id 0.
+ */
+public class StringDictionary {
+
+    public static final String OVERFLOW = "(other)";
+
+    private final int maxSize;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public StringDictionary(int maxSize) {
+        this.maxSize = Math.max(2, maxSize);
+        values.add(OVERFLOW);
+        ids.put(OVERFLOW, 0);
+    }
+
+    /**
+     * Id for {@code value}; null maps to -1.
+     */
+    public synchronized int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (values.size() >= maxSize) {
+            return 0;
+        }
+        int next = values.size();
+        values.add(value);
+        ids.put(value, next);
+        return next;
+    }
+
+    /**
+     * Id of a known string without adding it, or -1.
+     */
+    public synchronized int find(String value) {
+        Integer id = value != null ? ids.get(value) : null;
+        return id != null ? id : -1;
+    }
+
+    public synchronized String lookup(int id) {
+        return id >= 0 && id < values.size() ? values.get(id) : null;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,120 @@
+package com.dbmonitor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Constant-memory "heaviest statements right now" per connection. Each time bucket holds one
+ * Space-Saving summary per connection and metric (with a Count-Min admission sketch while
+ * the bucket is current); a window query merges the buckets it covers, so the answer never
+ * touches {@code query_metrics}.
+ */
+@Service
+@Slf4j
+public class TopQueryService {
+
+    public enum Metric { TOTAL_TIME, CALLS, ROWS }
+
+    @Value("${monitor.query.histogram.bucket-seconds:60}")
+    private int bucketSeconds;
+
+    @Value("${monitor.query.histogram.retention-buckets:60}")
+    private int retentionBuckets;
+
+    @Value("${monitor.query.topk.capacity:200}")
+    private int capacity;
+
+    @Value("${monitor.query.topk.sketch-depth:4}")
+    private int sketchDepth;
+
+    @Value("${monitor.query.topk.sketch-width:1024}")
+    private int sketchWidth;
+
+    // Time bucket index -> trackers recorded during that bucket
+    private final ConcurrentNavigableMap<Long, Map<TrackerKey, SpaceSavingTopK>> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records {@code calls} executions of one statement that together took {@code totalTimeMs}
+     * and touched {@code rows} rows.
+     */
+    public void record(Long connectionId, long fingerprint, String queryText,
+                       long calls, double totalTimeMs, long rows) {
+        Map<TrackerKey, SpaceSavingTopK> bucket = buckets.computeIfAbsent(currentBucket(),
+                k -> new ConcurrentHashMap<>());
+        tracker(bucket, connectionId, Metric.TOTAL_TIME).add(fingerprint, totalTimeMs, queryText);
+        tracker(bucket, connectionId, Metric.CALLS).add(fingerprint, calls, queryText);
+        tracker(bucket, connectionId, Metric.ROWS).add(fingerprint, rows, queryText);
+    }
+
+    /**
+     * Top statements by {@code metric} over the last {@code minutes}. Weights are upper bounds;
+     * {@code error} is how much each may be overestimated.
+     */
+    public List<Map<String, Object>> getTop(Long connectionId, Metric metric, int minutes, int limit) {
+        SpaceSavingTopK merged = new SpaceSavingTopK(capacity);
+        TrackerKey key = new TrackerKey(connectionId, metric);
+        for (Map<TrackerKey, SpaceSavingTopK> bucket : window(minutes).values()) {
+            SpaceSavingTopK tracker = bucket.get(key);
+            if (tracker != null) {
+                merged.merge(tracker);
+            }
+        }
+
+        double total = merged.getTotalWeight();
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SpaceSavingTopK.Entry entry : merged.top(limit)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("fingerprint", String.format("%016x", entry.key()));
+            row.put("queryText", entry.label());
+            row.put("metric", metric.name());
+            row.put("value", entry.weight());
+            row.put("error", entry.error());
+            row.put("share", total > 0 ? entry.weight() / total : 0.0);
+            result.add(row);
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.query.histogram.rotate-ms:60000}")
+    public void rotate() {
+        long current = currentBucket();
+        // Closed buckets no longer admit keys, so their sketches can go
+        for (Map<TrackerKey, SpaceSavingTopK> closed : buckets.headMap(current).values()) {
+            closed.values().forEach(SpaceSavingTopK::seal);
+        }
+
+        long oldest = current - retentionBuckets;
+        Map<Long, Map<TrackerKey, SpaceSavingTopK>> expired = buckets.headMap(oldest);
+        if (!expired.isEmpty()) {
+            log.debug("Dropping {} expired top-K buckets", expired.size());
+            expired.clear();
+        }
+    }
+
+    private SpaceSavingTopK tracker(Map<TrackerKey, SpaceSavingTopK> bucket, Long connectionId, Metric metric) {
+        return bucket.computeIfAbsent(new TrackerKey(connectionId, metric),
+                k -> new SpaceSavingTopK(capacity, sketchDepth, sketchWidth));
+    }
+
+    private ConcurrentNavigableMap<Long, Map<TrackerKey, SpaceSavingTopK>> window(int minutes) {
+        long bucketsInWindow = Math.max(1, (minutes * 60L + bucketSeconds - 1) / bucketSeconds);
+        return buckets.tailMap(currentBucket() - bucketsInWindow + 1, true);
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / (bucketSeconds * 1000L);
+    }
+
+    private record TrackerKey(Long connectionId, Metric metric) {
+    }
+}
@@ -0,0 +1,108 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.service.IndexAdvisor.Candidate;
+import com.dbmonitor.service.IndexAdvisor.Statement;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexAdvisorTest {
+
+    @Test
+    void keyOrderIsEqualityJoinInSortThenRange() {
+        Candidate candidate = single(List.of(statement(1, "SELECT o.id FROM orders o JOIN customers c "
+                + "ON o.customer_id = c.id WHERE o.created_at > ? AND o.region IN (1, 2) AND o.status = ? "
+                + "ORDER BY o.priority", 100)), "orders");
+
+        assertEquals(List.of("status", "customer_id", "region", "priority", "created_at"), candidate.getKeyColumns());
+        assertEquals("equality on status; join on customer_id; IN list on region; sort on priority; range on created_at",
+                candidate.getAccess());
+    }
+
+    @Test
+    void onlyOneRangeColumnIsKeyed() {
+        Candidate candidate = single(List.of(statement(1,
+                "SELECT id FROM orders WHERE created_at > ? AND amount < ?", 10)), "orders");
+
+        assertEquals(List.of("created_at"), candidate.getKeyColumns());
+        assertEquals(List.of("id", "amount"), candidate.getIncludedColumns());
+    }
+
+    @Test
+    void heavierLookupColumnsLeadSoKeysShareAPrefix() {
+        List<Candidate> candidates = IndexAdvisor.advise(List.of(
+                statement(1, "SELECT id FROM orders WHERE tenant_id = ? AND status = ?", 10),
+                statement(2, "SELECT id FROM orders WHERE tenant_id = ?", 90)), 4, 4);
+
+        // tenant_id carries 100 ms of lookups and leads, so the single-column key merges in
+        assertEquals(1, candidates.size());
+        assertEquals(List.of("tenant_id", "status"), candidates.get(0).getKeyColumns());
+        assertEquals(Set.of(1L, 2L), candidates.get(0).getFingerprints());
+        assertEquals(100.0, candidates.get(0).getWorkloadTimeMs());
+    }
+
+    @Test
+    void candidatesAreOrderedByWorkloadTime() {
+        List<Candidate> candidates = IndexAdvisor.advise(List.of(
+                statement(1, "SELECT id FROM orders WHERE status = ?", 10),
+                statement(2, "SELECT id FROM customers WHERE email = ?", 50)), 4, 4);
+
+        assertEquals(List.of("customers", "orders"), candidates.stream().map(Candidate::getTable).toList());
+    }
+
+    @Test
+    void keysAndIncludedColumnsAreCapped() {
+        Candidate candidate = single(List.of(statement(1,
+                "SELECT a, b, c, d, e FROM t WHERE w = ? AND x = ? AND y = ? AND z = ?", 10)), "t", 2, 2);
+
+        assertEquals(2, candidate.getKeyColumns().size());
+        // Too many other columns to cover the statement
+        assertTrue(candidate.getIncludedColumns().isEmpty());
+    }
+
+    @Test
+    void statementsWithoutSargablePredicatesYieldNothing() {
+        assertTrue(IndexAdvisor.advise(List.of(
+                statement(1, "SELECT id FROM orders WHERE lower(status) = ? OR id = ?", 10),
+                statement(2, "DELETE FROM orders WHERE note LIKE '%x%'", 10)), 4, 4).isEmpty());
+        assertTrue(IndexAdvisor.advise(List.of(), 4, 4).isEmpty());
+    }
+
+    @Test
+    void quotedNamesAreReported() {
+        Candidate candidate = single(List.of(statement(1,
+                "SELECT \"Id\" FROM \"Orders\" WHERE \"CustomerId\" = ? AND status = ?", 10)), "Orders");
+
+        assertTrue(candidate.isQuoted("Orders"));
+        assertTrue(candidate.isQuoted("CustomerId"));
+        assertTrue(candidate.isQuoted("Id"));
+        assertFalse(candidate.isQuoted("status"));
+    }
+
+    @Test
+    void startsWithIgnoresCase() {
+        assertTrue(IndexAdvisor.startsWith(List.of("A", "b"), List.of("a")));
+        assertFalse(IndexAdvisor.startsWith(List.of("a"), List.of("a", "b")));
+        assertFalse(IndexAdvisor.startsWith(List.of("b", "a"), List.of("a")));
+    }
+
+    private static Statement statement(long fingerprint, String sql, double totalTimeMs) {
+        return new Statement(fingerprint, sql, 1, totalTimeMs);
+    }
+
+    private static Candidate single(List<Statement> workload, String table) {
+        return single(workload, table, 8, 8);
+    }
+
+    private static Candidate single(List<Statement> workload, String table, int maxKeyColumns, int maxIncludedColumns) {
+        List<Candidate> candidates = IndexAdvisor.advise(workload, maxKeyColumns, maxIncludedColumns).stream()
+                .filter(candidate -> candidate.getTable().equals(table)).toList();
+        assertEquals(1, candidates.size());
+        return candidates.get(0);
+    }
+}
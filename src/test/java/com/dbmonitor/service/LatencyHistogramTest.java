@@ -0,0 +1,98 @@
+package com.dbmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMinValue());
+        assertEquals(0.0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 20; v++) {
+            histogram.record(v);
+        }
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getMinValue());
+        assertEquals(10.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    void largeValuesStayWithinTheRelativeErrorBound() {
+        long[] values = {100, 1_000, 12_345, 250_000, 9_999_999};
+        for (long value : values) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(1);
+            histogram.record(value);
+            histogram.record(value * 2);
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(Math.abs(reported - value) <= value / 16.0,
+                    "p50 " + reported + " too far from " + value);
+        }
+    }
+
+    @Test
+    void percentilesAreClampedToTheRecordedRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000, 10);
+        assertEquals(1000, histogram.getValueAtPercentile(0));
+        assertEquals(1000, histogram.getValueAtPercentile(99.9));
+        assertEquals(1000, histogram.getMaxValue());
+    }
+
+    @Test
+    void negativeValuesAndCountsAreIgnoredOrFloored() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5, 0);
+        histogram.record(5, -3);
+        assertEquals(0, histogram.getTotalCount());
+        histogram.record(-7);
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(0, histogram.getMaxValue());
+    }
+
+    @Test
+    void mergeAddsCounts() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10, 90);
+        b.record(5_000, 10);
+        a.merge(b);
+
+        assertEquals(100, a.getTotalCount());
+        assertEquals(10, a.getMinValue());
+        assertEquals(5_000, a.getMaxValue());
+        assertEquals(10, a.getValueAtPercentile(90));
+        assertTrue(a.getValueAtPercentile(95) > 4_600);
+        assertEquals(10, b.getTotalCount());
+    }
+
+    @Test
+    void bucketBoundsRoundTrip() {
+        for (long value = 0; value < 1_000_000; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexFor(value);
+            assertTrue(LatencyHistogram.lowerBoundFor(index) <= value);
+            assertTrue(LatencyHistogram.lowerBoundFor(index + 1) > value);
+        }
+    }
+
+    @Test
+    void clientIndexesAreBounded() {
+        assertTrue(LatencyHistogram.isValidIndex(0));
+        assertTrue(LatencyHistogram.isValidIndex(LatencyHistogram.indexFor(60_000)));
+        assertFalse(LatencyHistogram.isValidIndex(-1));
+        assertFalse(LatencyHistogram.isValidIndex(LatencyHistogram.indexFor(1L << 41)));
+    }
+}
@@ -0,0 +1,230 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.model.PlanNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanParserTest {
+
+    private static final String POSTGRESQL_ANALYZE = """
+        [{"Plan": {"Node Type": "Hash Join", "Total Cost": 45.5, "Plan Rows": 10,
+                   "Actual Rows": 2000, "Actual Loops": 1, "Actual Total Time": 3.2,
+          "Plans": [
+            {"Node Type": "Seq Scan", "Relation Name": "orders", "Total Cost": 30.0, "Plan Rows": 1000,
+             "Actual Rows": 1000, "Actual Loops": 1},
+            {"Node Type": "Hash", "Total Cost": 10.0, "Plan Rows": 50, "Actual Rows": 50, "Actual Loops": 1,
+             "Plans": [
+               {"Node Type": "Index Scan", "Relation Name": "customers", "Index Name": "customers_pkey",
+                "Total Cost": 10.0, "Plan Rows": 5, "Actual Rows": 10, "Actual Loops": 5}]}]},
+          "Planning Time": 0.2, "Execution Time": 3.4}]
+        """;
+
+    private static final String POSTGRESQL_ESTIMATE = """
+        [{"Plan": {"Node Type": "Hash Join", "Total Cost": 90.1, "Plan Rows": 500,
+          "Plans": [
+            {"Node Type": "Seq Scan", "Relation Name": "orders", "Total Cost": 60.0, "Plan Rows": 4000},
+            {"Node Type": "Hash", "Total Cost": 20.0, "Plan Rows": 80,
+             "Plans": [
+               {"Node Type": "Index Scan", "Relation Name": "customers", "Index Name": "customers_pkey",
+                "Total Cost": 20.0, "Plan Rows": 80}]}]}}]
+        """;
+
+    private static final String MYSQL = """
+        {"query_block": {"select_id": 1, "cost_info": {"query_cost": "12.50"},
+          "nested_loop": [
+            {"table": {"table_name": "o", "access_type": "ALL", "rows_examined_per_scan": 100,
+                       "cost_info": {"read_cost": "1.00", "eval_cost": "10.00", "prefix_cost": "11.00"}}},
+            {"table": {"table_name": "c", "access_type": "eq_ref", "key": "PRIMARY", "rows_examined_per_scan": 1,
+                       "possible_keys": ["PRIMARY"],
+                       "cost_info": {"read_cost": "0.50", "eval_cost": "1.00", "prefix_cost": "12.50"}}}]}}
+        """;
+
+    private static final String SQLSERVER = """
+        <?xml version="1.0" encoding="utf-16"?>
+        <ShowPlanXML xmlns="http://schemas.microsoft.com/sqlserver/2004/07/showplan" Version="1.5">
+          <BatchSequence><Batch><Statements>
+            <StmtSimple StatementType="SELECT" StatementEstRows="10" StatementSubTreeCost="0.5">
+              <QueryPlan>
+                <RelOp PhysicalOp="Nested Loops" EstimateRows="10" EstimatedTotalSubtreeCost="0.5">
+                  <RunTimeInformation>
+                    <RunTimeCountersPerThread Thread="0" ActualRows="10" ActualExecutions="1"/>
+                  </RunTimeInformation>
+                  <NestedLoops>
+                    <RelOp PhysicalOp="Clustered Index Scan" EstimateRows="10" EstimatedTotalSubtreeCost="0.3">
+                      <IndexScan>
+                        <Object Database="[db]" Schema="[dbo]" Table="[Orders]" Index="[PK_Orders]"/>
+                      </IndexScan>
+                    </RelOp>
+                    <RelOp PhysicalOp="Index Seek" EstimateRows="1" EstimatedTotalSubtreeCost="0.1">
+                      <IndexScan>
+                        <Object Database="[db]" Schema="[dbo]" Table="[Customers]" Index="[IX_Customers]"/>
+                      </IndexScan>
+                    </RelOp>
+                  </NestedLoops>
+                </RelOp>
+              </QueryPlan>
+            </StmtSimple>
+          </Statements></Batch></BatchSequence>
+        </ShowPlanXML>
+        """;
+
+    @Test
+    void parsesPostgreSqlTreeWithActuals() {
+        PlanNode root = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ANALYZE);
+
+        assertEquals("Hash Join", root.getOperator());
+        assertEquals(45.5, root.getEstimatedCost());
+        assertEquals(2000.0, root.getActualRows());
+        assertEquals(2, root.getChildren().size());
+
+        PlanNode scan = root.getChildren().get(0);
+        assertEquals("Seq Scan", scan.getOperator());
+        assertEquals("orders", scan.getRelation());
+        assertTrue(scan.isFullScan());
+
+        PlanNode index = root.getChildren().get(1).getChildren().get(0);
+        assertEquals("customers_pkey", index.getIndexName());
+        assertFalse(index.isFullScan());
+        // Actual rows are per loop in the JSON and totals in the tree
+        assertEquals(50.0, index.getActualRows());
+        assertEquals(5L, (long) index.getLoops());
+    }
+
+    @Test
+    void readsPostgreSqlExecutionTime() {
+        assertEquals(3.4, PlanParser.postgreSqlExecutionTime(POSTGRESQL_ANALYZE));
+        assertNull(PlanParser.postgreSqlExecutionTime(POSTGRESQL_ESTIMATE));
+        assertNull(PlanParser.postgreSqlExecutionTime("not json"));
+    }
+
+    @Test
+    void parsesMySqlNestedLoopWithOwnCosts() {
+        PlanNode root = PlanParser.parse(PlanParser.MYSQL_JSON, MYSQL);
+
+        assertEquals(12.5, root.getEstimatedCost());
+        PlanNode loop = root.getChildren().get(0);
+        assertEquals("Nested loop", loop.getOperator());
+        assertEquals(2, loop.getChildren().size());
+
+        PlanNode orders = loop.getChildren().get(0);
+        assertEquals("Table (ALL)", orders.getOperator());
+        assertEquals("o", orders.getRelation());
+        assertTrue(orders.isFullScan());
+        // read + eval, not the cumulative prefix_cost
+        assertEquals(11.0, orders.getEstimatedCost());
+
+        PlanNode customers = loop.getChildren().get(1);
+        assertEquals("PRIMARY", customers.getIndexName());
+        assertEquals(1.5, customers.getEstimatedCost());
+        assertEquals(12.5, loop.getEstimatedCost());
+    }
+
+    @Test
+    void parsesSqlServerShowplan() {
+        PlanNode root = PlanParser.parse(PlanParser.SQLSERVER_XML, SQLSERVER);
+
+        assertEquals("SELECT", root.getOperator());
+        assertEquals(0.5, root.getEstimatedCost());
+        PlanNode loops = root.getChildren().get(0);
+        assertEquals("Nested Loops", loops.getOperator());
+        assertEquals(10.0, loops.getActualRows());
+        assertEquals(1L, (long) loops.getLoops());
+
+        PlanNode scan = loops.getChildren().get(0);
+        assertEquals("Clustered Index Scan", scan.getOperator());
+        assertEquals("Orders", scan.getRelation());
+        assertEquals("PK_Orders", scan.getIndexName());
+        assertTrue(scan.isFullScan());
+        // Not executed with statistics, so no actuals below the root
+        assertNull(scan.getActualRows());
+
+        PlanNode seek = loops.getChildren().get(1);
+        assertEquals("IX_Customers", seek.getIndexName());
+        assertFalse(seek.isFullScan());
+    }
+
+    @Test
+    void unknownFormatsAndEmptyPlansParseToNull() {
+        assertNull(PlanParser.parse("TEXT", "Seq Scan on t"));
+        assertNull(PlanParser.parse(null, POSTGRESQL_ESTIMATE));
+        assertNull(PlanParser.parse(PlanParser.POSTGRESQL_JSON, " "));
+    }
+
+    @Test
+    void malformedPlansAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PlanParser.parse(PlanParser.POSTGRESQL_JSON, "{"));
+        assertThrows(IllegalArgumentException.class, () -> PlanParser.parse(PlanParser.SQLSERVER_XML, "<ShowPlanXML"));
+    }
+
+    @Test
+    void doctypesAreNotProcessed() {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE x [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><x>&e;</x>";
+        assertThrows(IllegalArgumentException.class, () -> PlanParser.parse(PlanParser.SQLSERVER_XML, xml));
+    }
+
+    @Test
+    void shapeHashIgnoresCostsRowsAndActuals() {
+        PlanNode analyzed = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ANALYZE);
+        PlanNode estimated = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ESTIMATE);
+
+        assertEquals(PlanParser.shapeHash(analyzed), PlanParser.shapeHash(estimated));
+    }
+
+    @Test
+    void shapeHashChangesWithTheAccessPath() {
+        PlanNode seqScan = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ESTIMATE);
+        PlanNode indexScan = PlanParser.parse(PlanParser.POSTGRESQL_JSON,
+                POSTGRESQL_ESTIMATE.replace("\"Seq Scan\", \"Relation Name\": \"orders\"",
+                        "\"Index Scan\", \"Relation Name\": \"orders\", \"Index Name\": \"orders_customer_idx\""));
+
+        assertNotEquals(PlanParser.shapeHash(seqScan), PlanParser.shapeHash(indexScan));
+    }
+
+    @Test
+    void mostExpensiveUsesSelfCost() {
+        PlanNode root = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ANALYZE);
+
+        // The join costs 45.5 in total but only 5.5 of its own; the scan costs 30
+        PlanNode expensive = PlanParser.mostExpensive(root);
+        assertEquals("Seq Scan", expensive.getOperator());
+    }
+
+    @Test
+    void misestimatesCompareRowsPerLoop() {
+        PlanNode root = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ANALYZE);
+
+        List<PlanNode> off = PlanParser.misestimates(root, 10, 100);
+        // Join: 10 estimated, 2000 actual. The index scan's 5 x 5 loops vs 50 is within 10x.
+        assertEquals(1, off.size());
+        assertEquals("Hash Join", off.get(0).getOperator());
+        assertTrue(PlanParser.misestimates(PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ESTIMATE),
+                10, 0).isEmpty());
+    }
+
+    @Test
+    void forEachVisitsParentsBeforeChildren() {
+        PlanNode root = PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ESTIMATE);
+        List<String> operators = new ArrayList<>();
+        PlanParser.forEach(root, node -> operators.add(node.getOperator()));
+
+        assertEquals(List.of("Hash Join", "Seq Scan", "Hash", "Index Scan"), operators);
+    }
+
+    @Test
+    void describeIndentsByDepth() {
+        String text = PlanParser.describe(PlanParser.parse(PlanParser.POSTGRESQL_JSON, POSTGRESQL_ESTIMATE));
+
+        assertTrue(text.startsWith("-> Hash Join (cost=90.10 rows=500)\n"));
+        assertTrue(text.contains("\n  -> Seq Scan on orders (cost=60.00 rows=4000)\n"));
+        assertTrue(text.contains("\n    -> Index Scan on customers using customers_pkey"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.dbmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryStatisticsServiceTest {
+
+    @Test
+    void recordsCountInTheirMinute() {
+        QueryStatisticsService statistics = new QueryStatisticsService();
+        statistics.record(LocalDateTime.now(), 10, false, false);
+        statistics.record(LocalDateTime.now().minusMinutes(30), 30, false, true);
+
+        assertEquals(1, statistics.getCount(5));
+        assertEquals(2, statistics.getCount(60));
+        assertEquals(20.0, statistics.getAverageTime(60));
+    }
+
+    @Test
+    void futureRecordsCountAsNow() {
+        QueryStatisticsService statistics = new QueryStatisticsService();
+        statistics.record(LocalDateTime.now().plusDays(3), 10, false, false);
+        statistics.record(LocalDateTime.now().plusMinutes(5), 5, 20, 1, 0);
+
+        // Counted once in the current minute, not in buckets ahead of the window
+        assertEquals(6, statistics.getCount(2));
+        assertEquals(6, statistics.getCount(QueryStatisticsService.MAX_WINDOW_MINUTES));
+        assertEquals(1, statistics.getSlowCount(2));
+    }
+
+    @Test
+    void recordsOlderThanTheWindowCountInNoWindow() {
+        QueryStatisticsService statistics = new QueryStatisticsService();
+        statistics.record(LocalDateTime.now().minusDays(10), 10, false, false);
+
+        assertEquals(0, statistics.getCount(QueryStatisticsService.MAX_WINDOW_MINUTES));
+    }
+}
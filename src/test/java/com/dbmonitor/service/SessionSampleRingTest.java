@@ -0,0 +1,123 @@
+package com.dbmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SessionSampleRingTest {
+
+    @Test
+    void emptyRingHasNoTicksOrSamples() {
+        SessionSampleRing ring = new SessionSampleRing(10, 10);
+
+        assertEquals(-1, ring.getLastTickMs());
+        assertEquals(-1, ring.getOldestMs());
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.ticksSince(0));
+        assertEquals(List.of(), sessionsSince(ring, 0));
+    }
+
+    @Test
+    void samplesAreVisitedNewestFirstWithTheirColumns() {
+        SessionSampleRing ring = new SessionSampleRing(10, 10);
+        ring.add(1000, 1, 2, 3, 44L);
+        ring.add(2000, 5, 6, 7, 88L);
+
+        List<long[]> visited = new ArrayList<>();
+        ring.forEachSince(0, (sampledAt, sessionId, waitClassId, waitEventId, sqlId) ->
+                visited.add(new long[] {sampledAt, sessionId, waitClassId, waitEventId, sqlId}));
+
+        assertEquals(2, visited.size());
+        assertEquals(List.of(2000L, 5L, 6L, 7L, 88L), boxed(visited.get(0)));
+        assertEquals(List.of(1000L, 1L, 2L, 3L, 44L), boxed(visited.get(1)));
+    }
+
+    @Test
+    void visitingStopsAtTheFirstSampleOlderThanTheWindow() {
+        SessionSampleRing ring = new SessionSampleRing(10, 10);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(i * 1000L, i, 0, 0, 0);
+        }
+
+        assertEquals(List.of(5, 4, 3), sessionsSince(ring, 3000));
+        assertEquals(List.of(), sessionsSince(ring, 6000));
+    }
+
+    @Test
+    void fullRingOverwritesTheOldestSamples() {
+        SessionSampleRing ring = new SessionSampleRing(3, 10);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(i * 1000L, i, 0, 0, 0);
+        }
+
+        assertEquals(3, ring.size());
+        assertEquals(3, ring.capacity());
+        assertEquals(3000, ring.getOldestMs());
+        assertEquals(List.of(5, 4, 3), sessionsSince(ring, 0));
+    }
+
+    @Test
+    void oldestSampleBeforeTheRingWraps() {
+        SessionSampleRing ring = new SessionSampleRing(3, 10);
+        ring.add(1000, 1, 0, 0, 0);
+        ring.add(2000, 2, 0, 0, 0);
+
+        assertEquals(1000, ring.getOldestMs());
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    void idleTicksCountTowardsTheWindow() {
+        SessionSampleRing ring = new SessionSampleRing(10, 10);
+        ring.add(1000, 1, 0, 0, 0);
+        ring.tick(1000);
+        ring.tick(2000);
+        ring.tick(3000);
+
+        assertEquals(3000, ring.getLastTickMs());
+        assertEquals(3, ring.ticksSince(1000));
+        assertEquals(2, ring.ticksSince(1500));
+        assertEquals(0, ring.ticksSince(3001));
+    }
+
+    @Test
+    void tickHistoryIsBoundedByItsCapacity() {
+        SessionSampleRing ring = new SessionSampleRing(10, 4);
+        for (int i = 1; i <= 10; i++) {
+            ring.tick(i * 1000L);
+        }
+
+        assertEquals(10_000, ring.getLastTickMs());
+        assertEquals(4, ring.ticksSince(0));
+        assertEquals(2, ring.ticksSince(9000));
+    }
+
+    @Test
+    void capacitiesAreAtLeastOne() {
+        SessionSampleRing ring = new SessionSampleRing(0, 0);
+        ring.add(1000, 1, 0, 0, 0);
+        ring.add(2000, 2, 0, 0, 0);
+        ring.tick(2000);
+
+        assertEquals(1, ring.capacity());
+        assertEquals(List.of(2), sessionsSince(ring, 0));
+        assertEquals(1, ring.ticksSince(0));
+    }
+
+    private static List<Integer> sessionsSince(SessionSampleRing ring, long sinceMs) {
+        List<Integer> sessions = new ArrayList<>();
+        ring.forEachSince(sinceMs, (sampledAt, sessionId, waitClassId, waitEventId, sqlId) -> sessions.add(sessionId));
+        return sessions;
+    }
+
+    private static List<Long> boxed(long[] values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
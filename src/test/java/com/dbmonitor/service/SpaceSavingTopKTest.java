@@ -0,0 +1,128 @@
+package com.dbmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTopKTest {
+
+    @Test
+    void exactWhileUnderCapacity() {
+        SpaceSavingTopK topK = new SpaceSavingTopK(10);
+        topK.add(1, 5, "a");
+        topK.add(2, 3, "b");
+        topK.add(1, 2, "a");
+
+        List<SpaceSavingTopK.Entry> top = topK.top(10);
+        assertEquals(2, top.size());
+        assertEquals(1, top.get(0).key());
+        assertEquals(7.0, top.get(0).weight());
+        assertEquals(0.0, top.get(0).error());
+        assertEquals(10.0, topK.getTotalWeight());
+    }
+
+    @Test
+    void nonPositiveWeightsAreIgnored() {
+        SpaceSavingTopK topK = new SpaceSavingTopK(4);
+        topK.add(1, 0, "a");
+        topK.add(2, -1, "b");
+        assertTrue(topK.top(4).isEmpty());
+        assertEquals(0.0, topK.getTotalWeight());
+    }
+
+    @Test
+    void heavyHittersSurviveANoisyStream() {
+        SpaceSavingTopK plain = new SpaceSavingTopK(20);
+        SpaceSavingTopK sketched = new SpaceSavingTopK(20, 4, 1024);
+        Map<Long, Double> truth = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long key = i % 2 == 0 ? random.nextInt(5) : 1_000 + random.nextInt(50_000);
+            truth.merge(key, 1.0, Double::sum);
+            plain.add(key, 1, null);
+            sketched.add(key, 1, null);
+        }
+        for (SpaceSavingTopK topK : List.of(plain, sketched)) {
+            List<SpaceSavingTopK.Entry> top = topK.top(5);
+            for (SpaceSavingTopK.Entry entry : top) {
+                assertTrue(entry.key() < 5, "unexpected heavy hitter " + entry.key());
+            }
+            for (SpaceSavingTopK.Entry entry : topK.top(20)) {
+                double actual = truth.get(entry.key());
+                assertTrue(entry.weight() >= actual - 1e-9);
+                assertTrue(entry.weight() - entry.error() <= actual + 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void mergedErrorsCoverKeysMissingFromEitherSide() {
+        SpaceSavingTopK left = new SpaceSavingTopK(2);
+        left.add(1, 10, "a");
+        left.add(2, 4, "b");
+        left.add(3, 1, "c");   // evicts key 2; key 3 inherits its weight as error
+
+        SpaceSavingTopK right = new SpaceSavingTopK(2);
+        right.add(2, 6, "b");
+        right.add(4, 3, "d");
+
+        SpaceSavingTopK merged = new SpaceSavingTopK(4);
+        merged.merge(left);
+        merged.merge(right);
+        Map<Long, Double> truth = Map.of(1L, 10.0, 2L, 10.0, 3L, 1.0, 4L, 3.0);
+
+        for (SpaceSavingTopK.Entry entry : merged.top(4)) {
+            double actual = truth.get(entry.key());
+            assertTrue(entry.weight() >= actual, "key " + entry.key() + " underestimated");
+            assertTrue(entry.weight() - entry.error() <= actual, "key " + entry.key() + " error too small");
+        }
+        assertEquals(24.0, merged.getTotalWeight());
+    }
+
+    @Test
+    void mergeOfDisjointPartialSummariesIsExact() {
+        SpaceSavingTopK a = new SpaceSavingTopK(10);
+        SpaceSavingTopK b = new SpaceSavingTopK(10);
+        a.add(1, 5, "a");
+        b.add(1, 2, "a");
+        b.add(2, 1, "b");
+
+        SpaceSavingTopK merged = new SpaceSavingTopK(10);
+        merged.merge(a);
+        merged.merge(b);
+        List<SpaceSavingTopK.Entry> top = merged.top(10);
+        assertEquals(7.0, top.get(0).weight());
+        assertEquals(0.0, top.get(0).error());
+        assertEquals(0.0, top.get(1).error());
+    }
+
+    @Test
+    void countMinNeverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(4, 64);
+        Map<Long, Double> truth = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            long key = random.nextLong();
+            double weight = 1 + random.nextInt(10);
+            truth.merge(key, weight, Double::sum);
+            sketch.add(key, weight);
+        }
+        for (Map.Entry<Long, Double> entry : truth.entrySet()) {
+            assertTrue(sketch.estimate(entry.getKey()) >= entry.getValue());
+        }
+    }
+
+    @Test
+    void countMinIsExactWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(3, 1024);
+        assertEquals(2.0, sketch.add(17, 2));
+        assertEquals(5.0, sketch.add(17, 3));
+        assertEquals(5.0, sketch.estimate(17));
+    }
+}
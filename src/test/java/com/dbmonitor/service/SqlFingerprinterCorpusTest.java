@@ -0,0 +1,77 @@
+package com.dbmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks the fingerprinter against {@code fingerprint-corpus.tsv}. The JDBC client's copy runs
+ * the same file, so the two cannot drift apart unnoticed.
+ */
+class SqlFingerprinterCorpusTest {
+
+    @Test
+    void matchesTheGoldenCorpus() throws IOException {
+        List<String[]> rows = readCorpus();
+        assertFalse(rows.isEmpty());
+        for (String[] row : rows) {
+            SqlFingerprinter.Fingerprint fingerprint = SqlFingerprinter.fingerprint(row[1],
+                    SqlFingerprinter.Dialect.valueOf(row[0]));
+            assertEquals(row[2], fingerprint.normalizedText(), row[1]);
+            assertEquals(row[3], String.format("%016x", fingerprint.hash()), row[1]);
+        }
+    }
+
+    @Test
+    void normalizedTextHashesToTheSameFingerprint() throws IOException {
+        // Ingestion re-hashes the normalized text sent by the client
+        for (String[] row : readCorpus()) {
+            SqlFingerprinter.Fingerprint again = SqlFingerprinter.fingerprint(row[2],
+                    SqlFingerprinter.Dialect.valueOf(row[0]));
+            assertEquals(row[2], again.normalizedText(), row[1]);
+            assertEquals(row[3], String.format("%016x", again.hash()), row[1]);
+        }
+    }
+
+    private static List<String[]> readCorpus() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (InputStream in = SqlFingerprinterCorpusTest.class.getResourceAsStream("/fingerprint-corpus.tsv");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\t", -1);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = unescape(columns[i]);
+                }
+                rows.add(columns);
+            }
+        }
+        return rows;
+    }
+
+    private static String unescape(String value) {
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
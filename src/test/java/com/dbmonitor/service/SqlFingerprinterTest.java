@@ -0,0 +1,182 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.service.SqlFingerprinter.Dialect;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class SqlFingerprinterTest {
+
+    @Test
+    void literalsAndFormattingShareOneFingerprint() {
+        SqlFingerprinter.Fingerprint a = SqlFingerprinter.fingerprint("SELECT * FROM orders WHERE id = 42");
+        SqlFingerprinter.Fingerprint b = SqlFingerprinter.fingerprint("select *\n  from ORDERS\twhere id=7 ;");
+
+        assertEquals("select * from orders where id = ?", a.normalizedText());
+        assertEquals(a.normalizedText(), b.normalizedText());
+        assertEquals(a.hash(), b.hash());
+        assertEquals("SELECT", a.queryType());
+    }
+
+    @Test
+    void differentShapesGetDifferentFingerprints() {
+        assertNotEquals(SqlFingerprinter.fingerprint("SELECT a FROM t WHERE id = 1").hash(),
+                SqlFingerprinter.fingerprint("SELECT b FROM t WHERE id = 1").hash());
+    }
+
+    @Test
+    void placeholdersOfEveryDriverNormalizeAlike() {
+        String expected = "select * from t where a = ? and b = ?";
+        assertEquals(expected, SqlFingerprinter.normalize("select * from t where a = ? and b = ?"));
+        assertEquals(expected, SqlFingerprinter.normalize("select * from t where a = $1 and b = $2"));
+        assertEquals(expected, SqlFingerprinter.normalize("select * from t where a = :a and b = :b"));
+        assertEquals(expected, SqlFingerprinter.normalize("select * from t where a = @P0 and b = @P1"));
+    }
+
+    @Test
+    void inListsAndValuesTuplesCollapse() {
+        assertEquals("select * from t where id in(?+)",
+                SqlFingerprinter.normalize("select * from t where id in (1, 2, 3)"));
+        assertEquals(SqlFingerprinter.normalize("select * from t where id in (1)"),
+                SqlFingerprinter.normalize("select * from t where id in (1, 2, 3, 4, 5)"));
+        assertEquals("insert into t(a, b) values(?+)",
+                SqlFingerprinter.normalize("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), (3, 'z')"));
+    }
+
+    @Test
+    void unarySignIsFoldedIntoTheLiteral() {
+        assertEquals(SqlFingerprinter.normalize("select * from t where a = 5"),
+                SqlFingerprinter.normalize("select * from t where a = -5"));
+        assertEquals("select a - ? from t", SqlFingerprinter.normalize("select a - 1 from t"));
+    }
+
+    @Test
+    void signAttachedToAnOperatorIsFolded() {
+        String expected = "select * from t where a = ? and b >= ? and c <> ?";
+        assertEquals(expected, SqlFingerprinter.normalize("select * from t where a=-5 and b>=+.5 and c<>-1"));
+        assertEquals(expected, SqlFingerprinter.normalize("select * from t where a = -5 and b >= .5 and c <> 1"));
+        // Operators that merely contain a minus are kept whole
+        assertEquals("select a ->> ? from t where b <-> c", SqlFingerprinter.normalize("select a->>'k' from t where b<->c"));
+    }
+
+    @Test
+    void commentsAreStripped() {
+        assertEquals("select a from t",
+                SqlFingerprinter.normalize("/* report */ select a -- trailing\n from t"));
+    }
+
+    @Test
+    void castIsNotANamedParameter() {
+        assertEquals("select a :: text from t", SqlFingerprinter.normalize("select a::text from t"));
+    }
+
+    @Test
+    void sqlServerTempTablesAreNamesNotComments() {
+        assertEquals("select * from a, #tmp where a.id = #tmp.id",
+                SqlFingerprinter.normalize("SELECT * FROM a, #tmp WHERE a.id = #tmp.id", Dialect.SQLSERVER));
+        assertEquals("select * from a join(#t) on ?",
+                SqlFingerprinter.normalize("SELECT * FROM a JOIN (#t) ON 1", Dialect.SQLSERVER));
+        // Without a known engine a name directly after "#" is still a temp table
+        assertEquals("select * from a, #tmp", SqlFingerprinter.normalize("SELECT * FROM a, #tmp"));
+    }
+
+    @Test
+    void hashStartsACommentOnMySql() {
+        assertEquals("select a from t",
+                SqlFingerprinter.normalize("SELECT a FROM t #note\n", Dialect.MYSQL));
+        assertEquals("select a from t",
+                SqlFingerprinter.normalize("SELECT a FROM t # note"));
+    }
+
+    @Test
+    void backslashIsLiteralInStandardStrings() {
+        String sql = "SELECT * FROM files WHERE path = 'C:\\' AND owner = 'bob'";
+        String expected = "select * from files where path = ? and owner = ?";
+        assertEquals(expected, SqlFingerprinter.normalize(sql, Dialect.POSTGRESQL));
+        assertEquals(expected, SqlFingerprinter.normalize(sql, Dialect.SQLSERVER));
+        assertEquals(expected, SqlFingerprinter.normalize(sql));
+    }
+
+    @Test
+    void backslashEscapesQuotesOnMySqlAndInPostgresEStrings() {
+        assertEquals("select * from t where a = ? and b = ?",
+                SqlFingerprinter.normalize("SELECT * FROM t WHERE a = 'it\\'s' AND b = 1", Dialect.MYSQL));
+        assertEquals("select * from t where a = ? and b = ?",
+                SqlFingerprinter.normalize("SELECT * FROM t WHERE a = E'it\\'s' AND b = 1", Dialect.POSTGRESQL));
+    }
+
+    @Test
+    void doubledQuotesStayInsideTheLiteral() {
+        assertEquals("select * from t where a = ? and b = ?",
+                SqlFingerprinter.normalize("select * from t where a = 'it''s' and b = 2"));
+    }
+
+    @Test
+    void dollarQuotedBodiesAreLiterals() {
+        assertEquals("select ?", SqlFingerprinter.normalize("select $fn$ it's; -- not a comment $fn$"));
+    }
+
+    @Test
+    void quotedIdentifiersKeepTheirCase() {
+        assertEquals("select \"Name\" from [Order Items]",
+                SqlFingerprinter.normalize("SELECT \"Name\" FROM [Order Items]"));
+    }
+
+    @Test
+    void queryTypeFollowsTheFirstKeyword() {
+        assertEquals("SELECT", SqlFingerprinter.queryType("with x as (select 1) select * from x"));
+        assertEquals("INSERT", SqlFingerprinter.queryType("-- c\n insert into t values (1)"));
+        assertEquals("UPDATE", SqlFingerprinter.queryType("/* c */ update t set a = 1"));
+        assertEquals("DELETE", SqlFingerprinter.queryType("delete from t"));
+        assertEquals("DDL", SqlFingerprinter.queryType("create index i on t (a)"));
+        assertEquals("OTHER", SqlFingerprinter.queryType("exec sp_who"));
+        assertEquals("UNKNOWN", SqlFingerprinter.queryType(""));
+    }
+
+    @Test
+    void statementsAreSplitAtTopLevelSemicolonsOnly() {
+        assertEquals(1, SqlFingerprinter.statementCount("select 1", Dialect.GENERIC));
+        assertEquals(1, SqlFingerprinter.statementCount("select 1; -- done\n ;", Dialect.GENERIC));
+        assertEquals(2, SqlFingerprinter.statementCount("select 1; drop table t", Dialect.GENERIC));
+        assertEquals(1, SqlFingerprinter.statementCount("select ';' , \"a;b\" from t /* ; */", Dialect.GENERIC));
+        assertEquals(1, SqlFingerprinter.statementCount("select [x;y] from t", Dialect.SQLSERVER));
+        assertEquals(1, SqlFingerprinter.statementCount("select $fn$ ; $fn$, a$b$ from t", Dialect.POSTGRESQL));
+        assertEquals(0, SqlFingerprinter.statementCount(" ; -- nothing", Dialect.GENERIC));
+    }
+
+    @Test
+    void statementSplittingFollowsTheDialectsEscapes() {
+        // The backslash escapes the quote on MySQL, so the ";" is inside the literal
+        assertEquals(1, SqlFingerprinter.statementCount("select 'a\\'; b'", Dialect.MYSQL));
+        // Elsewhere the literal ends at the second quote
+        assertEquals(2, SqlFingerprinter.statementCount("select 'a\\'; delete from t", Dialect.POSTGRESQL));
+        assertEquals(2, SqlFingerprinter.statementCount("select 1 # x\n; delete from t", Dialect.MYSQL));
+        assertEquals(1, SqlFingerprinter.statementCount("select 1 # ; delete from t", Dialect.MYSQL));
+    }
+
+    @Test
+    void statementSplittingReadsPastTheNormalizedLength() {
+        String sql = "select '" + "x".repeat(SqlFingerprinter.MAX_NORMALIZED_LENGTH * 2) + "' from t; delete from t";
+        assertEquals(2, SqlFingerprinter.statementCount(sql, Dialect.GENERIC));
+    }
+
+    @Test
+    void normalizedTextIsBounded() {
+        StringBuilder sql = new StringBuilder("select ");
+        for (int i = 0; i < 5000; i++) {
+            sql.append("column_").append(i).append(", ");
+        }
+        sql.append("x from t");
+        assertEquals(SqlFingerprinter.MAX_NORMALIZED_LENGTH, SqlFingerprinter.normalize(sql.toString()).length());
+    }
+
+    @Test
+    void dialectIsResolvedFromTheConnectionType() {
+        assertEquals(Dialect.SQLSERVER, Dialect.of("SQL Server"));
+        assertEquals(Dialect.MYSQL, Dialect.of("MySQL"));
+        assertEquals(Dialect.POSTGRESQL, Dialect.of("PostgreSQL"));
+        assertEquals(Dialect.GENERIC, Dialect.of("H2"));
+        assertEquals(Dialect.GENERIC, Dialect.of(null));
+    }
+}
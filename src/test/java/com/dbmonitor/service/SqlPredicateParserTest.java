@@ -0,0 +1,135 @@
+package com.dbmonitor.service;
+
+import com.dbmonitor.service.SqlPredicateParser.Predicate;
+import com.dbmonitor.service.SqlPredicateParser.PredicateKind;
+import com.dbmonitor.service.SqlPredicateParser.QueryShape;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlPredicateParserTest {
+
+    @Test
+    void classifiesSargablePredicates() {
+        QueryShape shape = single("SELECT id FROM orders WHERE status = 'open' AND region IN (1, 2) "
+                + "AND created_at >= ? AND amount BETWEEN 1 AND 10");
+
+        assertEquals(List.of(
+                new Predicate("orders", "status", PredicateKind.EQUALITY),
+                new Predicate("orders", "region", PredicateKind.IN),
+                new Predicate("orders", "created_at", PredicateKind.RANGE),
+                new Predicate("orders", "amount", PredicateKind.RANGE)), shape.predicates());
+    }
+
+    @Test
+    void skipsDisjunctionsNegationsAndInequality() {
+        QueryShape shape = single("SELECT id FROM orders WHERE (status = 'open' OR status = 'held') "
+                + "AND NOT archived = 1 AND region NOT IN (1, 2) AND kind <> 'x' AND customer_id = ?");
+
+        assertEquals(List.of(new Predicate("orders", "customer_id", PredicateKind.EQUALITY)), shape.predicates());
+    }
+
+    @Test
+    void skipsColumnsWrappedInFunctions() {
+        QueryShape shape = single("SELECT id FROM customers WHERE lower(email) = ? AND id + 1 = ?");
+
+        assertTrue(shape.predicates().isEmpty());
+        assertTrue(shape.referencedColumns().get("customers").contains("email"));
+    }
+
+    @Test
+    void likeIsARangeOnlyWithoutALeadingWildcard() {
+        QueryShape prefix = single("SELECT id FROM customers WHERE name LIKE 'Smi%'");
+        QueryShape contains = single("SELECT id FROM customers WHERE name LIKE '%mit%'");
+
+        assertEquals(List.of(new Predicate("customers", "name", PredicateKind.RANGE)), prefix.predicates());
+        assertTrue(contains.predicates().isEmpty());
+    }
+
+    @Test
+    void resolvesAliasesAndJoins() {
+        QueryShape shape = single("SELECT o.id, c.name FROM orders AS o JOIN shop.customers c ON o.customer_id = c.id "
+                + "WHERE c.country = ?");
+
+        assertEquals(List.of("orders", "shop.customers"), shape.tables());
+        assertTrue(shape.predicates().contains(new Predicate("orders", "customer_id", PredicateKind.JOIN)));
+        assertTrue(shape.predicates().contains(new Predicate("shop.customers", "id", PredicateKind.JOIN)));
+        assertTrue(shape.predicates().contains(new Predicate("shop.customers", "country", PredicateKind.EQUALITY)));
+        assertEquals(Set.of("id", "customer_id"), shape.referencedColumns().get("orders"));
+    }
+
+    @Test
+    void unqualifiedColumnsOfAJoinAreNotGuessed() {
+        QueryShape shape = single("SELECT o.id FROM orders o, customers c WHERE country = ?");
+
+        assertTrue(shape.predicates().isEmpty());
+        assertEquals(Set.of("orders", "customers"), shape.uncoverableTables());
+    }
+
+    @Test
+    void quotedIdentifiersKeepTheirCaseAndAreReported() {
+        QueryShape shape = single("SELECT \"Id\" FROM \"Order\"\"Items\" WHERE \"CustomerId\" = ? AND status = ?");
+
+        assertEquals(List.of("Order\"Items"), shape.tables());
+        assertEquals(List.of(
+                new Predicate("Order\"Items", "CustomerId", PredicateKind.EQUALITY),
+                new Predicate("Order\"Items", "status", PredicateKind.EQUALITY)), shape.predicates());
+        assertEquals(Set.of("Id", "Order\"Items", "CustomerId"), shape.quotedNames());
+    }
+
+    @Test
+    void bracketAndBacktickIdentifiers() {
+        QueryShape sqlServer = single("SELECT [Total]]Due] FROM [dbo].[Orders] WHERE [Id] = @id");
+        QueryShape mySql = single("SELECT `id` FROM `Orders` WHERE `Status` = ?");
+
+        assertEquals(List.of("dbo.Orders"), sqlServer.tables());
+        assertEquals(List.of(new Predicate("dbo.Orders", "Id", PredicateKind.EQUALITY)), sqlServer.predicates());
+        assertTrue(sqlServer.quotedNames().contains("Total]Due"));
+        assertEquals(List.of(new Predicate("Orders", "Status", PredicateKind.EQUALITY)), mySql.predicates());
+    }
+
+    @Test
+    void sortColumnsNeedOneTableAndDirection() {
+        QueryShape sorted = single("SELECT id FROM orders WHERE customer_id = ? ORDER BY created_at DESC, id DESC");
+        QueryShape mixed = single("SELECT id FROM orders ORDER BY created_at DESC, id ASC");
+
+        assertEquals("orders", sorted.sortTable());
+        assertEquals(List.of("created_at", "id"), sorted.sortColumns());
+        assertEquals(List.of("created_at"), mixed.sortColumns());
+    }
+
+    @Test
+    void subqueriesAreBlocksOfTheirOwn() {
+        List<QueryShape> shapes = SqlPredicateParser.parse(
+                "SELECT id FROM orders WHERE customer_id IN (SELECT id FROM customers WHERE country = ?)");
+
+        assertEquals(2, shapes.size());
+        assertEquals(List.of("customers"), shapes.get(0).tables());
+        assertEquals(List.of(new Predicate("orders", "customer_id", PredicateKind.IN)), shapes.get(1).predicates());
+    }
+
+    @Test
+    void selectStarAndWritesAreNotCoverable() {
+        assertEquals(Set.of("orders"), single("SELECT * FROM orders WHERE id = ?").uncoverableTables());
+        assertEquals(Set.of("orders"), single("UPDATE orders SET status = ? WHERE id = ?").uncoverableTables());
+    }
+
+    @Test
+    void unrecognizedTextYieldsNoShapes() {
+        assertTrue(SqlPredicateParser.parse(null).isEmpty());
+        assertTrue(SqlPredicateParser.parse("VACUUM orders").isEmpty());
+        assertTrue(SqlPredicateParser.parse("SELECT 1").isEmpty());
+        assertNull(single("SELECT id FROM orders WHERE (((").sortTable());
+    }
+
+    private static QueryShape single(String sql) {
+        List<QueryShape> shapes = SqlPredicateParser.parse(sql);
+        assertEquals(1, shapes.size());
+        return shapes.get(0);
+    }
+}